@@ -39,6 +39,7 @@ import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.Pair;
 import org.openremote.model.util.TextUtil;
 import org.openremote.model.value.Value;
+import org.openremote.model.value.ValueFilter;
 import org.openremote.model.value.Values;
 
 import java.util.*;
@@ -111,6 +112,7 @@ public abstract class AbstractProtocol implements Protocol {
     public static final int PRIORITY = MessageBrokerService.PRIORITY + 100;
     protected final Map<AttributeRef, AssetAttribute> linkedAttributes = new HashMap<>();
     protected final Set<AttributeRef> dynamicAttributes = new HashSet<>();
+    protected final Map<AttributeRef, ValueFilter[]> linkedAttributeValueFilters = new HashMap<>();
     protected final Map<AttributeRef, LinkedProtocolInfo> linkedProtocolConfigurations = new HashMap<>();
     protected MessageBrokerContext messageBrokerContext;
     protected ProducerTemplate producerTemplate;
@@ -169,6 +171,7 @@ public abstract class AbstractProtocol implements Protocol {
     final public void stop(Container container) {
         withLock(getProtocolName() + "::stop", () -> {
             linkedAttributes.clear();
+            linkedAttributeValueFilters.clear();
             try {
                 messageBrokerContext.stopRoute("Actuator-" + getProtocolName(), 1, TimeUnit.MILLISECONDS);
                 messageBrokerContext.removeRoute("Actuator-" + getProtocolName());
@@ -238,11 +241,16 @@ public abstract class AbstractProtocol implements Protocol {
                     dynamicAttributes.add(attributeRef);
                 }
 
+                // Deserialize the value filters once, a change to the meta relinks the attribute
+                Protocol.getLinkedAttributeValueFilters(attribute)
+                    .ifPresent(filters -> linkedAttributeValueFilters.put(attributeRef, filters));
+
                 try {
                     doLinkAttribute(attribute, protocolConfiguration);
                 } catch (Exception e) {
                     LOG.log(Level.SEVERE, "Failed to link attribute to protocol: " + attribute, e);
                     linkedAttributes.remove(attributeRef);
+                    linkedAttributeValueFilters.remove(attributeRef);
                 }
             });
         });
@@ -263,6 +271,7 @@ public abstract class AbstractProtocol implements Protocol {
                 AttributeRef attributeRef = attribute.getReferenceOrThrow();
                 linkedAttributes.remove(attributeRef);
                 dynamicAttributes.remove(attributeRef);
+                linkedAttributeValueFilters.remove(attributeRef);
                 doUnlinkAttribute(attribute, protocolConfiguration);
             });
         });
@@ -341,6 +350,24 @@ public abstract class AbstractProtocol implements Protocol {
         });
     }
 
+    /**
+     * Send a batch of arbitrary {@link AttributeEvent}s through the processing chain, they are processed in order in a
+     * single pass. Events for attributes linked to this protocol are dropped, see {@link #sendAttributeEvent}.
+     */
+    final protected void sendAttributeEvents(List<AttributeEvent> events) {
+        withLock(getProtocolName() + "::sendAttributeEvents", () -> {
+            List<AttributeEvent> allowedEvents = new ArrayList<>(events.size());
+            for (AttributeEvent event : events) {
+                if (linkedAttributes.containsKey(event.getAttributeRef())) {
+                    LOG.warning("Cannot update an attribute linked to the same protocol; use updateLinkedAttribute for that: " + event);
+                } else {
+                    allowedEvents.add(event);
+                }
+            }
+            assetService.sendAttributeEvents(allowedEvents);
+        });
+    }
+
     /**
      * Update the value of a linked attribute. Call this to publish new sensor values. This will call
      * {@link #doInboundValueProcessing} before sending on the sensor queue.
@@ -353,7 +380,11 @@ public abstract class AbstractProtocol implements Protocol {
             return;
         }
 
-        Pair<Boolean, Value> ignoreAndConverted = Protocol.doInboundValueProcessing(attribute, state.getValue().orElse(null), assetService);
+        Pair<Boolean, Value> ignoreAndConverted = Protocol.doInboundValueProcessing(
+            attribute,
+            linkedAttributeValueFilters.get(state.getAttributeRef()),
+            state.getValue().orElse(null),
+            assetService);
 
         if (ignoreAndConverted.key) {
             LOG.fine("Value conversion returned ignore so attribute will not be updated: " + attribute.getReferenceOrThrow());
@@ -617,9 +617,17 @@ public interface Protocol extends ContainerService {
     }
 
     static Pair<Boolean, Value> doInboundValueProcessing(AssetAttribute attribute, Value value, ProtocolAssetService assetService) {
+        return doInboundValueProcessing(attribute, Protocol.getLinkedAttributeValueFilters(attribute).orElse(null), value, assetService);
+    }
+
+    /**
+     * As {@link #doInboundValueProcessing(AssetAttribute, Value, ProtocolAssetService)} but with the
+     * {@link #META_ATTRIBUTE_VALUE_FILTERS} of the attribute already extracted (see
+     * {@link #getLinkedAttributeValueFilters}) so they aren't deserialized for every value.
+     */
+    static Pair<Boolean, Value> doInboundValueProcessing(AssetAttribute attribute, ValueFilter[] filters, Value value, ProtocolAssetService assetService) {
 
         // filtering
-        ValueFilter[] filters = Protocol.getLinkedAttributeValueFilters(attribute).orElse(null);
         if (filters != null) {
             value = assetService.applyValueFilters(value, filters);
         }
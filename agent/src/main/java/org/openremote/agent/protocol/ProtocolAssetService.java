@@ -152,6 +152,11 @@ public interface ProtocolAssetService extends ContainerService {
      */
     void sendAttributeEvent(AttributeEvent attributeEvent);
 
+    /**
+     * Protocols can send a batch of arbitrary attribute change events, they are processed in order in a single pass.
+     */
+    void sendAttributeEvents(List<AttributeEvent> attributeEvents);
+
     /**
      * Gets the Agent {@link Asset} that the specified {@link org.openremote.model.asset.agent.ProtocolConfiguration}
      * belongs to.
@@ -19,6 +19,7 @@
  */
 package org.openremote.agent.protocol;
 
+import org.openremote.agent.protocol.io.SharedEventLoopGroup;
 import org.openremote.container.ContainerService;
 
 import java.util.concurrent.ScheduledExecutorService;
@@ -45,4 +46,31 @@ public interface ProtocolExecutorService extends ScheduledExecutorService, Conta
      * @see java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay
      */
     ScheduledFuture<?> scheduleWithFixedDelay(Runnable runnable, long initialDelayMillis, long periodMillis);
+
+    /**
+     * Schedules a one-shot timer on the shared timing wheel, use this instead of {@link #schedule(Runnable, long)}
+     * for large numbers of timers that don't need millisecond precision. Scheduling and cancelling is O(1) and
+     * the delay is rounded up to the wheel tick.
+     */
+    ScheduledFuture<?> scheduleTimer(Runnable runnable, long delayMillis);
+
+    /**
+     * Schedules a periodic timer on the shared timing wheel.
+     *
+     * @see #scheduleTimer
+     */
+    ScheduledFuture<?> scheduleTimerAtFixedRate(Runnable runnable, long initialDelayMillis, long periodMillis);
+
+    /**
+     * Schedules a periodic timer on the shared timing wheel, the next execution is scheduled after the previous
+     * completed.
+     *
+     * @see #scheduleTimer
+     */
+    ScheduledFuture<?> scheduleTimerWithFixedDelay(Runnable runnable, long initialDelayMillis, long delayMillis);
+
+    /**
+     * The Netty event loop group shared by all protocol IO clients and servers, protocols must not shut it down.
+     */
+    SharedEventLoopGroup getIoEventLoopGroup();
 }
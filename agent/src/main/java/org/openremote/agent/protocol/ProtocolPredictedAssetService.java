@@ -21,11 +21,20 @@ package org.openremote.agent.protocol;
 
 import org.openremote.container.ContainerService;
 import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.datapoint.ValueDatapoint;
 import org.openremote.model.value.Value;
 
+import java.util.List;
+
 public interface ProtocolPredictedAssetService extends ContainerService {
 
     void updateValue(AttributeRef attributeRef, Value value, long timestamp);
 
     void updateValue(String assetId, String attributeName, Value value, long timestamp);
+
+    /**
+     * Stores many datapoints of an attribute at once (e.g. a forecast), existing datapoints with the same timestamp
+     * are replaced.
+     */
+    void updateValues(AttributeRef attributeRef, List<ValueDatapoint<?>> valuesAndTimestamps);
 }
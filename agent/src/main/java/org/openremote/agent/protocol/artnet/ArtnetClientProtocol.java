@@ -9,7 +9,6 @@ import org.openremote.agent.protocol.ProtocolLinkedAttributeImport;
 import org.openremote.agent.protocol.io.AbstractIoClientProtocol;
 import org.openremote.agent.protocol.io.AbstractNettyIoClient;
 import org.openremote.agent.protocol.udp.UdpIoClient;
-import org.openremote.container.Container;
 import org.openremote.container.util.CodecUtil;
 import org.openremote.container.util.UniqueIdentifierGenerator;
 import org.openremote.model.asset.Asset;
@@ -19,13 +18,17 @@ import org.openremote.model.asset.AssetType;
 import org.openremote.model.attribute.*;
 import org.openremote.model.file.FileInfo;
 import org.openremote.model.query.AssetQuery;
+import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.Pair;
 import org.openremote.model.value.*;
 
 import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import static org.openremote.container.util.Util.joinCollections;
@@ -37,13 +40,14 @@ import static org.openremote.model.attribute.MetaItemDescriptorImpl.metaItemInte
 import static org.openremote.model.attribute.MetaItemDescriptorImpl.metaItemObject;
 import static org.openremote.model.attribute.MetaItemType.AGENT_LINK;
 import static org.openremote.model.attribute.MetaItemType.READ_ONLY;
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 
 public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket, UdpIoClient<ArtnetPacket>> implements ProtocolLinkedAttributeImport {
 
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, ArtnetClientProtocol.class);
     private static final String PROTOCOL_VERSION = "1.70";
     public static final String PROTOCOL_NAME = PROTOCOL_NAMESPACE + ":artnet";
     public static final String PROTOCOL_DISPLAY_NAME = "Artnet Client";
-    public static final List<MetaItemDescriptor> PROTOCOL_META_ITEM_DESCRIPTORS = joinCollections(ArtnetClientProtocol.PROTOCOL_META_ITEM_DESCRIPTORS, AbstractIoClientProtocol.PROTOCOL_GENERIC_META_ITEM_DESCRIPTORS);
     public static final String agentProtocolConfigName = "ArtnetProtocolAgent";
     public static final String ARTNET_DEFAULT_LIGHT_STATE = "{'r': 0, 'g': 0, 'b': 0, 'w': 0}";
     public static final MetaItemDescriptor META_ARTNET_LIGHT_ID = metaItemInteger(
@@ -74,6 +78,19 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
             true,
             1,
             65536);
+    public static final int DEFAULT_FRAME_RATE = 44;
+    /**
+     * Optionally sets the maximum number of DMX frames sent per second for each universe (default
+     * {@link #DEFAULT_FRAME_RATE}); light changes made in between two frames are coalesced into the next frame.
+     */
+    public static final MetaItemDescriptor META_ARTNET_FRAME_RATE = metaItemInteger(
+            PROTOCOL_NAME + ":frameRate",
+            ACCESS_PRIVATE,
+            false,
+            1,
+            1000);
+
+    public static final List<MetaItemDescriptor> PROTOCOL_META_ITEM_DESCRIPTORS = joinCollections(Collections.singletonList(META_ARTNET_FRAME_RATE), AbstractIoClientProtocol.PROTOCOL_GENERIC_META_ITEM_DESCRIPTORS);
 
     public static final List<MetaItemDescriptor> ATTRIBUTE_META_ITEM_DESCRIPTORS = Arrays.asList(
             META_ATTRIBUTE_MATCH_FILTERS,
@@ -83,7 +100,18 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
 
     protected final Map<AttributeRef, List<Pair<AttributeRef, Consumer<ArtnetPacket>>>> protocolMessageConsumers = new HashMap<>();
 
-    private List<ArtnetLight> artnetLightMemory = new ArrayList<>();
+    /**
+     * Lights by light id, all registry maps are guarded by this map.
+     */
+    protected final Map<Integer, ArtnetLight> lights = new HashMap<>();
+    protected final Map<AttributeRef, ArtnetLight> attributeLights = new HashMap<>();
+    /**
+     * Universes by protocol configuration and universe number, the same universe number can be used by several
+     * protocol configurations, e.g. for different Art-Net nodes.
+     */
+    protected final Map<AttributeRef, Map<Integer, ArtnetUniverse>> universes = new HashMap<>();
+    protected final Map<Integer, ArtnetUniverse> lightUniverses = new HashMap<>();
+    protected final Map<AttributeRef, ScheduledFuture<?>> frameSenders = new HashMap<>();
 
     @Override
     public String getProtocolName() {
@@ -100,7 +128,13 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
         return PROTOCOL_VERSION;
     }
 
-    public List<ArtnetLight> getLightMemory() { return artnetLightMemory; }
+    public List<ArtnetLight> getLightMemory() {
+        synchronized (lights) {
+            List<ArtnetLight> lightMemory = new ArrayList<>(lights.values());
+            lightMemory.sort(Comparator.comparingInt(ArtnetLight::getLightId));
+            return lightMemory;
+        }
+    }
 
     @Override
     protected List<MetaItemDescriptor> getProtocolConfigurationMetaItemDescriptors() {
@@ -121,14 +155,69 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
                 );
     }
 
+    @Override
+    protected void doLinkProtocolConfiguration(Asset agent, AssetAttribute protocolConfiguration) {
+        super.doLinkProtocolConfiguration(agent, protocolConfiguration);
+        AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
+
+        int frameRate = Values.getMetaItemValueOrThrow(
+                protocolConfiguration,
+                META_ARTNET_FRAME_RATE,
+                false,
+                false
+        ).flatMap(Values::getIntegerCoerced).orElse(DEFAULT_FRAME_RATE);
+
+        long framePeriodMillis = Math.max(1, 1000 / frameRate);
+        synchronized (frameSenders) {
+            frameSenders.put(protocolRef, executorService.scheduleAtFixedRate(() -> sendFrames(protocolRef), framePeriodMillis, framePeriodMillis));
+        }
+    }
+
     @Override
     protected void doUnlinkProtocolConfiguration(Asset agent, AssetAttribute protocolConfiguration) {
+        AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
+        synchronized (frameSenders) {
+            ScheduledFuture<?> frameSender = frameSenders.remove(protocolRef);
+            if (frameSender != null) {
+                frameSender.cancel(false);
+            }
+        }
         synchronized (protocolMessageConsumers) {
-            protocolMessageConsumers.remove(protocolConfiguration.getReferenceOrThrow());
+            protocolMessageConsumers.remove(protocolRef);
         }
         super.doUnlinkProtocolConfiguration(agent, protocolConfiguration);
     }
 
+    /**
+     * Sends one frame for each universe of the protocol configuration that changed since the last frame.
+     */
+    protected void sendFrames(AttributeRef protocolRef) {
+        ProtocolIoClient<ArtnetPacket, UdpIoClient<ArtnetPacket>> protocolIoClient = protocolIoClientMap.get(protocolRef);
+        if (protocolIoClient == null) {
+            return;
+        }
+
+        List<ArtnetUniverse> protocolUniverses;
+        synchronized (lights) {
+            Map<Integer, ArtnetUniverse> universesByNumber = universes.get(protocolRef);
+            if (universesByNumber == null) {
+                return;
+            }
+            protocolUniverses = new ArrayList<>(universesByNumber.values());
+        }
+
+        for (ArtnetUniverse universe : protocolUniverses) {
+            byte[] frame = universe.takeFrame();
+            if (frame != null) {
+                try {
+                    protocolIoClient.client.sendMessage(new ArtnetPacket(universe.getUniverse(), frame));
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Failed to send frame of universe " + universe.getUniverse() + " for protocol configuration: " + protocolRef, e);
+                }
+            }
+        }
+    }
+
     @Override
     protected UdpIoClient<ArtnetPacket> createIoClient(AssetAttribute protocolConfiguration) throws Exception {
         String host = Values.getMetaItemValueOrThrow(
@@ -193,6 +282,7 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
         if(parentAssetId == null)
             return;
 
+        // The light is resolved once here so writes don't have to look up the light asset
         Asset parentAsset = assetService.findAsset(parentAssetId);
         if(parentAsset == null)
             return;
@@ -213,35 +303,29 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
             if(lightId != -1 && groupId != -1 && universe != -1 && amountOfLeds != -1 && requiredKeysField != null)
             {
                 String[] requiredKeys = requiredKeysField.split(",");
-                ArtnetLightState state = new ArtnetLightState(lightId, new LinkedHashMap<String, Integer>(), 100, true);
-                for(String key : requiredKeys)
-                    state.getReceivedValues().put(key, 0);
-                ArtnetLight lightToCreate = new ArtnetLight(lightId, groupId, universe, amountOfLeds, requiredKeys, state, null);
-                if(artnetLightMemory.stream().noneMatch(light -> light.getLightId() == lightToCreate.getLightId()))
-                    artnetLightMemory.add(lightToCreate);
+                synchronized (lights) {
+                    ArtnetLight light = lights.get(lightId);
+                    if(light == null) {
+                        light = new ArtnetLight(lightId, groupId, universe, amountOfLeds, requiredKeys, createLightState(lightId, requiredKeys), null);
+                        addLight(protocolRef, light);
+                    }
+                    attributeLights.put(parentAttributeRef, light);
+                }
             }
         }
     }
 
     @Override
     protected void doUnlinkAttribute(AssetAttribute attribute, AssetAttribute protocolConfiguration) {
-        AssetAttribute assetAttribute = getLinkedAttribute(attribute.getReference().orElse(null));
-        if(assetAttribute != null) {
-            String assetId = assetAttribute.getAssetId().orElse(null);
-            if(assetId != null) {
-                Asset parentAsset = assetService.findAsset(assetId);
-                Attribute lightAttribute = parentAsset.getAttribute("Id").orElse(null);
-                Attribute universeAttribute = parentAsset.getAttribute("Universe").orElse(null);
-                if(lightAttribute != null && universeAttribute != null) {
-                    int lightId = lightAttribute.getValueAsInteger().orElse(-1);
-                    int universe = universeAttribute.getValueAsInteger().orElse(-1);
-                    if(lightId != -1 && universe != -1) {
-                        if(artnetLightMemory.stream().anyMatch(light -> light.getLightId() == lightId)) {
-                            artnetLightMemory.stream().filter(light -> light.getLightId() == lightId).findFirst().ifPresent(artnetLight -> artnetLightMemory.remove(artnetLight));
-                        }
-                    }
-                }
-            }
+        AttributeRef attributeRef = attribute.getReference().orElse(null);
+        if(attributeRef == null)
+            return;
+
+        synchronized (lights) {
+            ArtnetLight light = attributeLights.remove(attributeRef);
+            // Keep the light until none of its attributes are linked anymore
+            if(light != null && !attributeLights.containsValue(light))
+                removeLight(light);
         }
     }
 
@@ -260,80 +344,123 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
         }
     }
 
+    /**
+     * Writes the change into the DMX channel data of the light's universe and never returns a message; the frame
+     * sender of the protocol configuration sends at most one frame per universe per frame period, so bursts of
+     * changes are coalesced.
+     */
     @Override
     protected ArtnetPacket createWriteMessage(AssetAttribute protocolConfiguration, AssetAttribute attribute, AttributeEvent event, Value processedValue) {
         //Todo check for group later here
-        AttributeRef attributeRef = attribute.getReference().orElse(null);
-        if(attributeRef != null) {
-            AssetAttribute linkedAttribute = getLinkedAttribute(attributeRef);
-            if(linkedAttribute != null) {
-                String parentAssetId = linkedAttribute.getAssetId().orElse(null);
-                if(parentAssetId != null) {
-                    Asset parentAsset = assetService.findAsset(parentAssetId);
-                    Attribute universeAttribute = parentAsset.getAttribute("Universe").orElse(null);
-                    Attribute lightAttribute = parentAsset.getAttribute("Id").orElse(null);
-                    if(universeAttribute != null && lightAttribute != null) {
-                        int universeId = universeAttribute.getValueAsInteger().orElse(-1);
-                        int lightId = lightAttribute.getValueAsInteger().orElse(-1);
-                        if(universeId != -1 && lightId != -1) {
-                            ArtnetLight updatedLight = (ArtnetLight) artnetLightMemory.stream().filter(light -> light.getLightId() == lightId).findFirst().orElse(null);
-                            if(updatedLight != null) {
-                                ArtnetLightState oldLightState = (ArtnetLightState) updatedLight.getLightState();
-                                //UPDATE LIGHT VALUES (R,G,B FOR EXAMPLE)
-                                if(event.getAttributeRef().getAttributeName().equalsIgnoreCase("Values")) {
-                                    Map<String, Integer> valuesToUpdate = new LinkedHashMap<String, Integer>();
-                                    for(String requiredKey : updatedLight.getRequiredValues()) {
-                                        try {
-                                            JsonNode node = Container.JSON.readTree(processedValue.toJson());
-                                            JsonNode requiredKeyValue = node.get(requiredKey);
-                                            if(requiredKeyValue == null)
-                                                throw new NullPointerException("Could not find key: " + requiredKey.toString() + " in the json-file.");
-                                            valuesToUpdate.put(requiredKey, requiredKeyValue.asInt());
-                                        } catch (JsonProcessingException e) {
-                                            e.printStackTrace();
-                                        }
-                                    }
-                                    updateLightStateInMemory(lightId, new ArtnetLightState(lightId, valuesToUpdate, oldLightState.getDim(), oldLightState.isEnabled()));
-                                }
-                                //UPDATE DIM
-                                else if(event.getAttributeRef().getAttributeName().equalsIgnoreCase("Dim")) {
-                                    try {
-                                        JsonNode node = Container.JSON.readTree(processedValue.toJson());
-                                        int dimValue = node.asInt();
-                                        updateLightStateInMemory(lightId, new ArtnetLightState(lightId, oldLightState.getReceivedValues(), dimValue, oldLightState.isEnabled()));
-                                    } catch (JsonProcessingException e) {
-                                        e.printStackTrace();
-                                    }
-                                }
-                                //UPDATE ENABLED/DISABLED
-                                else if(event.getAttributeRef().getAttributeName().equalsIgnoreCase("Switch")) {
-                                    try{
-                                        JsonNode node = Container.JSON.readTree(processedValue.toJson());
-                                        boolean enabled = node.asBoolean();
-                                        updateLightStateInMemory(lightId, new ArtnetLightState(lightId, oldLightState.getReceivedValues(), oldLightState.getDim(), enabled));
-                                    } catch (JsonProcessingException e) {
-                                        e.printStackTrace();
-                                    }
-                                }
-                                //SEND ALL LIGHTS TO UPDATE TO THE ENCODER
-                                List<ArtnetLight> lightsToSend = new ArrayList<ArtnetLight>();
-                                for(ArtnetLight abstractLight : artnetLightMemory.stream().filter(light -> light.getUniverse() == universeId).collect(Collectors.toList()))
-                                    lightsToSend.add((ArtnetLight)abstractLight);
-                                updateLinkedAttribute(event.getAttributeState());
-                                return new ArtnetPacket(universeId, lightsToSend);
-                            }
+        ArtnetLight light;
+        ArtnetUniverse universe;
+        synchronized (lights) {
+            light = attributeLights.get(event.getAttributeRef());
+            universe = light != null ? lightUniverses.get(light.getLightId()) : null;
+        }
+        if(light == null || universe == null)
+            return null;
+
+        synchronized (universe) {
+            ArtnetLightState oldLightState = light.getLightState();
+            ArtnetLightState newLightState = null;
+            String attributeName = event.getAttributeRef().getAttributeName();
+            //UPDATE LIGHT VALUES (R,G,B FOR EXAMPLE)
+            if(attributeName.equalsIgnoreCase("Values")) {
+                ObjectValue values = Values.getObject(processedValue).orElse(null);
+                if(values != null) {
+                    Map<String, Integer> valuesToUpdate = new LinkedHashMap<>();
+                    for(String requiredKey : light.getRequiredValues()) {
+                        Integer value = values.getNumber(requiredKey).map(Double::intValue).orElse(null);
+                        if(value == null) {
+                            LOG.info("Could not find key '" + requiredKey + "' in value of attribute: " + event.getAttributeRef());
+                            value = oldLightState.getReceivedValues().getOrDefault(requiredKey, 0);
                         }
+                        valuesToUpdate.put(requiredKey, value);
                     }
+                    newLightState = new ArtnetLightState(light.getLightId(), valuesToUpdate, oldLightState.getDim(), oldLightState.isEnabled());
                 }
             }
+            //UPDATE DIM
+            else if(attributeName.equalsIgnoreCase("Dim")) {
+                newLightState = Values.getNumber(processedValue)
+                        .map(dim -> new ArtnetLightState(light.getLightId(), oldLightState.getReceivedValues(), dim.intValue(), oldLightState.isEnabled()))
+                        .orElse(null);
+            }
+            //UPDATE ENABLED/DISABLED
+            else if(attributeName.equalsIgnoreCase("Switch")) {
+                newLightState = Values.getBoolean(processedValue)
+                        .map(enabled -> new ArtnetLightState(light.getLightId(), oldLightState.getReceivedValues(), oldLightState.getDim(), enabled))
+                        .orElse(null);
+            }
+            if(newLightState != null) {
+                light.setLightState(newLightState);
+                universe.updateLight(light);
+            }
         }
+        updateLinkedAttribute(event.getAttributeState());
         return null;
     }
 
     public void updateLightStateInMemory(Integer lightId, ArtnetLightState updatedLightState)
     {
-        if(artnetLightMemory.stream().anyMatch(light -> light.getLightId() == lightId))
-            artnetLightMemory.stream().filter(light -> light.getLightId() == lightId).findFirst().ifPresent(artnetLight -> Objects.requireNonNull(artnetLightMemory.stream().filter(light -> light.getLightId() == lightId).findFirst().orElse(null)).setLightState(updatedLightState));
+        ArtnetLight light;
+        ArtnetUniverse universe;
+        synchronized (lights) {
+            light = lights.get(lightId);
+            universe = light != null ? lightUniverses.get(lightId) : null;
+        }
+        if(light == null)
+            return;
+
+        light.setLightState(updatedLightState);
+        if(universe != null)
+            universe.updateLight(light);
+    }
+
+    /**
+     * Must be called while holding the lock on {@link #lights}; replaces any light with the same id.
+     */
+    protected void addLight(AttributeRef protocolRef, ArtnetLight light) {
+        ArtnetLight existingLight = lights.put(light.getLightId(), light);
+        if(existingLight != null) {
+            removeFromUniverse(existingLight);
+            attributeLights.replaceAll((attributeRef, l) -> l == existingLight ? light : l);
+        }
+        ArtnetUniverse universe = universes
+            .computeIfAbsent(protocolRef, ref -> new HashMap<>())
+            .computeIfAbsent(light.getUniverse(), number -> new ArtnetUniverse(number, protocolRef));
+        universe.addLight(light);
+        lightUniverses.put(light.getLightId(), universe);
+    }
+
+    /**
+     * Must be called while holding the lock on {@link #lights}.
+     */
+    protected void removeLight(ArtnetLight light) {
+        lights.remove(light.getLightId(), light);
+        attributeLights.values().removeIf(l -> l == light);
+        removeFromUniverse(light);
+    }
+
+    protected void removeFromUniverse(ArtnetLight light) {
+        ArtnetUniverse universe = lightUniverses.remove(light.getLightId());
+        if(universe == null || !universe.removeLight(light.getLightId()))
+            return;
+
+        Map<Integer, ArtnetUniverse> universesByNumber = universes.get(universe.getProtocolRef());
+        if(universesByNumber != null) {
+            universesByNumber.remove(universe.getUniverse(), universe);
+            if(universesByNumber.isEmpty())
+                universes.remove(universe.getProtocolRef());
+        }
+    }
+
+    protected static ArtnetLightState createLightState(int lightId, String[] requiredKeys) {
+        ArtnetLightState state = new ArtnetLightState(lightId, new LinkedHashMap<String, Integer>(), 100, true);
+        for(String key : requiredKeys)
+            state.getReceivedValues().put(key, 0);
+        return state;
     }
 
     @Override
@@ -349,7 +476,7 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
             throw new IllegalStateException("The import-file format should be .json.");
         try{
             List<ArtnetLight> newLights = parseArtnetLightsFromImport(new ObjectMapper().readTree(jsonString));
-            syncLightsToMemory(newLights);
+            syncLightsToMemory(newLights, protocolConfiguration.getReferenceOrThrow());
             return syncLightsToAssets(newLights, protocolConfiguration);
         } catch (JsonProcessingException e) {
             throw new IllegalStateException("The provided json is invalid.");
@@ -373,38 +500,18 @@ public class ArtnetClientProtocol extends AbstractIoClientProtocol<ArtnetPacket,
         return parsedLights;
     }
 
-    private void syncLightsToMemory(List<ArtnetLight> lights)
+    private void syncLightsToMemory(List<ArtnetLight> importedLights, AttributeRef protocolRef)
     {
-        for(ArtnetLight light : new ArrayList<ArtnetLight>(artnetLightMemory)) {
-            ArtnetLightState state = new ArtnetLightState(light.getLightId(), new LinkedHashMap<String, Integer>(), 100, true);
-            for(String key : light.getRequiredValues())
-                state.getReceivedValues().put(key, 0);
-            light.setLightState(state);
-            //A light is found with the current id in the import file which is present in-memory
-            if(lights.stream().anyMatch(l -> l.getLightId() == light.getLightId())) {
-                //Replace the in-memory light with the attributes/values from the import file
-                ArtnetLight foundLight = (ArtnetLight) artnetLightMemory.stream().filter(l -> l.getLightId() == light.getLightId()).findFirst().orElse(null);
-                if(foundLight != null) {
-                    artnetLightMemory.set(artnetLightMemory.indexOf(foundLight), light);
-                }
-            }
-            //No light is found with the current id in the import file which is present in-memory
-            else if(lights.stream().noneMatch(l -> l.getLightId() == light.getLightId())) {
-                //Remove the light from in-memory
-                ArtnetLight foundLight = (ArtnetLight) artnetLightMemory.stream().filter(l -> l.getLightId() == light.getLightId()).findFirst().orElse(null);
-                if(foundLight != null) {
-                    artnetLightMemory.remove(foundLight);
-                }
-            }
-        }
-        for(ArtnetLight light : lights) {
-            ArtnetLightState state = new ArtnetLightState(light.getLightId(), new LinkedHashMap<String, Integer>(), 100, true);
-            for(String key : light.getRequiredValues())
-                state.getReceivedValues().put(key, 0);
-            light.setLightState(state);
-            //The import file contains a light id which is not present in-memory yet
-            if(artnetLightMemory.stream().noneMatch(l -> l.getLightId() == light.getLightId())) {
-                artnetLightMemory.add(light);
+        Set<Integer> importedLightIds = importedLights.stream().map(ArtnetLight::getLightId).collect(Collectors.toSet());
+        synchronized (lights) {
+            //Remove the in-memory lights which are not present in the import file
+            new ArrayList<>(lights.values()).stream()
+                    .filter(light -> !importedLightIds.contains(light.getLightId()))
+                    .forEach(this::removeLight);
+            //Add or replace the in-memory lights with the attributes/values from the import file
+            for(ArtnetLight light : importedLights) {
+                light.setLightState(createLightState(light.getLightId(), light.getRequiredValues()));
+                addLight(protocolRef, light);
             }
         }
     }
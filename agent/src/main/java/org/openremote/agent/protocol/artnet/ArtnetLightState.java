@@ -3,11 +3,11 @@ package org.openremote.agent.protocol.artnet;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.ArrayUtils;
 import org.openremote.model.attribute.*;
 import org.openremote.model.value.Value;
 import org.openremote.model.value.ValueType;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,11 +42,22 @@ public class ArtnetLightState {
     }
 
     public Byte[] getValues() {
-        int enable = this.enabled? 1 : 0;
-        return Arrays.asList(this.getReceivedValues().values().toArray(new Integer[this.getReceivedValues().size()]))
-            .stream()
-            .map(y -> (byte)(y * (this.dim/100.) * enable))
-            .toArray(size -> new Byte[size]);
+        return ArrayUtils.toObject(getChannelValues());
+    }
+
+    /**
+     * @return the DMX channel values of the received values scaled by the dim level, all zero when disabled.
+     */
+    public byte[] getChannelValues() {
+        byte[] values = new byte[receivedValues.size()];
+        if (!enabled) {
+            return values;
+        }
+        int i = 0;
+        for (Integer value : receivedValues.values()) {
+            values[i++] = (byte)(value * (dim/100.));
+        }
+        return values;
     }
 
     public void fromAttribute(AttributeEvent event, Attribute attr) {
@@ -17,6 +17,7 @@ public class ArtnetPacket {
 
     private int universe;
     private List<ArtnetLight> lights;
+    private byte[] data;
 
     public ArtnetPacket(int universe, List<ArtnetLight> lights) {
         this.universe = universe;
@@ -24,10 +25,25 @@ public class ArtnetPacket {
         this.lights = lights;
     }
 
+    /**
+     * Creates a packet with prebuilt DMX channel data, see {@link ArtnetUniverse}.
+     */
+    public ArtnetPacket(int universe, byte[] data) {
+        this.universe = universe;
+        this.data = data;
+    }
+
+    public int getUniverse() {
+        return universe;
+    }
+
     public void toByteBuf(ByteBuf buf) {
         writePrefix(buf, this.universe);
-        for(ArtnetLight light : lights)
-            writeLight(buf, light.getLightState().getValues(), light.getAmountOfLeds());
+        if(data != null)
+            buf.writeBytes(data);
+        else
+            for(ArtnetLight light : lights)
+                writeLight(buf, light.getLightState().getValues(), light.getAmountOfLeds());
         updateLength(buf);
     }
 
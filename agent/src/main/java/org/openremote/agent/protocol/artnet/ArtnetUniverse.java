@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.artnet;
+
+import org.openremote.model.attribute.AttributeRef;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The DMX channel data of a single Art-Net universe. The lights of the universe are laid out in ascending light id
+ * order with the channel values of each light repeated for each of its LEDs, the same layout as an
+ * {@link ArtnetPacket} built from a list of lights. Light changes are written into the buffer and mark the universe
+ * as dirty until the next frame is taken with {@link #takeFrame}.
+ */
+public class ArtnetUniverse {
+
+    protected final int universe;
+    protected final AttributeRef protocolRef;
+    protected final SortedMap<Integer, ArtnetLight> lights = new TreeMap<>();
+    protected final Map<Integer, Integer> lightOffsets = new HashMap<>();
+    protected final Map<Integer, Integer> lightChannelCounts = new HashMap<>();
+    protected byte[] data = new byte[0];
+    protected boolean dirty;
+
+    public ArtnetUniverse(int universe, AttributeRef protocolRef) {
+        this.universe = universe;
+        this.protocolRef = protocolRef;
+    }
+
+    public int getUniverse() {
+        return universe;
+    }
+
+    /**
+     * @return the protocol configuration the frames of this universe are sent through.
+     */
+    public AttributeRef getProtocolRef() {
+        return protocolRef;
+    }
+
+    public synchronized void addLight(ArtnetLight light) {
+        lights.put(light.getLightId(), light);
+        layout();
+    }
+
+    /**
+     * @return <code>true</code> if the universe has no more lights.
+     */
+    public synchronized boolean removeLight(int lightId) {
+        if (lights.remove(lightId) != null) {
+            layout();
+        }
+        return lights.isEmpty();
+    }
+
+    /**
+     * Writes the current state of the light into the channel data.
+     */
+    public synchronized void updateLight(ArtnetLight light) {
+        Integer offset = lightOffsets.get(light.getLightId());
+        if (offset == null || lights.get(light.getLightId()) != light) {
+            return;
+        }
+        if (getChannelCount(light) != lightChannelCounts.get(light.getLightId())) {
+            layout();
+            return;
+        }
+        writeLight(light, offset);
+        dirty = true;
+    }
+
+    /**
+     * @return a copy of the channel data if it changed since the last frame was taken, otherwise <code>null</code>.
+     */
+    public synchronized byte[] takeFrame() {
+        if (!dirty) {
+            return null;
+        }
+        dirty = false;
+        return data.clone();
+    }
+
+    protected void layout() {
+        lightOffsets.clear();
+        lightChannelCounts.clear();
+        int length = 0;
+        for (ArtnetLight light : lights.values()) {
+            int channelCount = getChannelCount(light);
+            lightOffsets.put(light.getLightId(), length);
+            lightChannelCounts.put(light.getLightId(), channelCount);
+            length += channelCount * light.getAmountOfLeds();
+        }
+        data = new byte[length];
+        lights.values().forEach(light -> writeLight(light, lightOffsets.get(light.getLightId())));
+        dirty = true;
+    }
+
+    protected void writeLight(ArtnetLight light, int offset) {
+        int channelCount = getChannelCount(light);
+        if (channelCount == 0) {
+            return;
+        }
+        byte[] values = light.getLightState().getChannelValues();
+        for (int led = 0; led < light.getAmountOfLeds(); led++) {
+            System.arraycopy(values, 0, data, offset + led * channelCount, channelCount);
+        }
+    }
+
+    protected static int getChannelCount(ArtnetLight light) {
+        return light.getLightState() != null ? light.getLightState().getReceivedValues().size() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "universe=" + universe +
+            ", protocolRef=" + protocolRef +
+            ", lights=" + lights.size() +
+            ", channels=" + data.length +
+            '}';
+    }
+}
@@ -3,6 +3,7 @@ package org.openremote.agent.protocol.controller;
 import org.openremote.model.attribute.AttributeRef;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static org.openremote.container.concurrent.GlobalLock.withLock;
@@ -26,8 +27,8 @@ public class Controller {
 
     private String deviceId;
 
-    private Map<AttributeRef, ControllerSensor> sensorsList = new HashMap<>();
-    private Map<AttributeRef, ControllerCommand> commandsList = new HashMap<>();
+    private Map<AttributeRef, ControllerSensor> sensorsList = new ConcurrentHashMap<>();
+    private Map<AttributeRef, ControllerCommand> commandsList = new ConcurrentHashMap<>();
 
     public Controller(AttributeRef attributeRef) {
         this.controllerConfigName = attributeRef.getAttributeName();
@@ -46,6 +47,10 @@ public class Controller {
         return this.commandsList.get(attributeRef);
     }
 
+    public ControllerSensor getSensor(AttributeRef attributeRef) {
+        return this.sensorsList.get(attributeRef);
+    }
+
     public Set<Map.Entry<AttributeRef, ControllerSensor>> getSensorsListForDevice(String deviceName) {
         return this.sensorsList.entrySet().stream().filter(entry -> entry.getValue().getDeviceName().equals(deviceName)).collect(Collectors.toSet());
     }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.controller;
+
+import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.syslog.SyslogCategory;
+
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
+
+/**
+ * The long-poll session of a single controller. The sensors of each device are multiplexed into one polling request
+ * which is re-issued when it returns (with new values or a timeout), but never more often than every
+ * {@link #MIN_POLL_INTERVAL_MILLIS}. Failed requests are retried with an exponential backoff and jitter. Each device
+ * has at most one scheduled or running poll; it is cancelled when the last sensor of the device is removed, when the
+ * session is stopped (controller disconnected) or closed.
+ */
+public class ControllerPollingSession {
+
+    public enum PollResult {
+        CHANGED,
+        TIMEOUT,
+        ERROR
+    }
+
+    /**
+     * Executes a (blocking) polling request for the sensors of a device.
+     */
+    public interface DevicePoller {
+        PollResult poll(String deviceName, List<String> sensorNames);
+    }
+
+    protected static class DevicePoll {
+        protected final String deviceName;
+        protected List<String> sensorNames;
+        protected ScheduledFuture<?> future;
+        protected long generation;
+        protected int failures;
+        protected long lastRequestMillis;
+
+        protected DevicePoll(String deviceName) {
+            this.deviceName = deviceName;
+        }
+    }
+
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, ControllerPollingSession.class);
+    public static final int MIN_POLL_INTERVAL_MILLIS = 500;
+    public static final int INITIAL_BACKOFF_MILLIS = 1000;
+    public static final int MAX_BACKOFF_MILLIS = 60000;
+    protected final AttributeRef controllerRef;
+    protected final ProtocolExecutorService executorService;
+    protected final DevicePoller poller;
+    protected final Map<String, DevicePoll> devicePolls = new HashMap<>();
+    protected boolean started;
+    protected boolean closed;
+
+    public ControllerPollingSession(AttributeRef controllerRef, ProtocolExecutorService executorService, DevicePoller poller) {
+        this.controllerRef = controllerRef;
+        this.executorService = executorService;
+        this.poller = poller;
+    }
+
+    public AttributeRef getControllerRef() {
+        return controllerRef;
+    }
+
+    /**
+     * Sets the sensors to poll for a device; an empty list stops polling the device. A running poll with a different
+     * set of sensors is cancelled and restarted.
+     */
+    public synchronized void setSensors(String deviceName, List<String> sensorNames) {
+        if (closed) {
+            return;
+        }
+
+        DevicePoll devicePoll = devicePolls.get(deviceName);
+
+        if (sensorNames.isEmpty()) {
+            if (devicePoll != null) {
+                LOG.fine("Stopping polling of device '" + deviceName + "' on: " + controllerRef);
+                cancel(devicePoll);
+                devicePolls.remove(deviceName);
+            }
+            return;
+        }
+
+        if (devicePoll == null) {
+            devicePoll = new DevicePoll(deviceName);
+            devicePolls.put(deviceName, devicePoll);
+        } else if (devicePoll.sensorNames.equals(sensorNames)) {
+            return;
+        }
+
+        devicePoll.sensorNames = new ArrayList<>(sensorNames);
+        cancel(devicePoll);
+
+        if (started) {
+            schedule(devicePoll, getPollDelay(devicePoll));
+        }
+    }
+
+    /**
+     * Starts polling all devices, i.e. when the controller is (re)connected.
+     */
+    public synchronized void start() {
+        if (closed || started) {
+            return;
+        }
+
+        started = true;
+        devicePolls.values().forEach(devicePoll -> {
+            devicePoll.failures = 0;
+            schedule(devicePoll, 0);
+        });
+    }
+
+    /**
+     * Stops polling all devices but keeps their sensors, i.e. when the controller is disconnected.
+     */
+    public synchronized void stop() {
+        started = false;
+        devicePolls.values().forEach(this::cancel);
+    }
+
+    public synchronized void close() {
+        stop();
+        closed = true;
+        devicePolls.clear();
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    public synchronized Set<String> getDeviceNames() {
+        return new HashSet<>(devicePolls.keySet());
+    }
+
+    /**
+     * @return the number of polls that are scheduled or running.
+     */
+    public synchronized int getPendingPollCount() {
+        return (int) devicePolls.values().stream().filter(devicePoll -> devicePoll.future != null && !devicePoll.future.isDone()).count();
+    }
+
+    protected void schedule(DevicePoll devicePoll, long delayMillis) {
+        long generation = ++devicePoll.generation;
+        devicePoll.future = executorService.schedule(() -> doPoll(devicePoll, generation), delayMillis);
+    }
+
+    protected void cancel(DevicePoll devicePoll) {
+        devicePoll.generation++;
+        if (devicePoll.future != null) {
+            devicePoll.future.cancel(true);
+            devicePoll.future = null;
+        }
+    }
+
+    protected void doPoll(DevicePoll devicePoll, long generation) {
+        List<String> sensorNames;
+
+        synchronized (this) {
+            if (!started || generation != devicePoll.generation) {
+                return;
+            }
+            sensorNames = devicePoll.sensorNames;
+            devicePoll.lastRequestMillis = System.currentTimeMillis();
+        }
+
+        PollResult result;
+        try {
+            result = poller.poll(devicePoll.deviceName, sensorNames);
+        } catch (Exception e) {
+            LOG.log(Level.INFO, "Polling of device '" + devicePoll.deviceName + "' failed on: " + controllerRef, e);
+            result = PollResult.ERROR;
+        }
+
+        synchronized (this) {
+            if (!started || generation != devicePoll.generation) {
+                // Cancelled or superseded whilst the request was running
+                return;
+            }
+
+            if (result == PollResult.ERROR) {
+                devicePoll.failures++;
+            } else {
+                devicePoll.failures = 0;
+            }
+            schedule(devicePoll, getPollDelay(devicePoll));
+        }
+    }
+
+    protected long getPollDelay(DevicePoll devicePoll) {
+        if (devicePoll.failures > 0) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, (long) INITIAL_BACKOFF_MILLIS << Math.min(devicePoll.failures - 1, 16));
+            // Equal jitter so that devices/controllers that failed together don't retry in lock step
+            return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        }
+        return Math.max(0, devicePoll.lastRequestMillis + MIN_POLL_INTERVAL_MILLIS - System.currentTimeMillis());
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "controllerRef=" + controllerRef +
+            ", devices=" + getDeviceNames() +
+            ", started=" + isStarted() +
+            '}';
+    }
+}
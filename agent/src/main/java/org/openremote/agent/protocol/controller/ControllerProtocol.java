@@ -45,6 +45,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -69,8 +70,11 @@ import static org.openremote.model.util.TextUtil.*;
  * <p>
  * The protocol manage two kinds of request :
  * <ul>
- * <li>A set of polling requests (one by controller/device name couple) {@link #pollingSensorList}. For each request we just wait for a response 200 (new status) or 403 (timeout after 60 seconds) and relaunch the
- * same request as soon as we have one of those two responses.</li>
+ * <li>A long-poll session per controller {@link #pollingSessions}, with one polling request per device name for all
+ * linked sensors of that device. For each request we just wait for a response 200 (new status) or 408 (timeout after
+ * 60 seconds) and relaunch the same request as soon as we have one of those two responses (but not more often than
+ * {@link ControllerPollingSession#MIN_POLL_INTERVAL_MILLIS}); errors are retried with a backoff, see
+ * {@link ControllerPollingSession}.</li>
  * <li>Executing commands provided by Write Attribute with necessary information. There is different kind of situations explained in
  * {@link org.openremote.agent.protocol.controller.ControllerCommand}</li>
  * </ul>
@@ -89,7 +93,6 @@ import static org.openremote.model.util.TextUtil.*;
  * <p>
  */
 @SuppressWarnings("JavaDoc")
-// TODO: Fix or remove this protocol - it does constant polling with no delay for each sensor - should be using long poll mechanism; also futures are not cancelled and NPEs appear etc...nasty
 public class ControllerProtocol extends AbstractProtocol {
 
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, ControllerProtocol.class);
@@ -153,6 +156,7 @@ public class ControllerProtocol extends AbstractProtocol {
     public static final String META_ATTRIBUTE_COMMANDS_MAP = PROTOCOL_NAME + ":commandsMap";
 
     public static final int HEARTBEAT_DELAY_SECONDS = 5;
+    public static final int INITIAL_STATUS_RETRY_DELAY_MILLIS = HEARTBEAT_DELAY_SECONDS * 1000;
 
     protected static final List<MetaItemDescriptorImpl> PROTOCOL_META_ITEM_DESCRIPTORS = Arrays
             .asList(new MetaItemDescriptorImpl(META_PROTOCOL_BASE_URI, ValueType.STRING, true,
@@ -181,11 +185,11 @@ public class ControllerProtocol extends AbstractProtocol {
     public static final String PROTOCOL_VERSION = "1.0";
 
     protected ResteasyClient client;
-    private Map<PollingKey, ScheduledFuture> pollingSensorList = new HashMap<>();
-    private Map<AttributeRef, Controller> controllersMap = new HashMap<>();
-    private Map<AttributeRef, ResteasyWebTarget> controllersTargetMap = new HashMap<>();
-    private Map<AttributeRef, ScheduledFuture> controllerHeartbeat = new HashMap<>();
-    private Map<AttributeRef, Boolean> initStatusDone = new HashMap<>();
+    private final Map<AttributeRef, ControllerPollingSession> pollingSessions = new ConcurrentHashMap<>();
+    private final Map<AttributeRef, Controller> controllersMap = new ConcurrentHashMap<>();
+    private final Map<AttributeRef, ResteasyWebTarget> controllersTargetMap = new ConcurrentHashMap<>();
+    private final Map<AttributeRef, ScheduledFuture> controllerHeartbeat = new ConcurrentHashMap<>();
+    private final Map<AttributeRef, ScheduledFuture> initialStatusTasks = new ConcurrentHashMap<>();
 
     @Override
     public void init(Container container) throws Exception {
@@ -224,6 +228,10 @@ public class ControllerProtocol extends AbstractProtocol {
 
             controllersMap.put(protocolConfiguration.getReferenceOrThrow(), new Controller(protocolConfiguration.getReferenceOrThrow()));
 
+            AttributeRef controllerRef = protocolConfiguration.getReferenceOrThrow();
+            pollingSessions.put(controllerRef, new ControllerPollingSession(controllerRef, executorService,
+                (deviceName, sensorNames) -> executePollingRequest(controllerRef, deviceName, sensorNames)));
+
             this.updateStatus(protocolConfiguration.getReferenceOrThrow(), ConnectionStatus.DISCONNECTED);
 
             controllerHeartbeat.put(protocolConfiguration.getReferenceOrThrow(), this.executorService.scheduleWithFixedDelay(() -> this.executeHeartbeat(protocolConfiguration.getReferenceOrThrow(),
@@ -237,15 +245,21 @@ public class ControllerProtocol extends AbstractProtocol {
 
     @Override
     protected void doUnlinkProtocolConfiguration(Asset agent, AssetAttribute protocolConfiguration) {
-        controllersMap.remove(protocolConfiguration.getReferenceOrThrow());
-        controllersTargetMap.remove(protocolConfiguration.getReferenceOrThrow());
-        controllerHeartbeat.remove(protocolConfiguration.getReferenceOrThrow());
+        AttributeRef controllerRef = protocolConfiguration.getReferenceOrThrow();
+        ControllerPollingSession pollingSession = pollingSessions.remove(controllerRef);
 
-        for (PollingKey key : this.pollingSensorList.keySet()) {
-            if (key.getControllerAgentRef().equals(protocolConfiguration.getReferenceOrThrow())) {
-                this.pollingSensorList.remove(key);
-            }
+        if (pollingSession != null) {
+            pollingSession.close();
+        }
+
+        ScheduledFuture heartbeat = controllerHeartbeat.remove(controllerRef);
+
+        if (heartbeat != null) {
+            heartbeat.cancel(true);
         }
+
+        controllersMap.remove(controllerRef);
+        controllersTargetMap.remove(controllerRef);
     }
 
     @Override
@@ -273,20 +287,11 @@ public class ControllerProtocol extends AbstractProtocol {
             LOG.fine("### Adding new sensor [" + deviceName + "," + sensorName + "] linked to " + protocolConfiguration.getReferenceOrThrow() + " (" + protocolConfiguration.getNameOrThrow() + ")");
             controllersMap.get(protocolConfiguration.getReferenceOrThrow()).addSensor(attribute.getReferenceOrThrow(), new ControllerSensor(deviceName, sensorName));
 
-            //Properly stop previously existing polling on device name --> use of false parameter
-            PollingKey pollingKey = new PollingKey(deviceName, protocolConfiguration.getReferenceOrThrow());
-
-            if (pollingSensorList.containsKey(pollingKey)) {
-                pollingSensorList.get(pollingKey).cancel(true);
-            }
-
-            this.initStatusDone.put(attribute.getReferenceOrThrow(), false);
-
             //Get initial status of sensor
-            this.collectInitialStatus(attribute.getReferenceOrThrow(), deviceName, sensorName, protocolConfiguration.getReferenceOrThrow());
+            this.collectInitialStatus(attribute.getReferenceOrThrow(), deviceName, sensorName, protocolConfiguration.getReferenceOrThrow(), 0);
 
-            //Put new polling on a new device name or update previous
-            this.schedulePollingTask(pollingKey);
+            //Restart the polling of the device with the new sensor
+            this.updatePolling(protocolConfiguration.getReferenceOrThrow(), deviceName);
         }
 
         /**
@@ -309,15 +314,33 @@ public class ControllerProtocol extends AbstractProtocol {
     }
 
     /**
-     * Clearing elements if an attribute is unlinked from Controller Agent
-     * We don't have to clear {@link #pollingSensorList} as a check is done before scheduling task {@link #schedulePollingTask}
+     * Clearing elements if an attribute is unlinked from Controller Agent; the polling of the sensor's device is updated
+     * and stopped if it was the last linked sensor of the device
      *
      * @param attribute
      * @param protocolConfiguration
      */
     @Override
     protected void doUnlinkAttribute(AssetAttribute attribute, AssetAttribute protocolConfiguration) {
-        controllersMap.get(protocolConfiguration.getReferenceOrThrow()).removeAttributeRef(attribute.getReferenceOrThrow());
+        AttributeRef attributeRef = attribute.getReferenceOrThrow();
+        ScheduledFuture initialStatusTask = initialStatusTasks.remove(attributeRef);
+
+        if (initialStatusTask != null) {
+            initialStatusTask.cancel(false);
+        }
+
+        Controller controller = controllersMap.get(protocolConfiguration.getReferenceOrThrow());
+
+        if (controller == null) {
+            return;
+        }
+
+        ControllerSensor sensor = controller.getSensor(attributeRef);
+        controller.removeAttributeRef(attributeRef);
+
+        if (sensor != null) {
+            updatePolling(protocolConfiguration.getReferenceOrThrow(), sensor.getDeviceName());
+        }
     }
 
     /**
@@ -363,17 +386,31 @@ public class ControllerProtocol extends AbstractProtocol {
         return commandsMap;
     }
 
-    private void collectInitialStatus(AttributeRef attributeRef, String deviceName, String sensorName, AttributeRef controllerRef) {
-        this.executorService
+    private void collectInitialStatus(AttributeRef attributeRef, String deviceName, String sensorName, AttributeRef controllerRef, int delayMillis) {
+        // The task checks it is still registered under the same lock, so it can't run before it has been registered
+        withLock(getProtocolName() + "::collectInitialStatus::" + attributeRef, () ->
+            this.initialStatusTasks.put(attributeRef, scheduleInitialStatus(attributeRef, deviceName, sensorName, controllerRef, delayMillis))
+        );
+    }
+
+    private ScheduledFuture scheduleInitialStatus(AttributeRef attributeRef, String deviceName, String sensorName, AttributeRef controllerRef, int delayMillis) {
+        return this.executorService
                 .schedule(() -> this.executeInitialStatus(attributeRef, deviceName, sensorName, controllerRef,response -> onInitialStatusResponse(attributeRef, deviceName, sensorName, controllerRef, response)),
-                        0);
+                        delayMillis);
     }
 
     private void executeInitialStatus(AttributeRef attributeRef, String deviceName, String sensorName, AttributeRef controllerRef, Consumer<Response> responseConsumer) {
         withLock(getProtocolName() + "::executeInitialStatus::" + attributeRef, () -> {
             LOG.info("### Initial status check for " + attributeRef.getAttributeName() + " [" + deviceName + "," + sensorName + "] ...");
 
-            HttpClientProtocol.HttpClientRequest checkRequest = RequestBuilder.buildStatusRequest(deviceName, Arrays.asList(sensorName), this.controllersTargetMap.get(controllerRef));
+            ResteasyWebTarget webTarget = this.controllersTargetMap.get(controllerRef);
+
+            if (webTarget == null || !this.initialStatusTasks.containsKey(attributeRef)) {
+                // Unlinked in the meantime
+                return;
+            }
+
+            HttpClientProtocol.HttpClientRequest checkRequest = RequestBuilder.buildStatusRequest(deviceName, Arrays.asList(sensorName), webTarget);
 
             Response response = null;
 
@@ -382,6 +419,7 @@ public class ControllerProtocol extends AbstractProtocol {
                 responseConsumer.accept(response);
             } catch (ProcessingException e) {
                 LOG.log(Level.SEVERE, "### Initial status for " + attributeRef.getAttributeName() + " [" + deviceName + "," + sensorName + "] doesn't succeed", e);
+                responseConsumer.accept(null);
             } finally {
                 if (response != null) {
                     response.close();
@@ -392,6 +430,8 @@ public class ControllerProtocol extends AbstractProtocol {
     }
 
     private void onInitialStatusResponse(AttributeRef attributeRef, String deviceName, String sensorName, AttributeRef controllerRef, Response response) {
+        boolean done = false;
+
         if(response != null) {
             if (response.getStatusInfo().equals(Response.Status.OK)) {
                 String responseBodyAsString = response.readEntity(String.class);
@@ -410,9 +450,8 @@ public class ControllerProtocol extends AbstractProtocol {
                         String value = status.getString("value").orElse(null);
 
                         this.updateAttributeValue(attributeRef, value);
-
-                        this.initStatusDone.put(attributeRef, true);
                     });
+                    done = true;
                 }
             } else {
                 LOG.severe("### Status code for initial status received error : " + response.getStatus() + " --> " + response.getStatusInfo().getReasonPhrase());
@@ -421,113 +460,121 @@ public class ControllerProtocol extends AbstractProtocol {
             LOG.warning("### Initial status check return a null value for " + attributeRef.getAttributeName() + " [" + deviceName + "," + sensorName + "]");
         }
 
-        if(!this.initStatusDone.get(attributeRef)) {
-            collectInitialStatus(attributeRef, deviceName, sensorName, controllerRef);
+        if (done) {
+            this.initialStatusTasks.remove(attributeRef);
+        } else {
+            // Retry later (if still linked) rather than hammering the controller
+            this.initialStatusTasks.computeIfPresent(attributeRef, (ref, task) ->
+                    scheduleInitialStatus(attributeRef, deviceName, sensorName, controllerRef, INITIAL_STATUS_RETRY_DELAY_MILLIS));
         }
     }
 
     /**
-     * Compute the polling request for a given deviceName and controller. Method check all registered sensor's (linked to the Protocol) and collect all sensor's name
-     * to put them into polling request
+     * Update the sensors polled for a given deviceName and controller. Method check all registered sensor's (linked to
+     * the Protocol) and collect all sensor's name to put them into polling request; polling of the device stops when
+     * there are no sensors left.
      *
-     * @param pollingKey Device name and controller agent reference on which we're polling
-     * @return {@link ScheduledFuture} task to keep a track on
+     * @param controllerRef controller agent reference on which we're polling
+     * @param deviceName    device name on which we're polling
      */
-    private ScheduledFuture computePollingTask(PollingKey pollingKey) {
-        return withLockReturning(getProtocolName() + "::computePollingTask::" + pollingKey.getControllerAgentRef() + "::" + pollingKey.getDeviceName(), () -> {
-            List<String> sensorNameList = this.controllersMap.get(pollingKey.getControllerAgentRef()).collectSensorNameLinkedToDeviceName(pollingKey.getDeviceName());
+    private void updatePolling(AttributeRef controllerRef, String deviceName) {
+        Controller controller = this.controllersMap.get(controllerRef);
+        ControllerPollingSession pollingSession = this.pollingSessions.get(controllerRef);
 
-            if (sensorNameList.isEmpty()) {
-                return null;
-            }
+        if (controller == null || pollingSession == null) {
+            return;
+        }
 
-            return executorService.schedule(() -> executePollingRequest(pollingKey, sensorNameList,
-                    response -> onPollingResponse(pollingKey, sensorNameList, response)), 0);
-        });
+        pollingSession.setSensors(deviceName, controller.collectSensorNameLinkedToDeviceName(deviceName));
     }
 
     /**
      * Polling Request execution if a Connection issue (exception) occurs, we check the nature {@link #checkIfConnectionRefused(Exception, AttributeRef)}
      *
-     * @param pollingKey       device name and controller agent ref on which we'll polling
-     * @param sensorList       list of sensors to catch status
-     * @param responseConsumer Consumer for onResponse treatment
+     * Polling request should return three different responses :
+     * <ul>
+     * <li>OK (200) : new values are available for at least one of the sensor provided in queryParam</li>
+     * <li>TIMEOUT (408) : during the last 60 seconds following the start of the request, none of the sensors have new values</li>
+     * <li>Others : error</li>
+     * </ul>
+     * <p>
+     * Only the 200 response induce an update of every linked attribute having a sensor status updated; the
+     * {@link ControllerPollingSession} decides when to poll again.
+     *
+     * @param controllerRef controller agent ref on which we'll polling
+     * @param deviceName    device name on which we'll polling
+     * @param sensorList    list of sensors to catch status
      */
-    private void executePollingRequest(PollingKey pollingKey, List<String> sensorList, Consumer<Response> responseConsumer) {
-        LOG.info("### Polling Request for device [device=" + pollingKey.getDeviceName() + ", sensors=" + this.formatSensors(sensorList) + "]");
+    private ControllerPollingSession.PollResult executePollingRequest(AttributeRef controllerRef, String deviceName, List<String> sensorList) {
+        LOG.fine("### Polling Request for device [device=" + deviceName + ", sensors=" + this.formatSensors(sensorList) + "]");
+
+        Controller controller = this.controllersMap.get(controllerRef);
+        ResteasyWebTarget webTarget = this.controllersTargetMap.get(controllerRef);
+
+        if (controller == null || webTarget == null) {
+            return ControllerPollingSession.PollResult.ERROR;
+        }
 
         HttpClientProtocol.HttpClientRequest httpClientRequest = RequestBuilder
-                .buildStatusPollingRequest(pollingKey.getDeviceName(), sensorList, this.controllersMap.get(pollingKey.getControllerAgentRef()).getDeviceId(), this.controllersTargetMap.get(pollingKey.getControllerAgentRef()));
+                .buildStatusPollingRequest(deviceName, sensorList, controller.getDeviceId(), webTarget);
 
         Response response = null;
 
         try {
             response = httpClientRequest.invoke(null);
 
-            this.updateConnectionStatus(pollingKey.getControllerAgentRef(), ConnectionStatus.CONNECTED);
+            this.updateConnectionStatus(controllerRef, ConnectionStatus.CONNECTED);
+
+            return onPollingResponse(controller, deviceName, sensorList, response);
         } catch (Exception e) {
             LOG.log(Level.SEVERE,
-                    "### Exception thrown whilst doing polling request [device=" + pollingKey.getDeviceName() + ", sensors=" + this.formatSensors(sensorList) + "]",
+                    "### Exception thrown whilst doing polling request [device=" + deviceName + ", sensors=" + this.formatSensors(sensorList) + "]",
                     e);
 
-            this.checkIfConnectionRefused(e, pollingKey.getControllerAgentRef());
+            this.checkIfConnectionRefused(e, controllerRef);
+            return ControllerPollingSession.PollResult.ERROR;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
         }
-
-        responseConsumer.accept(response);
     }
 
-    /**
-     * Polling request should return three different responses :
-     * <ul>
-     * <li>OK (200) : new values are available for at least one of the sensor provided in queryParam</li>
-     * <li>TIMEOUT (408) : during the last 60 seconds following the start of the request, none of the sensors have new values</li>
-     * <li>Others : error</li>
-     * </ul>
-     * <p>
-     * In every case, we should start a new polling request directly. Only the 200 response induce an update of every linked attribute having a sensor
-     * status updated.
-     *
-     * @param pollingKey     device name and controller agent ref on which polling has been execute
-     * @param sensorNameList sensors requested
-     * @param response       Response received from request
-     */
-    private void onPollingResponse(PollingKey pollingKey, List<String> sensorNameList, Response response) {
-        if(response != null) {
-            if (response.getStatusInfo() == Response.Status.OK) {
-                String responseBodyAsString = response.readEntity(String.class);
-
-                LOG.info("### New sensors status received");
-                LOG.finer("### Polling request body response : " + responseBodyAsString);
+    private ControllerPollingSession.PollResult onPollingResponse(Controller controller, String deviceName, List<String> sensorNameList, Response response) {
+        if (response.getStatusInfo().getStatusCode() == Response.Status.OK.getStatusCode()) {
+            String responseBodyAsString = response.readEntity(String.class);
 
-                Optional<ArrayValue> arrayValue = Values.parse(responseBodyAsString).flatMap(Values::getArray);
-                Optional<List<ObjectValue>> statuses = Values.getArrayElements(arrayValue.orElse(null), ObjectValue.class, false, false);
+            LOG.fine("### New sensors status received");
+            LOG.finer("### Polling request body response : " + responseBodyAsString);
 
-                if (!statuses.isPresent()) {
-                    LOG.warning("### Polling response is not a JSON array or empty: " + responseBodyAsString);
-                } else {
-                    statuses.get().forEach(status -> {
-                        String name = status.getString("name").orElse(null);
-                        String value = status.getString("value").orElse(null);
+            Optional<ArrayValue> arrayValue = Values.parse(responseBodyAsString).flatMap(Values::getArray);
+            Optional<List<ObjectValue>> statuses = Values.getArrayElements(arrayValue.orElse(null), ObjectValue.class, false, false);
 
-                        /**
-                         * For every sensors in the request body, find the linked attributeref and update value by calling {@link updateAttributeValue}
-                         */
-                        this.controllersMap.get(pollingKey.getControllerAgentRef()).getSensorsListForDevice(pollingKey.getDeviceName()).stream()
-                                .filter(entry -> entry.getValue().getSensorName().equals(name))
-                                .forEach(e -> this.updateAttributeValue(e.getKey(), value));
-                    });
-                }
-            } else if (response.getStatusInfo() == Response.Status.REQUEST_TIMEOUT) {
-                LOG.info("### Timeout from polling no changes on Controller side given sensors [device=" + pollingKey.getDeviceName() + ", sensors=" + this.formatSensors(sensorNameList) + "]");
+            if (!statuses.isPresent()) {
+                LOG.warning("### Polling response is not a JSON array or empty: " + responseBodyAsString);
             } else {
-                LOG.severe("### Status code received error : " + response.getStatus() + " --> " + response.getStatusInfo().getReasonPhrase());
+                statuses.get().forEach(status -> {
+                    String name = status.getString("name").orElse(null);
+                    String value = status.getString("value").orElse(null);
+
+                    /**
+                     * For every sensors in the request body, find the linked attributeref and update value by calling {@link updateAttributeValue}
+                     */
+                    controller.getSensorsListForDevice(deviceName).stream()
+                            .filter(entry -> entry.getValue().getSensorName().equals(name))
+                            .forEach(e -> this.updateAttributeValue(e.getKey(), value));
+                });
             }
-        } else {
-            LOG.severe("### Received null response from polling (due to previous exception)");
+            return ControllerPollingSession.PollResult.CHANGED;
+        }
+
+        if (response.getStatusInfo().getStatusCode() == Response.Status.REQUEST_TIMEOUT.getStatusCode()) {
+            LOG.fine("### Timeout from polling no changes on Controller side given sensors [device=" + deviceName + ", sensors=" + this.formatSensors(sensorNameList) + "]");
+            return ControllerPollingSession.PollResult.TIMEOUT;
         }
 
-        //No matter status code, we're continuing to poll
-        this.schedulePollingTask(pollingKey);
+        LOG.severe("### Status code received error : " + response.getStatus() + " --> " + response.getStatusInfo().getReasonPhrase());
+        return ControllerPollingSession.PollResult.ERROR;
     }
 
     /**
@@ -538,7 +585,14 @@ public class ControllerProtocol extends AbstractProtocol {
      */
     private void updateAttributeValue(AttributeRef attributeRef, String value) {
         LOG.fine("### Updating attribute " + attributeRef + " with value " + value);
-        AttributeValueDescriptor attributeType = this.linkedAttributes.get(attributeRef).getTypeOrThrow();
+        AssetAttribute attribute = withLockReturning(getProtocolName() + "::updateAttributeValue", () -> this.linkedAttributes.get(attributeRef));
+
+        if (attribute == null) {
+            LOG.fine("### Attribute is no longer linked: " + attributeRef);
+            return;
+        }
+
+        AttributeValueDescriptor attributeType = attribute.getTypeOrThrow();
 
         ValueType valueType = attributeType.getValueType();
         try {
@@ -602,16 +656,15 @@ public class ControllerProtocol extends AbstractProtocol {
             HttpHostConnectException e2 = (HttpHostConnectException) e.getCause();
 
             if (e2.getCause() instanceof ConnectException || e2.getCause() instanceof UnknownHostException) {
-                ConnectException e3 = (ConnectException) e2.getCause();
+                Exception e3 = (Exception) e2.getCause();
                 LOG.log(Level.SEVERE, "### Connection refused : " + e3.getMessage());
                 this.updateConnectionStatus(protocolRef, ConnectionStatus.DISCONNECTED);
 
                 //Starting a heartbeat Task until connection is OK
-                if (!this.controllerHeartbeat.containsKey(protocolRef) || this.controllerHeartbeat.get(protocolRef).isCancelled()) {
-                    this.controllerHeartbeat.put(protocolRef, this.executorService
-                            .scheduleWithFixedDelay(() -> this.executeHeartbeat(protocolRef, response -> onHeartbeatResponse(protocolRef, response)),
-                                    0, HEARTBEAT_DELAY_SECONDS, TimeUnit.SECONDS));
-                }
+                this.controllerHeartbeat.computeIfPresent(protocolRef, (ref, heartbeat) -> heartbeat.isDone()
+                        ? this.executorService.scheduleWithFixedDelay(() -> this.executeHeartbeat(protocolRef, response -> onHeartbeatResponse(protocolRef, response)),
+                                0, HEARTBEAT_DELAY_SECONDS, TimeUnit.SECONDS)
+                        : heartbeat);
             }
         }
     }
@@ -624,26 +677,22 @@ public class ControllerProtocol extends AbstractProtocol {
      * @param status
      */
     private void updateConnectionStatus(AttributeRef protocolRef, ConnectionStatus status) {
-        ConnectionStatus previousStatus = this.getStatus(this.getLinkedProtocolConfiguration(protocolRef));
+        ControllerPollingSession pollingSession = this.pollingSessions.get(protocolRef);
+
+        if (pollingSession == null) {
+            // Protocol configuration has been unlinked
+            return;
+        }
 
         this.updateStatus(protocolRef, status);
 
-        if (status.equals(ConnectionStatus.CONNECTED) && (previousStatus == null || previousStatus.equals(ConnectionStatus.DISCONNECTED))) {
-            //Relaunch polling
-            if (this.pollingSensorList.isEmpty()) {
-                LOG.info("### no polling to restart for " + protocolRef.getAttributeName() + "...");
-            }
-            for (PollingKey key : this.pollingSensorList.keySet()) {
-                if (key.getControllerAgentRef().equals(protocolRef)) {
-                    this.schedulePollingTask(key);
-                }
-            }
+        if (status.equals(ConnectionStatus.CONNECTED)) {
+            //Relaunch polling if it was stopped
+            pollingSession.start();
         }
 
         if (status.equals(ConnectionStatus.DISCONNECTED)) {
-            for (ScheduledFuture task : this.pollingSensorList.values()) {
-                task.cancel(true);
-            }
+            pollingSession.stop();
         }
     }
 
@@ -657,7 +706,13 @@ public class ControllerProtocol extends AbstractProtocol {
         withLock(getProtocolName() + "::executeHeartbeat", () -> {
             LOG.info("### Heartbeat check on " + protocolRef.getAttributeName() + "...");
 
-            HttpClientProtocol.HttpClientRequest checkRequest = RequestBuilder.buildCheckRequest(this.controllersTargetMap.get(protocolRef));
+            ResteasyWebTarget webTarget = this.controllersTargetMap.get(protocolRef);
+
+            if (webTarget == null) {
+                return;
+            }
+
+            HttpClientProtocol.HttpClientRequest checkRequest = RequestBuilder.buildCheckRequest(webTarget);
 
             Response response = null;
 
@@ -665,7 +720,7 @@ public class ControllerProtocol extends AbstractProtocol {
                 response = checkRequest.invoke(null);
                 responseConsumer.accept(response);
             } catch (ProcessingException e) {
-                LOG.log(Level.SEVERE, "### Check for " + this.controllersMap.get(protocolRef).getControllerConfigName() + " doesn't succeed", e);
+                LOG.log(Level.SEVERE, "### Check for " + protocolRef.getAttributeName() + " doesn't succeed", e);
             } finally {
                 if (response != null) {
                     response.close();
@@ -681,7 +736,10 @@ public class ControllerProtocol extends AbstractProtocol {
             this.updateConnectionStatus(protocolRef, ConnectionStatus.CONNECTED);
             //cancel has to be the last step
             LOG.info("### Stop Heartbeat task for " + protocolRef.getAttributeName());
-            this.controllerHeartbeat.get(protocolRef).cancel(true);
+            ScheduledFuture heartbeat = this.controllerHeartbeat.get(protocolRef);
+            if (heartbeat != null) {
+                heartbeat.cancel(false);
+            }
         } else {
             if (response != null) {
                 LOG.severe("### Heartbeat check response is " + response.getStatus());
@@ -690,21 +748,6 @@ public class ControllerProtocol extends AbstractProtocol {
         }
     }
 
-    /**
-     * Scheduling of a polling request
-     * <p>
-     * We check if there is sensor to poll for the given device name.
-     *
-     * @param key
-     */
-    private void schedulePollingTask(PollingKey key) {
-        ScheduledFuture scheduledFuture = computePollingTask(key);
-
-        if (scheduledFuture != null) {
-            pollingSensorList.put(key, scheduledFuture);
-        }
-    }
-
     @Override
     public String getProtocolName() {
         return PROTOCOL_NAME;
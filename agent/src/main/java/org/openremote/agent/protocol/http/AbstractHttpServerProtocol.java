@@ -21,17 +21,22 @@ package org.openremote.agent.protocol.http;
 
 import com.google.common.collect.Lists;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.RequestLimit;
+import io.undertow.server.handlers.RequestLimitingHandler;
 import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.DeploymentInfo;
 import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.ServletInfo;
+import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
+import io.undertow.util.StatusCodes;
 import org.jboss.resteasy.plugins.interceptors.CorsFilter;
 import org.jboss.resteasy.plugins.interceptors.RoleBasedSecurityFeature;
 import org.jboss.resteasy.plugins.server.servlet.HttpServlet30Dispatcher;
 import org.jboss.resteasy.spi.ResteasyDeployment;
 import org.openremote.agent.protocol.AbstractProtocol;
 import org.openremote.container.Container;
+import org.openremote.container.concurrent.ContainerExecutor;
 import org.openremote.container.json.JacksonConfig;
 import org.openremote.container.json.ModelValueMessageBodyConverter;
 import org.openremote.container.security.IdentityService;
@@ -53,6 +58,9 @@ import javax.servlet.ServletException;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.core.Application;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -72,21 +80,104 @@ import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
  * <li>{@link #META_PROTOCOL_DEPLOYMENT_PATH} <b>(required)</b></li>
  * <li>{@link #META_PROTOCOL_ALLOWED_ORIGINS}</li>
  * <li>{@link #META_PROTOCOL_ALLOWED_METHODS}</li>
+ * <li>{@link #META_PROTOCOL_MAX_CONCURRENT_REQUESTS}</li>
+ * <li>{@link #META_PROTOCOL_MAX_QUEUED_REQUESTS}</li>
  * </ul>
  * The path used for the deployment is determined by {@link #getDeploymentPath}. The realm that the {@link ProtocolConfiguration}s
  * {@link org.openremote.model.asset.Asset} belongs to will be used implicitly for all incoming requests to any deployments
  * that this protocol creates and therefore only users of that realm will be able to make calls to the deployment when
  * {@value META_PROTOCOL_ROLE_BASED_SECURITY_ENABLED} is true.
+ * <p>
+ * Each deployment is executed by its own bounded thread pool rather than the worker threads of the {@link WebService}
+ * so a slow or flooded deployment can't hold up the manager API or other deployments; requests beyond the concurrency
+ * limit are queued and requests beyond the queue limit are answered with <code>503 Service Unavailable</code> and a
+ * <code>Retry-After</code> header. The request metrics of a deployment are available through
+ * {@link #getDeploymentMetrics}.
  */
 public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
 
     public static class DeploymentInstance {
         protected DeploymentInfo deploymentInfo;
         protected WebService.RequestHandler requestHandler;
+        protected ExecutorService executor;
+        protected DeploymentMetrics metrics;
 
         public DeploymentInstance(DeploymentInfo deploymentInfo, WebService.RequestHandler requestHandler) {
+            this(deploymentInfo, requestHandler, null, new DeploymentMetrics());
+        }
+
+        public DeploymentInstance(DeploymentInfo deploymentInfo, WebService.RequestHandler requestHandler, ExecutorService executor, DeploymentMetrics metrics) {
             this.deploymentInfo = deploymentInfo;
             this.requestHandler = requestHandler;
+            this.executor = executor;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Request counters of a deployment; the duration of a request includes the time it was queued.
+     */
+    public static class DeploymentMetrics {
+        protected final LongAdder requests = new LongAdder();
+        protected final LongAdder rejected = new LongAdder();
+        protected final LongAdder completed = new LongAdder();
+        protected final LongAdder totalDurationMillis = new LongAdder();
+        protected final LongAccumulator maxDurationMillis = new LongAccumulator(Math::max, 0);
+
+        protected void onRequest() {
+            requests.increment();
+        }
+
+        protected void onRejected() {
+            rejected.increment();
+        }
+
+        protected void onCompleted(long durationMillis) {
+            completed.increment();
+            totalDurationMillis.add(durationMillis);
+            maxDurationMillis.accumulate(durationMillis);
+        }
+
+        /**
+         * @return the number of requests received, including rejected requests.
+         */
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        /**
+         * @return the number of requests that are queued or executing.
+         */
+        public long getActive() {
+            return Math.max(0, getRequests() - getCompleted());
+        }
+
+        public long getAverageDurationMillis() {
+            long completed = getCompleted();
+            return completed > 0 ? totalDurationMillis.sum() / completed : 0;
+        }
+
+        public long getMaxDurationMillis() {
+            return maxDurationMillis.get();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "requests=" + getRequests() +
+                ", rejected=" + getRejected() +
+                ", active=" + getActive() +
+                ", averageDurationMillis=" + getAverageDurationMillis() +
+                ", maxDurationMillis=" + getMaxDurationMillis() +
+                '}';
         }
     }
 
@@ -119,12 +210,25 @@ public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
      * {@link Container} is started with an {@link IdentityService}.
      */
     public static final String META_PROTOCOL_ROLE_BASED_SECURITY_ENABLED = PROTOCOL_NAME + ":roleBasedSecurity";
+    /**
+     * Sets the maximum number of requests the deployment executes concurrently, this is also the size of its thread
+     * pool (default: {@value #DEFAULT_MAX_CONCURRENT_REQUESTS}).
+     */
+    public static final String META_PROTOCOL_MAX_CONCURRENT_REQUESTS = PROTOCOL_NAME + ":maxConcurrentRequests";
+    /**
+     * Sets the maximum number of requests that wait for execution when the concurrency limit is reached, further
+     * requests are rejected (default: {@value #DEFAULT_MAX_QUEUED_REQUESTS}).
+     */
+    public static final String META_PROTOCOL_MAX_QUEUED_REQUESTS = PROTOCOL_NAME + ":maxQueuedRequests";
     /**
      * The regex used to validate the deployment path.
      */
     public static final Pattern PATH_REGEX = Pattern.compile("^[\\w/_]+$", Pattern.CASE_INSENSITIVE);
     public static final String DEFAULT_ALLOWED_METHODS = "OPTIONS, GET, POST, DELETE, PUT, PATCH";
     public static final String DEFAULT_DEPLOYMENT_NAME_FORMAT = "HttpServer %1$s Deployment %2$d";
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 10;
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 100;
+    public static final int REJECTED_RETRY_AFTER_SECONDS = 1;
     protected static final Map<AttributeRef, DeploymentInstance> deployments = new HashMap<>();
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, AbstractHttpServerProtocol.class);
     protected static WebServiceExceptions.DefaultResteasyExceptionMapper defaultResteasyExceptionMapper;
@@ -173,6 +277,15 @@ public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
         deploy(deploymentInfo, protocolConfiguration);
     }
 
+    /**
+     * @return the request metrics of the deployment of the protocol configuration or <code>null</code> if it isn't
+     * deployed.
+     */
+    public DeploymentMetrics getDeploymentMetrics(AttributeRef protocolRef) {
+        DeploymentInstance instance = deployments.get(protocolRef);
+        return instance != null ? instance.metrics : null;
+    }
+
     @Override
     protected void doUnlinkProtocolConfiguration(Asset agent, AssetAttribute protocolConfiguration) {
         undeploy(protocolConfiguration);
@@ -338,11 +451,19 @@ public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
         return String.format(DEFAULT_DEPLOYMENT_NAME_FORMAT, getProtocolDisplayName(), deploymentCounter);
     }
 
+    protected int getMetaItemPositiveInteger(AssetAttribute protocolConfiguration, String name, int defaultValue) {
+        int value = protocolConfiguration.getMetaItem(name)
+            .flatMap(AbstractValueHolder::getValueAsInteger)
+            .orElse(defaultValue);
+
+        if (value < 1) {
+            throw new IllegalArgumentException("Meta item must be a positive integer: " + name);
+        }
+        return value;
+    }
+
     protected void deploy(DeploymentInfo deploymentInfo, AssetAttribute protocolConfiguration) {
         LOG.info("Deploying JAX-RS deployment for: " + protocolConfiguration.getReferenceOrThrow());
-        DeploymentManager manager = Servlets.defaultContainer().addDeployment(deploymentInfo);
-        manager.deploy();
-        HttpHandler httpHandler;
 
         // Get realm from owning agent asset
         Asset agent = assetService.getAgent(protocolConfiguration);
@@ -352,16 +473,55 @@ public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
             throw new IllegalStateException("Cannot determine the realm that this protocol configuration belongs to");
         }
 
+        int maxConcurrentRequests = getMetaItemPositiveInteger(protocolConfiguration, META_PROTOCOL_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS);
+        int maxQueuedRequests = getMetaItemPositiveInteger(protocolConfiguration, META_PROTOCOL_MAX_QUEUED_REQUESTS, DEFAULT_MAX_QUEUED_REQUESTS);
+
+        // The request limit ensures no more requests than threads are dispatched to the executor
+        ContainerExecutor executor = new ContainerExecutor(
+            deploymentInfo.getDeploymentName(),
+            maxConcurrentRequests,
+            maxConcurrentRequests,
+            60L,
+            maxConcurrentRequests + maxQueuedRequests
+        );
+        executor.allowCoreThreadTimeOut(true);
+        deploymentInfo.setExecutor(executor);
+        DeploymentMetrics metrics = new DeploymentMetrics();
+
+        DeploymentManager manager = Servlets.defaultContainer().addDeployment(deploymentInfo);
+        manager.deploy();
+        HttpHandler httpHandler;
+
         try {
             httpHandler = manager.start();
 
             // Wrap the handler to inject the realm
-            HttpHandler handlerWrapper = exchange -> {
+            HttpHandler realmHandler = exchange -> {
                 exchange.getRequestHeaders().put(HttpString.tryFromString(REQUEST_HEADER_REALM), agentRealm);
                 httpHandler.handleRequest(exchange);
             };
+
+            RequestLimit requestLimit = new RequestLimit(maxConcurrentRequests, maxQueuedRequests);
+            requestLimit.setFailureHandler(exchange -> {
+                metrics.onRejected();
+                exchange.getResponseHeaders().put(Headers.RETRY_AFTER, REJECTED_RETRY_AFTER_SECONDS);
+                exchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+                exchange.endExchange();
+            });
+            HttpHandler limitingHandler = new RequestLimitingHandler(requestLimit, realmHandler);
+
+            HttpHandler handlerWrapper = exchange -> {
+                long start = System.currentTimeMillis();
+                metrics.onRequest();
+                exchange.addExchangeCompleteListener((completedExchange, nextListener) -> {
+                    metrics.onCompleted(System.currentTimeMillis() - start);
+                    nextListener.proceed();
+                });
+                limitingHandler.handleRequest(exchange);
+            };
+
             WebService.RequestHandler requestHandler = pathStartsWithHandler(deploymentInfo.getDeploymentName(), deploymentInfo.getContextPath(), handlerWrapper);
-            DeploymentInstance deploymentInstance = new DeploymentInstance(deploymentInfo, requestHandler);
+            DeploymentInstance deploymentInstance = new DeploymentInstance(deploymentInfo, requestHandler, executor, metrics);
             deployments.put(protocolConfiguration.getReferenceOrThrow(), deploymentInstance);
 
             LOG.info("Registering HTTP Server Protocol request handler '"
@@ -372,6 +532,7 @@ public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
             webService.getRequestHandlers().add(0, requestHandler);
         } catch (ServletException e) {
             LOG.severe("Failed to deploy deployment: " + deploymentInfo.getDeploymentName());
+            executor.shutdownNow();
         }
     }
 
@@ -394,6 +555,10 @@ public abstract class AbstractHttpServerProtocol extends AbstractProtocol {
             manager.undeploy();
             Servlets.defaultContainer().removeDeployment(instance.deploymentInfo);
             deployments.remove(protocolConfiguration.getReferenceOrThrow());
+            if (instance.executor != null) {
+                instance.executor.shutdownNow();
+            }
+            LOG.info("Request metrics of un-deployed deployment '" + instance.deploymentInfo.getDeploymentName() + "': " + instance.metrics);
         } catch (Exception ex) {
             LOG.log(Level.WARNING,
                     "An exception occurred whilst un-deploying protocolConfiguration: " + protocolConfiguration.getReferenceOrThrow(),
@@ -28,6 +28,8 @@ import org.jboss.resteasy.specimpl.ResponseBuilderImpl;
 import org.openremote.agent.protocol.AbstractProtocol;
 import org.openremote.agent.protocol.Protocol;
 import org.openremote.container.Container;
+import org.openremote.container.concurrent.ContainerExecutor;
+import org.openremote.container.concurrent.ContainerThreadFactory;
 import org.openremote.container.web.HeaderInjectorFilter;
 import org.openremote.container.web.OAuthGrant;
 import org.openremote.container.web.QueryParameterInjectorFilter;
@@ -58,14 +60,14 @@ import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.container.concurrent.GlobalLock.withLock;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.model.Constants.PROTOCOL_NAMESPACE;
 import static org.openremote.model.attribute.MetaItemDescriptor.Access.ACCESS_PRIVATE;
 import static org.openremote.model.attribute.MetaItemDescriptorImpl.*;
@@ -161,6 +163,14 @@ import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_STRING_NON_EMPTY
  * }
  * </pre></blockquote>
  * Actual body used for the request = "{myObject: {prop1: true, prop2: "test", prop3: {prop4: 1234.4223}}}"
+ * <h1>Polling</h1>
+ * Polling requests run on a bounded pool of {@link #HTTP_CLIENT_REQUEST_THREADS_MAX} threads sharing one connection
+ * pool with keep-alive; at most {@link #HTTP_CLIENT_MAX_REQUESTS_PER_HOST} requests are in flight per host, further
+ * polls of the host wait in a queue per host in the order they were due. A poll that is still in flight (or queued)
+ * when it is next due is skipped. Linked
+ * {@link Attribute}s of the same protocol configuration with identical polling requests (method, path, headers, query
+ * parameters and body) share a single poll at the shortest of their polling intervals and the response is delivered to
+ * all of them.
  */
 public class HttpClientProtocol extends AbstractProtocol {
 
@@ -326,6 +336,58 @@ public class HttpClientProtocol extends AbstractProtocol {
         }
     }
 
+    /**
+     * A polling request shared by all linked attributes (or the protocol configuration ping) with an identical
+     * request; the polling interval is the shortest of the intervals requested by the attributes.
+     */
+    protected static class PollingTarget {
+        protected final String key;
+        protected final AttributeRef protocolConfigurationRef;
+        protected final HttpClientRequest clientRequest;
+        protected final String body;
+        protected final Map<AttributeRef, Integer> attributePollingMillis = new LinkedHashMap<>();
+        protected final Set<AttributeRef> attributeRefs = attributePollingMillis.keySet();
+        protected final AtomicBoolean inFlight = new AtomicBoolean();
+        protected int pollingMillis;
+        protected volatile ScheduledFuture<?> pollingTask;
+
+        protected PollingTarget(String key, AttributeRef protocolConfigurationRef, HttpClientRequest clientRequest, String body) {
+            this.key = key;
+            this.protocolConfigurationRef = protocolConfigurationRef;
+            this.clientRequest = clientRequest;
+            this.body = body;
+        }
+
+        public void cancel() {
+            if (pollingTask != null) {
+                pollingTask.cancel(false);
+                pollingTask = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "request=" + clientRequest +
+                ", pollingMillis=" + pollingMillis +
+                ", attributeRefs=" + attributeRefs +
+                '}';
+        }
+    }
+
+    /**
+     * The polls waiting for a permit to request a host, the number of permits is the maximum number of requests in
+     * flight to the host.
+     */
+    protected static class HostRequestQueue {
+        protected final Semaphore permits;
+        protected final Queue<PollingTarget> pendingTargets = new ConcurrentLinkedQueue<>();
+
+        protected HostRequestQueue(int maxRequests) {
+            this.permits = new Semaphore(maxRequests);
+        }
+    }
+
     public static final String PROTOCOL_NAME = PROTOCOL_NAMESPACE + ":httpClient";
     public static final String PROTOCOL_DISPLAY_NAME = "HTTP Client";
     public static final String PROTOCOL_VERSION = "1.0";
@@ -337,6 +399,18 @@ public class HttpClientProtocol extends AbstractProtocol {
     protected static int MIN_POLLING_MILLIS = 1000;
     protected static int MIN_PING_MILLIS = 10000;
 
+    /**
+     * Threads used to execute polling requests of all protocol configurations.
+     */
+    public static final String HTTP_CLIENT_REQUEST_THREADS_MAX = "HTTP_CLIENT_REQUEST_THREADS_MAX";
+    public static final int HTTP_CLIENT_REQUEST_THREADS_MAX_DEFAULT = 20;
+
+    /**
+     * Maximum concurrent polling requests to a single host, also the connection pool size per host.
+     */
+    public static final String HTTP_CLIENT_MAX_REQUESTS_PER_HOST = "HTTP_CLIENT_MAX_REQUESTS_PER_HOST";
+    public static final int HTTP_CLIENT_MAX_REQUESTS_PER_HOST_DEFAULT = 4;
+
     /*--------------- META ITEMS TO BE USED ON PROTOCOL CONFIGURATIONS ---------------*/
     /**
      * Base URI for all requests to this server
@@ -563,9 +637,13 @@ public class HttpClientProtocol extends AbstractProtocol {
 
     protected final Map<AttributeRef, Pair<ResteasyWebTarget, List<Integer>>> clientMap = new HashMap<>();
     protected final Map<AttributeRef, HttpClientRequest> requestMap = new HashMap<>();
-    protected final Map<AttributeRef, ScheduledFuture> pollingMap = new HashMap<>();
+    protected final Map<AttributeRef, PollingTarget> pollingMap = new HashMap<>();
+    protected final Map<String, PollingTarget> pollingTargetMap = new HashMap<>();
     protected final Map<AttributeRef, Set<AttributeRef>> pollingLinkedAttributeMap = new HashMap<>();
+    protected final Map<String, HostRequestQueue> hostRequestQueues = new ConcurrentHashMap<>();
     protected ResteasyClient client;
+    protected ExecutorService requestExecutor;
+    protected int maxRequestsPerHost;
 
     public static Optional<Pair<StringValue, StringValue>> getUsernameAndPassword(AssetAttribute attribute) throws IllegalArgumentException {
         Optional<StringValue> username = Values.getMetaItemValueOrThrow(
@@ -643,19 +721,41 @@ public class HttpClientProtocol extends AbstractProtocol {
     @Override
     public void init(Container container) throws Exception {
         super.init(container);
+        int requestThreadsMax = getInteger(container.getConfig(), HTTP_CLIENT_REQUEST_THREADS_MAX, HTTP_CLIENT_REQUEST_THREADS_MAX_DEFAULT);
+        maxRequestsPerHost = getInteger(container.getConfig(), HTTP_CLIENT_MAX_REQUESTS_PER_HOST, HTTP_CLIENT_MAX_REQUESTS_PER_HOST_DEFAULT);
+        // The queue is bounded by the number of polling targets as a target is only queued once
+        requestExecutor = new ContainerExecutor(
+            new ContainerThreadFactory(getProtocolDisplayName() + " request"),
+            new ThreadPoolExecutor.AbortPolicy(),
+            requestThreadsMax,
+            requestThreadsMax,
+            60,
+            new LinkedBlockingQueue<>()
+        );
+        ((ThreadPoolExecutor) requestExecutor).allowCoreThreadTimeOut(true);
         client = createClient();
     }
 
     protected ResteasyClient createClient() {
-        return WebTargetBuilder.createClient(executorService);
+        return WebTargetBuilder.createClient(
+            executorService,
+            Math.max(WebTargetBuilder.CONNECTION_POOL_SIZE, ((ThreadPoolExecutor) requestExecutor).getMaximumPoolSize()),
+            maxRequestsPerHost,
+            WebTargetBuilder.CONNECTION_TIMEOUT_MILLISECONDS,
+            null);
     }
 
     @Override
     protected void doStop(Container container) {
-        pollingMap.forEach((attributeRef, scheduledFuture) -> scheduledFuture.cancel(true));
+        pollingTargetMap.values().forEach(PollingTarget::cancel);
+        pollingTargetMap.clear();
+        hostRequestQueues.clear();
         pollingMap.clear();
         requestMap.clear();
         clientMap.clear();
+        if (requestExecutor != null) {
+            requestExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -734,7 +834,7 @@ public class HttpClientProtocol extends AbstractProtocol {
 
         WebTargetBuilder webTargetBuilder;
         if (readTimeout != null) {
-            webTargetBuilder = new WebTargetBuilder(WebTargetBuilder.createClient(executorService, WebTargetBuilder.CONNECTION_POOL_SIZE, readTimeout.longValue(), null), uri);
+            webTargetBuilder = new WebTargetBuilder(WebTargetBuilder.createClient(executorService, maxRequestsPerHost, readTimeout.longValue(), null), uri);
         } else {
             webTargetBuilder = new WebTargetBuilder(client, uri);
         }
@@ -819,12 +919,12 @@ public class HttpClientProtocol extends AbstractProtocol {
         LOG.info("Creating ping polling request '" + pingRequest + "'");
 
         requestMap.put(protocolRef, pingRequest);
-        pollingMap.put(protocolRef, schedulePollingRequest(
-                null,
+        addPolling(
+                protocolRef,
                 protocolRef,
                 pingRequest,
                 pingBody != null ? pingBody.toString() : null,
-                pingPollingMillis));
+                pingPollingMillis);
     }
 
     @Override
@@ -1002,12 +1102,12 @@ public class HttpClientProtocol extends AbstractProtocol {
             String body = Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_WRITE_VALUE, false, true)
                 .map(Object::toString).orElse(null);
 
-            pollingMap.put(attributeRef, schedulePollingRequest(
+            addPolling(
                 attributeRef,
                 protocolConfigurationRef,
                 clientRequest,
                 body,
-                seconds));
+                seconds);
         });
     }
 
@@ -1119,26 +1219,160 @@ public class HttpClientProtocol extends AbstractProtocol {
                 contentType);
     }
 
-    protected ScheduledFuture schedulePollingRequest(AttributeRef attributeRef,
-                                                     AttributeRef protocolConfigurationRef,
-                                                     HttpClientRequest clientRequest,
-                                                     String body,
-                                                     int pollingMillis) {
+    /**
+     * Adds the attribute (or the protocol configuration for the ping request) to the polling target with an identical
+     * request, creating and scheduling the target if there is none yet.
+     */
+    protected void addPolling(AttributeRef attributeRef,
+                              AttributeRef protocolConfigurationRef,
+                              HttpClientRequest clientRequest,
+                              String body,
+                              int pollingMillis) {
+
+        withLock(getProtocolName() + "::addPolling", () -> {
+            String key = getPollingKey(protocolConfigurationRef, clientRequest, body);
+            PollingTarget pollingTarget = pollingTargetMap.computeIfAbsent(
+                key,
+                k -> new PollingTarget(k, protocolConfigurationRef, clientRequest, body)
+            );
+            boolean shared = pollingTarget.pollingTask != null;
+            pollingTarget.attributePollingMillis.put(attributeRef, pollingMillis);
+            pollingMap.put(attributeRef, pollingTarget);
+
+            if (shared) {
+                LOG.fine("Sharing polling request '" + clientRequest + "' with: " + attributeRef);
+            }
+            updatePollingInterval(pollingTarget);
+        });
+    }
+
+    /**
+     * (Re)schedules the polling target if it isn't scheduled or the shortest interval requested by its attributes has
+     * changed.
+     */
+    protected void updatePollingInterval(PollingTarget pollingTarget) {
+        int pollingMillis = Collections.min(pollingTarget.attributePollingMillis.values());
 
-        LOG.fine("Scheduling polling request '" + clientRequest + "' to execute every " + pollingMillis + " ms for attribute: " + attributeRef);
+        if (pollingTarget.pollingTask == null || pollingMillis != pollingTarget.pollingMillis) {
+            if (pollingTarget.pollingTask != null) {
+                LOG.fine("Shared polling request '" + pollingTarget.clientRequest + "' now requested every " + pollingMillis + " ms");
+            }
+            pollingTarget.cancel();
+            pollingTarget.pollingMillis = pollingMillis;
+            pollingTarget.pollingTask = schedulePollingRequest(pollingTarget);
+        }
+    }
 
-        return executorService.scheduleWithFixedDelay(() ->
-                executePollingRequest(clientRequest, body, response -> {
+    /**
+     * Requests are only shared within a protocol configuration as the web target carries its authentication.
+     */
+    protected String getPollingKey(AttributeRef protocolConfigurationRef, HttpClientRequest clientRequest, String body) {
+        return protocolConfigurationRef
+            + "|" + clientRequest.method
+            + "|" + clientRequest
+            + "|" + clientRequest.headers
+            + "|" + clientRequest.queryParameters
+            + "|" + clientRequest.contentType
+            + "|" + clientRequest.failureCodes
+            + "|" + clientRequest.pagingEnabled
+            + "|" + clientRequest.updateConnectionStatus
+            + "|" + body;
+    }
+
+    protected ScheduledFuture<?> schedulePollingRequest(PollingTarget pollingTarget) {
+
+        LOG.fine("Scheduling polling request '" + pollingTarget.clientRequest + "' to execute every " + pollingTarget.pollingMillis + " ms for: " + pollingTarget.attributeRefs);
+
+        return executorService.scheduleTimerWithFixedDelay(() -> submitPollingRequest(pollingTarget), 0, pollingTarget.pollingMillis);
+    }
+
+    /**
+     * Queues the polling request for its host unless the previous poll of the target is still queued or in flight, in
+     * which case this poll is skipped; the queued polls of a host are handed to the request executor in order as the
+     * host permits allow, this bounds the requests in flight per host without starving any target.
+     */
+    protected void submitPollingRequest(PollingTarget pollingTarget) {
+        if (!pollingTarget.inFlight.compareAndSet(false, true)) {
+            LOG.finest("Skipping poll as previous request is still in flight: " + pollingTarget.clientRequest);
+            return;
+        }
+
+        HostRequestQueue hostRequestQueue = hostRequestQueues.computeIfAbsent(
+            getRequestHost(pollingTarget.clientRequest),
+            host -> new HostRequestQueue(maxRequestsPerHost)
+        );
+        hostRequestQueue.pendingTargets.add(pollingTarget);
+        drainHostRequestQueue(hostRequestQueue);
+    }
+
+    protected void drainHostRequestQueue(HostRequestQueue hostRequestQueue) {
+        while (hostRequestQueue.permits.tryAcquire()) {
+            PollingTarget pollingTarget = hostRequestQueue.pendingTargets.poll();
+
+            if (pollingTarget == null) {
+                hostRequestQueue.permits.release();
+                // A poll may have been queued whilst we were holding the permit
+                if (hostRequestQueue.pendingTargets.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+
+            if (pollingTarget.pollingTask == null) {
+                LOG.finest("Skipping poll as polling has been cancelled: " + pollingTarget.clientRequest);
+                pollingTarget.inFlight.set(false);
+                hostRequestQueue.permits.release();
+                continue;
+            }
+
+            try {
+                requestExecutor.execute(() -> {
                     try {
-                        onPollingResponse(
-                            clientRequest,
-                            response,
-                            attributeRef,
-                            protocolConfigurationRef);
-                    } catch (Exception e) {
-                        LOG.log(Level.WARNING, getProtocolDisplayName() + " exception thrown whilst processing polling response [" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "]: " + clientRequest.requestTarget.getUriBuilder().build().toString());
+                        executePollingRequest(pollingTarget.clientRequest, pollingTarget.body, response -> {
+                            try {
+                                onPollingResponse(
+                                    pollingTarget.clientRequest,
+                                    response,
+                                    getPollingAttributeRefs(pollingTarget),
+                                    pollingTarget.protocolConfigurationRef);
+                            } catch (Exception e) {
+                                LOG.log(Level.WARNING, getProtocolDisplayName() + " exception thrown whilst processing polling response [" + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()) + "]: " + pollingTarget.clientRequest);
+                            }
+                        });
+                    } finally {
+                        pollingTarget.inFlight.set(false);
+                        hostRequestQueue.permits.release();
+                        drainHostRequestQueue(hostRequestQueue);
                     }
-                }), 0, pollingMillis, TimeUnit.MILLISECONDS);
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.fine("Skipping poll as the request executor has been shut down: " + pollingTarget.clientRequest);
+                pollingTarget.inFlight.set(false);
+                hostRequestQueue.permits.release();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the linked attributes of the polling target, the protocol configuration reference of a ping request is
+     * excluded as it has no value to update.
+     */
+    protected List<AttributeRef> getPollingAttributeRefs(PollingTarget pollingTarget) {
+        List<AttributeRef> attributeRefs = new ArrayList<>();
+        withLock(getProtocolName() + "::getPollingAttributeRefs", () -> {
+            for (AttributeRef attributeRef : pollingTarget.attributeRefs) {
+                if (!attributeRef.equals(pollingTarget.protocolConfigurationRef)) {
+                    attributeRefs.add(attributeRef);
+                }
+            }
+        });
+        return attributeRefs;
+    }
+
+    protected static String getRequestHost(HttpClientRequest clientRequest) {
+        URI uri = clientRequest.client.getUri();
+        return uri.getHost() + ":" + uri.getPort();
     }
 
     protected void executePollingRequest(HttpClientRequest clientRequest, String body, Consumer<Response> responseConsumer) {
@@ -1198,7 +1432,7 @@ public class HttpClientProtocol extends AbstractProtocol {
 
     protected void onPollingResponse(HttpClientRequest request,
                                      Response response,
-                                     AttributeRef attributeRef,
+                                     List<AttributeRef> attributeRefs,
                                      AttributeRef protocolConfigurationRef) {
 
         int responseCode = response != null ? response.getStatus() : 500;
@@ -1222,11 +1456,15 @@ public class HttpClientProtocol extends AbstractProtocol {
             }
         } else if (isPermanentFailure(responseCode, request.failureCodes)) {
             doPermanentFailure(protocolConfigurationRef);
-            cancelPolling(attributeRef != null ? attributeRef : protocolConfigurationRef);
+            if (attributeRefs.isEmpty()) {
+                cancelPolling(protocolConfigurationRef);
+            } else {
+                attributeRefs.forEach(this::cancelPolling);
+            }
             return;
         }
 
-        if (attributeRef != null) {
+        for (AttributeRef attributeRef : attributeRefs) {
             updateLinkedAttribute(new AttributeState(attributeRef, value));
 
             // Look for any attributes that also want to use this polling response
@@ -1257,9 +1495,16 @@ public class HttpClientProtocol extends AbstractProtocol {
 
     protected void cancelPolling(AttributeRef attributeRef) {
         withLock(getProtocolName() + "::cancelPolling", () -> {
-            ScheduledFuture pingPoll = pollingMap.remove(attributeRef);
-            if (pingPoll != null) {
-                pingPoll.cancel(false);
+            PollingTarget pollingTarget = pollingMap.remove(attributeRef);
+            if (pollingTarget != null) {
+                pollingTarget.attributePollingMillis.remove(attributeRef);
+                if (pollingTarget.attributePollingMillis.isEmpty()) {
+                    pollingTarget.cancel();
+                    pollingTargetMap.remove(pollingTarget.key);
+                } else {
+                    // The attribute may have requested the shortest interval
+                    updatePollingInterval(pollingTarget);
+                }
             }
         });
     }
@@ -31,6 +31,7 @@ import javax.validation.constraints.NotNull;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.function.BiConsumer;
@@ -181,7 +182,18 @@ public abstract class AbstractNettyIoClient<T, U extends SocketAddress> implemen
 
     protected abstract Class<? extends Channel> getChannelClass();
 
-    protected abstract EventLoopGroup getWorkerGroup();
+    /**
+     * Returns the shared protocol IO event loop group by default, clients that need a dedicated group (e.g. for a
+     * blocking transport) can override this and the group will be shut down on disconnect; the
+     * {@link #getChannelClass} must be compatible with the returned group.
+     */
+    protected EventLoopGroup getWorkerGroup() {
+        return executorService.getIoEventLoopGroup().getGroup();
+    }
+
+    protected boolean isSharedWorkerGroup() {
+        return workerGroup == executorService.getIoEventLoopGroup().getGroup();
+    }
 
     protected abstract ChannelFuture startChannel();
 
@@ -239,7 +251,6 @@ public abstract class AbstractNettyIoClient<T, U extends SocketAddress> implemen
         LOG.info("Establishing connection: " + getClientUri());
 
         if (workerGroup == null) {
-            // TODO: In Netty 5 you can pass in an executor service; can only pass in thread factory for now
             workerGroup = getWorkerGroup();
         }
 
@@ -331,7 +342,9 @@ public abstract class AbstractNettyIoClient<T, U extends SocketAddress> implemen
             }
         } finally {
             if (workerGroup != null) {
-                workerGroup.shutdownGracefully();
+                if (!isSharedWorkerGroup()) {
+                    workerGroup.shutdownGracefully();
+                }
                 workerGroup = null;
             }
         }
@@ -352,6 +365,23 @@ public abstract class AbstractNettyIoClient<T, U extends SocketAddress> implemen
         }
     }
 
+    /**
+     * Writes the messages in order and flushes the channel once, so they are sent as a single burst.
+     */
+    public void sendMessages(Collection<T> messages) {
+        if (connectionStatus != ConnectionStatus.CONNECTED || messages.isEmpty()) {
+            return;
+        }
+
+        try {
+            messages.forEach(channel::write);
+            channel.flush();
+            LOG.finest(messages.size() + " messages sent to server: " + getClientUri());
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Message send failed: " + getClientUri(), e);
+        }
+    }
+
     @Override
     public ConnectionStatus getConnectionStatus() {
         return connectionStatus;
@@ -432,6 +462,7 @@ public abstract class AbstractNettyIoClient<T, U extends SocketAddress> implemen
 //                super.channelInactive(ctx);
 //            }
 //        });
+        executorService.getIoEventLoopGroup().trackChannel(channel, getClientUri());
         addEncodersDecoders(channel);
     }
 
@@ -23,7 +23,6 @@ import io.netty.bootstrap.AbstractBootstrap;
 import io.netty.channel.*;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import org.openremote.agent.protocol.ProtocolExecutorService;
 import org.openremote.model.asset.agent.ConnectionStatus;
@@ -42,9 +41,9 @@ import java.util.logging.Logger;
 import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 
 /**
- * Abstract implementation of {@link IoServer} that uses the Netty library.
+ * Abstract implementation of {@link IoServer} that uses the Netty library; servers run on the shared protocol IO
+ * {@link SharedEventLoopGroup}.
  */
-// TODO: In Netty 5 you can pass in an executor service; can only pass in thread factory for now
 @SuppressWarnings("unchecked")
 public abstract class AbstractNettyIoServer<T, U extends Channel, V extends AbstractBootstrap, W extends SocketAddress> implements IoServer<T, U, W> {
 
@@ -81,8 +80,7 @@ public abstract class AbstractNettyIoServer<T, U extends Channel, V extends Abst
         onConnectionStatusChanged(ConnectionStatus.CONNECTING);
 
         if (workerGroup == null) {
-            // TODO: In Netty 5 you can pass in an executor service; can only pass in thread factory for now
-            workerGroup = new NioEventLoopGroup();
+            workerGroup = executorService.getIoEventLoopGroup().getGroup();
         }
 
         try {
@@ -171,10 +169,8 @@ public abstract class AbstractNettyIoServer<T, U extends Channel, V extends Abst
         } catch (InterruptedException ignored) {
 
         } finally {
-            if (workerGroup != null) {
-                workerGroup.shutdownGracefully();
-                workerGroup = null;
-            }
+            // The shared worker group is owned by the executor service
+            workerGroup = null;
             onConnectionStatusChanged(ConnectionStatus.DISCONNECTED);
         }
     }
@@ -254,6 +250,7 @@ public abstract class AbstractNettyIoServer<T, U extends Channel, V extends Abst
 
 
     protected void initChannel(U channel) {
+        executorService.getIoEventLoopGroup().trackChannel(channel, getSocketAddressString());
         channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
             @Override
             public void channelActive(ChannelHandlerContext ctx) throws Exception {
@@ -285,6 +282,7 @@ public abstract class AbstractNettyIoServer<T, U extends Channel, V extends Abst
      */
     protected void initClientChannel(U channel) {
         LOG.fine("Client initialising: " + getClientDescriptor(channel));
+        executorService.getIoEventLoopGroup().trackChannel(channel, getClientDescriptor(channel));
 
         // Add handler to track when a channel becomes active and to handle exceptions
         channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
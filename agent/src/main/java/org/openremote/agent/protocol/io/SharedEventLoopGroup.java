@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.io;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.*;
+import io.netty.channel.epoll.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.openremote.model.syslog.SyslogCategory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
+
+/**
+ * A size-bounded Netty {@link EventLoopGroup} shared by all {@link AbstractNettyIoClient}s and
+ * {@link AbstractNettyIoServer}s, so the number of IO threads no longer grows with the number of linked protocol
+ * configurations. Uses the native epoll transport when it is available, the channel classes to use with the group
+ * are provided by {@link #getSocketChannelClass}, {@link #getServerSocketChannelClass} and
+ * {@link #getDatagramChannelClass}.
+ * <p>
+ * Channels registered with {@link #trackChannel} have their traffic counted, see {@link #getChannelMetrics}.
+ * <p>
+ * <b>NOTE: Handlers run on the shared IO threads so must never block.</b>
+ */
+public class SharedEventLoopGroup {
+
+    /**
+     * Traffic counters of a single channel.
+     */
+    public static class ChannelMetrics {
+        protected final String descriptor;
+        protected final long createdOn = System.currentTimeMillis();
+        protected final AtomicLong messagesRead = new AtomicLong();
+        protected final AtomicLong messagesWritten = new AtomicLong();
+        protected final AtomicLong bytesRead = new AtomicLong();
+        protected final AtomicLong bytesWritten = new AtomicLong();
+
+        public ChannelMetrics(String descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        public long getCreatedOn() {
+            return createdOn;
+        }
+
+        public long getMessagesRead() {
+            return messagesRead.get();
+        }
+
+        public long getMessagesWritten() {
+            return messagesWritten.get();
+        }
+
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "descriptor='" + descriptor + '\'' +
+                ", messagesRead=" + messagesRead +
+                ", messagesWritten=" + messagesWritten +
+                ", bytesRead=" + bytesRead +
+                ", bytesWritten=" + bytesWritten +
+                '}';
+        }
+    }
+
+    @ChannelHandler.Sharable
+    protected class ChannelMetricsHandler extends ChannelDuplexHandler {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ChannelMetrics metrics = channelMetrics.get(ctx.channel().id());
+            if (metrics != null) {
+                metrics.messagesRead.incrementAndGet();
+                metrics.bytesRead.addAndGet(getSize(msg));
+            }
+            super.channelRead(ctx, msg);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            ChannelMetrics metrics = channelMetrics.get(ctx.channel().id());
+            if (metrics != null) {
+                metrics.messagesWritten.incrementAndGet();
+                metrics.bytesWritten.addAndGet(getSize(msg));
+            }
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, SharedEventLoopGroup.class);
+    protected final EventLoopGroup group;
+    protected final boolean nativeTransport;
+    protected final Map<ChannelId, ChannelMetrics> channelMetrics = new ConcurrentHashMap<>();
+    protected final ChannelMetricsHandler channelMetricsHandler = new ChannelMetricsHandler();
+
+    public SharedEventLoopGroup(String name, int threads) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(name, true);
+        nativeTransport = Epoll.isAvailable();
+        group = nativeTransport
+            ? new EpollEventLoopGroup(threads, threadFactory)
+            : new NioEventLoopGroup(threads, threadFactory);
+        LOG.info("Shared IO event loop group started with " + threads + " threads using "
+            + (nativeTransport ? "native epoll" : "NIO") + " transport");
+    }
+
+    public EventLoopGroup getGroup() {
+        return group;
+    }
+
+    public boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    public Class<? extends SocketChannel> getSocketChannelClass() {
+        return nativeTransport ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    public Class<? extends ServerSocketChannel> getServerSocketChannelClass() {
+        return nativeTransport ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return nativeTransport ? EpollDatagramChannel.class : NioDatagramChannel.class;
+    }
+
+    /**
+     * Counts traffic of the specified channel until it is closed; the metrics handler is added at the head of the
+     * pipeline so it sees the raw bytes or datagrams.
+     */
+    public void trackChannel(Channel channel, String descriptor) {
+        channelMetrics.put(channel.id(), new ChannelMetrics(descriptor));
+        channel.pipeline().addFirst(channelMetricsHandler);
+        channel.closeFuture().addListener(future -> channelMetrics.remove(channel.id()));
+    }
+
+    /**
+     * @return a snapshot of the metrics of all open tracked channels.
+     */
+    public List<ChannelMetrics> getChannelMetrics() {
+        return new ArrayList<>(channelMetrics.values());
+    }
+
+    public void shutdown() {
+        LOG.info("Shutting down shared IO event loop group");
+        group.shutdownGracefully(0, 2, TimeUnit.SECONDS);
+        channelMetrics.clear();
+    }
+
+    protected static long getSize(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        return 0;
+    }
+}
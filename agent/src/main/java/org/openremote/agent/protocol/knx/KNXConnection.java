@@ -32,7 +32,7 @@ import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 
 public class KNXConnection implements NetworkLinkListener, ProcessListener {
 
-    protected ConnectionStatus connectionStatus = ConnectionStatus.DISCONNECTED;
+    protected volatile ConnectionStatus connectionStatus = ConnectionStatus.DISCONNECTED;
     
     protected final static int INITIAL_RECONNECT_DELAY_MILLIS = 1000;
     protected final static int MAX_RECONNECT_DELAY_MILLIS = 60000;
@@ -45,10 +45,11 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
     protected final ProtocolExecutorService executorService;
     protected final int port = 3671;
     protected final String connectionType;
-    protected KNXNetworkLink knxLink;
-    protected ProcessCommunicator processCommunicator;
+    protected volatile KNXNetworkLink knxLink;
+    protected volatile ProcessCommunicator processCommunicator;
     protected final Map<GroupAddress, byte[]> groupAddressStateMap = new HashMap<>();
     protected final Map<GroupAddress, List<Pair<StateDP, Consumer<Value>>>> groupAddressConsumerMap = new HashMap<>();
+    protected final KNXRequestScheduler requestScheduler;
 
     protected final String gatewayIp;
     
@@ -63,6 +64,14 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, KNXConnection.class);
     
     public KNXConnection(String gatewayIp, String connectionType, ProtocolExecutorService executorService, String localIp, Integer remotePort, Boolean useNat, String localKNXAddress) {
+        this(gatewayIp, connectionType, executorService, localIp, remotePort, useNat, localKNXAddress, KNXRequestScheduler.DEFAULT_TELEGRAMS_PER_SECOND);
+    }
+
+    /**
+     * @param telegramsPerSecond the maximum number of read and write requests sent per second, see
+     *                           {@link KNXRequestScheduler}.
+     */
+    public KNXConnection(String gatewayIp, String connectionType, ProtocolExecutorService executorService, String localIp, Integer remotePort, Boolean useNat, String localKNXAddress, int telegramsPerSecond) {
         this.gatewayIp = gatewayIp;
         this.executorService = executorService;
         this.connectionType =  connectionType;
@@ -70,6 +79,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
         this.remotePort = remotePort;
         this.useNat = useNat;
         this.localKNXAddress = localKNXAddress;
+        this.requestScheduler = new KNXRequestScheduler(executorService, telegramsPerSecond);
     }
 
     public synchronized void connect() {
@@ -106,17 +116,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
                 reconnectDelayMilliseconds = INITIAL_RECONNECT_DELAY_MILLIS;
                 onConnectionStatusChanged(ConnectionStatus.CONNECTED);
 
-                // Get the values of all registered group addresses
-                LOG.fine("Initialising group address values");
-                synchronized (groupAddressConsumerMap) {
-                    groupAddressConsumerMap.forEach((groupAddress, datapointConsumerList) -> {
-                        if (!datapointConsumerList.isEmpty()) {
-                            // Take first data point for the group address and request the value
-                            Pair<StateDP, Consumer<Value>> datapointConsumer = datapointConsumerList.get(0);
-                            getGroupAddressValue(datapointConsumer.key.getMainAddress(), datapointConsumer.key.getPriority());
-                        }
-                    });
-                }
+                readGroupAddressValues();
 
             } else {
                 LOG.log(Level.INFO, "Connection error");
@@ -141,6 +141,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
 
         LOG.finest("Disconnecting");
         onConnectionStatusChanged(ConnectionStatus.DISCONNECTING);
+        requestScheduler.clear();
         if (processCommunicator != null) {
             processCommunicator.detach();
         }
@@ -170,20 +171,37 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
         );
     }
     
+    /**
+     * Schedules a write of the value to the main address of the datapoint, writes are sent before any pending reads.
+     */
     public void sendCommand(Datapoint datapoint, Optional<Value> value) {
+        if (this.connectionStatus != ConnectionStatus.CONNECTED || !value.isPresent()) {
+            return;
+        }
+
+        DPTXlator translator;
         try {
-            if (this.connectionStatus == ConnectionStatus.CONNECTED && value.isPresent()) {
-                LOG.fine("Sending to KNX action datapoint '" + datapoint + "': " + value);
-                Value val = value.get();
-                DPTXlator translator = TypeMapper.toDPTXlator(datapoint, val);
-                processCommunicator.write(datapoint.getMainAddress(), translator);
-            }
-        } catch (KNXAckTimeoutException e) {
-            LOG.log(Level.INFO, "Failed to send KNX value: " + datapoint + " : " + value, e);
-            onConnectionError();
+            translator = TypeMapper.toDPTXlator(datapoint, value.get());
         } catch (Exception e) {
             LOG.severe(e.getMessage());
+            return;
         }
+
+        requestScheduler.scheduleWrite(datapoint.getMainAddress(), () -> {
+            ProcessCommunicator processCommunicator = this.processCommunicator;
+            if (this.connectionStatus != ConnectionStatus.CONNECTED || processCommunicator == null) {
+                return;
+            }
+            try {
+                LOG.fine("Sending to KNX action datapoint '" + datapoint + "': " + value);
+                processCommunicator.write(datapoint.getMainAddress(), translator);
+            } catch (KNXAckTimeoutException e) {
+                LOG.log(Level.INFO, "Failed to send KNX value: " + datapoint + " : " + value, e);
+                onConnectionError();
+            } catch (Exception e) {
+                LOG.severe(e.getMessage());
+            }
+        });
     }
 
     /**
@@ -247,6 +265,7 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
 
     protected void onConnectionError() {
         onConnectionStatusChanged(ConnectionStatus.ERROR);
+        requestScheduler.clear();
         processCommunicator.detach();
         if (knxLink != null) {
             knxLink.removeLinkListener(this);
@@ -305,18 +324,47 @@ public class KNXConnection implements NetworkLinkListener, ProcessListener {
         }
     }
 
+    /**
+     * Schedules a read of the values of all registered group addresses.
+     */
+    protected void readGroupAddressValues() {
+        List<StateDP> datapoints = new ArrayList<>();
+        synchronized (groupAddressConsumerMap) {
+            groupAddressConsumerMap.forEach((groupAddress, datapointConsumerList) -> {
+                if (!datapointConsumerList.isEmpty()) {
+                    // Take first data point for the group address and request the value
+                    datapoints.add(datapointConsumerList.get(0).key);
+                }
+            });
+        }
+
+        LOG.fine("Initialising values of " + datapoints.size() + " group address(es)");
+        datapoints.forEach(datapoint -> getGroupAddressValue(datapoint.getMainAddress(), datapoint.getPriority()));
+    }
+
+    /**
+     * Schedules a read request for the group address unless one is already pending, the response is handled by
+     * {@link #groupReadResponse}.
+     */
     protected void getGroupAddressValue(GroupAddress groupAddress, Priority priority) {
         if (knxLink == null || !knxLink.isOpen()) {
             LOG.fine("Cannot send read request not currently connected: " + groupAddress);
             return;
         }
 
-        try {
-            LOG.fine("Sending read request to KNX group address: " + groupAddress);
-            this.knxLink.sendRequest(groupAddress, priority, DataUnitBuilder.createLengthOptimizedAPDU(0x00, null));
-        } catch (Exception e) {
-            LOG.log(Level.INFO, "Error sending KNX read request for group address: " + groupAddress, e);
-        }
+        requestScheduler.scheduleRead(groupAddress, () -> {
+            KNXNetworkLink knxLink = this.knxLink;
+            if (knxLink == null || !knxLink.isOpen()) {
+                LOG.fine("Cannot send read request not currently connected: " + groupAddress);
+                return;
+            }
+            try {
+                LOG.fine("Sending read request to KNX group address: " + groupAddress);
+                knxLink.sendRequest(groupAddress, priority, DataUnitBuilder.createLengthOptimizedAPDU(0x00, null));
+            } catch (Exception e) {
+                LOG.log(Level.INFO, "Error sending KNX read request for group address: " + groupAddress, e);
+            }
+        });
     }
 
     protected void updateConsumer(byte[] data, StateDP datapoint, Consumer<Value> consumer) {
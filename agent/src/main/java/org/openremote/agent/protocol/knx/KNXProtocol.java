@@ -95,6 +95,12 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
      * Default: hostname
      */
     public static final String META_KNX_LOCAL_HOST = PROTOCOL_NAME + ":localhost";
+
+    /**
+     * Maximum number of telegrams (group address reads and writes) sent per second, writes are sent before reads.<br>
+     * Default: {@link KNXRequestScheduler#DEFAULT_TELEGRAMS_PER_SECOND}
+     */
+    public static final String META_KNX_TELEGRAMS_PER_SECOND = PROTOCOL_NAME + ":telegramsPerSecond";
     
     
     //Attribute specific configuration meta items
@@ -117,7 +123,8 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
         new MetaItemDescriptorImpl(META_KNX_GATEWAY_USENAT, ValueType.BOOLEAN, false, null, null, 1, Values.create(false), false, null, null, null),
         new MetaItemDescriptorImpl(META_KNX_IP_CONNECTION_TYPE, ValueType.STRING, false, "^(TUNNELLING|ROUTING)$", PATTERN_FAILURE_CONNECTION_TYPE, 1, Values.create("TUNNELLING"), false, null, null, null),
         new MetaItemDescriptorImpl(META_KNX_LOCAL_BUS_ADDRESS, ValueType.STRING, false, REGEXP_BUS_ADDRESS, "0.0.0", 1, null, false, null, null, null),
-        new MetaItemDescriptorImpl(META_KNX_LOCAL_HOST, ValueType.STRING, false, null, null, 1, null, false, null, null, null)
+        new MetaItemDescriptorImpl(META_KNX_LOCAL_HOST, ValueType.STRING, false, null, null, 1, null, false, null, null, null),
+        new MetaItemDescriptorImpl(META_KNX_TELEGRAMS_PER_SECOND, ValueType.NUMBER, false, REGEXP_PATTERN_INTEGER_POSITIVE_NON_ZERO, MetaItemDescriptor.PatternFailure.INTEGER_POSITIVE_NON_ZERO.name(), 1, Values.create(KNXRequestScheduler.DEFAULT_TELEGRAMS_PER_SECOND), false, null, null, null)
     );
 
     protected static final List<MetaItemDescriptor> ATTRIBUTE_META_ITEM_DESCRIPTORS = Arrays.asList(
@@ -225,6 +232,7 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
         Integer remotePort = protocolConfiguration.getMetaItem(META_KNX_GATEWAY_PORT).flatMap(AbstractValueHolder::getValueAsInteger).orElse(3671);
         String localKNXAddress = protocolConfiguration.getMetaItem(META_KNX_LOCAL_BUS_ADDRESS).flatMap(AbstractValueHolder::getValueAsString).orElse("0.0.0");
         Boolean useNat = protocolConfiguration.getMetaItem(META_KNX_GATEWAY_USENAT).flatMap(AbstractValueHolder::getValueAsBoolean).orElse(Boolean.FALSE);
+        int telegramsPerSecond = Math.max(1, protocolConfiguration.getMetaItem(META_KNX_TELEGRAMS_PER_SECOND).flatMap(AbstractValueHolder::getValueAsInteger).orElse(KNXRequestScheduler.DEFAULT_TELEGRAMS_PER_SECOND));
         
         AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
 
@@ -233,7 +241,7 @@ public class KNXProtocol extends AbstractProtocol implements ProtocolLinkedAttri
 
             KNXConnection knxConnection = knxConnections.computeIfAbsent(
                             gatewayIpParam.get(), gatewayIp ->
-                    new KNXConnection(gatewayIp, connectionType, executorService, localIp, remotePort, useNat, localKNXAddress)
+                    new KNXConnection(gatewayIp, connectionType, executorService, localIp, remotePort, useNat, localKNXAddress, telegramsPerSecond)
             );
             knxConnection.addConnectionStatusConsumer(statusConsumer);
             knxConnection.connect();
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.knx;
+
+import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.model.syslog.SyslogCategory;
+import tuwien.auto.calimero.GroupAddress;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
+
+/**
+ * Paces the telegrams a {@link KNXConnection} sends so that reading the values of many group addresses (e.g. after
+ * connecting or linking the attributes of a large ETS import) can't flood the KNX/IP tunnel. Requests are sent one at
+ * a time from the protocol executor without holding any lock, at most {@link #getTelegramsPerSecond} per second,
+ * writes before reads and otherwise in the order they were scheduled. A read of a group address that is still
+ * pending is not scheduled again.
+ */
+public class KNXRequestScheduler {
+
+    /**
+     * The request types in order of priority.
+     */
+    public enum RequestType {
+        WRITE,
+        READ
+    }
+
+    protected static class Request implements Comparable<Request> {
+        protected final RequestType type;
+        protected final long sequence;
+        protected final GroupAddress groupAddress;
+        protected final Runnable sender;
+
+        protected Request(RequestType type, long sequence, GroupAddress groupAddress, Runnable sender) {
+            this.type = type;
+            this.sequence = sequence;
+            this.groupAddress = groupAddress;
+            this.sender = sender;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            int result = type.compareTo(other.type);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, KNXRequestScheduler.class);
+    public static final int DEFAULT_TELEGRAMS_PER_SECOND = 20;
+    protected final ProtocolExecutorService executorService;
+    protected final int telegramsPerSecond;
+    protected final long telegramIntervalNanos;
+    protected final PriorityQueue<Request> queue = new PriorityQueue<>();
+    protected final Set<GroupAddress> pendingReads = new HashSet<>();
+    protected long sequence;
+    protected long nextSendNanos = System.nanoTime();
+    protected ScheduledFuture<?> sendTask;
+    protected boolean sending;
+
+    public KNXRequestScheduler(ProtocolExecutorService executorService, int telegramsPerSecond) {
+        if (telegramsPerSecond < 1) {
+            throw new IllegalArgumentException("Telegrams per second must be positive: " + telegramsPerSecond);
+        }
+        this.executorService = executorService;
+        this.telegramsPerSecond = telegramsPerSecond;
+        this.telegramIntervalNanos = TimeUnit.SECONDS.toNanos(1) / telegramsPerSecond;
+    }
+
+    public int getTelegramsPerSecond() {
+        return telegramsPerSecond;
+    }
+
+    public synchronized void scheduleWrite(GroupAddress groupAddress, Runnable sender) {
+        queue.add(new Request(RequestType.WRITE, sequence++, groupAddress, sender));
+        scheduleSend();
+    }
+
+    /**
+     * @return <code>false</code> if a read of the group address is already pending.
+     */
+    public synchronized boolean scheduleRead(GroupAddress groupAddress, Runnable sender) {
+        if (!pendingReads.add(groupAddress)) {
+            return false;
+        }
+        queue.add(new Request(RequestType.READ, sequence++, groupAddress, sender));
+        scheduleSend();
+        return true;
+    }
+
+    /**
+     * Drops all pending requests.
+     */
+    public synchronized void clear() {
+        queue.clear();
+        pendingReads.clear();
+        if (sendTask != null) {
+            sendTask.cancel(false);
+            sendTask = null;
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return queue.size();
+    }
+
+    protected void scheduleSend() {
+        if (sendTask != null || sending || queue.isEmpty()) {
+            return;
+        }
+        long delayNanos = Math.max(0, nextSendNanos - System.nanoTime());
+        sendTask = executorService.schedule(this::sendNext, (delayNanos + 999_999) / 1_000_000);
+    }
+
+    protected void sendNext() {
+        Request request;
+        synchronized (this) {
+            sendTask = null;
+            request = queue.poll();
+            if (request == null) {
+                return;
+            }
+            if (request.type == RequestType.READ) {
+                pendingReads.remove(request.groupAddress);
+            }
+            sending = true;
+        }
+
+        long sendNanos = System.nanoTime();
+        try {
+            request.sender.run();
+        } catch (Exception e) {
+            LOG.log(Level.INFO, "Failed to send KNX " + request.type + " request for group address: " + request.groupAddress, e);
+        }
+
+        synchronized (this) {
+            sending = false;
+            nextSendNanos = sendNanos + telegramIntervalNanos;
+            scheduleSend();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "telegramsPerSecond=" + telegramsPerSecond +
+            ", pending=" + getPendingCount() +
+            '}';
+    }
+}
@@ -152,6 +152,13 @@ final public class MacroConfiguration {
         return attribute;
     }
 
+    public static Optional<MacroProtocol.ConcurrencyPolicy> getMacroConcurrencyPolicy(AssetAttribute attribute) {
+        return attribute == null ? Optional.empty()
+            : attribute.getMetaItem(MacroProtocol.META_MACRO_CONCURRENCY_POLICY)
+                .flatMap(AbstractValueHolder::getValueAsString)
+                .flatMap(MacroProtocol.ConcurrencyPolicy::fromString);
+    }
+
     public static Optional<Integer> getMacroActionIndex(AssetAttribute attribute) {
         return attribute == null ? Optional.empty()
             : attribute.getMetaItem(MacroProtocol.META_MACRO_ACTION_INDEX)
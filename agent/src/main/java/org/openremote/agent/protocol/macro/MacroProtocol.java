@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 
 import static org.openremote.agent.protocol.macro.MacroConfiguration.getMacroActionIndex;
 import static org.openremote.agent.protocol.macro.MacroConfiguration.isValidMacroConfiguration;
+import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.model.Constants.PROTOCOL_NAMESPACE;
 import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_INTEGER_POSITIVE;
@@ -48,6 +49,10 @@ import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_INTEGER_POSITIVE
  * <p>
  * {@link AssetAttribute}s can also read/write the macro configuration's {@link MacroAction} values by using the
  * {@link #META_MACRO_ACTION_INDEX} Meta Item with the index of the {@link MacroAction} to link to.
+ * <p>
+ * Consecutive actions without a delay are sent as a single batch of {@link AttributeEvent}s which is processed in one
+ * pass. What happens when a macro is triggered again whilst it is still running is set by the
+ * {@link #META_MACRO_CONCURRENCY_POLICY} of the macro configuration, see {@link ConcurrencyPolicy}.
  */
 public class MacroProtocol extends AbstractProtocol {
 
@@ -57,17 +62,49 @@ public class MacroProtocol extends AbstractProtocol {
     public static final String PROTOCOL_DISPLAY_NAME = "Macro";
     public static final String META_MACRO_ACTION = PROTOCOL_NAME + ":action";
     public static final String META_MACRO_ACTION_INDEX = PROTOCOL_NAME + ":actionIndex";
+    public static final String META_MACRO_CONCURRENCY_POLICY = PROTOCOL_NAME + ":concurrencyPolicy";
+    public static final String PATTERN_FAILURE_CONCURRENCY_POLICY = "CANCEL_PREVIOUS|QUEUE|IGNORE";
     protected static final String VERSION = "1.0";
     protected static final MacroAction EMPTY_ACTION = new MacroAction(new AttributeState(new AttributeRef("ENTITY_ID", "ATTRIBUTE_NAME"), null));
 
-    protected static final List<MetaItemDescriptor> PROTOCOL_META_ITEM_DESCRIPTORS = Collections.singletonList(
-        new MetaItemDescriptorImpl(META_MACRO_ACTION, ValueType.OBJECT, true, null, null, null, EMPTY_ACTION.toObjectValue(), false, null, null, null)
+    protected static final List<MetaItemDescriptor> PROTOCOL_META_ITEM_DESCRIPTORS = Arrays.asList(
+        new MetaItemDescriptorImpl(META_MACRO_ACTION, ValueType.OBJECT, true, null, null, null, EMPTY_ACTION.toObjectValue(), false, null, null, null),
+        new MetaItemDescriptorImpl(META_MACRO_CONCURRENCY_POLICY, ValueType.STRING, false, "^(CANCEL_PREVIOUS|QUEUE|IGNORE)$", PATTERN_FAILURE_CONCURRENCY_POLICY, 1, Values.create(ConcurrencyPolicy.CANCEL_PREVIOUS.name()), false, null, null, null)
     );
 
     protected static final List<MetaItemDescriptor> ATTRIBUTE_META_ITEM_DESCRIPTORS = Collections.singletonList(
         new MetaItemDescriptorImpl(META_MACRO_ACTION_INDEX, ValueType.NUMBER, false, REGEXP_PATTERN_INTEGER_POSITIVE, MetaItemDescriptor.PatternFailure.INTEGER_POSITIVE.name(), null, null, false, null, null, null)
     );
 
+    /**
+     * Policy for a macro that is triggered again whilst it is still running.
+     */
+    public enum ConcurrencyPolicy {
+        /**
+         * Cancel the running execution, none of its remaining actions are sent, and start a new execution (default).
+         */
+        CANCEL_PREVIOUS,
+        /**
+         * Start a new execution when the running execution (and any execution queued before) has completed.
+         */
+        QUEUE,
+        /**
+         * Ignore the trigger, the running execution continues.
+         */
+        IGNORE;
+
+        public static Optional<ConcurrencyPolicy> fromString(String value) {
+            if (value == null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(valueOf(value.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
     class MacroExecutionTask {
 
         AttributeRef attributeRef;
@@ -91,52 +128,70 @@ public class MacroProtocol extends AbstractProtocol {
 
         void cancel() {
             LOG.fine("Macro Execution cancel");
-            scheduledFuture.cancel(false);
-            cancelled = true;
-            executions.remove(attributeRef);
+            stop();
             updateLinkedAttribute(new AttributeState(attributeRef, AttributeExecuteStatus.CANCELLED.asValue()));
         }
 
-        private void run() {
-            if (cancelled) {
-                return;
+        /**
+         * Stops this execution without updating the execution status, no further actions are sent.
+         */
+        void stop() {
+            cancelled = true;
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
             }
+        }
 
-            if (iteration >= 0) {
-                // Process the execution of the next action
-                MacroAction action = actions.get(iteration);
-                AttributeState actionState = action.getAttributeState();
+        private void run() {
+            // Runs under the same lock as cancellation so that a cancelled task never sends another action
+            withLock(getProtocolName() + "::runMacro", () -> {
+                if (cancelled) {
+                    return;
+                }
+
+                if (iteration >= 0) {
+                    // Send the next action and all directly following actions without a delay as one batch
+                    long timestamp = timerService.getCurrentTimeMillis();
+                    List<AttributeEvent> events = new ArrayList<>();
+                    events.add(new AttributeEvent(actions.get(iteration).getAttributeState(), timestamp));
+                    while (iteration < actions.size() - 1 && actions.get(iteration + 1).getDelayMilliseconds() <= 0) {
+                        iteration++;
+                        events.add(new AttributeEvent(actions.get(iteration).getAttributeState(), timestamp));
+                    }
 
-                // send attribute event
-                sendAttributeEvent(actionState);
-            }
+                    sendAttributeEvents(events);
+                }
 
-            boolean isLast = iteration == actions.size() - 1;
-            boolean restart = isLast && repeat;
+                boolean isLast = iteration == actions.size() - 1;
+                boolean restart = isLast && repeat;
 
-            if (restart) {
-                iteration = 0;
-            } else {
-                iteration++;
-            }
+                if (restart) {
+                    iteration = 0;
+                } else {
+                    iteration++;
+                }
 
-            if ((isLast && !restart)) {
-                executions.remove(attributeRef);
-                // Update the command Status of this attribute
-                updateLinkedAttribute(new AttributeState(attributeRef, AttributeExecuteStatus.COMPLETED.asValue()));
-                return;
-            }
+                if ((isLast && !restart)) {
+                    executions.remove(attributeRef, this);
+                    // Update the command Status of this attribute
+                    updateLinkedAttribute(new AttributeState(attributeRef, AttributeExecuteStatus.COMPLETED.asValue()));
+                    startQueuedExecution(attributeRef);
+                    return;
+                }
 
-            // Get next execution delay
-            int delayMillis = actions.get(iteration).getDelayMilliseconds();
+                // Get next execution delay
+                int delayMillis = actions.get(iteration).getDelayMilliseconds();
 
-            // Schedule the next iteration
-            scheduledFuture = executorService.schedule(this::run, delayMillis > 0 ? delayMillis : 0);
+                // Schedule the next iteration
+                scheduledFuture = executorService.schedule(this::run, delayMillis > 0 ? delayMillis : 0);
+            });
         }
     }
 
     protected final Map<AttributeRef, List<MacroAction>> macroMap = new ConcurrentHashMap<>();
     protected final Map<AttributeRef, MacroExecutionTask> executions = new ConcurrentHashMap<>();
+    protected final Map<AttributeRef, ConcurrencyPolicy> concurrencyPolicies = new ConcurrentHashMap<>();
+    protected final Map<AttributeRef, Deque<MacroExecutionTask>> queuedExecutions = new ConcurrentHashMap<>();
 
     @Override
     public String getProtocolName() {
@@ -192,6 +247,10 @@ public class MacroProtocol extends AbstractProtocol {
         } else {
             // Store the macro actions for later execution requests
             macroMap.put(macroRef, MacroConfiguration.getMacroActions(protocolConfiguration));
+            concurrencyPolicies.put(
+                macroRef,
+                MacroConfiguration.getMacroConcurrencyPolicy(protocolConfiguration).orElse(ConcurrencyPolicy.CANCEL_PREVIOUS)
+            );
             updateStatus(macroRef, ConnectionStatus.CONNECTED);
         }
     }
@@ -200,6 +259,7 @@ public class MacroProtocol extends AbstractProtocol {
     protected void doUnlinkProtocolConfiguration(Asset agent, AssetAttribute protocolConfiguration) {
         AttributeRef macroRef = protocolConfiguration.getReferenceOrThrow();
         macroMap.remove(macroRef);
+        concurrencyPolicies.remove(macroRef);
     }
 
     @Override
@@ -255,6 +315,12 @@ public class MacroProtocol extends AbstractProtocol {
 
     @Override
     protected void doUnlinkAttribute(AssetAttribute attribute, AssetAttribute protocolConfiguration) {
+        AttributeRef attributeRef = attribute.getReferenceOrThrow();
+        queuedExecutions.remove(attributeRef);
+        MacroExecutionTask task = executions.remove(attributeRef);
+        if (task != null) {
+            task.stop();
+        }
     }
 
     @Override
@@ -273,10 +339,11 @@ public class MacroProtocol extends AbstractProtocol {
             // Check if it's a cancellation request
             if (status == AttributeExecuteStatus.REQUEST_CANCEL) {
                 LOG.fine("Request received to cancel macro execution: " + event);
+                queuedExecutions.remove(attributeRef);
                 executions.computeIfPresent(attributeRef,
                     (attributeRef1, macroExecutionTask) -> {
                         macroExecutionTask.cancel();
-                        return macroExecutionTask;
+                        return null;
                     }
                 );
                 return;
@@ -295,7 +362,8 @@ public class MacroProtocol extends AbstractProtocol {
                 return;
             }
 
-            executeMacro(attributeRef, actions, status == AttributeExecuteStatus.REQUEST_REPEATING);
+            ConcurrencyPolicy policy = concurrencyPolicies.getOrDefault(protocolConfiguration.getReferenceOrThrow(), ConcurrencyPolicy.CANCEL_PREVIOUS);
+            executeMacro(attributeRef, actions, status == AttributeExecuteStatus.REQUEST_REPEATING, policy);
             return;
         }
 
@@ -335,8 +403,38 @@ public class MacroProtocol extends AbstractProtocol {
         return macroActions;
     }
 
-    protected void executeMacro(AttributeRef attributeRef, List<MacroAction> actions, boolean repeat) {
+    protected void executeMacro(AttributeRef attributeRef, List<MacroAction> actions, boolean repeat, ConcurrencyPolicy policy) {
         MacroExecutionTask task = new MacroExecutionTask(attributeRef, actions, repeat);
+        MacroExecutionTask runningTask = executions.get(attributeRef);
+
+        if (runningTask != null) {
+            switch (policy) {
+                case IGNORE:
+                    LOG.fine("Macro is already running so ignoring execution request: " + attributeRef);
+                    return;
+                case QUEUE:
+                    LOG.fine("Macro is already running so queueing execution request: " + attributeRef);
+                    queuedExecutions.computeIfAbsent(attributeRef, ref -> new ArrayDeque<>()).add(task);
+                    return;
+                default:
+                    LOG.fine("Macro is already running so cancelling the previous execution: " + attributeRef);
+                    runningTask.stop();
+                    executions.remove(attributeRef, runningTask);
+            }
+        }
+
         task.start();
     }
+
+    protected void startQueuedExecution(AttributeRef attributeRef) {
+        Deque<MacroExecutionTask> queue = queuedExecutions.get(attributeRef);
+        MacroExecutionTask task = queue != null ? queue.poll() : null;
+
+        if (queue != null && queue.isEmpty()) {
+            queuedExecutions.remove(attributeRef);
+        }
+        if (task != null) {
+            task.start();
+        }
+    }
 }
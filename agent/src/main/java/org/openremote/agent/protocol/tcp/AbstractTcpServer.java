@@ -23,7 +23,6 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.openremote.agent.protocol.ProtocolExecutorService;
 import org.openremote.agent.protocol.io.AbstractNettyIoServer;
 
@@ -52,7 +51,7 @@ public abstract class AbstractTcpServer<T> extends AbstractNettyIoServer<T, Sock
     @Override
     protected ServerBootstrap createAndConfigureBootstrap() {
         ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.channel(NioServerSocketChannel.class);
+        bootstrap.channel(executorService.getIoEventLoopGroup().getServerSocketChannelClass());
         bootstrap.group(workerGroup);
         bootstrap.localAddress(localAddress);
         bootstrap.option(ChannelOption.SO_BACKLOG, clientLimit);
@@ -21,9 +21,7 @@ package org.openremote.agent.protocol.udp;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import org.openremote.agent.protocol.ProtocolExecutorService;
 import org.openremote.agent.protocol.io.AbstractNettyIoClient;
@@ -99,7 +97,7 @@ public class UdpIoClient<T> extends AbstractNettyIoClient<T, InetSocketAddress>
 
     @Override
     protected Class<? extends Channel> getChannelClass() {
-        return NioDatagramChannel.class;
+        return executorService.getIoEventLoopGroup().getDatagramChannelClass();
     }
 
     @Override
@@ -107,11 +105,6 @@ public class UdpIoClient<T> extends AbstractNettyIoClient<T, InetSocketAddress>
         return "udp://" + (host != null ? host : "0.0.0.0") + ":" + port + " (bindPort: " + bindPort + ")";
     }
 
-    @Override
-    protected EventLoopGroup getWorkerGroup() {
-        return new NioEventLoopGroup(1);
-    }
-
     @Override
     protected void configureChannel() {
         super.configureChannel();
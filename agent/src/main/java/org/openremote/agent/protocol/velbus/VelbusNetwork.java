@@ -37,10 +37,20 @@ import static org.openremote.agent.protocol.velbus.AbstractVelbusProtocol.LOG;
 
 public class VelbusNetwork {
 
-    protected static int DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS = 100; // Need to throttle bus writes
+    // Need to throttle bus writes; the delay adapts between the min and max depending on how the bus copes
+    protected static int DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS = 100;
+    protected static int MIN_DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS = 20;
+    protected static int MAX_DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS = 1000;
+    protected static int DELAY_STEP_MILLISECONDS = 10;
+    protected static int MAX_BUS_PAUSE_MILLISECONDS = 2000;
     protected final Integer timeInjectionIntervalSeconds;
     protected IoClient<VelbusPacket> client;
-    protected final Queue<VelbusPacket> messageQueue = new ArrayDeque<>();
+    protected final VelbusPacketQueue messageQueue = new VelbusPacketQueue();
+    protected int writeDelayMillis = DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS;
+    protected long nextWriteMillis;
+    protected long busPausedUntilMillis;
+    protected int lastWriteAddress = -1;
+    protected boolean lastWriteAcknowledged = true;
     protected List<ScheduledFuture> scheduledTasks = new ArrayList<>();
     protected ScheduledFuture timeInjector;
     protected VelbusDevice[] devices = new VelbusDevice[254];
@@ -77,9 +87,29 @@ public class VelbusNetwork {
         return this.executorService;
     }
 
-    public synchronized void sendPackets(VelbusPacket... packets) {
+    /**
+     * Queue packets resulting from user interaction; these are written before any background packets and supersede
+     * pending packets that set the same state of the same channel.
+     */
+    public void sendPackets(VelbusPacket... packets) {
+        queuePackets(false, packets);
+    }
+
+    /**
+     * Queue packets that aren't time critical (initialisation, status requests, time injection); these are only
+     * written when no interactive packets are pending.
+     */
+    public void sendBackgroundPackets(VelbusPacket... packets) {
+        queuePackets(true, packets);
+    }
+
+    protected synchronized void queuePackets(boolean isBackground, VelbusPacket... packets) {
         if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
-            messageQueue.addAll(Arrays.asList(packets));
+            for (VelbusPacket packet : packets) {
+                if (messageQueue.add(packet, isBackground)) {
+                    LOG.finest("Superseded pending packet: " + packet);
+                }
+            }
 
             if (queueProcessingTask == null) {
                 startSendingPackets();
@@ -134,7 +164,13 @@ public class VelbusNetwork {
 
         if (status == ConnectionStatus.CONNECTED) {
             // Don't process stale messages
-            messageQueue.clear();
+            synchronized (this) {
+                messageQueue.clear();
+                writeDelayMillis = DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS;
+                busPausedUntilMillis = 0;
+                lastWriteAddress = -1;
+                lastWriteAcknowledged = true;
+            }
 
             // Initialise the devices
             for (int i=0; i<devices.length; i++) {
@@ -160,6 +196,13 @@ public class VelbusNetwork {
         // Forward the packet to the device if it exists
         int address = packet.getAddress();
 
+        if (address == 0) {
+            onBusStatusReceived(packet);
+            return;
+        }
+
+        onDeviceResponse(address);
+
         if (address > 254 || address < 1) {
             return;
         }
@@ -259,29 +302,101 @@ public class VelbusNetwork {
     }
 
     protected synchronized void startSendingPackets() {
-        if (queueProcessingTask != null) {
+        if (queueProcessingTask != null || messageQueue.isEmpty()) {
             return;
         }
 
-        queueProcessingTask = getExecutorService().scheduleWithFixedDelay(
+        long now = System.currentTimeMillis();
+        long delay = Math.max(0, Math.max(nextWriteMillis, busPausedUntilMillis) - now);
+
+        queueProcessingTask = getExecutorService().schedule(
             this::doSendPacket,
-            0,
-            DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS,
+            delay,
             TimeUnit.MILLISECONDS
         );
     }
 
     protected void doSendPacket() {
-        if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
-            VelbusPacket packet = messageQueue.poll();
-            if (packet != null) {
-                VelbusPacket.OutboundCommand command = VelbusPacket.OutboundCommand.fromCode(packet.getCommand());
-                LOG.finest("Sending packet " + command + " : " + packet);
-                client.sendMessage(packet);
-            } else {
-                queueProcessingTask.cancel(false);
-                queueProcessingTask = null;
+        VelbusPacket packet;
+
+        synchronized (this) {
+            queueProcessingTask = null;
+
+            if (getConnectionStatus() != ConnectionStatus.CONNECTED) {
+                return;
+            }
+
+            if (busPausedUntilMillis > System.currentTimeMillis()) {
+                // Bus has told us to back off, resumes when it reports ready or the pause expires
+                startSendingPackets();
+                return;
             }
+
+            packet = messageQueue.poll();
+            if (packet == null) {
+                return;
+            }
+
+            if (!lastWriteAcknowledged && writeDelayMillis < DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS) {
+                // No response to the previous write so drift back towards the default delay
+                writeDelayMillis = Math.min(writeDelayMillis + DELAY_STEP_MILLISECONDS, DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS);
+            }
+            lastWriteAddress = packet.getAddress();
+            lastWriteAcknowledged = false;
+            nextWriteMillis = System.currentTimeMillis() + writeDelayMillis;
+        }
+
+        VelbusPacket.OutboundCommand command = VelbusPacket.OutboundCommand.fromCode(packet.getCommand());
+        LOG.finest("Sending packet " + command + " : " + packet);
+        client.sendMessage(packet);
+
+        synchronized (this) {
+            startSendingPackets();
+        }
+    }
+
+    /**
+     * A packet from the address the last packet was written to is treated as an acknowledgement that the bus is
+     * keeping up, so the write delay is reduced.
+     */
+    protected synchronized void onDeviceResponse(int address) {
+        if (lastWriteAcknowledged || address != lastWriteAddress) {
+            return;
+        }
+
+        lastWriteAcknowledged = true;
+        if (writeDelayMillis > MIN_DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS) {
+            writeDelayMillis = Math.max(MIN_DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS, writeDelayMillis - DELAY_STEP_MILLISECONDS);
+        }
+    }
+
+    /**
+     * Bus status packets are sent by the interface with address 0; errors and a full receive buffer back off the
+     * write delay and pause writing until the bus is ready again.
+     */
+    protected synchronized void onBusStatusReceived(VelbusPacket packet) {
+        VelbusPacket.InboundCommand command = VelbusPacket.InboundCommand.fromCode(packet.getCommand());
+        LOG.finest("Received bus status " + command + " : " + packet);
+
+        switch (command) {
+            case BUS_OFF:
+            case RX_BUFFER_FULL:
+                busPausedUntilMillis = System.currentTimeMillis() + MAX_BUS_PAUSE_MILLISECONDS;
+                // Fall through
+            case BUS_ERROR_COUNTER_STATUS:
+                writeDelayMillis = Math.min(MAX_DELAY_BETWEEN_PACKET_WRITES_MILLISECONDS, writeDelayMillis * 2);
+                LOG.fine("Velbus reported " + command + ", write delay increased to " + writeDelayMillis + "ms");
+                break;
+            case BUS_ACTIVE:
+            case RX_BUFFER_READY:
+                if (busPausedUntilMillis > 0) {
+                    busPausedUntilMillis = 0;
+                    if (queueProcessingTask != null && queueProcessingTask.cancel(false)) {
+                        queueProcessingTask = null;
+                    }
+                    startSendingPackets();
+                }
+                break;
         }
     }
 
@@ -290,7 +405,10 @@ public class VelbusNetwork {
         scheduledTasks.removeIf(Future::isDone);
 
         if (getConnectionStatus() == ConnectionStatus.CONNECTED) {
-            ScheduledFuture future = getExecutorService().schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+            // Device tasks (polling, timeouts) are coarse grained, use the shared timing wheel when available
+            ScheduledFuture future = getExecutorService() instanceof ProtocolExecutorService
+                ? ((ProtocolExecutorService) getExecutorService()).scheduleTimer(runnable, delayMillis)
+                : getExecutorService().schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
             scheduledTasks.add(future);
             return future;
         }
@@ -299,6 +417,6 @@ public class VelbusNetwork {
     }
 
     protected void doTimeInjection() {
-        sendPackets(VelbusDevice.createTimeInjectionPackets());
+        sendBackgroundPackets(VelbusDevice.createTimeInjectionPackets());
     }
 }
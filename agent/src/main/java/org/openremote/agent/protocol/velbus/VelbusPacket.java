@@ -59,7 +59,12 @@ public class VelbusPacket {
         LED_STATUS(0xF4),
         COUNTER_STATUS(0xBE),
         RAW_SENSOR_STATUS(0xA9),
-        RAW_SENSOR_TEXT_STATUS(0xAC);
+        RAW_SENSOR_TEXT_STATUS(0xAC),
+        BUS_ERROR_COUNTER_STATUS(0xDA),
+        BUS_OFF(0x09),
+        BUS_ACTIVE(0x0A),
+        RX_BUFFER_FULL(0x0B),
+        RX_BUFFER_READY(0x0C);
 
         private int code;
 
@@ -46,14 +46,14 @@ public final class VelbusPacketDecoder extends ByteToMessageDecoder {
             return;
         }
 
-        int dataSize = buf.getByte(3);
+        int dataSize = buf.getByte(3) & 0x0F; // Strip the RTR flag
 
         if (buf.readableBytes() < 6 + dataSize) {
             return;
         }
 
-        // Find end of packet
-        int endIndex = buf.indexOf(4 + dataSize, MAX_PACKET_SIZE, VelbusPacket.ETX);
+        // Find end of packet (after the checksum which could have the same value as ETX)
+        int endIndex = buf.indexOf(5 + dataSize, MAX_PACKET_SIZE, VelbusPacket.ETX);
 
         if (endIndex < 0) {
             if (buf.readableBytes() > MAX_PACKET_SIZE) {
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol.velbus;
+
+import java.util.*;
+
+import static org.openremote.agent.protocol.velbus.VelbusPacket.OutboundCommand.*;
+
+/**
+ * Queue of packets waiting to be written to the bus. Interactive packets (property writes) are always polled before
+ * background packets (initialisation, status requests and time injection). Packets that set an absolute state of a
+ * channel (e.g. a dimmer level) supersede a pending packet with the same address, command and channel: the pending
+ * packet is dropped and the new one queued at the end, so only the latest value of e.g. a dimmer ramp reaches the bus
+ * and the order relative to the other queued packets is that of the last write. Not thread safe.
+ */
+public class VelbusPacketQueue {
+
+    protected static final Set<Integer> COALESCED_COMMANDS = new HashSet<>(Arrays.asList(
+        SET_LEVEL.getCode(),
+        SET_LEVEL_LAST.getCode(),
+        LEVEL_ON_TIMER.getCode(),
+        BLIND_POSITION.getCode(),
+        TEMP_SET.getCode()
+    ));
+
+    protected final Map<Object, VelbusPacket> interactive = new LinkedHashMap<>();
+    protected final Map<Object, VelbusPacket> background = new LinkedHashMap<>();
+    protected long sequence;
+
+    /**
+     * @return <code>true</code> if the packet superseded a pending packet.
+     */
+    public boolean add(VelbusPacket packet, boolean isBackground) {
+        Map<Object, VelbusPacket> lane = isBackground ? background : interactive;
+        Object key = getKey(packet);
+        boolean superseded = lane.remove(key) != null;
+        lane.put(key, packet);
+        return superseded;
+    }
+
+    public VelbusPacket poll() {
+        VelbusPacket packet = poll(interactive);
+        return packet != null ? packet : poll(background);
+    }
+
+    public int size() {
+        return interactive.size() + background.size();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        interactive.clear();
+        background.clear();
+    }
+
+    protected Object getKey(VelbusPacket packet) {
+        if (packet.getDataSize() >= 2 && COALESCED_COMMANDS.contains(packet.getCommand())) {
+            return Arrays.asList(packet.getAddress(), packet.getCommand(), packet.getInt(1));
+        }
+        return sequence++;
+    }
+
+    protected static VelbusPacket poll(Map<Object, VelbusPacket> lane) {
+        Iterator<VelbusPacket> iterator = lane.values().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        VelbusPacket packet = iterator.next();
+        iterator.remove();
+        return packet;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "interactive=" + interactive.size() +
+            ", background=" + background.size() +
+            '}';
+    }
+}
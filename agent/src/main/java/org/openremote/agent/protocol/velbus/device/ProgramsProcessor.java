@@ -283,7 +283,7 @@ public class ProgramsProcessor extends ChannelProcessor {
 
                     device.velbusNetwork.scheduleTask(() -> {
                         List<VelbusPacket> packets = getStatusRequestPackets(device);
-                        device.velbusNetwork.sendPackets(packets.toArray(new VelbusPacket[packets.size()]));
+                        device.velbusNetwork.sendBackgroundPackets(packets.toArray(new VelbusPacket[packets.size()]));
                     }, 500);
 
                     return Collections.singletonList(
@@ -127,7 +127,7 @@ public class VelbusDevice {
             initialisationAttempts++;
 
             // Send/Resend the packets needed to initialise the device
-            velbusNetwork.sendPackets(createModuleTypePacket(baseAddress));
+            velbusNetwork.sendBackgroundPackets(createModuleTypePacket(baseAddress));
         }
     }
 
@@ -162,7 +162,7 @@ public class VelbusDevice {
                     .collect(Collectors.toList());
 
                 LOG.fine("Sending module status request packets");
-                velbusNetwork.sendPackets(statusPackets.toArray(new VelbusPacket[statusPackets.size()]));
+                velbusNetwork.sendBackgroundPackets(statusPackets.toArray(new VelbusPacket[statusPackets.size()]));
             }
         }
     }
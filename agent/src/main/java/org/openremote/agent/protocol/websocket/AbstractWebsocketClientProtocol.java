@@ -51,6 +51,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -80,6 +82,12 @@ import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_STRING_NON_EMPTY
  * When the websocket connection is established it is possible to subscribe to events by specifying the
  * {@link #META_SUBSCRIPTIONS} {@link MetaItem}, a subscription can be either a message sent over the websocket
  * or a HTTP REST API call.
+ * <p>
+ * Every time the connection is (re)established the subscriptions of the protocol configuration and of the currently
+ * linked attributes are replayed; identical subscriptions are only executed once. Websocket subscription messages are
+ * written in a single burst and HTTP subscriptions are executed concurrently (at most
+ * {@link #HTTP_SUBSCRIPTION_PARALLELISM} at a time) on the shared HTTP client. Subscriptions of attributes that are
+ * linked whilst connected are collected for {@link #ATTRIBUTE_SUBSCRIPTION_BATCH_DELAY_MILLIS} and executed together.
  */
 public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClientProtocol<T, WebsocketIoClient<T>> {
 
@@ -111,7 +119,8 @@ public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClien
     /**
      * Array of {@link WebsocketSubscription}s that should be executed either once the websocket connection is
      * established (when used on a linked {@link ProtocolConfiguration}) or when a linked attribute is linked (when
-     * used on a linked {@link Attribute}); the subscriptions are executed in the order specified in the array
+     * used on a linked {@link Attribute}); websocket subscriptions are sent in the order specified in the array, HTTP
+     * subscriptions are executed concurrently
      */
     public static final MetaItemDescriptor META_SUBSCRIPTIONS = metaItemArray(
         PROTOCOL_NAME + ":subscriptions",
@@ -132,10 +141,13 @@ public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClien
         META_PROTOCOL_OAUTH_GRANT,
         META_SUBSCRIPTIONS);
 
-    public static final int CONNECTED_SEND_DELAY_MILLIS = 2000;
+    public static final int HTTP_SUBSCRIPTION_PARALLELISM = 4;
+    public static final int ATTRIBUTE_SUBSCRIPTION_BATCH_DELAY_MILLIS = 100;
     protected ResteasyClient client;
-    protected final Map<AttributeRef, List<Runnable>> protocolConnectedTasks = new HashMap<>();
-    protected final Map<AttributeRef, Map<AttributeRef, Runnable>> attributeConnectedTasks = new HashMap<>();
+    protected final Map<AttributeRef, WebsocketSubscription<T>[]> protocolSubscriptions = new HashMap<>();
+    protected final Map<AttributeRef, Map<AttributeRef, WebsocketSubscription<T>[]>> attributeSubscriptions = new HashMap<>();
+    protected final Map<AttributeRef, Set<AttributeRef>> pendingAttributeSubscriptions = new HashMap<>();
+    protected final Map<AttributeRef, ScheduledFuture<?>> pendingAttributeSubscriptionTasks = new HashMap<>();
     protected Map<AttributeRef, MultivaluedMap<String, String>> clientHeaders = new HashMap<>();
 
     @Override
@@ -149,11 +161,10 @@ public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClien
         super.doUnlinkProtocolConfiguration(agent, protocolConfiguration);
         AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
         clientHeaders.remove(protocolRef);
-        synchronized (protocolConnectedTasks) {
-            protocolConnectedTasks.remove(protocolRef);
-        }
-        synchronized (attributeConnectedTasks) {
-            attributeConnectedTasks.remove(protocolRef);
+        synchronized (attributeSubscriptions) {
+            protocolSubscriptions.remove(protocolRef);
+            attributeSubscriptions.remove(protocolRef);
+            cancelPendingAttributeSubscriptions(protocolRef);
         }
     }
 
@@ -196,11 +207,14 @@ public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClien
 
         WebsocketIoClient<T> websocketClient = new WebsocketIoClient<>(uri, headers, oAuthGrant.orElse(null), executorService);
 
-        MultivaluedMap<String, String> finalHeaders = headers;
         clientHeaders.put(protocolRef, headers);
-        subscriptions.ifPresent(websocketSubscriptions ->
-            addProtocolConnectedTask(protocolRef, () -> doSubscriptions(protocolRef, websocketClient, finalHeaders, websocketSubscriptions))
-        );
+        synchronized (attributeSubscriptions) {
+            if (subscriptions.isPresent()) {
+                protocolSubscriptions.put(protocolRef, subscriptions.get());
+            } else {
+                protocolSubscriptions.remove(protocolRef);
+            }
+        }
 
         return websocketClient;
     }
@@ -221,11 +235,17 @@ public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClien
         Optional<WebsocketSubscription<T>[]> subscriptions = getSubscriptions(attribute);
 
         subscriptions.ifPresent(websocketSubscriptions -> {
-            MultivaluedMap<String, String> headers = clientHeaders.get(protocolRef);
-            Runnable task = () -> doSubscriptions(protocolRef, client, headers, websocketSubscriptions);
-            addAttributeConnectedTask(protocolRef, attribute.getReferenceOrThrow(), task);
-            if (client.getConnectionStatus() == ConnectionStatus.CONNECTED) {
-                executorService.schedule(task, 1000);
+            AttributeRef attributeRef = attribute.getReferenceOrThrow();
+            synchronized (attributeSubscriptions) {
+                attributeSubscriptions.computeIfAbsent(protocolRef, ref -> new LinkedHashMap<>()).put(attributeRef, websocketSubscriptions);
+
+                // Otherwise the subscriptions are executed with all others when the connection is established
+                if (client.getConnectionStatus() == ConnectionStatus.CONNECTED) {
+                    pendingAttributeSubscriptions.computeIfAbsent(protocolRef, ref -> new LinkedHashSet<>()).add(attributeRef);
+                    pendingAttributeSubscriptionTasks.computeIfAbsent(protocolRef, ref ->
+                        executorService.schedule(() -> doPendingAttributeSubscriptions(protocolRef, client), ATTRIBUTE_SUBSCRIPTION_BATCH_DELAY_MILLIS)
+                    );
+                }
             }
         });
     }
@@ -235,143 +255,183 @@ public abstract class AbstractWebsocketClientProtocol<T> extends AbstractIoClien
         AttributeRef protocolRef = protocolConfiguration.getReferenceOrThrow();
         AttributeRef attributeRef = attribute.getReferenceOrThrow();
 
-        synchronized (attributeConnectedTasks) {
-            attributeConnectedTasks.compute(protocolRef, (ref, tasks) -> {
-                if (tasks != null) {
-                    tasks.remove(attributeRef);
-                }
-                return tasks;
-            });
+        synchronized (attributeSubscriptions) {
+            Map<AttributeRef, WebsocketSubscription<T>[]> subscriptions = attributeSubscriptions.get(protocolRef);
+            if (subscriptions != null) {
+                subscriptions.remove(attributeRef);
+            }
+            Set<AttributeRef> pending = pendingAttributeSubscriptions.get(protocolRef);
+            if (pending != null) {
+                pending.remove(attributeRef);
+            }
         }
     }
 
     protected void onConnected(AttributeRef protocolRef) {
-        // Look for any subscriptions that need to be processed
-        List<Runnable> protocolTasks;
-        Map<AttributeRef, Runnable> attributeTasks;
-
-        synchronized (protocolConnectedTasks) {
-            protocolTasks = protocolConnectedTasks.get(protocolRef);
-        }
-        if (protocolTasks != null) {
-            // Execute after a delay to ensure connection is properly initialised
-            executorService.schedule(() -> protocolTasks.forEach(Runnable::run), CONNECTED_SEND_DELAY_MILLIS);
+        // Replay the subscriptions of the protocol configuration and of the attributes that are linked now, this
+        // supersedes any pending attribute subscriptions
+        List<WebsocketSubscription<T>> subscriptions = new ArrayList<>();
+
+        synchronized (attributeSubscriptions) {
+            cancelPendingAttributeSubscriptions(protocolRef);
+            WebsocketSubscription<T>[] protocolSubs = protocolSubscriptions.get(protocolRef);
+            if (protocolSubs != null) {
+                subscriptions.addAll(Arrays.asList(protocolSubs));
+            }
+            Map<AttributeRef, WebsocketSubscription<T>[]> attributeSubs = attributeSubscriptions.get(protocolRef);
+            if (attributeSubs != null) {
+                attributeSubs.values().forEach(subs -> subscriptions.addAll(Arrays.asList(subs)));
+            }
         }
 
-        synchronized (attributeConnectedTasks) {
-            attributeTasks = attributeConnectedTasks.get(protocolRef);
-        }
-        if (attributeTasks != null) {
-            // Execute after a delay to ensure connection is properly initialised
-            executorService.schedule(() -> attributeTasks.forEach((ref, task) -> task.run()), CONNECTED_SEND_DELAY_MILLIS);
+        if (!subscriptions.isEmpty()) {
+            // Connection status is updated on the IO thread so don't execute the subscriptions there
+            executorService.execute(() -> {
+                ProtocolIoClient<T, WebsocketIoClient<T>> protocolClient = protocolIoClientMap.get(protocolRef);
+                if (protocolClient != null) {
+                    doSubscriptions(protocolRef, protocolClient.client, clientHeaders.get(protocolRef), subscriptions);
+                }
+            });
         }
     }
 
-    protected void addProtocolConnectedTask(AttributeRef protocolRef, Runnable task) {
-        synchronized (protocolConnectedTasks) {
-            protocolConnectedTasks.compute(protocolRef, (ref, tasks) -> {
-                if (tasks == null) {
-                    tasks = new ArrayList<>();
+    protected void doPendingAttributeSubscriptions(AttributeRef protocolRef, WebsocketIoClient<T> websocketClient) {
+        List<WebsocketSubscription<T>> subscriptions = new ArrayList<>();
+
+        synchronized (attributeSubscriptions) {
+            pendingAttributeSubscriptionTasks.remove(protocolRef);
+            Set<AttributeRef> pending = pendingAttributeSubscriptions.remove(protocolRef);
+            Map<AttributeRef, WebsocketSubscription<T>[]> attributeSubs = attributeSubscriptions.get(protocolRef);
+            if (pending == null || attributeSubs == null) {
+                return;
+            }
+            pending.forEach(attributeRef -> {
+                WebsocketSubscription<T>[] subs = attributeSubs.get(attributeRef);
+                if (subs != null) {
+                    subscriptions.addAll(Arrays.asList(subs));
                 }
-                tasks.add(task);
-                return tasks;
             });
         }
+
+        if (!subscriptions.isEmpty() && websocketClient.getConnectionStatus() == ConnectionStatus.CONNECTED) {
+            doSubscriptions(protocolRef, websocketClient, clientHeaders.get(protocolRef), subscriptions);
+        }
     }
 
-    protected void addAttributeConnectedTask(AttributeRef protocolRef, AttributeRef attributeRef, Runnable task) {
-        synchronized (attributeConnectedTasks) {
-            attributeConnectedTasks.compute(protocolRef, (ref, tasks) -> {
-                if (tasks == null) {
-                    tasks = new HashMap<>();
-                }
-                tasks.put(attributeRef, task);
-                return tasks;
-            });
+    protected void cancelPendingAttributeSubscriptions(AttributeRef protocolRef) {
+        pendingAttributeSubscriptions.remove(protocolRef);
+        ScheduledFuture<?> pendingTask = pendingAttributeSubscriptionTasks.remove(protocolRef);
+        if (pendingTask != null) {
+            pendingTask.cancel(false);
         }
     }
 
-    protected void doSubscriptions(AttributeRef protocolRef, WebsocketIoClient<T> websocketClient, MultivaluedMap<String, String> headers, WebsocketSubscription<T>[] subscriptions) {
-        LOG.info("Executing subscriptions for websocket: " + websocketClient.getClientUri());
+    protected void doSubscriptions(AttributeRef protocolRef, WebsocketIoClient<T> websocketClient, MultivaluedMap<String, String> headers, Collection<WebsocketSubscription<T>> subscriptions) {
+        LOG.info("Executing " + subscriptions.size() + " subscription(s) for websocket: " + websocketClient.getClientUri());
 
         // Inject OAuth header
         if (!TextUtil.isNullOrEmpty(websocketClient.authHeaderValue)) {
-            if (headers == null) {
-                headers = new MultivaluedHashMap<>();
-            }
+            headers = headers != null ? new MultivaluedHashMap<>(headers) : new MultivaluedHashMap<>();
             headers.remove(HttpHeaders.AUTHORIZATION);
             headers.add(HttpHeaders.AUTHORIZATION, websocketClient.authHeaderValue);
         }
 
+        // Several attributes can use the same subscription, only execute it once
+        Map<String, WebsocketSubscription<T>> uniqueSubscriptions = new LinkedHashMap<>();
+        subscriptions.forEach(subscription -> {
+            try {
+                uniqueSubscriptions.putIfAbsent(Container.JSON.writeValueAsString(subscription), subscription);
+            } catch (IOException e) {
+                uniqueSubscriptions.put(UUID.randomUUID().toString(), subscription);
+            }
+        });
+
+        List<T> messages = new ArrayList<>();
+        Queue<WebsocketHttpSubscription> httpSubscriptions = new ConcurrentLinkedQueue<>();
+        uniqueSubscriptions.values().forEach(subscription -> {
+            if (subscription instanceof WebsocketHttpSubscription) {
+                httpSubscriptions.add((WebsocketHttpSubscription) subscription);
+            } else {
+                messages.add(subscription.body);
+            }
+        });
+
+        websocketClient.sendMessages(messages);
+
+        // Each worker executes queued HTTP subscriptions until there are none left
         MultivaluedMap<String, String> finalHeaders = headers;
-        Arrays.stream(subscriptions).forEach(
-            subscription -> doSubscription(websocketClient, finalHeaders, subscription)
-        );
+        int workers = Math.min(HTTP_SUBSCRIPTION_PARALLELISM, httpSubscriptions.size());
+        for (int i = 0; i < workers; i++) {
+            executorService.execute(() -> {
+                WebsocketHttpSubscription httpSubscription;
+                while ((httpSubscription = httpSubscriptions.poll()) != null) {
+                    try {
+                        doHttpSubscription(finalHeaders, httpSubscription);
+                    } catch (Exception e) {
+                        LOG.log(Level.WARNING, "WebsocketHttpSubscription failed: " + httpSubscription.uri, e);
+                    }
+                }
+            });
+        }
     }
 
-    protected void doSubscription(WebsocketIoClient<T> websocketClient, MultivaluedMap<String, String> headers, WebsocketSubscription<T> subscription) {
-        if (subscription instanceof WebsocketHttpSubscription) {
-            WebsocketHttpSubscription httpSubscription = (WebsocketHttpSubscription)subscription;
-
-            if (TextUtil.isNullOrEmpty(httpSubscription.uri)) {
-                LOG.warning("Websocket subscription missing or empty URI so skipping: " + subscription);
-                return;
-            }
+    protected void doHttpSubscription(MultivaluedMap<String, String> headers, WebsocketHttpSubscription httpSubscription) {
+        if (TextUtil.isNullOrEmpty(httpSubscription.uri)) {
+            LOG.warning("Websocket subscription missing or empty URI so skipping: " + httpSubscription);
+            return;
+        }
 
-            URI uri;
+        URI uri;
 
-            try {
-                uri = new URI(httpSubscription.uri);
-            } catch (URISyntaxException e) {
-                LOG.warning("Websocket subscription invalid URI so skipping: " + subscription);
-                return;
-            }
+        try {
+            uri = new URI(httpSubscription.uri);
+        } catch (URISyntaxException e) {
+            LOG.warning("Websocket subscription invalid URI so skipping: " + httpSubscription);
+            return;
+        }
 
-            if (httpSubscription.method == null) {
-                httpSubscription.method = WebsocketHttpSubscription.Method.valueOf(DEFAULT_HTTP_METHOD);
-            }
+        if (httpSubscription.method == null) {
+            httpSubscription.method = WebsocketHttpSubscription.Method.valueOf(DEFAULT_HTTP_METHOD);
+        }
 
-            if (TextUtil.isNullOrEmpty(httpSubscription.contentType)) {
-                httpSubscription.contentType = DEFAULT_CONTENT_TYPE;
-            }
+        if (TextUtil.isNullOrEmpty(httpSubscription.contentType)) {
+            httpSubscription.contentType = DEFAULT_CONTENT_TYPE;
+        }
 
-            if (httpSubscription.headers != null) {
-                headers = headers != null ? new MultivaluedHashMap<String, String>(headers) : new MultivaluedHashMap<>();
-                @SuppressWarnings("OptionalGetWithoutIsPresent")
-                MultivaluedMap<String, String> subscriptionHeaders = getMultivaluedMap(httpSubscription.headers, false).get();
-                MultivaluedMap<String, String> finalHeaders = headers;
-                subscriptionHeaders.forEach((header, values) -> {
-                    if (values == null || values.isEmpty()) {
-                        finalHeaders.remove(header);
-                    } else {
-                        finalHeaders.addAll(header, values);
-                    }
-                });
-            }
+        if (httpSubscription.headers != null) {
+            headers = headers != null ? new MultivaluedHashMap<String, String>(headers) : new MultivaluedHashMap<>();
+            @SuppressWarnings("OptionalGetWithoutIsPresent")
+            MultivaluedMap<String, String> subscriptionHeaders = getMultivaluedMap(httpSubscription.headers, false).get();
+            MultivaluedMap<String, String> finalHeaders = headers;
+            subscriptionHeaders.forEach((header, values) -> {
+                if (values == null || values.isEmpty()) {
+                    finalHeaders.remove(header);
+                } else {
+                    finalHeaders.addAll(header, values);
+                }
+            });
+        }
 
-            WebTargetBuilder webTargetBuilder = new WebTargetBuilder(client, uri);
+        WebTargetBuilder webTargetBuilder = new WebTargetBuilder(client, uri);
 
-            if (headers != null) {
-                webTargetBuilder.setInjectHeaders(headers);
-            }
+        if (headers != null) {
+            webTargetBuilder.setInjectHeaders(headers);
+        }
 
-            LOG.fine("Creating web target client for subscription '" + uri + "'");
-            ResteasyWebTarget target = webTargetBuilder.build();
+        LOG.fine("Creating web target client for subscription '" + uri + "'");
+        ResteasyWebTarget target = webTargetBuilder.build();
 
-            Invocation invocation;
+        Invocation invocation;
 
-            if (httpSubscription.body == null) {
-                invocation = target.request().build(httpSubscription.method.toString());
-            } else {
-                invocation = target.request().build(httpSubscription.method.toString(), Entity.entity(httpSubscription.body, httpSubscription.contentType));
-            }
-            Response response = invocation.invoke();
-            response.close();
-            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
-                LOG.warning("WebsocketHttpSubscription returned an un-successful response code: " + response.getStatus());
-            }
+        if (httpSubscription.body == null) {
+            invocation = target.request().build(httpSubscription.method.toString());
         } else {
-            websocketClient.sendMessage(subscription.body);
+            invocation = target.request().build(httpSubscription.method.toString(), Entity.entity(httpSubscription.body, httpSubscription.contentType));
+        }
+        Response response = invocation.invoke();
+        response.close();
+        if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            LOG.warning("WebsocketHttpSubscription returned an un-successful response code: " + response.getStatus());
         }
     }
 
@@ -21,8 +21,6 @@ package org.openremote.agent.protocol.websocket;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.codec.http.websocketx.*;
@@ -180,7 +178,7 @@ public class WebsocketIoClient<T> extends AbstractNettyIoClient<T, InetSocketAdd
 
     @Override
     protected Class<? extends Channel> getChannelClass() {
-        return NioSocketChannel.class;
+        return executorService.getIoEventLoopGroup().getSocketChannelClass();
     }
 
     @Override
@@ -188,11 +186,6 @@ public class WebsocketIoClient<T> extends AbstractNettyIoClient<T, InetSocketAdd
         return uri.toString();
     }
 
-    @Override
-    protected EventLoopGroup getWorkerGroup() {
-        return new NioEventLoopGroup(1);
-    }
-
     @Override
     protected ChannelFuture startChannel() {
         return bootstrap.connect(new InetSocketAddress(host, port));
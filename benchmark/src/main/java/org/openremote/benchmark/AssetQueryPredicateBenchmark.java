@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.manager.rules.AssetQueryPredicate;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.TenantPredicate;
+import org.openremote.model.rules.AssetState;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.openremote.model.asset.AssetType.ROOM;
+import static org.openremote.model.asset.AssetType.THING;
+import static org.openremote.model.query.AssetQuery.Operator.GREATER_THAN;
+
+/**
+ * Evaluation of typical rule conditions against single asset states of the demo, as every rule LHS does for every
+ * fact on every firing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetQueryPredicateBenchmark {
+
+    protected AssetState[] assetStates;
+    protected AssetQueryPredicate typeAndNumberPredicate;
+    protected AssetQueryPredicate tenantAndBooleanPredicate;
+    protected AssetQueryPredicate parentAndNamePredicate;
+    protected int index;
+
+    @Setup
+    public void setup() {
+        DemoFixtures fixtures = new DemoFixtures(10, 2);
+        assetStates = fixtures.assetStates.toArray(new AssetState[0]);
+
+        typeAndNumberPredicate = new AssetQueryPredicate(
+            fixtures.timerService,
+            null,
+            new AssetQuery().types(ROOM, THING).attributeValue("co2Level", GREATER_THAN, 500)
+        );
+        tenantAndBooleanPredicate = new AssetQueryPredicate(
+            fixtures.timerService,
+            null,
+            new AssetQuery().tenant(new TenantPredicate(DemoFixtures.REALM_BUILDING)).attributeValue("presenceDetected", true)
+        );
+        parentAndNamePredicate = new AssetQueryPredicate(
+            fixtures.timerService,
+            null,
+            new AssetQuery().parents(fixtures.smartBuilding.getId()).attributeName("alarmEnabled")
+        );
+    }
+
+    protected AssetState next() {
+        index = (index + 1) % assetStates.length;
+        return assetStates[index];
+    }
+
+    @Benchmark
+    public boolean typeAndNumber() {
+        return typeAndNumberPredicate.test(next());
+    }
+
+    @Benchmark
+    public boolean tenantAndBoolean() {
+        return tenantAndBooleanPredicate.test(next());
+    }
+
+    @Benchmark
+    public boolean parentAndName() {
+        return parentAndNamePredicate.test(next());
+    }
+}
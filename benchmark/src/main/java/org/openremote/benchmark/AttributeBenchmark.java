@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.attribute.MetaItem;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.openremote.model.attribute.MetaItemType.*;
+
+/**
+ * Meta item lookup on demo attributes, for both present and absent items, as done for every attribute event by
+ * processors checking {@link org.openremote.model.attribute.MetaItemType} flags.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeBenchmark {
+
+    protected AssetAttribute[] attributes;
+    protected int index;
+
+    @Setup
+    public void setup() {
+        DemoFixtures fixtures = new DemoFixtures(1, 1);
+        attributes = fixtures.assets.stream()
+            .flatMap(asset -> asset.getAttributesStream())
+            .filter(attribute -> attribute.hasMetaItems())
+            .toArray(AssetAttribute[]::new);
+    }
+
+    protected AssetAttribute next() {
+        index = (index + 1) % attributes.length;
+        return attributes[index];
+    }
+
+    @Benchmark
+    public Optional<MetaItem> getMetaItemPresent() {
+        return next().getMetaItem(LABEL);
+    }
+
+    @Benchmark
+    public Optional<MetaItem> getMetaItemAbsent() {
+        return next().getMetaItem(PROTOCOL_CONFIGURATION);
+    }
+
+    @Benchmark
+    public Optional<MetaItem> getMetaItemByName() {
+        return next().getMetaItem(AGENT_LINK.getUrn());
+    }
+}
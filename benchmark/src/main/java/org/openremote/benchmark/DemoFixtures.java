@@ -0,0 +1,234 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openremote.agent.protocol.simulator.SimulatorProtocol;
+import org.openremote.container.Container;
+import org.openremote.container.timer.TimerService;
+import org.openremote.manager.asset.AssetProcessingService;
+import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.concurrent.ManagerExecutorService;
+import org.openremote.manager.datapoint.AssetDatapointService;
+import org.openremote.manager.persistence.ManagerPersistenceService;
+import org.openremote.manager.predicted.AssetPredictedDatapointService;
+import org.openremote.manager.rules.RulesetStorageService;
+import org.openremote.manager.security.ManagerIdentityService;
+import org.openremote.manager.setup.AbstractManagerSetup;
+import org.openremote.manager.setup.SetupService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.attribute.AttributeType;
+import org.openremote.model.attribute.MetaItem;
+import org.openremote.model.geo.GeoJSONPoint;
+import org.openremote.model.rules.AssetState;
+import org.openremote.model.simulator.element.NumberSimulatorElement;
+import org.openremote.model.util.UniqueIdentifierGenerator;
+import org.openremote.model.value.Values;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.openremote.manager.setup.builtin.ManagerDemoSetup.AREA_1_LOCATION;
+import static org.openremote.manager.setup.builtin.ManagerDemoSetup.SMART_BUILDING_LOCATION;
+import static org.openremote.model.asset.AssetType.*;
+import static org.openremote.model.asset.agent.ProtocolConfiguration.initProtocolConfiguration;
+import static org.openremote.model.attribute.AttributeValueType.NUMBER;
+import static org.openremote.model.attribute.MetaItemType.*;
+
+/**
+ * Builds the asset structure of {@link org.openremote.manager.setup.builtin.ManagerDemoSetup} in memory, using the
+ * same demo asset factories, so benchmarks run against realistic attributes and meta without a database. The
+ * apartment and area blocks of the demo are repeated to reach a meaningful fact and subscription count.
+ */
+public class DemoFixtures extends AbstractManagerSetup {
+
+    public static final String REALM_BUILDING = "building";
+    public static final String REALM_CITY = "smartcity";
+
+    public final TimerService timerService;
+    public final List<Asset> assets = new ArrayList<>();
+    public final Map<String, Asset> assetsById = new HashMap<>();
+    public final List<AssetState> assetStates = new ArrayList<>();
+    public final List<AttributeEvent> attributeEvents = new ArrayList<>();
+    public Asset smartBuilding;
+    public Asset smartCity;
+
+    public DemoFixtures(int apartments, int areas) {
+        this(createContainer(), apartments, areas);
+    }
+
+    protected DemoFixtures(Container container, int apartments, int areas) {
+        super(container);
+        this.timerService = container.getService(TimerService.class);
+        try {
+            timerService.init(container);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        smartBuilding = add(new Asset("Smart Building", BUILDING, null, REALM_BUILDING)
+            .setAttributes(
+                new AssetAttribute(AttributeType.LOCATION, SMART_BUILDING_LOCATION.toValue()).addMeta(SHOW_ON_DASHBOARD),
+                new AssetAttribute(AttributeType.GEO_STREET, Values.create("Kastanjelaan 500")),
+                new AssetAttribute(AttributeType.GEO_POSTAL_CODE, Values.create(5616)),
+                new AssetAttribute(AttributeType.GEO_CITY, Values.create("Eindhoven")),
+                new AssetAttribute(AttributeType.GEO_COUNTRY, Values.create("Netherlands"))
+            ));
+
+        for (int i = 1; i <= apartments; i++) {
+            createApartment(i);
+        }
+
+        smartCity = add(new Asset("Smart City", CITY, null, REALM_CITY)
+            .setAttributes(
+                new AssetAttribute(AttributeType.LOCATION, AREA_1_LOCATION.toValue()),
+                new AssetAttribute(AttributeType.GEO_CITY, Values.create("Eindhoven")),
+                new AssetAttribute(AttributeType.GEO_COUNTRY, Values.create("Netherlands"))
+            ));
+
+        for (int i = 1; i <= areas; i++) {
+            createArea(i);
+        }
+
+        long timestamp = timerService.getCurrentTimeMillis();
+        for (Asset asset : assets) {
+            asset.getAttributesStream().forEach(attribute -> {
+                attribute.setValueTimestamp(timestamp);
+                assetStates.add(new AssetState(asset, attribute, AttributeEvent.Source.SENSOR));
+                attributeEvents.add(
+                    new AttributeEvent(asset.getId(), attribute.getNameOrThrow(), attribute.getValue().orElse(null), timestamp)
+                        .setParentId(asset.getParentId())
+                        .setRealm(asset.getRealm())
+                );
+            });
+        }
+    }
+
+    protected void createApartment(int index) {
+        Asset apartment = add(createDemoApartment(smartBuilding, "Apartment " + index, new GeoJSONPoint(5.454233, 51.446800)));
+
+        Asset serviceAgent = add(new Asset("Service Agent (Simulator)", AGENT, apartment));
+        serviceAgent.addAttributes(
+            initProtocolConfiguration(new AssetAttribute("apartmentSimulator"), SimulatorProtocol.PROTOCOL_NAME)
+                .addMeta(new MetaItem(SimulatorProtocol.CONFIG_MODE, Values.create(SimulatorProtocol.Mode.WRITE_THROUGH_IMMEDIATE.toString())))
+        );
+        Supplier<MetaItem[]> agentLinker = () -> new MetaItem[]{
+            new MetaItem(AGENT_LINK, new AttributeRef(serviceAgent.getId(), "apartmentSimulator").toArrayValue()),
+            new MetaItem(SimulatorProtocol.SIMULATOR_ELEMENT, Values.create(NumberSimulatorElement.ELEMENT_NAME))
+        };
+
+        Asset livingRoom = add(createDemoApartmentRoom(apartment, "Living Room " + index)
+            .addAttributes(
+                new AssetAttribute(AttributeType.LOCATION, new GeoJSONPoint(5.454213, 51.446884).toValue()),
+                new AssetAttribute("lightsCeiling", NUMBER, Values.create(0))
+                    .setMeta(
+                        new MetaItem(RANGE_MIN, Values.create(0)),
+                        new MetaItem(RANGE_MAX, Values.create(100)),
+                        new MetaItem(LABEL, Values.create("Ceiling lights (range)")),
+                        new MetaItem(ACCESS_RESTRICTED_READ, Values.create(true)),
+                        new MetaItem(ACCESS_RESTRICTED_WRITE, Values.create(true))
+                    )
+            ));
+        addDemoApartmentRoomMotionSensor(livingRoom, true, agentLinker);
+        addDemoApartmentRoomCO2Sensor(livingRoom, true, agentLinker);
+        addDemoApartmentRoomHumiditySensor(livingRoom, true, agentLinker);
+        addDemoApartmentRoomThermometer(livingRoom, true, agentLinker);
+        addDemoApartmentTemperatureControl(livingRoom, true, agentLinker);
+
+        Asset kitchen = add(createDemoApartmentRoom(apartment, "Kitchen " + index));
+        addDemoApartmentRoomMotionSensor(kitchen, true, agentLinker);
+
+        Asset hallway = add(createDemoApartmentRoom(apartment, "Hallway " + index));
+        addDemoApartmentRoomMotionSensor(hallway, true, agentLinker);
+
+        Asset bedroom = add(createDemoApartmentRoom(apartment, "Bedroom " + index));
+        addDemoApartmentRoomCO2Sensor(bedroom, true, agentLinker);
+        addDemoApartmentRoomHumiditySensor(bedroom, true, agentLinker);
+        addDemoApartmentRoomThermometer(bedroom, true, agentLinker);
+        addDemoApartmentTemperatureControl(bedroom, true, agentLinker);
+
+        Asset bathroom = add(createDemoApartmentRoom(apartment, "Bathroom " + index));
+        addDemoApartmentRoomThermometer(bathroom, true, agentLinker);
+        addDemoApartmentTemperatureControl(bathroom, true, agentLinker);
+    }
+
+    protected void createArea(int index) {
+        Asset area = add(new Asset("Area " + index, AREA, smartCity)
+            .setAttributes(
+                new AssetAttribute(AttributeType.LOCATION, AREA_1_LOCATION.toValue()),
+                new AssetAttribute(AttributeType.GEO_POSTAL_CODE, Values.create(5616)),
+                new AssetAttribute(AttributeType.GEO_CITY, Values.create("Eindhoven")),
+                new AssetAttribute(AttributeType.GEO_COUNTRY, Values.create("Netherlands"))
+            ));
+
+        Asset serviceAgent = add(new Asset("Service Agent (Simulator)", AGENT, area));
+        serviceAgent.addAttributes(
+            initProtocolConfiguration(new AssetAttribute("citySimulator"), SimulatorProtocol.PROTOCOL_NAME)
+        );
+        Supplier<MetaItem[]> agentLinker = () -> new MetaItem[]{
+            new MetaItem(AGENT_LINK, new AttributeRef(serviceAgent.getId(), "citySimulator").toArrayValue()),
+            new MetaItem(SimulatorProtocol.SIMULATOR_ELEMENT, Values.create(NumberSimulatorElement.ELEMENT_NAME))
+        };
+
+        add(createDemoPeopleCounterAsset("PeopleCounter " + index, area, new GeoJSONPoint(5.477126, 51.439137), agentLinker));
+        add(createDemoMicrophoneAsset("Microphone " + index, area, new GeoJSONPoint(5.478092, 51.438655), agentLinker));
+        add(createDemoEnvironmentAsset("Environment " + index, area, new GeoJSONPoint(5.478907, 51.438943), agentLinker));
+        add(createDemoLightAsset("Light " + index + "A", area, new GeoJSONPoint(5.476111, 51.438492)));
+        add(createDemoLightAsset("Light " + index + "B", area, new GeoJSONPoint(5.477272, 51.439214)));
+    }
+
+    /**
+     * Assigns the identifier and path the storage service would on merge; the demo factories only set the parent,
+     * so this must be called before any children of the asset are created.
+     */
+    protected Asset add(Asset asset) {
+        asset.setId(UniqueIdentifierGenerator.generateId());
+        Asset parent = asset.getParentId() != null ? assetsById.get(asset.getParentId()) : null;
+        String[] path = new String[parent != null ? parent.getPath().length + 1 : 1];
+        path[0] = asset.getId();
+        if (parent != null) {
+            System.arraycopy(parent.getPath(), 0, path, 1, parent.getPath().length);
+        }
+        asset.setPath(path);
+        assets.add(asset);
+        assetsById.put(asset.getId(), asset);
+        return asset;
+    }
+
+    protected static Container createContainer() {
+        return new Container(
+            Collections.singletonMap(TimerService.TIMER_CLOCK_TYPE, TimerService.Clock.PSEUDO.toString()),
+            Arrays.asList(
+                new TimerService(),
+                new ManagerExecutorService(),
+                new ManagerPersistenceService(),
+                new ManagerIdentityService(),
+                new AssetStorageService(),
+                new AssetProcessingService(),
+                new AssetDatapointService(),
+                new AssetPredictedDatapointService(),
+                new RulesetStorageService(),
+                new SetupService()
+            )
+        );
+    }
+}
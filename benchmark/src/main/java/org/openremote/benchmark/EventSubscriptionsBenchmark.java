@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.openjdk.jmh.annotations.*;
+import org.openremote.manager.event.EventSubscriptions;
+import org.openremote.model.asset.AssetFilter;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.shared.EventSubscription;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.openremote.agent.protocol.ProtocolClientEventService.HEADER_ACCESS_RESTRICTED;
+
+/**
+ * Fan-out of demo attribute events to client sessions; every session subscribes to attribute events of a handful of
+ * assets and one in ten sessions subscribes without a filter, like a manager UI asset viewer does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSubscriptionsBenchmark {
+
+    @Param({"1000", "5000"})
+    public int sessions;
+
+    protected EventSubscriptions eventSubscriptions;
+    protected Exchange[] exchanges;
+    protected int index;
+
+    @Setup
+    public void setup() {
+        DemoFixtures fixtures = new DemoFixtures(10, 2);
+        eventSubscriptions = new EventSubscriptions(fixtures.timerService);
+
+        for (int i = 0; i < sessions; i++) {
+            String sessionKey = "session-" + i;
+            if (i % 10 == 0) {
+                eventSubscriptions.createOrUpdate(sessionKey, false, new EventSubscription<>(AttributeEvent.class));
+                continue;
+            }
+            for (int j = 0; j < 3; j++) {
+                String assetId = fixtures.assets.get((i * 3 + j) % fixtures.assets.size()).getId();
+                eventSubscriptions.createOrUpdate(
+                    sessionKey,
+                    i % 2 == 0,
+                    new EventSubscription<>(AttributeEvent.class, new AssetFilter<AttributeEvent>(assetId), sessionKey + "-" + j)
+                );
+            }
+        }
+
+        DefaultCamelContext camelContext = new DefaultCamelContext();
+        exchanges = fixtures.attributeEvents.stream().map(event -> {
+            Exchange exchange = new DefaultExchange(camelContext);
+            exchange.getIn().setBody(event);
+            exchange.getIn().setHeader(HEADER_ACCESS_RESTRICTED, false);
+            return exchange;
+        }).toArray(Exchange[]::new);
+    }
+
+    @Benchmark
+    public List<Message> splitForSubscribers() {
+        index = (index + 1) % exchanges.length;
+        return eventSubscriptions.splitForSubscribers(exchanges[index]);
+    }
+}
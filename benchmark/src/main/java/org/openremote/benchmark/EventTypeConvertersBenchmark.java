@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.manager.event.EventTypeConverters;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.event.TriggeredEventSubscription;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of demo attribute events to and from the client message format, once per subscribed session and
+ * once per received message respectively.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventTypeConvertersBenchmark {
+
+    protected EventTypeConverters converters;
+    protected AttributeEvent[] events;
+    protected TriggeredEventSubscription<?>[] triggeredEventSubscriptions;
+    protected String[] messages;
+    protected int index;
+
+    @Setup
+    public void setup() throws Exception {
+        DemoFixtures fixtures = new DemoFixtures(1, 1);
+        converters = new EventTypeConverters();
+        events = fixtures.attributeEvents.toArray(new AttributeEvent[0]);
+        triggeredEventSubscriptions = new TriggeredEventSubscription<?>[events.length];
+        messages = new String[events.length];
+        for (int i = 0; i < events.length; i++) {
+            triggeredEventSubscriptions[i] = new TriggeredEventSubscription<>(Collections.singletonList(events[i]), "subscription-" + i);
+            messages[i] = converters.writeEvent(events[i], null);
+        }
+    }
+
+    protected int next() {
+        index = (index + 1) % events.length;
+        return index;
+    }
+
+    @Benchmark
+    public String writeEvent() throws Exception {
+        return converters.writeEvent(events[next()], null);
+    }
+
+    @Benchmark
+    public String writeTriggeredEventSubscription() throws Exception {
+        return converters.writeTriggeredEventSubscription(triggeredEventSubscriptions[next()], null);
+    }
+
+    @Benchmark
+    public SharedEvent readEvent() throws Exception {
+        return converters.readEvent(messages[next()], null);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.manager.map.MapService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent vector tile lookups against a generated mbtiles file, with and without the tile cache; compare the
+ * throughput of the single and multi-threaded runs to see how tile serving scales with the connection pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapTileBenchmark {
+
+    public static final int ZOOM = 10;
+    public static final int TILES_PER_SIDE = 64;
+    public static final int TILE_SIZE = 16 * 1024;
+
+    protected static class BenchmarkMapService extends MapService {
+
+        protected BenchmarkMapService(Path mapTilesPath, int connections, int cacheSize) throws Exception {
+            this.tileCacheMaxBytes = cacheSize;
+            openTileConnections(mapTilesPath, connections);
+        }
+    }
+
+    @Param({"0", "33554432"})
+    public int cacheSize;
+
+    protected Path mapTilesPath;
+    protected BenchmarkMapService mapService;
+
+    @Setup
+    public void setup() throws Exception {
+        mapTilesPath = Files.createTempFile("benchmark", ".mbtiles");
+        Random random = new Random(1);
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + mapTilesPath.toAbsolutePath())) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("create table METADATA (NAME text, VALUE text)");
+                statement.execute("create table TILES (ZOOM_LEVEL integer, TILE_COLUMN integer, TILE_ROW integer, TILE_DATA blob)");
+                statement.execute("create unique index TILE_INDEX on TILES (ZOOM_LEVEL, TILE_COLUMN, TILE_ROW)");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("insert into TILES values (?, ?, ?, ?)")) {
+                for (int column = 0; column < TILES_PER_SIDE; column++) {
+                    for (int row = 0; row < TILES_PER_SIDE; row++) {
+                        byte[] data = new byte[TILE_SIZE / 2 + random.nextInt(TILE_SIZE)];
+                        random.nextBytes(data);
+                        insert.setInt(1, ZOOM);
+                        insert.setInt(2, column);
+                        insert.setInt(3, (1 << ZOOM) - 1 - row);
+                        insert.setBytes(4, data);
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+
+        mapService = new BenchmarkMapService(mapTilesPath, Math.min(8, Runtime.getRuntime().availableProcessors()), cacheSize);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mapService.stop(null);
+        Files.deleteIfExists(mapTilesPath);
+    }
+
+    /**
+     * Most requests go to a small area of the map, as when many clients look at the same site.
+     */
+    protected MapService.MapTile nextTile() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int extent = random.nextInt(10) < 8 ? 8 : TILES_PER_SIDE;
+        return mapService.getMapTile(ZOOM, random.nextInt(extent), random.nextInt(extent));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public MapService.MapTile singleThread() {
+        return nextTile();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MapService.MapTile fourThreads() {
+        return nextTile();
+    }
+}
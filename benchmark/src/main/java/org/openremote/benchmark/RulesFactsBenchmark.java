@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.manager.rules.RulesFacts;
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.rules.AssetState;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.openremote.model.asset.AssetType.ROOM;
+import static org.openremote.model.query.AssetQuery.Operator.GREATER_THAN;
+
+/**
+ * Fact updates and asset state matching of a rules engine loaded with all demo asset states.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesFactsBenchmark {
+
+    private static final Logger LOG = Logger.getLogger(RulesFactsBenchmark.class.getName());
+
+    @Param({"10", "100"})
+    public int apartments;
+
+    protected RulesFacts facts;
+    protected AssetState[] updates;
+    protected AssetQuery roomCo2Query;
+    protected AssetQuery assetIdQuery;
+    protected int index;
+
+    @Setup
+    public void setup() {
+        DemoFixtures fixtures = new DemoFixtures(apartments, apartments / 10);
+        facts = new RulesFacts(fixtures.timerService, null, null, this, LOG);
+        fixtures.assetStates.forEach(facts::putAssetState);
+
+        // Fresh instances of every state, replacing the equal fact as the rules service does on attribute events
+        updates = fixtures.assetStates.stream().map(AssetState::new).toArray(AssetState[]::new);
+
+        roomCo2Query = new AssetQuery().types(ROOM).attributeValue("co2Level", GREATER_THAN, 500);
+        assetIdQuery = new AssetQuery().ids(fixtures.assets.get(fixtures.assets.size() / 2).getId());
+    }
+
+    protected AssetState next() {
+        index = (index + 1) % updates.length;
+        return updates[index];
+    }
+
+    @Benchmark
+    public RulesFacts putAssetState() {
+        return facts.putAssetState(next());
+    }
+
+    @Benchmark
+    public long matchAssetStateByType() {
+        return facts.matchAssetState(roomCo2Query).count();
+    }
+
+    @Benchmark
+    public long matchAssetStateById() {
+        return facts.matchAssetState(assetIdQuery).count();
+    }
+}
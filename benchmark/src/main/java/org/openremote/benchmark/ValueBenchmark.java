@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Value;
+import org.openremote.model.value.Values;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON parsing, serialization and copying of the value model; asset attribute objects of the demo apartment and
+ * city assets are the payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueBenchmark {
+
+    protected ObjectValue[] attributeObjects;
+    protected String[] attributeJson;
+    protected int index;
+
+    @Setup
+    public void setup() {
+        DemoFixtures fixtures = new DemoFixtures(1, 1);
+        attributeObjects = fixtures.assets.stream().map(Asset::getAttributes).toArray(ObjectValue[]::new);
+        attributeJson = fixtures.assets.stream().map(asset -> asset.getAttributes().toJson()).toArray(String[]::new);
+    }
+
+    protected int next() {
+        index = (index + 1) % attributeJson.length;
+        return index;
+    }
+
+    @Benchmark
+    public Value parse() {
+        return Values.parse(attributeJson[next()]).orElse(null);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return attributeObjects[next()].toJson();
+    }
+
+    @Benchmark
+    public ObjectValue deepCopy() {
+        return attributeObjects[next()].deepCopy();
+    }
+}
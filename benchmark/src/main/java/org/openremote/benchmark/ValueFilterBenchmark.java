@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openremote.agent.protocol.Protocol;
+import org.openremote.container.Container;
+import org.openremote.manager.agent.AgentService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.attribute.MetaItem;
+import org.openremote.model.value.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Value filters as configured on agent linked attributes, applied to demo payloads: a regex on a sensor reading
+ * string and a JSONPath into an asset attributes object, on their own and chained. The inbound benchmarks process a
+ * JSON message through a JSONPath and regex chain, once with the filters deserialized from the attribute meta for
+ * every value and once with the filters extracted when the attribute was linked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueFilterBenchmark {
+
+    /**
+     * Filters only need the JSONPath parser that is otherwise configured when the service is initialised.
+     */
+    static class FilterAgentService extends AgentService {
+        FilterAgentService() {
+            jsonPathConfiguration = createJsonPathConfiguration();
+        }
+    }
+
+    protected AgentService agentService;
+    protected Value stringValue;
+    protected Value objectValue;
+    protected ValueFilter<?>[] regexFilters;
+    protected ValueFilter<?>[] jsonPathFilters;
+    protected ValueFilter<?>[] chainedFilters;
+    protected AssetAttribute linkedAttribute;
+    protected ValueFilter<?>[] linkedAttributeFilters;
+    protected Value messageValue;
+
+    @Setup
+    public void setup() {
+        DemoFixtures fixtures = new DemoFixtures(1, 1);
+        agentService = new FilterAgentService();
+
+        Asset livingRoom = fixtures.assets.stream()
+            .filter(asset -> asset.hasAttribute("currentTemperature"))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("Missing demo room with temperature"));
+        objectValue = livingRoom.getAttributes();
+        stringValue = Values.create("sensor=livingroom;temperature=21.5;co2=340;humidity=45");
+
+        regexFilters = new ValueFilter[]{
+            new RegexValueFilter("temperature=(\\d+\\.\\d+)", 1, 0)
+        };
+        jsonPathFilters = new ValueFilter[]{
+            new JsonPathFilter("$.currentTemperature.meta[*].value", true, false)
+        };
+        chainedFilters = new ValueFilter[]{
+            new JsonPathFilter("$.currentTemperature.meta[*].value", true, false),
+            new SubStringValueFilter(0, 7)
+        };
+
+        linkedAttribute = new AssetAttribute("temperature").addMeta(
+            new MetaItem(Protocol.META_ATTRIBUTE_VALUE_FILTERS, Values.convertToValue(new ValueFilter[]{
+                new JsonPathFilter("$.readings[?(@.sensor == 'livingroom')].display", true, false),
+                new RegexValueFilter("(\\d+\\.\\d+)", 1, 0)
+            }, Container.JSON.writer()).orElseThrow(IllegalStateException::new))
+        );
+        linkedAttributeFilters = Protocol.getLinkedAttributeValueFilters(linkedAttribute).orElseThrow(IllegalStateException::new);
+        messageValue = Values.create("{\"readings\": [" +
+            "{\"sensor\": \"bedroom\", \"display\": \"19.0 C\"}," +
+            "{\"sensor\": \"livingroom\", \"display\": \"21.5 C\"}]}");
+    }
+
+    @Benchmark
+    public Value regex() {
+        return agentService.applyValueFilters(stringValue, regexFilters);
+    }
+
+    @Benchmark
+    public Value jsonPath() {
+        return agentService.applyValueFilters(objectValue, jsonPathFilters);
+    }
+
+    @Benchmark
+    public Value chained() {
+        return agentService.applyValueFilters(objectValue, chainedFilters);
+    }
+
+    @Benchmark
+    public Value inboundFiltersPerValue() {
+        ValueFilter<?>[] filters = Protocol.getLinkedAttributeValueFilters(linkedAttribute).orElse(null);
+        return agentService.applyValueFilters(messageValue, filters);
+    }
+
+    @Benchmark
+    public Value inboundFiltersLinked() {
+        return agentService.applyValueFilters(messageValue, linkedAttributeFilters);
+    }
+}
@@ -101,7 +101,8 @@ public class ORFirebaseMessagingService extends com.google.firebase.messaging.Fi
                 switch (action) {
                     case "GEOFENCE_REFRESH":
                         GeofenceProvider geofenceProvider = new GeofenceProvider(getApplicationContext());
-                        geofenceProvider.refreshGeofences();
+                        // The geofences are included when they fit into the notification
+                        geofenceProvider.refreshGeofences(remoteMessage.getData().get("geofences"));
                         break;
                     default:
                         Intent broadCastIntent = new Intent(MainActivity.ACTION_BROADCAST);
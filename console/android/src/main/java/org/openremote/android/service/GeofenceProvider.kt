@@ -236,18 +236,24 @@ class GeofenceProvider(val context: Context) : ActivityCompat.OnRequestPermissio
         }
     }
 
-    fun refreshGeofences() {
+    /**
+     * Refreshes the geofences from the given JSON (e.g. included in the refresh notification) or fetches them from
+     * the server if not given.
+     */
+    @JvmOverloads
+    fun refreshGeofences(json: String? = null) {
         LOG.info("Refresh geofences")
 
         val sharedPreferences = context.getSharedPreferences(context.getString(R.string.OR_CONSOLE_NAME), Context.MODE_PRIVATE)
-        val url = "${getBaseUrl(context)}/$geofenceFetchEndpoint${getConsoleId(context)}"
-        LOG.info("Fetching geofences from server: ${url}")
 
         try {
-            val geofencesJson = URL(url).readText()
+            val geofencesJson = json ?: "${getBaseUrl(context)}/$geofenceFetchEndpoint${getConsoleId(context)}".let { url ->
+                LOG.info("Fetching geofences from server: ${url}")
+                URL(url).readText()
+            }
             val geofences = JSON.readValue(geofencesJson, Array<GeofenceDefinition>::class.java)
 
-            LOG.info("Fetched geofences=${geofences.size}")
+            LOG.info("Refreshed geofences=${geofences.size}")
 
             // Remove previous fences that no longer exist
             val oldFences = getGeofences(context)
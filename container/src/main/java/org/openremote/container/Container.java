@@ -29,11 +29,14 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import org.openremote.container.concurrent.ContainerThreadFactory;
 import org.openremote.container.concurrent.ContainerThreads;
 import org.openremote.model.ModelModule;
 import org.openremote.container.util.LogUtil;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -41,6 +44,7 @@ import java.util.stream.Collectors;
 
 import static java.util.stream.StreamSupport.stream;
 import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 
 /**
  * A thread-safe registry of {@link ContainerService}s.
@@ -53,6 +57,10 @@ import static org.openremote.container.util.MapAccess.getBoolean;
  * to distinguish between development and production environments.
  * <p>
  * Read and write JSON with a sensible mapper configuration using {@link #JSON}.
+ * <p>
+ * Services are initialized in registry order, as that is where they register with each other. They are then started
+ * on a pool of {@link #STARTUP_THREADS} threads, each service as soon as its {@link ContainerService#getDependencies}
+ * are started; the time each service took is logged when startup is complete.
  */
 public class Container {
 
@@ -81,9 +89,21 @@ public class Container {
         .registerModule(new JavaTimeModule())
         .registerModule(new ParameterNamesModule(JsonCreator.Mode.PROPERTIES));
 
+    /**
+     * The maximum number of services that are started in parallel.
+     */
+    public static final String STARTUP_THREADS = "STARTUP_THREADS";
+    public static final int STARTUP_THREADS_DEFAULT = Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    @FunctionalInterface
+    protected interface ServiceAction {
+        void accept(ContainerService service) throws Exception;
+    }
+
     protected final Map<String, String> config = new HashMap<>();
     protected final boolean devMode;
 
+    protected final Object lifecycleLock = new Object();
     protected Thread waitingThread;
     protected final Map<Class<? extends ContainerService>, ContainerService> services = new LinkedHashMap<>();
 
@@ -144,29 +164,46 @@ public class Container {
     }
 
     public void start() throws Exception {
-        synchronized (services) {
+        synchronized (lifecycleLock) {
             if (isRunning())
                 return;
             LOG.info(">>> Starting runtime container...");
+            long startMillis = System.currentTimeMillis();
+            Map<ContainerService, Long> initMillis = new ConcurrentHashMap<>();
+            Map<ContainerService, Long> startServiceMillis = new ConcurrentHashMap<>();
+            ExecutorService executorService = Executors.newFixedThreadPool(
+                Math.max(1, getInteger(config, STARTUP_THREADS, STARTUP_THREADS_DEFAULT)),
+                new ContainerThreadFactory("Container Startup") {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        // Threads created by services inherit the daemon flag so behave as if started by the caller
+                        Thread thread = super.newThread(r);
+                        thread.setDaemon(Thread.currentThread().isDaemon());
+                        return thread;
+                    }
+                }
+            );
             try {
                 for (ContainerService service : getServices()) {
                     LOG.fine("Initializing service: " + service);
+                    long initStartNanos = System.nanoTime();
                     service.init(Container.this);
+                    initMillis.put(service, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - initStartNanos));
                 }
-                for (ContainerService service : getServices()) {
-                    LOG.fine("Starting service: " + service);
-                    service.start(Container.this);
-                }
+                runInDependencyOrder(executorService, getServiceDependencies(), "Starting", startServiceMillis, service -> service.start(Container.this));
             } catch (Exception ex) {
                 LOG.log(Level.SEVERE, ">>> Runtime container startup failed", ex);
                 throw ex;
+            } finally {
+                executorService.shutdownNow();
             }
-            LOG.info(">>> Runtime container startup complete");
+            LOG.info(">>> Runtime container startup complete in " + (System.currentTimeMillis() - startMillis) + "ms");
+            logStartupTimings(initMillis, startServiceMillis);
         }
     }
 
     public void stop() {
-        synchronized (services) {
+        synchronized (lifecycleLock) {
             if (!isRunning())
                 return;
             LOG.info("<<< Stopping runtime container...");
@@ -195,6 +232,117 @@ public class Container {
         waitingThread = ContainerThreads.startWaitingThread();
     }
 
+    /**
+     * @return the services each service must wait for, see {@link ContainerService#getDependencies}; services that
+     * don't declare their dependencies wait for all services before them.
+     */
+    protected Map<ContainerService, List<ContainerService>> getServiceDependencies() {
+        Map<ContainerService, List<ContainerService>> dependencies = new LinkedHashMap<>();
+        List<ContainerService> previousServices = new ArrayList<>();
+
+        for (ContainerService service : getServices()) {
+            Collection<Class<? extends ContainerService>> dependencyTypes = service.getDependencies();
+
+            if (dependencyTypes == null) {
+                dependencies.put(service, new ArrayList<>(previousServices));
+            } else {
+                dependencies.put(service, dependencyTypes.stream()
+                    .flatMap(type -> getServices(type).stream())
+                    .filter(dependency -> dependency != service)
+                    .distinct()
+                    .collect(Collectors.toList()));
+            }
+            previousServices.add(service);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Runs the action for each service on the executor as soon as the action has completed for all its dependencies;
+     * once an action fails no more actions are run and the failure is rethrown when the running actions are done.
+     */
+    protected void runInDependencyOrder(ExecutorService executorService,
+                                        Map<ContainerService, List<ContainerService>> dependencies,
+                                        String phase,
+                                        Map<ContainerService, Long> durations,
+                                        ServiceAction action) throws Exception {
+        Map<ContainerService, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        for (ContainerService service : dependencies.keySet()) {
+            scheduleAction(service, executorService, dependencies, phase, durations, action, futures, new HashSet<>(), failure);
+        }
+
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException ex) {
+            if (failure.get() == null) {
+                throw new IllegalStateException(phase + " services failed", ex.getCause());
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    protected CompletableFuture<Void> scheduleAction(ContainerService service,
+                                                     ExecutorService executorService,
+                                                     Map<ContainerService, List<ContainerService>> dependencies,
+                                                     String phase,
+                                                     Map<ContainerService, Long> durations,
+                                                     ServiceAction action,
+                                                     Map<ContainerService, CompletableFuture<Void>> futures,
+                                                     Set<ContainerService> visiting,
+                                                     AtomicReference<Exception> failure) {
+        CompletableFuture<Void> future = futures.get(service);
+        if (future != null) {
+            return future;
+        }
+
+        if (!visiting.add(service)) {
+            throw new IllegalStateException("Circular service dependency: " + service);
+        }
+
+        CompletableFuture<?>[] dependencyFutures = dependencies.getOrDefault(service, Collections.emptyList()).stream()
+            .map(dependency -> scheduleAction(dependency, executorService, dependencies, phase, durations, action, futures, visiting, failure))
+            .toArray(CompletableFuture<?>[]::new);
+
+        future = CompletableFuture.allOf(dependencyFutures).thenRunAsync(() -> {
+            if (failure.get() != null) {
+                throw new CancellationException("Startup failed");
+            }
+            LOG.fine(phase + " service: " + service);
+            long startNanos = System.nanoTime();
+            try {
+                action.accept(service);
+            } catch (Exception ex) {
+                failure.compareAndSet(null, ex);
+                throw new CompletionException(ex);
+            }
+            durations.put(service, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }, executorService);
+
+        visiting.remove(service);
+        futures.put(service, future);
+        return future;
+    }
+
+    protected void logStartupTimings(Map<ContainerService, Long> initMillis, Map<ContainerService, Long> startMillis) {
+        StringBuilder sb = new StringBuilder("Service startup timings (init + start):");
+        Arrays.stream(getServices())
+            .sorted(Comparator.comparingLong((ContainerService service) ->
+                initMillis.getOrDefault(service, 0L) + startMillis.getOrDefault(service, 0L)).reversed())
+            .forEach(service -> sb.append("\n    ")
+                .append(service.getClass().getSimpleName())
+                .append(": ")
+                .append(initMillis.getOrDefault(service, 0L))
+                .append("ms + ")
+                .append(startMillis.getOrDefault(service, 0L))
+                .append("ms"));
+        LOG.info(sb.toString());
+    }
+
     public ContainerService[] getServices() {
         synchronized (services) {
             return services.values().toArray(new ContainerService[services.size()]);
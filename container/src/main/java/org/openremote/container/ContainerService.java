@@ -19,6 +19,8 @@
  */
 package org.openremote.container;
 
+import java.util.Collection;
+
 /**
  * The {@link Container} is a registry of services, the order of services in a container is important and is determined
  * by the {@link #getPriority} value; when starting the {@link Container} using the auto service discovery mechanism.
@@ -28,9 +30,13 @@ package org.openremote.container;
  * </p>
  * <ol>
  * <li>{@link #init} in registry insertion order</li>
- * <li>{@link #start} in registry insertion order</li>
+ * <li>{@link #start} in dependency order, see {@link #getDependencies}</li>
  * </ol>
  * <p>
+ * A service that declares its {@link #getDependencies} is started as soon as those services are started, in parallel
+ * with the other services.
+ * </p>
+ * <p>
  * Service shutdown lifecycle:
  * </p>
  * <ol>
@@ -50,6 +56,20 @@ public interface ContainerService {
      */
     int getPriority();
 
+    /**
+     * The services that must be started before this service is started; dependencies that are not in the container are
+     * ignored. The default of <code>null</code> means this service depends on all services that come before it in the
+     * registry, so services keep starting in registry order. A service that declares its dependencies starts as soon
+     * as those are started, in parallel with the services before it that it doesn't depend on; the services after it
+     * that don't declare their dependencies still wait for it.
+     * <p>
+     * All services are initialized before any service is started, so registering with another service in
+     * {@link #init} doesn't need a dependency.
+     */
+    default Collection<Class<? extends ContainerService>> getDependencies() {
+        return null;
+    }
+
     /**
      * All services are initialized in the order they have been added to the container (if container started with
      * explicit list of services) otherwise they are initialized in order of {@link #getPriority}.
@@ -58,7 +78,8 @@ public interface ContainerService {
 
     /**
      * After initialization, services are started in the order they have been added to the container (if container
-     * started with explicit list of services) otherwise they are started in order of {@link #getPriority}.
+     * started with explicit list of services) otherwise they are started in order of {@link #getPriority}; services
+     * that declare their {@link #getDependencies} are started as soon as those are started.
      */
     void start(Container container) throws Exception;
 
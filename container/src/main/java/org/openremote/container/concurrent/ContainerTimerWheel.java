@@ -0,0 +1,446 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A hierarchical timing wheel for large numbers of coarse grained timers, such as protocol polling, simulator
+ * replay and rule action delays. Scheduling and cancellation are O(1), a single ticker thread advances the wheel
+ * and all timers expiring within the same tick are handed to the given {@link Executor} together. When the ticker
+ * falls behind, all elapsed ticks are processed in one pass instead of waking up once per timer.
+ * <p>
+ * The first level has 256 slots of one tick, each following level has 64 slots covering the whole previous level;
+ * timers are cascaded down when their slot on a higher level is reached. Timers further away than the last level
+ * can cover are parked in its last slot and re-inserted on cascade.
+ * <p>
+ * Delays are rounded up to the next tick, use a regular {@link ScheduledExecutorService} when precision below
+ * the tick duration is required.
+ */
+public class ContainerTimerWheel {
+
+    private static final Logger LOG = Logger.getLogger(ContainerTimerWheel.class.getName());
+
+    protected static final int ROOT_BITS = 8;
+    protected static final int ROOT_SIZE = 1 << ROOT_BITS;
+    protected static final int ROOT_MASK = ROOT_SIZE - 1;
+    protected static final int LEVEL_BITS = 6;
+    protected static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    protected static final int LEVEL_MASK = LEVEL_SIZE - 1;
+    protected static final int LEVELS = 4;
+    protected static final long MAX_TICKS = (1L << (ROOT_BITS + (LEVELS - 1) * LEVEL_BITS)) - 1;
+
+    protected static final int STATE_SCHEDULED = 0;
+    protected static final int STATE_RUNNING = 1;
+    protected static final int STATE_DONE = 2;
+    protected static final int STATE_CANCELLED = 3;
+
+    protected final String name;
+    protected final long tickNanos;
+    protected final Executor executor;
+    protected final Slot[][] levels = new Slot[LEVELS][];
+    protected final long startNanos = System.nanoTime();
+    protected final Thread ticker;
+    // Next tick to be processed, guarded by this
+    protected long currentTick;
+    // Number of pending timers, guarded by this
+    protected int size;
+    protected volatile boolean running = true;
+
+    public ContainerTimerWheel(String name, long tickMillis, Executor executor) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickMillis);
+        }
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.executor = executor;
+        for (int i = 0; i < LEVELS; i++) {
+            Slot[] slots = new Slot[i == 0 ? ROOT_SIZE : LEVEL_SIZE];
+            for (int j = 0; j < slots.length; j++) {
+                slots[j] = new Slot();
+            }
+            levels[i] = slots;
+        }
+        ticker = new ContainerThreadFactory(name).newThread(this::runTicker);
+        ticker.start();
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return add(new Timeout(task, 0), delayMillis);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+        return add(new Timeout(task, toTicks(periodMillis)), initialDelayMillis);
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelayMillis, long delayMillis) {
+        if (delayMillis <= 0) {
+            throw new IllegalArgumentException("Delay must be positive: " + delayMillis);
+        }
+        return add(new Timeout(task, -toTicks(delayMillis)), initialDelayMillis);
+    }
+
+    /**
+     * @return the number of timers currently waiting in the wheel.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public void stop() {
+        running = false;
+        ticker.interrupt();
+        synchronized (this) {
+            for (Slot[] slots : levels) {
+                for (Slot slot : slots) {
+                    Timeout timeout;
+                    while ((timeout = slot.poll()) != null) {
+                        timeout.state = STATE_CANCELLED;
+                    }
+                }
+            }
+            size = 0;
+            notifyAll();
+        }
+    }
+
+    protected long toTicks(long millis) {
+        // Round up so a timer never fires early
+        return Math.max(1, (TimeUnit.MILLISECONDS.toNanos(millis) + tickNanos - 1) / tickNanos);
+    }
+
+    protected long elapsedTicks() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    protected Timeout add(Timeout timeout, long delayMillis) {
+        if (!running) {
+            throw new RejectedExecutionException("Timer wheel has been stopped: " + name);
+        }
+        synchronized (this) {
+            // Relative to the wall clock tick, not the processed tick, otherwise a lagging ticker delays new timers
+            timeout.deadline = Math.max(currentTick, elapsedTicks()) + (delayMillis <= 0 ? 0 : toTicks(delayMillis));
+            enqueue(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Must be called while holding the monitor of this wheel.
+     */
+    protected void enqueue(Timeout timeout) {
+        if (size == 0) {
+            // The ticker was idle, skip the empty ticks in between so the slot positions match the clock again
+            currentTick = Math.max(currentTick, elapsedTicks());
+        }
+        insert(timeout);
+        size++;
+        if (size == 1) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Must be called while holding the monitor of this wheel.
+     */
+    protected void insert(Timeout timeout) {
+        long deadline = Math.max(timeout.deadline, currentTick);
+        long delta = deadline - currentTick;
+        Slot slot;
+        if (delta < ROOT_SIZE) {
+            slot = levels[0][(int) (deadline & ROOT_MASK)];
+        } else {
+            if (delta > MAX_TICKS) {
+                // Park in the furthest slot, re-inserted with its real deadline when cascaded
+                deadline = currentTick + MAX_TICKS;
+                delta = MAX_TICKS;
+            }
+            int level = 1;
+            while (level < LEVELS - 1 && delta >= 1L << (ROOT_BITS + level * LEVEL_BITS)) {
+                level++;
+            }
+            int shift = ROOT_BITS + (level - 1) * LEVEL_BITS;
+            slot = levels[level][(int) ((deadline >> shift) & LEVEL_MASK)];
+        }
+        slot.add(timeout);
+    }
+
+    /**
+     * Must be called while holding the monitor of this wheel.
+     */
+    protected void cascade(int level, int index) {
+        Slot slot = levels[level][index];
+        Timeout timeout;
+        while ((timeout = slot.poll()) != null) {
+            insert(timeout);
+        }
+    }
+
+    protected void runTicker() {
+        List<Timeout> expired = new ArrayList<>();
+        while (running) {
+            try {
+                synchronized (this) {
+                    while (running && size == 0) {
+                        // Nothing to do, idle until a timer is added
+                        wait();
+                    }
+                    long targetTick = elapsedTicks();
+                    // Coalesce all elapsed ticks into one pass
+                    while (currentTick <= targetTick) {
+                        int index = (int) (currentTick & ROOT_MASK);
+                        if (index == 0) {
+                            for (int level = 1; level < LEVELS; level++) {
+                                int levelIndex = (int) ((currentTick >> (ROOT_BITS + (level - 1) * LEVEL_BITS)) & LEVEL_MASK);
+                                cascade(level, levelIndex);
+                                if (levelIndex != 0) {
+                                    break;
+                                }
+                            }
+                        }
+                        currentTick++;
+                        Slot slot = levels[0][index];
+                        Timeout timeout;
+                        while ((timeout = slot.poll()) != null) {
+                            size--;
+                            timeout.state = STATE_RUNNING;
+                            expired.add(timeout);
+                        }
+                    }
+                }
+
+                for (Timeout timeout : expired) {
+                    try {
+                        executor.execute(timeout);
+                    } catch (RejectedExecutionException ex) {
+                        timeout.done(STATE_CANCELLED);
+                    }
+                }
+                expired.clear();
+
+                long nextTickNanos = startNanos + currentTick * tickNanos;
+                long sleepNanos = nextTickNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            } catch (InterruptedException ex) {
+                // Stopped
+                return;
+            } catch (Throwable t) {
+                LOG.log(Level.WARNING, "Timer wheel '" + name + "' ticker failed, continuing", t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + name + '\'' +
+            ", tickMillis=" + TimeUnit.NANOSECONDS.toMillis(tickNanos) +
+            '}';
+    }
+
+    /**
+     * Intrusive doubly linked list of timers, supports O(1) removal of any element.
+     */
+    protected static class Slot {
+        protected Timeout head;
+
+        protected void add(Timeout timeout) {
+            timeout.slot = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        protected void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.slot = null;
+        }
+
+        protected Timeout poll() {
+            Timeout timeout = head;
+            if (timeout != null) {
+                remove(timeout);
+            }
+            return timeout;
+        }
+    }
+
+    protected class Timeout implements ScheduledFuture<Object>, Runnable {
+
+        protected final Runnable task;
+        // Positive for fixed rate, negative for fixed delay, zero for one-shot
+        protected final long periodTicks;
+        // All fields below are guarded by the monitor of the wheel
+        protected long deadline;
+        protected Slot slot;
+        protected Timeout prev;
+        protected Timeout next;
+        protected volatile int state = STATE_SCHEDULED;
+
+        protected Timeout(Runnable task, long periodTicks) {
+            this.task = task;
+            this.periodTicks = periodTicks;
+        }
+
+        @Override
+        public void run() {
+            if (state != STATE_RUNNING) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                ContainerThreads.logExceptionCause(task, t);
+                // Same as a ScheduledExecutorService, a failed periodic task is not executed again
+                done(STATE_DONE);
+                return;
+            }
+
+            if (periodTicks == 0) {
+                done(STATE_DONE);
+                return;
+            }
+
+            synchronized (ContainerTimerWheel.this) {
+                if (state != STATE_RUNNING || !running) {
+                    return;
+                }
+                deadline = periodTicks > 0 ? deadline + periodTicks : elapsedTicks() - periodTicks;
+                state = STATE_SCHEDULED;
+                enqueue(this);
+            }
+        }
+
+        protected void done(int finalState) {
+            synchronized (ContainerTimerWheel.this) {
+                if (state == STATE_CANCELLED) {
+                    return;
+                }
+                state = finalState;
+                ContainerTimerWheel.this.notifyAll();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (ContainerTimerWheel.this) {
+                if (state == STATE_DONE || state == STATE_CANCELLED) {
+                    return false;
+                }
+                if (slot != null) {
+                    slot.remove(this);
+                    size--;
+                }
+                state = STATE_CANCELLED;
+                ContainerTimerWheel.this.notifyAll();
+                return true;
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == STATE_CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return state == STATE_DONE || state == STATE_CANCELLED;
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            synchronized (ContainerTimerWheel.this) {
+                while (!isDone()) {
+                    ContainerTimerWheel.this.wait();
+                }
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long remainingNanos = unit.toNanos(timeout);
+            long end = System.nanoTime() + remainingNanos;
+            synchronized (ContainerTimerWheel.this) {
+                while (!isDone()) {
+                    if (remainingNanos <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(ContainerTimerWheel.this, remainingNanos);
+                    remainingNanos = end - System.nanoTime();
+                }
+            }
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+            return null;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            long deadlineNanos;
+            synchronized (ContainerTimerWheel.this) {
+                deadlineNanos = startNanos + deadline * tickNanos;
+            }
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "task=" + task +
+                ", periodTicks=" + periodTicks +
+                ", state=" + state +
+                '}';
+        }
+    }
+}
@@ -78,7 +78,7 @@ public class PersistenceService implements ContainerService {
     protected Database database;
     protected String persistenceUnitName;
     protected Map<String, Object> persistenceUnitProperties;
-    protected EntityManagerFactory entityManagerFactory;
+    protected volatile EntityManagerFactory entityManagerFactory;
 
     protected Flyway flyway;
     protected boolean forceClean;
@@ -90,6 +90,15 @@ public class PersistenceService implements ContainerService {
         return PRIORITY;
     }
 
+    /**
+     * Opening the database and migrating its schema on start doesn't depend on any other service, so it is done in
+     * parallel with the services that don't use the database on start.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
         this.messageBrokerService = container.hasService(MessageBrokerService.class)
@@ -112,17 +121,14 @@ public class PersistenceService implements ContainerService {
         persistenceUnitName = getString(container.getConfig(), PERSISTENCE_UNIT_NAME, PERSISTENCE_UNIT_NAME_DEFAULT);
 
         forceClean = getBoolean(container.getConfig(), SETUP_WIPE_CLEAN_INSTALL, container.isDevMode());
-
-        openDatabase(container, database);
-
-        this.entityManagerFactory =
-            Persistence.createEntityManagerFactory(persistenceUnitName, persistenceUnitProperties);
     }
 
-
     @Override
     public void start(Container container) throws Exception {
+        openDatabase(container, database);
 
+        this.entityManagerFactory =
+            Persistence.createEntityManagerFactory(persistenceUnitName, persistenceUnitProperties);
     }
 
     @Override
@@ -31,6 +31,8 @@ import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.keycloak.KeycloakIdentityProvider;
 
 import javax.ws.rs.core.UriBuilder;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Logger;
 
 import static org.openremote.container.util.MapAccess.*;
@@ -56,6 +58,15 @@ public abstract class IdentityService implements ContainerService {
         return PRIORITY;
     }
 
+    /**
+     * The BASIC identity provider creates the master tenant in the database on start, the database is opened by the
+     * persistence service on start.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.singletonList(PersistenceService.class);
+    }
+
     @Override
     public void init(Container container) throws Exception {
         devMode = container.isDevMode();
@@ -22,7 +22,9 @@ package org.openremote.container.web;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.jboss.resteasy.client.jaxrs.BasicAuthentication;
 import org.jboss.resteasy.client.jaxrs.ResteasyClient;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
@@ -52,6 +54,8 @@ import java.util.stream.Collectors;
  * <ul>
  * <li>{@link org.openremote.container.json.JacksonConfig}.</li>
  * </ul>
+ * Connections are kept alive as long as the server allows and evicted after
+ * {@link #CONNECTION_IDLE_TIMEOUT_MILLISECONDS} of inactivity.
  */
 // TODO: This should probably be amalgamated with WebClient somehow to provide a unified JAX-RS Client API
 public class WebTargetBuilder {
@@ -59,6 +63,7 @@ public class WebTargetBuilder {
     public static final int CONNECTION_POOL_SIZE = 10;
     public static final long CONNECTION_CHECKOUT_TIMEOUT_MILLISECONDS = 5000;
     public static final long CONNECTION_TIMEOUT_MILLISECONDS = 10000;
+    public static final long CONNECTION_IDLE_TIMEOUT_MILLISECONDS = 30000;
     protected ResteasyClient client;
     protected static ExecutorService executorService;
     protected BasicAuthentication basicAuthentication;
@@ -180,6 +185,14 @@ public class WebTargetBuilder {
     }
 
     public static ResteasyClient createClient(ExecutorService executorService, int connectionPoolSize, long overrideSocketTimeout, UnaryOperator<ResteasyClientBuilder> builderConfigurator) {
+        return createClient(executorService, connectionPoolSize, connectionPoolSize, overrideSocketTimeout, builderConfigurator);
+    }
+
+    /**
+     * @param connectionPoolSize the maximum number of pooled connections over all hosts.
+     * @param connectionsPerHost the maximum number of pooled connections to a single host.
+     */
+    public static ResteasyClient createClient(ExecutorService executorService, int connectionPoolSize, int connectionsPerHost, long overrideSocketTimeout, UnaryOperator<ResteasyClientBuilder> builderConfigurator) {
         //Create all of this config code in order to deal with expires cookies in responses
         RequestConfig requestConfig = RequestConfig.custom()
             .setCookieSpec(CookieSpecs.STANDARD)
@@ -187,8 +200,16 @@ public class WebTargetBuilder {
             .setConnectTimeout(new Long(CONNECTION_CHECKOUT_TIMEOUT_MILLISECONDS).intValue())
             .setSocketTimeout(new Long(overrideSocketTimeout).intValue())
             .build();
+        // The engine is built here so the pool limits passed to the client builder must be set on our own manager
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(connectionPoolSize);
+        connectionManager.setDefaultMaxPerRoute(Math.min(connectionsPerHost, connectionPoolSize));
         HttpClient apacheClient = HttpClientBuilder.create()
             .setDefaultRequestConfig(requestConfig)
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+            .evictExpiredConnections()
+            .evictIdleConnections(CONNECTION_IDLE_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)
             .build();
         ApacheHttpClient43Engine engine = new ApacheHttpClient43Engine(apacheClient);
 
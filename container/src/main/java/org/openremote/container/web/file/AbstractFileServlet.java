@@ -34,6 +34,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
+import io.undertow.servlet.spec.ServletOutputStreamImpl;
+
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -45,7 +47,8 @@ import javax.servlet.http.HttpServletResponse;
  * <p>
  * The well known "<a href="http://balusc.omnifaces.org/2009/02/fileservlet-supporting-resume-and.html">BalusC FileServlet</a>",
  * as an abstract template, slightly refactored, rewritten and modernized with a.o. fast NIO stuff instead of legacy
- * RandomAccessFile. GZIP support is stripped off as that can be done application wide via GzipResponseFilter.
+ * RandomAccessFile. GZIP support is stripped off as that can be done application wide via GzipResponseFilter, or
+ * per file with precompressed variants returned by {@link #getResource(HttpServletRequest, File)}.
  * <p>
  * This servlet properly deals with <code>ETag</code>, <code>If-None-Match</code> and <code>If-Modified-Since</code>
  * caching requests, hereby improving browser caching. This servlet also properly deals with <code>Range</code> and
@@ -120,6 +123,7 @@ public abstract class AbstractFileServlet extends HttpServlet {
 	private static final Logger logger = Logger.getLogger(AbstractFileServlet.class.getName());
 
 	private static final Long DEFAULT_EXPIRE_TIME_IN_SECONDS = TimeUnit.DAYS.toSeconds(30);
+	private static final Long IMMUTABLE_EXPIRE_TIME_IN_SECONDS = TimeUnit.DAYS.toSeconds(365);
 	private static final long ONE_SECOND_IN_MILLIS = SECONDS.toMillis(1);
 	private static final String ETAG = "W/\"%s-%s\"";
 	private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=[0-9]*-[0-9]*(,[0-9]*-[0-9]*)*$");
@@ -141,7 +145,7 @@ public abstract class AbstractFileServlet extends HttpServlet {
         Resource resource;
 
         try {
-            resource = new Resource(getFile(request));
+            resource = getResource(request, getFile(request));
 
         } catch (RedirectException ex) {
             logger.log(FINE, "Redirecting client to: " + ex.location);
@@ -165,7 +169,13 @@ public abstract class AbstractFileServlet extends HttpServlet {
 			return;
 		}
 
-		setCacheHeaders(response, resource, getExpireTime(request, resource.file));
+		if (isImmutable(request, resource.file)) {
+			setImmutableCacheHeaders(response, IMMUTABLE_EXPIRE_TIME_IN_SECONDS);
+			setCacheHeaders(response, resource);
+		}
+		else {
+			setCacheHeaders(response, resource, getExpireTime(request, resource.file));
+		}
 
 		if (notModified(request, resource)) {
 			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
@@ -208,6 +218,33 @@ public abstract class AbstractFileServlet extends HttpServlet {
 	 */
 	protected abstract File getFile(HttpServletRequest request) throws IllegalArgumentException, RedirectException;
 
+	/**
+	 * Returns the resource to serve for the given file, e.g. an encoded variant of the file that is acceptable for the
+	 * client.
+	 * <p>
+	 * The default implementation returns the file itself with a weak <code>ETag</code>.
+	 * @param request The involved HTTP servlet request.
+	 * @param file The file returned by {@link #getFile(HttpServletRequest)}.
+	 * @return The resource to serve.
+	 */
+	protected Resource getResource(HttpServletRequest request, File file) {
+		return new Resource(file);
+	}
+
+	/**
+	 * Returns true if the given file never changes, e.g. because its name contains a hash of its content. Such a file
+	 * is cached by the client for a year without revalidation, whatever {@link #getExpireTime(HttpServletRequest, File)}
+	 * returns.
+	 * <p>
+	 * The default implementation returns false.
+	 * @param request The involved HTTP servlet request.
+	 * @param file The involved file.
+	 * @return True if the given file never changes.
+	 */
+	protected boolean isImmutable(HttpServletRequest request, File file) {
+		return false;
+	}
+
 	/**
 	 * Handles the case when the file is not found.
 	 * <p>
@@ -262,8 +299,19 @@ public abstract class AbstractFileServlet extends HttpServlet {
 	 */
 	private void setCacheHeaders(HttpServletResponse response, Resource resource, long expires) {
 		setCacheHeaders(response, expires);
+		setCacheHeaders(response, resource);
+	}
+
+	/**
+	 * Set the validator headers of the resource.
+	 */
+	private void setCacheHeaders(HttpServletResponse response, Resource resource) {
 		response.setHeader("ETag", resource.eTag);
 		response.setDateHeader("Last-Modified", resource.lastModified);
+
+		if (resource.encodingVariants) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
 	}
 
 	/**
@@ -347,6 +395,10 @@ public abstract class AbstractFileServlet extends HttpServlet {
 		String contentType = getContentType(request, resource.file);
 		response.setHeader("Accept-Ranges", "bytes");
 
+		if (resource.contentEncoding != null) {
+			response.setHeader("Content-Encoding", resource.contentEncoding);
+		}
+
 		if (ranges.size() == 1) {
 			Range range = ranges.get(0);
 			response.setContentType(contentType);
@@ -371,7 +423,17 @@ public abstract class AbstractFileServlet extends HttpServlet {
 
 		if (ranges.size() == 1) {
 			Range range = ranges.get(0);
-			stream(resource.file, output, range.start, range.length);
+
+			if (output instanceof ServletOutputStreamImpl && range.end == resource.length - 1) {
+				// Let the container send the file without copying it through the heap (sendfile where supported)
+				try (FileChannel fileChannel = FileChannel.open(resource.content.toPath(), StandardOpenOption.READ)) {
+					fileChannel.position(range.start);
+					((ServletOutputStreamImpl) output).transferFrom(fileChannel);
+				}
+			}
+			else {
+				stream(resource.content, output, range.start, range.length);
+			}
 		}
 		else {
 			for (Range range : ranges) {
@@ -379,7 +441,7 @@ public abstract class AbstractFileServlet extends HttpServlet {
 				output.println("--" + MULTIPART_BOUNDARY);
 				output.println("Content-Type: " + contentType);
 				output.println("Content-Range: bytes " + range.start + "-" + range.end + "/" + resource.length);
-				stream(resource.file, output, range.start, range.length);
+				stream(resource.content, output, range.start, range.length);
 			}
 
 			output.println();
@@ -429,27 +491,57 @@ public abstract class AbstractFileServlet extends HttpServlet {
 	// Nested classes -------------------------------------------------------------------------------------------------
 
 	/**
-	 * Convenience class for a file resource.
+	 * Convenience class for a file resource. The content can be an encoded variant of the file, the file itself
+	 * determines the content type and the last modification time.
 	 */
 	public static class Resource {
 		private final File file;
+		private final File content;
 		private final long length;
 		private final long lastModified;
 		private final String eTag;
+		private final String contentEncoding;
+		private final boolean encodingVariants;
 
 		public Resource(File file) {
 			if (file != null && file.isFile()) {
 				this.file = file;
+				content = file;
 				length = file.length();
 				lastModified = file.lastModified();
 				eTag = format(ETAG, encodeURL(file.getName()), lastModified);
 			}
 			else {
 				this.file = null;
+				content = null;
 				length = 0;
 				lastModified = 0;
 				eTag = null;
 			}
+			contentEncoding = null;
+			encodingVariants = false;
+		}
+
+		/**
+		 * @param file The requested file.
+		 * @param content The file with the content to send, the requested file or an encoded variant of it.
+		 * @param eTag The (strong) ETag of the content.
+		 * @param contentEncoding The encoding of the content or <code>null</code> if it is the requested file.
+		 * @param encodingVariants Whether the requested file has encoded variants (i.e. the response varies by the
+		 * <code>Accept-Encoding</code> of the request).
+		 */
+		public Resource(File file, File content, String eTag, String contentEncoding, boolean encodingVariants) {
+			this.file = file;
+			this.content = content;
+			this.length = content.length();
+			this.lastModified = file.lastModified();
+			this.eTag = eTag;
+			this.contentEncoding = contentEncoding;
+			this.encodingVariants = encodingVariants;
+		}
+
+		public File getFile() {
+			return file;
 		}
 
 	}
@@ -660,6 +752,21 @@ public abstract class AbstractFileServlet extends HttpServlet {
         }
     }
 
+    /**
+     * <p>Set the cache headers of a resource that never changes. The following headers will be set:
+     * <ul>
+     * <li><code>Cache-Control: public,max-age=[expiration time in seconds],immutable</code></li>
+     * <li><code>Expires: [expiration date of now plus expiration time in seconds]</code></li>
+     * </ul>
+     * @param response The HTTP servlet response to set the headers on.
+     * @param expires The expire time in seconds (not milliseconds!).
+     */
+    public static void setImmutableCacheHeaders(HttpServletResponse response, long expires) {
+        response.setHeader("Cache-Control", "public,max-age=" + expires + ",immutable");
+        response.setDateHeader("Expires", System.currentTimeMillis() + SECONDS.toMillis(expires));
+        response.setHeader("Pragma", ""); // Explicitly set pragma to prevent container from overriding it.
+    }
+
     /**
      * <p>Set the no-cache headers. The following headers will be set:
      * <ul>
@@ -24,10 +24,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import static org.openremote.model.Constants.REQUEST_HEADER_REALM;
 
@@ -37,6 +37,11 @@ public class FileServlet extends AbstractFileServlet {
 
     public static final long DEFAULT_EXPIRE_SECONDS = 600; // 10 minutes
     public static final long EXPIRES_SECONDS_CACHE_JS = 60 * 60 * 24 * 14; // 14 days for .cache.js of GWT
+    /**
+     * File names with a content hash of at least 8 hex characters (letters and digits) as a separate name segment, e.g.
+     * <code>app.3f2a9c1d.js</code> or <code>chunk-3f2a9c1d.js</code>.
+     */
+    public static final Pattern HASHED_FILE_NAME = Pattern.compile("^(.*[.-])?(?=[0-9]*[a-fA-F])(?=[a-fA-F]*[0-9])[0-9a-fA-F]{8,}(\\.[^.]+)+$");
 
     final protected boolean devMode;
     final protected File base;
@@ -45,8 +50,18 @@ public class FileServlet extends AbstractFileServlet {
     final protected Map<String, String> mimeTypes;
     final protected Map<String, Integer> mimeTypesExpireSeconds;
     final protected String[] alreadyZippedExtensions;
+    final protected Set<String> mimeTypesToCompress;
+    final protected PrecompressedFileCache precompressedFileCache = new PrecompressedFileCache();
 
     public FileServlet(boolean devMode, File base, String[] requiredRoles, Map<String, String> mimeTypes, Map<String, Integer> mimeTypesExpireSeconds, String[] alreadyZippedExtensions) {
+        this(devMode, base, requiredRoles, mimeTypes, mimeTypesExpireSeconds, alreadyZippedExtensions, new String[0]);
+    }
+
+    /**
+     * @param mimeTypesToCompress files of these types are served precompressed to clients that accept it, see
+     * {@link PrecompressedFileCache}.
+     */
+    public FileServlet(boolean devMode, File base, String[] requiredRoles, Map<String, String> mimeTypes, Map<String, Integer> mimeTypesExpireSeconds, String[] alreadyZippedExtensions, String[] mimeTypesToCompress) {
         this.devMode = devMode;
         this.base = base;
         this.unsecuredIndex = new File(base, "index.html");
@@ -54,6 +69,13 @@ public class FileServlet extends AbstractFileServlet {
         this.mimeTypes = mimeTypes;
         this.mimeTypesExpireSeconds = mimeTypesExpireSeconds;
         this.alreadyZippedExtensions = alreadyZippedExtensions;
+        this.mimeTypesToCompress = new HashSet<>(Arrays.asList(mimeTypesToCompress));
+    }
+
+    @Override
+    public void destroy() {
+        precompressedFileCache.clear();
+        super.destroy();
     }
 
     public boolean isSecured() {
@@ -128,6 +150,35 @@ public class FileServlet extends AbstractFileServlet {
         return file;
     }
 
+    @Override
+    protected Resource getResource(HttpServletRequest request, File file) {
+        if (file == null || !file.isFile() || !mimeTypesToCompress.contains(getContentType(request, file))) {
+            return super.getResource(request, file);
+        }
+
+        PrecompressedFileCache.Entry entry;
+        try {
+            entry = precompressedFileCache.get(file);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Failed to precompress, serving uncompressed file: " + file.getAbsolutePath(), e);
+            return super.getResource(request, file);
+        }
+
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        for (Map.Entry<String, File> variant : entry.variants.entrySet()) {
+            if (acceptsEncoding(acceptEncoding, variant.getKey())) {
+                return new Resource(file, variant.getValue(), "\"" + entry.hash + "-" + variant.getKey() + "\"", variant.getKey(), true);
+            }
+        }
+        return new Resource(file, file, "\"" + entry.hash + "\"", null, !entry.variants.isEmpty());
+    }
+
+    @Override
+    protected boolean isImmutable(HttpServletRequest request, File file) {
+        // A hashed file name changes with the content, so this also holds in dev mode
+        return HASHED_FILE_NAME.matcher(file.getName()).matches();
+    }
+
     @Override
     protected long getExpireTime(HttpServletRequest request, File file) {
         long expireTime = DEFAULT_EXPIRE_SECONDS;
@@ -169,6 +220,29 @@ public class FileServlet extends AbstractFileServlet {
         return result;
     }
 
+    /**
+     * @return <code>true</code> if the encoding is listed in the <code>Accept-Encoding</code> header without a quality
+     * of zero.
+     */
+    protected static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String value : acceptEncoding.split(",")) {
+            String[] parameters = value.trim().split("\\s*;\\s*");
+            if (!parameters[0].equalsIgnoreCase(encoding)) {
+                continue;
+            }
+            for (int i = 1; i < parameters.length; i++) {
+                if (parameters[i].matches("[qQ]\\s*=\\s*0(\\.0*)?")) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     protected String getExtension(String fileName) {
         int i = fileName.lastIndexOf('.');
         return i > 0 ? fileName.substring(i + 1) : "";
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container.web.file;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps compressed variants of static files so they are compressed once and not for every request. A file is hashed
+ * (for a strong <code>ETag</code>) and compressed when it is first requested and again only when its length or last
+ * modification time changes. Variants created by the build (a <code>.br</code> or <code>.gz</code> sibling that is not
+ * older than the file) are used as they are; as the JDK has no Brotli encoder, Brotli variants are only available when
+ * they are created by the build. GZIP variants are written to a temporary directory (named by the content hash so
+ * identical files share a variant) which is removed by {@link #clear}.
+ */
+public class PrecompressedFileCache {
+
+    public static final String ENCODING_BROTLI = "br";
+    public static final String ENCODING_GZIP = "gzip";
+    /**
+     * Preferred encodings first.
+     */
+    public static final String[] ENCODINGS = {ENCODING_BROTLI, ENCODING_GZIP};
+    public static final int DEFAULT_THRESHOLD = 150;
+
+    /**
+     * The hash and the available encoded variants of a file of a specific length and last modification time.
+     */
+    public static class Entry {
+        public final long length;
+        public final long lastModified;
+        public final String hash;
+        public final Map<String, File> variants;
+
+        protected Entry(long length, long lastModified, String hash, Map<String, File> variants) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.variants = variants;
+        }
+
+        public boolean isCurrent(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "hash='" + hash + '\'' +
+                ", variants=" + variants.keySet() +
+                '}';
+        }
+    }
+
+    private static final Logger LOG = Logger.getLogger(PrecompressedFileCache.class.getName());
+    protected final int threshold;
+    protected final ConcurrentMap<File, Entry> entries = new ConcurrentHashMap<>();
+    protected Path directory;
+
+    public PrecompressedFileCache() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold files smaller than this number of bytes are not compressed.
+     */
+    public PrecompressedFileCache(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the entry of the current version of the file, compressing the file if it is new or was modified.
+     */
+    public Entry get(File file) throws IOException {
+        Entry entry = entries.get(file);
+
+        if (entry != null && entry.isCurrent(file)) {
+            return entry;
+        }
+
+        try {
+            return entries.compute(file, (f, existing) -> {
+                if (existing != null && existing.isCurrent(f)) {
+                    return existing;
+                }
+                try {
+                    return createEntry(f);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Removes all entries and the compressed variants that were created.
+     */
+    public synchronized void clear() {
+        entries.clear();
+
+        if (directory == null) {
+            return;
+        }
+
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            Arrays.stream(files).forEach(File::delete);
+        }
+        directory.toFile().delete();
+        directory = null;
+    }
+
+    protected Entry createEntry(File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String hash = hash(file);
+        Map<String, File> variants = new LinkedHashMap<>();
+
+        if (length >= threshold) {
+            for (String encoding : ENCODINGS) {
+                File sibling = new File(file.getPath() + getExtension(encoding));
+                if (sibling.isFile() && sibling.lastModified() >= lastModified) {
+                    variants.put(encoding, sibling);
+                }
+            }
+
+            if (!variants.containsKey(ENCODING_GZIP)) {
+                File gzipVariant = createGzipVariant(file, hash);
+                if (gzipVariant != null) {
+                    variants.put(ENCODING_GZIP, gzipVariant);
+                }
+            }
+        }
+
+        LOG.fine("Precompressed '" + file.getAbsolutePath() + "' to: " + variants.keySet());
+        return new Entry(length, lastModified, hash, Collections.unmodifiableMap(variants));
+    }
+
+    /**
+     * @return the compressed file or <code>null</code> if compression doesn't make the file smaller.
+     */
+    protected File createGzipVariant(File file, String hash) throws IOException {
+        File variant = new File(getDirectory().toFile(), hash + getExtension(ENCODING_GZIP));
+
+        if (variant.isFile()) {
+            return variant;
+        }
+
+        File tempFile = File.createTempFile(hash, ".tmp", getDirectory().toFile());
+        try {
+            try (InputStream input = new FileInputStream(file);
+                 OutputStream output = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+                AbstractFileServlet.stream(input, output);
+            }
+
+            if (tempFile.length() >= file.length()) {
+                return null;
+            }
+
+            Files.move(tempFile.toPath(), variant.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return variant;
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    protected synchronized Path getDirectory() throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("or-precompressed-");
+            LOG.log(Level.FINE, "Storing precompressed files in: " + directory);
+        }
+        return directory;
+    }
+
+    protected static String getExtension(String encoding) {
+        return ENCODING_BROTLI.equals(encoding) ? ".br" : ".gz";
+    }
+
+    protected static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        try (InputStream input = new DigestInputStream(new FileInputStream(file), digest)) {
+            byte[] buffer = new byte[8192];
+            //noinspection StatementWithEmptyBody
+            while (input.read(buffer) != -1) {
+            }
+        }
+
+        // The URL safe encoding doesn't need to be escaped in a quoted ETag
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+}
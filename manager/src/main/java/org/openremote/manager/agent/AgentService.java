@@ -19,11 +19,12 @@
  */
 package org.openremote.manager.agent;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
-import com.jayway.jsonpath.ParseContext;
-import com.jayway.jsonpath.spi.json.JacksonJsonNodeJsonProvider;
 import com.jayway.jsonpath.spi.mapper.JacksonMappingProvider;
 import org.apache.camel.builder.RouteBuilder;
 import org.openremote.agent.protocol.Protocol;
@@ -40,6 +41,7 @@ import org.openremote.manager.asset.AssetUpdateProcessor;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.gateway.GatewayService;
 import org.openremote.manager.security.ManagerIdentityService;
+import org.openremote.manager.setup.SetupService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.AssetAttribute;
@@ -95,6 +97,7 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
 
     private static final Logger LOG = Logger.getLogger(AgentService.class.getName());
     public static final int PRIORITY = DEFAULT_PRIORITY + 100; // Start quite late to ensure protocols etc. are initialised
+    public static final int JSON_PATH_CACHE_SIZE = 1000;
     protected TimerService timerService;
     protected ManagerIdentityService identityService;
     protected AssetProcessingService assetProcessingService;
@@ -108,7 +111,16 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
     protected final Map<AttributeRef, List<AssetAttribute>> linkedAttributes = new HashMap<>();
     protected LocalAgentConnector localAgentConnector;
     protected Map<String, Asset> agentMap;
-    protected ParseContext jsonPathParser;
+    protected final Configuration jsonPathConfiguration = createJsonPathConfiguration();
+    // Paths come from the value filters of linked attributes, keep the most recently used paths compiled
+    protected final LoadingCache<String, JsonPath> jsonPathCache = CacheBuilder.newBuilder()
+        .maximumSize(JSON_PATH_CACHE_SIZE)
+        .build(new CacheLoader<String, JsonPath>() {
+            @Override
+            public JsonPath load(String path) {
+                return JsonPath.compile(path);
+            }
+        });
     protected boolean initDone;
 
     /**
@@ -120,6 +132,23 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
         return PRIORITY;
     }
 
+    /**
+     * Linking the agents to their protocols only needs the setup, the protocols and the storage and processing of
+     * assets, so it is done in parallel with the rules and the map.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Arrays.asList(
+            SetupService.class,
+            MessageBrokerService.class,
+            TimerService.class,
+            Protocol.class,
+            GatewayService.class,
+            AssetStorageService.class,
+            AssetProcessingService.class
+        );
+    }
+
     @Override
     public void init(Container container) throws Exception {
         timerService = container.getService(TimerService.class);
@@ -150,14 +179,6 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
                 this)
         );
 
-        jsonPathParser = JsonPath.using(
-            Configuration.builder()
-                .jsonProvider(new JacksonJsonNodeJsonProvider())
-                .mappingProvider(new JacksonMappingProvider())
-                .build()
-                .addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL)
-        );
-
         initDone = true;
     }
 
@@ -348,6 +369,11 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
         assetProcessingService.sendAttributeEvent(attributeEvent);
     }
 
+    @Override
+    public void sendAttributeEvents(List<AttributeEvent> attributeEvents) {
+        assetProcessingService.sendAttributeEvents(attributeEvents);
+    }
+
     @Override
     public Asset getAgent(AssetAttribute protocolConfiguration) {
         return getAgents().getOrDefault(protocolConfiguration.getReferenceOrThrow().getEntityId(), null);
@@ -1057,20 +1083,45 @@ public class AgentService extends RouteBuilder implements ContainerService, Asse
             return null;
         }
 
-        Object obj = jsonPathParser.parse(value.toJson()).read(filter.path);
-        String pathJson = obj != null ? obj.toString() : null;
-        if (TextUtil.isNullOrEmpty(pathJson)) {
-            return null;
-        }
+        // Paths are compiled once, the value tree is evaluated directly without serializing it to JSON
+        JsonPath jsonPath = jsonPathCache.getUnchecked(filter.path);
+        Value pathValue = toJsonPathResultValue(jsonPath.read(value, jsonPathConfiguration));
 
-        if (filter.returnFirst || filter.returnLast) {
-            Value pathValue = Values.parse(pathJson).orElse(null);
-            if (pathValue != null && pathValue.getType() == ValueType.ARRAY) {
-                pathValue = Values.getArray(pathValue).flatMap(arr -> arr.length() > 0 ? filter.returnFirst ? arr.get(0) : arr.get(arr.length() - 1) : Optional.empty()).orElse(null);
-            }
-            return pathValue;
+        if (pathValue != null && (filter.returnFirst || filter.returnLast) && pathValue.getType() == ValueType.ARRAY) {
+            pathValue = Values.getArray(pathValue).flatMap(arr -> arr.length() > 0 ? filter.returnFirst ? arr.get(0) : arr.get(arr.length() - 1) : Optional.empty()).orElse(null);
         }
 
-        return Values.parse(pathJson).orElse(null);
+        return pathValue;
+    }
+
+    protected static Configuration createJsonPathConfiguration() {
+        return Configuration.builder()
+            .jsonProvider(new ValueJsonProvider())
+            .mappingProvider(new JacksonMappingProvider(Container.JSON))
+            .build()
+            .addOptions(Option.DEFAULT_PATH_LEAF_TO_NULL);
+    }
+
+    /**
+     * Converts a JsonPath result to a value like the filter did when it evaluated paths against a JSON string: a single
+     * string result is parsed as JSON and objects and arrays are copied, so changing the result doesn't change the
+     * filtered value.
+     */
+    protected static Value toJsonPathResultValue(Object result) {
+        if (result instanceof StringValue) {
+            result = ((StringValue) result).getString();
+        }
+        if (result instanceof String) {
+            String str = (String) result;
+            return TextUtil.isNullOrEmpty(str) ? null : Values.parse(str).orElse(null);
+        }
+        Value value = ValueJsonProvider.toValue(result);
+        if (value instanceof ObjectValue) {
+            return ((ObjectValue) value).deepCopy();
+        }
+        if (value instanceof ArrayValue) {
+            return ((ArrayValue) value).deepCopy();
+        }
+        return value;
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.agent;
+
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.JsonPathException;
+import com.jayway.jsonpath.spi.json.AbstractJsonProvider;
+import org.openremote.model.value.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Jayway JsonPath {@link com.jayway.jsonpath.spi.json.JsonProvider} that evaluates paths directly against a
+ * {@link Value} tree, so a value doesn't have to be serialized and parsed again into another JSON model to apply a
+ * {@link JsonPathFilter}. Leaf values are unwrapped to {@link String}, {@link Double} and {@link Boolean} as required
+ * by the JsonPath predicate evaluation; use {@link #toValue} to convert a result back.
+ */
+public class ValueJsonProvider extends AbstractJsonProvider {
+
+    @Override
+    public Object parse(String json) throws InvalidJsonException {
+        try {
+            return Values.parse(json).orElse(null);
+        } catch (ValueException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    @Override
+    public Object parse(InputStream jsonStream, String charset) throws InvalidJsonException {
+        try (Reader reader = new InputStreamReader(jsonStream, charset)) {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+            return parse(sb.toString());
+        } catch (IOException e) {
+            throw new InvalidJsonException(e);
+        }
+    }
+
+    @Override
+    public String toJson(Object obj) {
+        Value value = toValue(obj);
+        return value != null ? value.toJson() : "null";
+    }
+
+    @Override
+    public Object createArray() {
+        return Values.createArray();
+    }
+
+    @Override
+    public Object createMap() {
+        return Values.createObject();
+    }
+
+    @Override
+    public boolean isArray(Object obj) {
+        return obj instanceof ArrayValue;
+    }
+
+    @Override
+    public boolean isMap(Object obj) {
+        return obj instanceof ObjectValue;
+    }
+
+    @Override
+    public int length(Object obj) {
+        if (obj instanceof ArrayValue) {
+            return ((ArrayValue) obj).length();
+        }
+        if (obj instanceof ObjectValue) {
+            return ((ObjectValue) obj).keys().length;
+        }
+        if (obj instanceof StringValue) {
+            return ((StringValue) obj).getString().length();
+        }
+        throw new JsonPathException("Cannot determine length of " + (obj != null ? obj.getClass().getName() : "null"));
+    }
+
+    @Override
+    public Iterable<?> toIterable(Object obj) {
+        if (obj instanceof ArrayValue) {
+            ArrayValue arrayValue = (ArrayValue) obj;
+            List<Value> values = new ArrayList<>(arrayValue.length());
+            for (int i = 0; i < arrayValue.length(); i++) {
+                values.add(arrayValue.get(i).orElse(null));
+            }
+            return values;
+        }
+        if (obj instanceof ObjectValue) {
+            ObjectValue objectValue = (ObjectValue) obj;
+            List<Value> values = new ArrayList<>();
+            for (String key : objectValue.keys()) {
+                values.add(objectValue.get(key).orElse(null));
+            }
+            return values;
+        }
+        throw new JsonPathException("Cannot iterate over " + (obj != null ? obj.getClass().getName() : "null"));
+    }
+
+    @Override
+    public Collection<String> getPropertyKeys(Object obj) {
+        if (obj instanceof ObjectValue) {
+            return Arrays.asList(((ObjectValue) obj).keys());
+        }
+        throw new UnsupportedOperationException("Not an object: " + obj);
+    }
+
+    @Override
+    public Object getArrayIndex(Object obj, int idx) {
+        return ((ArrayValue) obj).get(idx).orElse(null);
+    }
+
+    @Override
+    public void setArrayIndex(Object array, int index, Object newValue) {
+        ArrayValue arrayValue = (ArrayValue) array;
+        Value value = toValue(newValue);
+        if (value == null) {
+            // Setting null would remove the element from the array
+            if (index == arrayValue.length()) {
+                arrayValue.add((Value) null);
+            }
+            return;
+        }
+        arrayValue.set(index, value);
+    }
+
+    @Override
+    public Object getMapValue(Object obj, String key) {
+        ObjectValue objectValue = (ObjectValue) obj;
+        if (!objectValue.hasKey(key)) {
+            return UNDEFINED;
+        }
+        return objectValue.get(key).orElse(null);
+    }
+
+    @Override
+    public void setProperty(Object obj, Object key, Object value) {
+        if (obj instanceof ObjectValue) {
+            ((ObjectValue) obj).put(key.toString(), toValue(value));
+        } else if (obj instanceof ArrayValue) {
+            ArrayValue arrayValue = (ArrayValue) obj;
+            int index = key != null ? (key instanceof Integer ? (Integer) key : Integer.parseInt(key.toString())) : arrayValue.length();
+            setArrayIndex(arrayValue, index, value);
+        } else {
+            throw new UnsupportedOperationException("Cannot set property on " + (obj != null ? obj.getClass().getName() : "null"));
+        }
+    }
+
+    @Override
+    public void removeProperty(Object obj, Object key) {
+        if (obj instanceof ObjectValue) {
+            ((ObjectValue) obj).remove(key.toString());
+        } else if (obj instanceof ArrayValue) {
+            ((ArrayValue) obj).remove(key instanceof Integer ? (Integer) key : Integer.parseInt(key.toString()));
+        } else {
+            throw new UnsupportedOperationException("Cannot remove property from " + (obj != null ? obj.getClass().getName() : "null"));
+        }
+    }
+
+    @Override
+    public Object unwrap(Object obj) {
+        if (obj instanceof StringValue) {
+            return ((StringValue) obj).getString();
+        }
+        if (obj instanceof NumberValue) {
+            return ((NumberValue) obj).getNumber();
+        }
+        if (obj instanceof BooleanValue) {
+            return ((BooleanValue) obj).getBoolean();
+        }
+        return obj;
+    }
+
+    /**
+     * Converts a JsonPath result back to a {@link Value}, objects and arrays are returned as is.
+     */
+    public static Value toValue(Object obj) {
+        if (obj == null) {
+            return null;
+        }
+        if (obj instanceof Value) {
+            return (Value) obj;
+        }
+        if (obj instanceof String) {
+            return Values.create((String) obj);
+        }
+        if (obj instanceof Number) {
+            return Values.create(((Number) obj).doubleValue());
+        }
+        if (obj instanceof Boolean) {
+            return Values.create((Boolean) obj);
+        }
+        throw new JsonPathException("Unsupported JSON type: " + obj.getClass().getName());
+    }
+}
@@ -19,9 +19,11 @@
  */
 package org.openremote.manager.asset;
 
-import org.openremote.agent.protocol.Protocol;
+import org.apache.camel.builder.RouteBuilder;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
+import org.openremote.container.message.MessageBrokerService;
+import org.openremote.container.persistence.PersistenceEvent;
 import org.openremote.manager.agent.AgentService;
 import org.openremote.manager.asset.AssetProcessingException.Reason;
 import org.openremote.model.asset.Asset;
@@ -29,19 +31,24 @@ import org.openremote.model.asset.AssetAttribute;
 import org.openremote.model.attribute.*;
 import org.openremote.model.attribute.AttributeEvent.Source;
 import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.filter.MetaPredicate;
 import org.openremote.model.util.Pair;
 import org.openremote.model.value.*;
 
 import javax.persistence.EntityManager;
 import java.io.IOException;
-import java.util.NoSuchElementException;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
 import static org.openremote.model.attribute.AttributeEvent.Source.ATTRIBUTE_LINKING_SERVICE;
 import static org.openremote.model.attribute.MetaItem.isMetaNameEqualTo;
 import static org.openremote.model.query.AssetQuery.Select;
+import static org.openremote.model.value.Values.NULL_LITERAL;
 
 /**
  * This service processes asset updates on attributes that have one or more {@link MetaItemType#ATTRIBUTE_LINK} meta items.
@@ -83,14 +90,88 @@ import static org.openremote.model.query.AssetQuery.Select;
  * }
  * ]
  * }</pre></blockquote>
+ * <p>
+ * The links are parsed and compiled once, when the linking asset is loaded on start or persisted, and kept in an index
+ * by source {@link AttributeRef}; the value type of each linked attribute is resolved once and cached until the linked
+ * asset changes. Link cycles are detected when the index changes: updates caused by this service are forwarded along
+ * acyclic chains of links but never along a link that is part of a cycle.
  */
 // TODO: Improve AssetAttributeLinkingService so that outbound events are synchronsied with inbound
-public class AssetAttributeLinkingService implements ContainerService, AssetUpdateProcessor {
+public class AssetAttributeLinkingService extends RouteBuilder implements ContainerService, AssetUpdateProcessor {
+
+    /**
+     * An {@link AttributeLink} with its converter JSON compiled to lookup tables.
+     */
+    protected static final class CompiledAttributeLink {
+        protected final AttributeLink attributeLink;
+        protected final Map<String, Value> converterValues;
+        protected final Map<String, AttributeLink.ConverterType> specialConverters;
+        protected final Set<String> ignoredKeys;
+
+        protected CompiledAttributeLink(AttributeLink attributeLink) {
+            this.attributeLink = attributeLink;
+            ObjectValue converter = attributeLink.getConverter().orElse(null);
+
+            if (converter == null) {
+                converterValues = null;
+                specialConverters = null;
+                ignoredKeys = null;
+                return;
+            }
+
+            converterValues = new HashMap<>();
+            specialConverters = new HashMap<>();
+            ignoredKeys = new HashSet<>();
+
+            for (String key : converter.keys()) {
+                Value value = converter.get(key).orElse(null);
+                if (value != null && value.getType() == ValueType.STRING) {
+                    String valueStr = value.toString();
+                    if ("@IGNORE".equalsIgnoreCase(valueStr)) {
+                        ignoredKeys.add(key);
+                        continue;
+                    }
+                    if ("@NULL".equalsIgnoreCase(valueStr)) {
+                        converterValues.put(key, null);
+                        continue;
+                    }
+                    Optional<AttributeLink.ConverterType> specialConverter = getSpecialConverter(value);
+                    if (specialConverter.isPresent()) {
+                        specialConverters.put(key, specialConverter.get());
+                        continue;
+                    }
+                }
+                converterValues.put(key, value);
+            }
+        }
+
+        public AttributeRef getAttributeRef() {
+            return attributeLink.getAttributeRef();
+        }
+    }
+
+    /**
+     * The compiled links of a source attribute and the meta item values they were compiled from.
+     */
+    protected static final class IndexedLinks {
+        protected final List<Value> linkValues;
+        protected final List<CompiledAttributeLink> links;
+        protected final boolean indexed;
+
+        protected IndexedLinks(List<Value> linkValues, List<CompiledAttributeLink> links, boolean indexed) {
+            this.linkValues = linkValues;
+            this.links = links;
+            this.indexed = indexed;
+        }
+    }
 
     private static final Logger LOG = Logger.getLogger(AssetAttributeLinkingService.class.getName());
     protected AssetProcessingService assetProcessingService;
     protected AssetStorageService assetStorageService;
     protected AgentService agentService;
+    protected final Map<AttributeRef, IndexedLinks> linkIndex = new ConcurrentHashMap<>();
+    protected final Map<AttributeRef, Optional<ValueType>> linkedAttributeTypes = new ConcurrentHashMap<>();
+    protected volatile Set<AttributeRef> cyclicLinkSources = Collections.emptySet();
 
     @Override
     public int getPriority() {
@@ -102,14 +183,42 @@ public class AssetAttributeLinkingService implements ContainerService, AssetUpda
         assetProcessingService = container.getService(AssetProcessingService.class);
         assetStorageService = container.getService(AssetStorageService.class);
         agentService = container.getService(AgentService.class);
+        container.getService(MessageBrokerService.class).getContext().addRoutes(this);
     }
 
     @Override
     public void start(Container container) throws Exception {
+        List<Asset> assets = assetStorageService.findAll(
+            new AssetQuery()
+                .attributeMeta(new MetaPredicate(MetaItemType.ATTRIBUTE_LINK))
+                .select(Select.selectExcludePathAndParentInfo())
+        );
+
+        synchronized (linkIndex) {
+            assets.forEach(this::indexAssetLinks);
+            updateCyclicLinkSources();
+        }
+
+        LOG.info("Indexed attribute links of " + linkIndex.size() + " attribute(s)");
     }
 
     @Override
     public void stop(Container container) throws Exception {
+        linkIndex.clear();
+        linkedAttributeTypes.clear();
+        cyclicLinkSources = Collections.emptySet();
+    }
+
+    @Override
+    public void configure() throws Exception {
+        from(PERSISTENCE_TOPIC)
+            .routeId("AttributeLinkingAssetChanges")
+            .filter(isPersistenceEventForEntityType(Asset.class))
+            .process(exchange -> {
+                @SuppressWarnings("unchecked")
+                PersistenceEvent<Asset> persistenceEvent = exchange.getIn().getBody(PersistenceEvent.class);
+                processAssetChange(persistenceEvent.getEntity(), persistenceEvent);
+            });
     }
 
     @Override
@@ -117,37 +226,184 @@ public class AssetAttributeLinkingService implements ContainerService, AssetUpda
                                       Asset asset,
                                       AssetAttribute attribute,
                                       Source source) throws AssetProcessingException {
-        if (source == ATTRIBUTE_LINKING_SERVICE) {
-            LOG.fine("Attribute update came from this service so ignoring to avoid infinite loops: " + attribute);
+
+        AttributeRef sourceRef = new AttributeRef(asset.getId(), attribute.getNameOrThrow());
+        IndexedLinks indexedLinks = getLinks(sourceRef, attribute);
+
+        if (indexedLinks == null) {
             return false;
         }
 
-        attribute.getMetaStream()
-            .filter(isMetaNameEqualTo(MetaItemType.ATTRIBUTE_LINK))
-            .forEach(metaItem -> processLinkedAttributeUpdate(em, metaItem, attribute.getState().orElse(null)));
+        if (source == ATTRIBUTE_LINKING_SERVICE && (!indexedLinks.indexed || cyclicLinkSources.contains(sourceRef))) {
+            LOG.fine("Attribute update came from this service and the link may be part of a cycle so ignoring to avoid infinite loops: " + attribute);
+            return false;
+        }
+
+        AttributeState attributeState = attribute.getState().orElse(null);
+        indexedLinks.links.forEach(link -> processLinkedAttributeUpdate(em, link, attributeState));
 
         return false;
     }
 
+    /**
+     * @return the compiled links of the attribute, these are taken from the index unless the attribute's link meta
+     * items differ from the indexed ones (i.e. the persistence event of the asset has not been processed yet).
+     */
+    protected IndexedLinks getLinks(AttributeRef sourceRef, AssetAttribute attribute) {
+        IndexedLinks indexedLinks = linkIndex.get(sourceRef);
+        List<Value> linkValues = getLinkValues(attribute);
+
+        if (linkValues.isEmpty()) {
+            return null;
+        }
+
+        if (indexedLinks != null && indexedLinks.linkValues.equals(linkValues)) {
+            return indexedLinks;
+        }
+
+        LOG.fine("Attribute links are not indexed yet so compiling them now: " + sourceRef);
+        return compileLinks(linkValues, false);
+    }
+
+    protected static List<Value> getLinkValues(AssetAttribute attribute) {
+        return attribute.getMetaStream()
+            .filter(isMetaNameEqualTo(MetaItemType.ATTRIBUTE_LINK))
+            .map(metaItem -> metaItem.getValue().orElse(null))
+            .collect(Collectors.toList());
+    }
+
+    protected static IndexedLinks compileLinks(List<Value> linkValues, boolean indexed) {
+        List<CompiledAttributeLink> links = new ArrayList<>(linkValues.size());
+        for (Value linkValue : linkValues) {
+            AttributeLink attributeLink = null;
+            try {
+                attributeLink = Container.JSON.readValue(linkValue != null ? linkValue.toJson() : "", AttributeLink.class);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Failed to deserialize AttributeLink", e);
+            }
+            links.add(attributeLink != null ? new CompiledAttributeLink(attributeLink) : null);
+        }
+        return new IndexedLinks(linkValues, links, indexed);
+    }
+
+    protected void processAssetChange(Asset asset, PersistenceEvent<Asset> persistenceEvent) {
+        // The value types of attributes of this asset may have changed
+        linkedAttributeTypes.keySet().removeIf(attributeRef -> attributeRef.getEntityId().equals(asset.getId()));
+
+        synchronized (linkIndex) {
+            boolean changed = linkIndex.keySet().removeIf(attributeRef -> attributeRef.getEntityId().equals(asset.getId()));
+
+            if (persistenceEvent.getCause() != PersistenceEvent.Cause.DELETE) {
+                changed |= indexAssetLinks(asset);
+            }
+
+            if (changed) {
+                updateCyclicLinkSources();
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the asset has any attribute links.
+     */
+    protected boolean indexAssetLinks(Asset asset) {
+        boolean indexed = false;
+        for (AssetAttribute attribute : asset.getAttributesList()) {
+            List<Value> linkValues = getLinkValues(attribute);
+            if (!linkValues.isEmpty()) {
+                linkIndex.put(new AttributeRef(asset.getId(), attribute.getNameOrThrow()), compileLinks(linkValues, true));
+                indexed = true;
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Finds the strongly connected components of the link graph (Tarjan's algorithm); the links of source attributes
+     * that are in a component with other attributes, or that link to themselves, are part of a cycle.
+     */
+    protected void updateCyclicLinkSources() {
+        Map<AttributeRef, List<AttributeRef>> graph = new HashMap<>(linkIndex.size());
+        linkIndex.forEach((sourceRef, indexedLinks) ->
+            graph.put(
+                sourceRef,
+                indexedLinks.links.stream()
+                    .filter(Objects::nonNull)
+                    .map(CompiledAttributeLink::getAttributeRef)
+                    .collect(Collectors.toList())
+            ));
+
+        Set<AttributeRef> cyclic = new HashSet<>();
+        Map<AttributeRef, Integer> indexes = new HashMap<>();
+        Map<AttributeRef, Integer> lowLinks = new HashMap<>();
+        Deque<AttributeRef> stack = new ArrayDeque<>();
+        Set<AttributeRef> onStack = new HashSet<>();
+
+        for (AttributeRef node : graph.keySet()) {
+            if (!indexes.containsKey(node)) {
+                findComponents(node, graph, indexes, lowLinks, stack, onStack, cyclic);
+            }
+        }
+
+        for (AttributeRef sourceRef : cyclic) {
+            if (!cyclicLinkSources.contains(sourceRef)) {
+                LOG.warning("Attribute link cycle detected, linked updates will not be forwarded from: " + sourceRef);
+            }
+        }
+
+        cyclicLinkSources = cyclic;
+    }
+
+    protected static void findComponents(AttributeRef node,
+                                         Map<AttributeRef, List<AttributeRef>> graph,
+                                         Map<AttributeRef, Integer> indexes,
+                                         Map<AttributeRef, Integer> lowLinks,
+                                         Deque<AttributeRef> stack,
+                                         Set<AttributeRef> onStack,
+                                         Set<AttributeRef> cyclic) {
+        int index = indexes.size();
+        indexes.put(node, index);
+        lowLinks.put(node, index);
+        stack.push(node);
+        onStack.add(node);
+
+        for (AttributeRef target : graph.getOrDefault(node, Collections.emptyList())) {
+            if (target.equals(node)) {
+                cyclic.add(node);
+            } else if (!indexes.containsKey(target)) {
+                findComponents(target, graph, indexes, lowLinks, stack, onStack, cyclic);
+                lowLinks.put(node, Math.min(lowLinks.get(node), lowLinks.get(target)));
+            } else if (onStack.contains(target)) {
+                lowLinks.put(node, Math.min(lowLinks.get(node), indexes.get(target)));
+            }
+        }
+
+        if (lowLinks.get(node).equals(indexes.get(node))) {
+            List<AttributeRef> component = new ArrayList<>();
+            AttributeRef member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                component.add(member);
+            } while (!member.equals(node));
+
+            if (component.size() > 1) {
+                cyclic.addAll(component);
+            }
+        }
+    }
+
     protected void sendAttributeEvent(AttributeEvent attributeEvent) {
         LOG.fine("Sending attribute event for linked attribute: " + attributeEvent);
         assetProcessingService.sendAttributeEvent(attributeEvent, ATTRIBUTE_LINKING_SERVICE);
     }
 
-    protected void processLinkedAttributeUpdate(EntityManager em, MetaItem metaItem, AttributeState attributeState) {
+    protected void processLinkedAttributeUpdate(EntityManager em, CompiledAttributeLink link, AttributeState attributeState) {
         if (attributeState == null)
             return;
         LOG.fine("Processing attribute state for linked attribute");
 
-        AttributeLink attributeLink = null;
-
-        try {
-            attributeLink = Container.JSON.readValue(metaItem.getValue().map(Value::toJson).orElse(""), AttributeLink.class);
-        } catch (IOException e) {
-            LOG.log(Level.WARNING, "Failed to deserialize AttributeLink", e);
-        }
-
-        if (attributeLink == null) {
+        if (link == null) {
             throw new AssetProcessingException(Reason.INVALID_ATTRIBUTE_LINK);
         }
 
@@ -156,7 +412,7 @@ public class AssetAttributeLinkingService implements ContainerService, AssetUpda
             em,
             assetStorageService,
             attributeState.getValue().orElse(null),
-            attributeLink
+            link
         );
 
         if (sendConvertedValue.key) {
@@ -166,61 +422,73 @@ public class AssetAttributeLinkingService implements ContainerService, AssetUpda
 
         Value value = sendConvertedValue.value;
 
-        Optional<AssetAttribute> attribute = getAttribute(em, assetStorageService, attributeLink.getAttributeRef());
-        if (attribute.isPresent()) {
-            // Do built in value conversion
-            Optional<ValueType> attributeValueType = attribute.get().getType().map(AttributeValueDescriptor::getValueType);
-
-            if (value != null && attributeValueType.isPresent()) {
-                if (attributeValueType.get() != value.getType()) {
-                    LOG.fine("Trying to convert value: " + value.getType() + " -> " + attributeValueType.get());
-                    Optional<Value> convertedValue = Values.convertToValue(value, attributeValueType.get());
-                    if (!convertedValue.isPresent()) {
-                        LOG.warning("Failed to convert value: " + value.getType() + " -> " + attributeValueType.get());
-                        LOG.warning("Cannot send linked attribute update");
-                        return;
-                    } else {
-                        value = convertedValue.get();
-                    }
+        Optional<ValueType> attributeValueType = getLinkedAttributeValueType(em, link.getAttributeRef());
+
+        // Do built in value conversion
+        if (value != null && attributeValueType.isPresent()) {
+            if (attributeValueType.get() != value.getType()) {
+                LOG.fine("Trying to convert value: " + value.getType() + " -> " + attributeValueType.get());
+                Optional<Value> convertedValue = Values.convertToValue(value, attributeValueType.get());
+                if (!convertedValue.isPresent()) {
+                    LOG.warning("Failed to convert value: " + value.getType() + " -> " + attributeValueType.get());
+                    LOG.warning("Cannot send linked attribute update");
+                    return;
+                } else {
+                    value = convertedValue.get();
                 }
             }
         }
 
-        sendAttributeEvent(new AttributeEvent(attributeLink.getAttributeRef(), value));
+        sendAttributeEvent(new AttributeEvent(link.getAttributeRef(), value));
+    }
+
+    /**
+     * @return the value type of the linked attribute, this is only read from the database the first time the
+     * attribute is linked to and after its asset was modified.
+     */
+    protected Optional<ValueType> getLinkedAttributeValueType(EntityManager em, AttributeRef attributeRef) {
+        Optional<ValueType> valueType = linkedAttributeTypes.get(attributeRef);
+        if (valueType == null) {
+            valueType = getAttribute(em, assetStorageService, attributeRef)
+                .flatMap(AssetAttribute::getType)
+                .map(AttributeValueDescriptor::getValueType);
+            linkedAttributeTypes.put(attributeRef, valueType);
+        }
+        return valueType;
     }
 
     protected Pair<Boolean, Value> convertValueForLinkedAttribute(EntityManager em,
-                                                                         AssetStorageService assetStorageService,
-                                                                         Value originalValue,
-                                                                         AttributeLink attributeLink) throws AssetProcessingException {
+                                                                  AssetStorageService assetStorageService,
+                                                                  Value originalValue,
+                                                                  CompiledAttributeLink link) throws AssetProcessingException {
 
         // Filter the value first
-        if (attributeLink.getFilters() != null) {
-            originalValue = agentService.applyValueFilters(originalValue, attributeLink.getFilters());
+        if (link.attributeLink.getFilters() != null) {
+            originalValue = agentService.applyValueFilters(originalValue, link.attributeLink.getFilters());
+        }
+
+        if (link.converterValues == null) {
+            return new Pair<>(false, originalValue);
         }
-        Value finalOriginalValue = originalValue;
 
         // Apply converter
-        return attributeLink.getConverter()
-            .map(
-                converter -> {
-                    Pair<Boolean, Value> converterValue = Protocol.applyValueConverter(finalOriginalValue, converter);
+        String converterKey = originalValue == null ? NULL_LITERAL.toUpperCase() : originalValue.toString().toUpperCase(Locale.ROOT);
 
-                    if (converterValue.key) {
-                        return converterValue;
-                    }
+        if (link.ignoredKeys.contains(converterKey)) {
+            return new Pair<>(true, null);
+        }
+
+        // Do special value conversion
+        AttributeLink.ConverterType specialConverter = link.specialConverters.get(converterKey);
+        if (specialConverter != null) {
+            return doSpecialConversion(em, assetStorageService, specialConverter, link.getAttributeRef());
+        }
+
+        if (link.converterValues.containsKey(converterKey)) {
+            return new Pair<>(false, link.converterValues.get(converterKey));
+        }
 
-                    // Do special value conversion
-                    return getSpecialConverter(converterValue.value).map(
-                        specialConverter -> doSpecialConversion(
-                            em,
-                            assetStorageService,
-                            specialConverter,
-                            attributeLink.getAttributeRef()
-                        )
-                    ).orElse(converterValue);
-                })
-            .orElse(new Pair<>(false, originalValue));
+        return new Pair<>(true, originalValue);
     }
 
     protected static Optional<AttributeLink.ConverterType> getSpecialConverter(Value value) {
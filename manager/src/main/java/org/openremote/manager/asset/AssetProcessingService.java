@@ -22,6 +22,7 @@ package org.openremote.manager.asset;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
+import org.hibernate.Session;
 import org.openremote.agent.protocol.Protocol;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
@@ -49,10 +50,13 @@ import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
 
 import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -218,20 +222,27 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         */
         from(ASSET_QUEUE)
             .routeId("AssetQueueProcessor")
-            .filter(body().isInstanceOf(AttributeEvent.class))
+            .filter(body().isInstanceOf(AttributeEvent.class).or(body().isInstanceOf(AttributeEvent[].class)))
             .doTry()
             // Lock the global context, we can only process attribute events when the
             // context isn't locked. Agent- and RulesService lock the context while protocols
             // or rulesets are modified.
             .process(exchange -> withLock(getClass().getSimpleName() + "::processFromAssetQueue", () -> {
 
+                Source source = exchange.getIn().getHeader(HEADER_SOURCE, () -> null, Source.class);
+                AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
+
+                if (exchange.getIn().getBody() instanceof AttributeEvent[]) {
+                    processAttributeEvents(exchange.getIn().getBody(AttributeEvent[].class), source, authContext);
+                    return;
+                }
+
                 AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
                 LOG.finest("Processing: " + event);
                 if (event.getEntityId() == null || event.getEntityId().isEmpty())
                     return;
                 if (event.getAttributeName() == null || event.getAttributeName().isEmpty())
                     return;
-                Source source = exchange.getIn().getHeader(HEADER_SOURCE, () -> null, Source.class);
                 if (source == null) {
                     throw new AssetProcessingException(MISSING_SOURCE);
                 }
@@ -239,146 +250,7 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
                 // Process the asset update in a database transaction, this ensures that processors
                 // will see consistent database state and we only commit if no processor failed. This
                 // still won't make this procedure consistent with the message queue from which we consume!
-                persistenceService.doTransaction(em -> {
-                    Asset asset = assetStorageService.find(em, event.getEntityId(), true);
-                    if (asset == null)
-                        throw new AssetProcessingException(ASSET_NOT_FOUND);
-
-
-                    AssetAttribute oldAttribute = asset.getAttribute(event.getAttributeName()).orElse(null);
-                    if (oldAttribute == null)
-                        throw new AssetProcessingException(ATTRIBUTE_NOT_FOUND);
-
-                    switch (source) {
-                        case CLIENT:
-
-                            AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
-                            if (authContext == null) {
-                                // Check attribute has public write flag
-                                if (!oldAttribute.getMetaItem(MetaItemType.ACCESS_PUBLIC_WRITE).isPresent()) {
-                                    throw new AssetProcessingException(NO_AUTH_CONTEXT);
-                                }
-                                // Check read-only
-                                if (oldAttribute.isReadOnly()) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-                            } else {
-                                // Check realm, must be accessible
-                                if (!identityService.getIdentityProvider().isTenantActiveAndAccessible(authContext,
-                                                                                                       asset.getRealm())) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Check read-only
-                                if (oldAttribute.isReadOnly() && !authContext.isSuperUser()) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Regular user must have write assets role
-                                if (!authContext.hasResourceRoleOrIsSuperUser(ClientRole.WRITE_ASSETS.getValue(),
-                                                                              Constants.KEYCLOAK_CLIENT_ID)) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Check restricted user
-                                if (identityService.getIdentityProvider().isRestrictedUser(authContext.getUserId())) {
-                                    // Must be asset linked to user
-                                    if (!assetStorageService.isUserAsset(authContext.getUserId(),
-                                                                         event.getEntityId())) {
-                                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                    }
-                                    // Must be writable by restricted client
-                                    if (!oldAttribute.isAccessRestrictedWrite()) {
-                                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                    }
-                                }
-                            }
-                            break;
-
-                        case SENSOR:
-                            Optional<AssetAttribute> protocolConfiguration =
-                                getAgentLink(oldAttribute).flatMap(agentService::getProtocolConfiguration);
-
-                            // Sensor event must be for an attribute linked to a protocol configuration
-                            if (!protocolConfiguration.isPresent()) {
-                                throw new AssetProcessingException(INVALID_AGENT_LINK);
-                            }
-                            break;
-                    }
-
-                    // Agent attributes can't be updated with events
-                    if (asset.getWellKnownType() == AssetType.AGENT) {
-                        throw new AssetProcessingException(ILLEGAL_AGENT_UPDATE);
-                    }
-
-                    // For executable attributes, non-sensor sources can set a writable attribute execute status
-                    if (oldAttribute.isExecutable() && source != SENSOR) {
-                        Optional<AttributeExecuteStatus> status = event.getValue()
-                            .flatMap(Values::getString)
-                            .flatMap(AttributeExecuteStatus::fromString);
-
-                        if (status.isPresent() && !status.get().isWrite()) {
-                            throw new AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
-                        }
-                    }
-
-                    // Check if attribute is well known and the value is valid
-                    AssetModelUtil.getAttributeDescriptor(oldAttribute.name).ifPresent(wellKnownAttribute -> {
-                        // Check if the value is valid
-                        wellKnownAttribute.getValueDescriptor()
-                            .getValidator().flatMap(v -> v.apply(event.getValue().orElse(null)))
-                            .ifPresent(validationFailure -> {
-                                throw new AssetProcessingException(
-                                    INVALID_VALUE_FOR_WELL_KNOWN_ATTRIBUTE
-                                );
-                            });
-                    });
-
-                    // Either use the timestamp of the event or set event time to processing time
-                    long processingTime = timerService.getCurrentTimeMillis();
-                    long eventTime = event.getTimestamp() > 0 ? event.getTimestamp() : processingTime;
-
-                    // Ensure timestamp of event is not in the future as that would essentially block access to
-                    // the attribute until after that time (maybe that is desirable behaviour)
-                    if (eventTime - processingTime > 0) {
-                        // TODO: Decide how to handle update events in the future - ignore or change timestamp
-                        throw new AssetProcessingException(
-                            EVENT_IN_FUTURE,
-                            "current time: " + new Date(processingTime) + "/" + processingTime
-                                + ", event time: " + new Date(eventTime) + "/" + eventTime
-                        );
-                    }
-
-                    // Check the last update timestamp of the attribute, ignoring any event that is older than last update
-                    // TODO This means we drop out-of-sequence events but accept events with the same source timestamp
-                    // TODO Several attribute events can occur in the same millisecond, then order of application is undefined
-                    oldAttribute.getValueTimestamp().filter(t -> t >= 0 && eventTime < t).ifPresent(
-                        lastStateTime -> {
-                            throw new AssetProcessingException(
-                                EVENT_OUTDATED,
-                                "last asset state time: " + new Date(lastStateTime) + "/" + lastStateTime
-                                    + ", event time: " + new Date(eventTime) + "/" + eventTime);
-                        }
-                    );
-
-                    // Create a copy of the attribute and set the new value and timestamp
-                    AssetAttribute updatedAttribute = oldAttribute.deepCopy();
-                    updatedAttribute.setValue(event.getValue().orElse(null), eventTime);
-
-                    // Validate constraints of attribute
-                    List<ValidationFailure> validationFailures = updatedAttribute.getValidationFailures();
-                    if (!validationFailures.isEmpty()) {
-                        throw new AssetProcessingException(ATTRIBUTE_VALIDATION_FAILURE, validationFailures.toString());
-                    }
-
-                    // Push through all processors
-                    boolean consumedCompletely = processAssetUpdate(em, asset, updatedAttribute, source);
-
-                    // Publish a new event for clients if no processor consumed the update completely
-                    if (!consumedCompletely) {
-                        publishClientEvent(asset, updatedAttribute);
-                    }
-                });
+                persistenceService.doTransaction(em -> processAttributeEvent(em, event, source, authContext));
             }))
             .endDoTry()
             .doCatch(AssetProcessingException.class)
@@ -400,6 +272,236 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         messageBrokerService.getProducerTemplate().sendBodyAndHeader(ASSET_QUEUE, attributeEvent, HEADER_SOURCE, source);
     }
 
+    /**
+     * Send internal attribute change events into the {@link #ASSET_QUEUE} as a batch, they are processed in order in a
+     * single pass through the queue and a single database transaction with a savepoint for each event. An event that
+     * fails validation or processing is logged and rolled back to its savepoint and doesn't stop the processing of the
+     * other events. If the transaction can't be continued (or committed), the batch is rolled back and the events that
+     * weren't processed yet are processed in their own transaction; the events that were already pushed through the
+     * processors are not processed again as that would repeat their side effects (e.g. actuator writes), their writes
+     * are lost and logged.
+     */
+    public void sendAttributeEvents(List<AttributeEvent> attributeEvents) {
+        sendAttributeEvents(attributeEvents, INTERNAL);
+    }
+
+    public void sendAttributeEvents(List<AttributeEvent> attributeEvents, Source source) {
+        if (attributeEvents.isEmpty()) {
+            return;
+        }
+        long timestamp = timerService.getCurrentTimeMillis();
+        attributeEvents.forEach(attributeEvent -> {
+            if (attributeEvent.getTimestamp() <= 0) {
+                attributeEvent.setTimestamp(timestamp);
+            }
+        });
+        messageBrokerService.getProducerTemplate().sendBodyAndHeader(
+            ASSET_QUEUE, attributeEvents.toArray(new AttributeEvent[0]), HEADER_SOURCE, source
+        );
+    }
+
+    protected void processAttributeEvents(AttributeEvent[] events, Source source, AuthContext authContext) {
+        if (source == null) {
+            LOG.warning("Error processing batch of " + events.length + " attribute events - " + MISSING_SOURCE);
+            return;
+        }
+
+        List<AttributeEvent> batch = new ArrayList<>(events.length);
+        for (AttributeEvent event : events) {
+            if (event.getEntityId() == null || event.getEntityId().isEmpty())
+                continue;
+            if (event.getAttributeName() == null || event.getAttributeName().isEmpty())
+                continue;
+            batch.add(event);
+        }
+
+        LOG.finest("Processing batch of " + batch.size() + " attribute events");
+        AtomicInteger processedCount = new AtomicInteger();
+        try {
+            // Each event is processed within a savepoint, so we only commit the writes of an event if no processor
+            // failed, the same as when events are processed in their own transaction
+            persistenceService.doTransaction(em -> {
+                Session session = em.unwrap(Session.class);
+                for (AttributeEvent event : batch) {
+                    Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+                    processedCount.incrementAndGet();
+                    try {
+                        processAttributeEvent(em, event, source, authContext);
+                        em.flush();
+                        session.doWork(connection -> connection.releaseSavepoint(savepoint));
+                    } catch (RuntimeException ex) {
+                        if (em.getTransaction().getRollbackOnly()) {
+                            // The persistence provider won't commit anything of this transaction anymore
+                            throw ex;
+                        }
+                        em.clear();
+                        session.doWork(connection -> connection.rollback(savepoint));
+                        logProcessingFailure(event, source, ex);
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            List<AttributeEvent> processedEvents = batch.subList(0, processedCount.get());
+            List<AttributeEvent> remainingEvents = batch.subList(processedCount.get(), batch.size());
+            LOG.log(Level.WARNING, "Error processing batch of " + batch.size() + " attribute events from " + source
+                + ", rolled back the writes of the processed events " + processedEvents
+                + ", processing each remaining event in its own transaction", ex);
+            for (AttributeEvent event : remainingEvents) {
+                try {
+                    persistenceService.doTransaction(em -> processAttributeEvent(em, event, source, authContext));
+                } catch (RuntimeException eventEx) {
+                    logProcessingFailure(event, source, eventEx);
+                }
+            }
+        }
+    }
+
+    protected void logProcessingFailure(AttributeEvent event, Source source, RuntimeException ex) {
+        if (ex instanceof AssetProcessingException) {
+            LOG.warning("Error processing from " + source + " - " + ex.getMessage() + ": " + event);
+        } else {
+            LOG.log(Level.WARNING, "Error processing from " + source + ": " + event, ex);
+        }
+    }
+
+    protected void processAttributeEvent(EntityManager em, AttributeEvent event, Source source, AuthContext authContext) throws AssetProcessingException {
+        Asset asset = assetStorageService.find(em, event.getEntityId(), true);
+        if (asset == null)
+            throw new AssetProcessingException(ASSET_NOT_FOUND);
+
+        AssetAttribute oldAttribute = asset.getAttribute(event.getAttributeName()).orElse(null);
+        if (oldAttribute == null)
+            throw new AssetProcessingException(ATTRIBUTE_NOT_FOUND);
+
+        switch (source) {
+            case CLIENT:
+                if (authContext == null) {
+                    // Check attribute has public write flag
+                    if (!oldAttribute.getMetaItem(MetaItemType.ACCESS_PUBLIC_WRITE).isPresent()) {
+                        throw new AssetProcessingException(NO_AUTH_CONTEXT);
+                    }
+                    // Check read-only
+                    if (oldAttribute.isReadOnly()) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+                } else {
+                    // Check realm, must be accessible
+                    if (!identityService.getIdentityProvider().isTenantActiveAndAccessible(authContext,
+                                                                                           asset.getRealm())) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+
+                    // Check read-only
+                    if (oldAttribute.isReadOnly() && !authContext.isSuperUser()) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+
+                    // Regular user must have write assets role
+                    if (!authContext.hasResourceRoleOrIsSuperUser(ClientRole.WRITE_ASSETS.getValue(),
+                                                                  Constants.KEYCLOAK_CLIENT_ID)) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+
+                    // Check restricted user
+                    if (identityService.getIdentityProvider().isRestrictedUser(authContext.getUserId())) {
+                        // Must be asset linked to user
+                        if (!assetStorageService.isUserAsset(authContext.getUserId(),
+                                                             event.getEntityId())) {
+                            throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                        }
+                        // Must be writable by restricted client
+                        if (!oldAttribute.isAccessRestrictedWrite()) {
+                            throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                        }
+                    }
+                }
+                break;
+
+            case SENSOR:
+                Optional<AssetAttribute> protocolConfiguration =
+                    getAgentLink(oldAttribute).flatMap(agentService::getProtocolConfiguration);
+
+                // Sensor event must be for an attribute linked to a protocol configuration
+                if (!protocolConfiguration.isPresent()) {
+                    throw new AssetProcessingException(INVALID_AGENT_LINK);
+                }
+                break;
+        }
+
+        // Agent attributes can't be updated with events
+        if (asset.getWellKnownType() == AssetType.AGENT) {
+            throw new AssetProcessingException(ILLEGAL_AGENT_UPDATE);
+        }
+
+        // For executable attributes, non-sensor sources can set a writable attribute execute status
+        if (oldAttribute.isExecutable() && source != SENSOR) {
+            Optional<AttributeExecuteStatus> status = event.getValue()
+                .flatMap(Values::getString)
+                .flatMap(AttributeExecuteStatus::fromString);
+
+            if (status.isPresent() && !status.get().isWrite()) {
+                throw new AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
+            }
+        }
+
+        // Check if attribute is well known and the value is valid
+        AssetModelUtil.getAttributeDescriptor(oldAttribute.name).ifPresent(wellKnownAttribute -> {
+            // Check if the value is valid
+            wellKnownAttribute.getValueDescriptor()
+                .getValidator().flatMap(v -> v.apply(event.getValue().orElse(null)))
+                .ifPresent(validationFailure -> {
+                    throw new AssetProcessingException(
+                        INVALID_VALUE_FOR_WELL_KNOWN_ATTRIBUTE
+                    );
+                });
+        });
+
+        // Either use the timestamp of the event or set event time to processing time
+        long processingTime = timerService.getCurrentTimeMillis();
+        long eventTime = event.getTimestamp() > 0 ? event.getTimestamp() : processingTime;
+
+        // Ensure timestamp of event is not in the future as that would essentially block access to
+        // the attribute until after that time (maybe that is desirable behaviour)
+        if (eventTime - processingTime > 0) {
+            // TODO: Decide how to handle update events in the future - ignore or change timestamp
+            throw new AssetProcessingException(
+                EVENT_IN_FUTURE,
+                "current time: " + new Date(processingTime) + "/" + processingTime
+                    + ", event time: " + new Date(eventTime) + "/" + eventTime
+            );
+        }
+
+        // Check the last update timestamp of the attribute, ignoring any event that is older than last update
+        // TODO This means we drop out-of-sequence events but accept events with the same source timestamp
+        // TODO Several attribute events can occur in the same millisecond, then order of application is undefined
+        oldAttribute.getValueTimestamp().filter(t -> t >= 0 && eventTime < t).ifPresent(
+            lastStateTime -> {
+                throw new AssetProcessingException(
+                    EVENT_OUTDATED,
+                    "last asset state time: " + new Date(lastStateTime) + "/" + lastStateTime
+                        + ", event time: " + new Date(eventTime) + "/" + eventTime);
+            }
+        );
+
+        // Create a copy of the attribute and set the new value and timestamp
+        AssetAttribute updatedAttribute = oldAttribute.deepCopy();
+        updatedAttribute.setValue(event.getValue().orElse(null), eventTime);
+
+        // Validate constraints of attribute
+        List<ValidationFailure> validationFailures = updatedAttribute.getValidationFailures();
+        if (!validationFailures.isEmpty()) {
+            throw new AssetProcessingException(ATTRIBUTE_VALIDATION_FAILURE, validationFailures.toString());
+        }
+
+        // Push through all processors
+        boolean consumedCompletely = processAssetUpdate(em, asset, updatedAttribute, source);
+
+        // Publish a new event for clients if no processor consumed the update completely
+        if (!consumedCompletely) {
+            publishClientEvent(asset, updatedAttribute);
+        }
+    }
+
     /**
      * This deals with single {@link AssetAttribute} updates and pushes them through the chain where each
      * processor is given the opportunity to completely consume the update or allow its progress to the next
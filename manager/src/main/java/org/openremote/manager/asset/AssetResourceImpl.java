@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.asset;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.security.ManagerIdentityService;
@@ -44,7 +45,10 @@ import org.openremote.model.value.Values;
 import javax.persistence.OptimisticLockException;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.logging.Logger;
 
@@ -539,46 +543,100 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
     @Override
     public Asset[] queryAssets(RequestParams requestParams, AssetQuery query) {
         try {
-            if (query == null) {
+            if (query == null || !prepareQuery(query)) {
                 return EMPTY_ASSETS;
             }
 
-            if (isRestrictedUser()) {
-                // A restricted user can only query linked assets
-                query = query.userIds(getUserId());
+            List<Asset> result = assetStorageService.findAll(query);
 
-                // A restricted user may not query private asset data, only restricted or public
-                if (query.access == null || query.access == Access.PRIVATE)
-                    query.access(Access.PROTECTED);
-            }
+            // Compress response (the request attribute enables the interceptor)
+            request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
 
-            String realm = query.tenant != null && !isNullOrEmpty(query.tenant.realm)
-                ? query.tenant.realm
-                : getAuthenticatedRealm();
+            return result.toArray(new Asset[result.size()]);
 
-            if (TextUtil.isNullOrEmpty(realm)) {
-                throw new WebApplicationException(NOT_FOUND);
-            }
+        } catch (IllegalStateException ex) {
+            throw new WebApplicationException(ex, BAD_REQUEST);
+        }
+    }
 
-            if (!isTenantActiveAndAccessible(realm)) {
-                return EMPTY_ASSETS;
+    @Override
+    public Response streamAssets(RequestParams requestParams, AssetQuery query) {
+        try {
+            if (query != null && !prepareQuery(query)) {
+                query = null;
             }
+            if (query != null) {
+                // The response is committed once streaming starts so the query must be checked before
+                AssetStorageService.validatePagination(query);
+            }
+        } catch (IllegalStateException | IllegalArgumentException ex) {
+            throw new WebApplicationException(ex, BAD_REQUEST);
+        }
 
-            // This replicates behaviour of old getRoot and getChildren methods
-            if (!isSuperUser()) {
-                query.tenant(new TenantPredicate(realm));
+        final AssetQuery streamQuery = query;
+        StreamingOutput output = outputStream -> {
+            try (JsonGenerator generator = JSON.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("assets");
+                String cursor = null;
+                if (streamQuery != null) {
+                    try {
+                        cursor = assetStorageService.streamAll(streamQuery, asset -> {
+                            try {
+                                generator.writeObject(asset);
+                            } catch (IOException ex) {
+                                throw new UncheckedIOException(ex);
+                            }
+                        });
+                    } catch (UncheckedIOException ex) {
+                        throw ex.getCause();
+                    }
+                }
+                generator.writeEndArray();
+                generator.writeStringField("cursor", cursor);
+                generator.writeEndObject();
             }
+        };
 
-            List<Asset> result = assetStorageService.findAll(query);
+        // Compress response (the request attribute enables the interceptor)
+        request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
 
-            // Compress response (the request attribute enables the interceptor)
-            request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return Response.ok(output).build();
+    }
 
-            return result.toArray(new Asset[result.size()]);
+    /**
+     * Restricts the query to what the authenticated user may access.
+     *
+     * @return <code>false</code> if the user cannot access any assets in the realm of the query.
+     */
+    protected boolean prepareQuery(AssetQuery query) {
+        if (isRestrictedUser()) {
+            // A restricted user can only query linked assets
+            query.userIds(getUserId());
+
+            // A restricted user may not query private asset data, only restricted or public
+            if (query.access == null || query.access == Access.PRIVATE)
+                query.access(Access.PROTECTED);
+        }
 
-        } catch (IllegalStateException ex) {
-            throw new WebApplicationException(ex, BAD_REQUEST);
+        String realm = query.tenant != null && !isNullOrEmpty(query.tenant.realm)
+            ? query.tenant.realm
+            : getAuthenticatedRealm();
+
+        if (TextUtil.isNullOrEmpty(realm)) {
+            throw new WebApplicationException(NOT_FOUND);
+        }
+
+        if (!isTenantActiveAndAccessible(realm)) {
+            return false;
+        }
+
+        // This replicates behaviour of old getRoot and getChildren methods
+        if (!isSuperUser()) {
+            query.tenant(new TenantPredicate(realm));
         }
+        return true;
     }
 
     @Override
@@ -63,6 +63,7 @@ import org.postgresql.util.PGobject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.Date;
 import java.util.*;
@@ -122,6 +123,19 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
     private static final Logger LOG = Logger.getLogger(AssetStorageService.class.getName());
     public static final int PRIORITY = MED_PRIORITY;
+    public static final int QUERY_FETCH_SIZE = 500;
+    public static int STREAM_PAGE_SIZE = 1000;
+    protected static final String RULE_STATE_ASSETS_SQL =
+        "select * from (" +
+            "select A.ID as ID, A.NAME as NAME, A.ACCESS_PUBLIC_READ as ACCESS_PUBLIC_READ, A.CREATED_ON as CREATED_ON" +
+            ", A.ASSET_TYPE as ASSET_TYPE, A.PARENT_ID as PARENT_ID, A.REALM as REALM, A.OBJ_VERSION as OBJ_VERSION" +
+            ", P.NAME as PARENT_NAME, P.ASSET_TYPE as PARENT_TYPE, get_asset_tree_path(A.ID) as PATH" +
+            ", (select jsonb_object_agg(AX.key, AX.value) from jsonb_each(A.ATTRIBUTES) as AX" +
+            " where exists (select 1 from jsonb_array_elements(AX.VALUE #> '{meta}') as AM" +
+            " where AM.VALUE #>> '{name}' = ? and AM.VALUE #>> '{value}' = 'true')) as ATTRIBUTES" +
+            " from ASSET A left outer join ASSET P on A.PARENT_ID = P.ID" +
+            " where A.REALM = ?" +
+        ") RA where RA.ATTRIBUTES is not null";
     protected static String META_ITEM_RESTRICTED_READ_SQL_FRAGMENT;
     protected static String META_ITEM_PUBLIC_READ_SQL_FRAGMENT;
 
@@ -170,24 +184,23 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                  skipAssetIdCheck = true;
              }
 
-             if (!skipAssetIdCheck && filter.getAssetIds() != null) {
-                 // Client can subscribe to several assets
-                 for (String assetId : filter.getAssetIds()) {
-                     Asset asset = assetStorageService.find(assetId, false);
-                     // If the asset doesn't exist, subscription must fail
-                     if (asset == null)
-                         return false;
-                     if (isRestrictedUser) {
-                         // Restricted users can only get events for their linked assets
-                         if (!assetStorageService.isUserAsset(auth.getUserId(), assetId))
-                             return false;
-                         // TODO Restricted clients should only receive events for PROTECTED attributes!
-                     } else {
-                         // Regular users can only get events for assets in their realm
-                         if (!asset.getRealm().equals(auth.getAuthenticatedRealm()))
-                             return false;
-                     }
-                 }
+             if (!skipAssetIdCheck && filter.getAssetIds() != null && filter.getAssetIds().length > 0) {
+                 // Client can subscribe to several assets, they are checked with a single count query
+                 List<String> assetIds = Arrays.stream(filter.getAssetIds()).distinct().collect(Collectors.toList());
+
+                 // If an asset doesn't exist or (for regular users) isn't in their realm, subscription must fail
+                 long count = assetStorageService.count(
+                     new AssetQuery()
+                         .ids(assetIds.toArray(new String[0]))
+                         .tenant(new TenantPredicate(auth.getAuthenticatedRealm()))
+                 );
+                 if (count != assetIds.size())
+                     return false;
+
+                 // Restricted users can only get events for their linked assets
+                 // TODO Restricted clients should only receive events for PROTECTED attributes!
+                 if (isRestrictedUser && !assetStorageService.isUserAssets(auth.getUserId(), assetIds))
+                     return false;
              }
 
              return true;
@@ -438,14 +451,15 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                         // Set access requirements
                         query.access(access);
 
-                        List<Asset> assets = findAll(query);
+                        List<Asset> assets = new ArrayList<>();
+                        String cursor = findAll(query, assets::add);
 
                         String messageId = exchange.getIn().getHeader(HEADER_REQUEST_RESPONSE_MESSAGE_ID, String.class);
 
                         if (isNullOrEmpty(messageId)) {
-                            clientEventService.sendToSession(sessionKey, new AssetsEvent(assets));
+                            clientEventService.sendToSession(sessionKey, new AssetsEvent(assets, cursor));
                         } else {
-                            clientEventService.sendToSession(sessionKey, new EventRequestResponseWrapper<>(messageId, new AssetsEvent(assets)));
+                            clientEventService.sendToSession(sessionKey, new EventRequestResponseWrapper<>(messageId, new AssetsEvent(assets, cursor)));
                         }
                     })
                     .stop()
@@ -567,177 +581,200 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
      * @throws IllegalArgumentException if the realm or parent is illegal, or other asset constraint is violated.
      */
     public Asset merge(Asset asset, boolean overrideVersion, boolean skipGatewayCheck, String userName) {
-        return persistenceService.doReturningTransaction(em -> {
+        return persistenceService.doReturningTransaction(em -> merge(em, asset, overrideVersion, skipGatewayCheck, userName));
+    }
 
-            Asset existing = null;
+    /**
+     * Merges the assets in a single transaction, either all assets are stored or none are; parents must come before
+     * their children.
+     *
+     * @param overrideVersion If <code>true</code>, the merge will override the data in the database, independent of
+     *                        version.
+     * @param skipGatewayCheck Don't check if asset is a gateway asset and merge asset into local persistence service.
+     * @return The current stored asset states in the same order.
+     * @throws IllegalArgumentException if the realm or parent is illegal, or other asset constraint is violated.
+     */
+    public List<Asset> merge(List<Asset> assets, boolean overrideVersion, boolean skipGatewayCheck) {
+        return persistenceService.doReturningTransaction(em -> {
+            List<Asset> mergedAssets = new ArrayList<>(assets.size());
+            for (Asset asset : assets) {
+                mergedAssets.add(merge(em, asset, overrideVersion, skipGatewayCheck, null));
+                // Parent validation of subsequent assets queries the database directly
+                em.flush();
+            }
+            return mergedAssets;
+        });
+    }
 
-            if (asset.getId() != null) {
+    protected Asset merge(EntityManager em, Asset asset, boolean overrideVersion, boolean skipGatewayCheck, String userName) {
+        Asset existing = null;
 
-                // At least some sanity check, we must hope that the client has set a unique ID
-                if (asset.getId().length() != 22) {
-                    String msg = "Asset ID must be 22 characters: asset=" + asset;
-                    LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                }
+        if (asset.getId() != null) {
 
-                existing = em.find(Asset.class, asset.getId());
+            // At least some sanity check, we must hope that the client has set a unique ID
+            if (asset.getId().length() != 22) {
+                String msg = "Asset ID must be 22 characters: asset=" + asset;
+                LOG.info(msg);
+                throw new IllegalStateException(msg);
+            }
 
-                // Verify type has not been changed
-                if (existing != null && !existing.getType().equals(asset.getType())) {
-                    String msg = "Asset type cannot be changed: asset=" + asset;
-                    LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                }
+            existing = em.find(Asset.class, asset.getId());
 
-                if (existing != null && !existing.getRealm().equals(asset.getRealm())) {
-                    String msg = "Asset realm cannot be changed: asset=" + asset;
-                    LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                }
-
-                // If this is real merge and desired, copy the persistent version number over the detached
-                // version, so the detached state always wins and this update will go through and ignore
-                // concurrent updates
-                if (existing != null && overrideVersion) {
-                    asset.setVersion(existing.getVersion());
-                }
+            // Verify type has not been changed
+            if (existing != null && !existing.getType().equals(asset.getType())) {
+                String msg = "Asset type cannot be changed: asset=" + asset;
+                LOG.info(msg);
+                throw new IllegalStateException(msg);
             }
 
-            // Validate parent
-            if (asset.getParentId() != null) {
-                // If this is a not a root asset...
-                Asset parent = find(em, asset.getParentId(), true);
-
-                // .. the parent must exist
-                if (parent == null) {
-                    String msg = "Asset parent not found: asset=" + asset;
-                    LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                }
+            if (existing != null && !existing.getRealm().equals(asset.getRealm())) {
+                String msg = "Asset realm cannot be changed: asset=" + asset;
+                LOG.info(msg);
+                throw new IllegalStateException(msg);
+            }
 
-                // ... the parent can not be a child of the asset
-                if (parent.pathContains(asset.getId())) {
-                    String msg = "Asset parent cannot be a descendant of the asset: asset=" + asset;
-                    LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                }
+            // If this is real merge and desired, copy the persistent version number over the detached
+            // version, so the detached state always wins and this update will go through and ignore
+            // concurrent updates
+            if (existing != null && overrideVersion) {
+                asset.setVersion(existing.getVersion());
+            }
+        }
 
-                // .. the parent should be in the same realm
-                if (asset.getRealm() != null && !parent.getRealm().equals(asset.getRealm())) {
-                    String msg = "Asset parent must be in the same realm: asset=" + asset;
-                    LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                } else if (asset.getRealm() == null) {
-                    // ... and if we don't have a realm identifier, use the parent's
-                    asset.setRealm(parent.getRealm());
-                }
+        // Validate parent
+        if (asset.getParentId() != null) {
+            // If this is a not a root asset...
+            Asset parent = find(em, asset.getParentId(), true);
 
-                // if parent is of type group then this child asset must have the correct type
-                if (parent.getWellKnownType() == AssetType.GROUP) {
-                    String childAssetType = parent.getAttribute("childAssetType")
-                        .flatMap(AbstractValueHolder::getValueAsString)
-                        .orElseThrow(() -> {
-                            String msg = "Asset parent is of type GROUP but the childAssetType attribute is invalid: asset=" + asset;
-                            LOG.info(msg);
-                            return new IllegalStateException(msg);
-                        });
-                    if (!childAssetType.equals(asset.getType())) {
-                        String msg = "Asset type does not match parent GROUP asset's childAssetType attribute: asset=" + asset;
-                        LOG.info(msg);
-                        throw new IllegalStateException(msg);
-                    }
-                }
+            // .. the parent must exist
+            if (parent == null) {
+                String msg = "Asset parent not found: asset=" + asset;
+                LOG.info(msg);
+                throw new IllegalStateException(msg);
             }
 
-            // Validate realm
-            if (!identityService.getIdentityProvider().tenantExists(asset.getRealm())) {
-                String msg = "Asset realm not found or is inactive: asset=" + asset;
+            // ... the parent can not be a child of the asset
+            if (parent.pathContains(asset.getId())) {
+                String msg = "Asset parent cannot be a descendant of the asset: asset=" + asset;
                 LOG.info(msg);
                 throw new IllegalStateException(msg);
             }
 
-            // Validate attributes
-            int invalid = 0;
-            for (AssetAttribute attribute : asset.getAttributesList()) {
-                List<ValidationFailure> validationFailures = attribute.getValidationFailures();
-                if (!validationFailures.isEmpty()) {
-                    LOG.warning("Validation failure(s) " + validationFailures + ", can't store: " + attribute);
-                    invalid++;
-                }
-            }
-            if (invalid > 0) {
-                String msg = "Asset has one or more invalid attributes: asset=" + asset;
+            // .. the parent should be in the same realm
+            if (asset.getRealm() != null && !parent.getRealm().equals(asset.getRealm())) {
+                String msg = "Asset parent must be in the same realm: asset=" + asset;
                 LOG.info(msg);
                 throw new IllegalStateException(msg);
+            } else if (asset.getRealm() == null) {
+                // ... and if we don't have a realm identifier, use the parent's
+                asset.setRealm(parent.getRealm());
             }
 
-            // Validate group child asset type attribute
-            if (asset.getWellKnownType() == AssetType.GROUP) {
-                String childAssetType = asset.getAttribute("childAssetType")
-                    .flatMap(AssetAttribute::getValueAsString)
-                    .map(childAssetTypeString -> TextUtil.isNullOrEmpty(childAssetTypeString) ? null : childAssetTypeString)
+            // if parent is of type group then this child asset must have the correct type
+            if (parent.getWellKnownType() == AssetType.GROUP) {
+                String childAssetType = parent.getAttribute("childAssetType")
+                    .flatMap(AbstractValueHolder::getValueAsString)
                     .orElseThrow(() -> {
-                        String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
+                        String msg = "Asset parent is of type GROUP but the childAssetType attribute is invalid: asset=" + asset;
                         LOG.info(msg);
                         return new IllegalStateException(msg);
                     });
-
-                String existingChildAssetType = existing != null ? existing
-                    .getAttribute("childAssetType")
-                    .flatMap(AssetAttribute::getValueAsString)
-                    .orElseThrow(() -> {
-                        String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
-                        LOG.info(msg);
-                        return new IllegalStateException(msg);
-                    }) : childAssetType;
-
-                if (!childAssetType.equals(existingChildAssetType)) {
-                    String msg = "Asset of type GROUP so childAssetType attribute cannot be changed: asset=" + asset;
+                if (!childAssetType.equals(asset.getType())) {
+                    String msg = "Asset type does not match parent GROUP asset's childAssetType attribute: asset=" + asset;
                     LOG.info(msg);
                     throw new IllegalStateException(msg);
                 }
             }
+        }
 
-            // Update all empty attribute timestamps with server-time (a caller which doesn't have a
-            // reliable time source such as a browser should clear the timestamp when setting an attribute
-            // value).
+        // Validate realm
+        if (!identityService.getIdentityProvider().tenantExists(asset.getRealm())) {
+            String msg = "Asset realm not found or is inactive: asset=" + asset;
+            LOG.info(msg);
+            throw new IllegalStateException(msg);
+        }
 
-            asset.getAttributesStream().forEach(attribute -> {
-                Optional<Long> timestamp = attribute.getValueTimestamp();
-                if (!timestamp.isPresent() || timestamp.get() <= 0) {
-                    attribute.setValueTimestamp(timerService.getCurrentTimeMillis());
-                }
-            });
+        // Validate attributes
+        int invalid = 0;
+        for (AssetAttribute attribute : asset.getAttributesList()) {
+            List<ValidationFailure> validationFailures = attribute.getValidationFailures();
+            if (!validationFailures.isEmpty()) {
+                LOG.warning("Validation failure(s) " + validationFailures + ", can't store: " + attribute);
+                invalid++;
+            }
+        }
+        if (invalid > 0) {
+            String msg = "Asset has one or more invalid attributes: asset=" + asset;
+            LOG.info(msg);
+            throw new IllegalStateException(msg);
+        }
 
-            // If username present
-            User user = null;
-            if (!TextUtil.isNullOrEmpty(userName)) {
-                user = identityService.getIdentityProvider().getUserByUsername(asset.getRealm(), userName);
-                if (user == null) {
-                    String msg = "User not found: " + userName;
+        // Validate group child asset type attribute
+        if (asset.getWellKnownType() == AssetType.GROUP) {
+            String childAssetType = asset.getAttribute("childAssetType")
+                .flatMap(AssetAttribute::getValueAsString)
+                .map(childAssetTypeString -> TextUtil.isNullOrEmpty(childAssetTypeString) ? null : childAssetTypeString)
+                .orElseThrow(() -> {
+                    String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
                     LOG.info(msg);
-                    throw new IllegalStateException(msg);
-                }
-            }
+                    return new IllegalStateException(msg);
+                });
+
+            String existingChildAssetType = existing != null ? existing
+                .getAttribute("childAssetType")
+                .flatMap(AssetAttribute::getValueAsString)
+                .orElseThrow(() -> {
+                    String msg = "Asset of type GROUP childAssetType attribute must be a valid string: asset=" + asset;
+                    LOG.info(msg);
+                    return new IllegalStateException(msg);
+                }) : childAssetType;
 
-            LOG.fine("Storing: " + asset);
+            if (!childAssetType.equals(existingChildAssetType)) {
+                String msg = "Asset of type GROUP so childAssetType attribute cannot be changed: asset=" + asset;
+                LOG.info(msg);
+                throw new IllegalStateException(msg);
+            }
+        }
 
-            Asset updatedAsset;
-            String gatewayId = gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId());
+        // Update all empty attribute timestamps with server-time (a caller which doesn't have a
+        // reliable time source such as a browser should clear the timestamp when setting an attribute
+        // value).
 
-            if (!skipGatewayCheck && gatewayId != null) {
-                LOG.fine("Sending asset merge request to gateway: Gateway ID=" + gatewayId);
-                updatedAsset = gatewayService.mergeGatewayAsset(gatewayId, asset);
-            } else {
-                updatedAsset = em.merge(asset);
+        asset.getAttributesStream().forEach(attribute -> {
+            Optional<Long> timestamp = attribute.getValueTimestamp();
+            if (!timestamp.isPresent() || timestamp.get() <= 0) {
+                attribute.setValueTimestamp(timerService.getCurrentTimeMillis());
             }
+        });
 
-            if (user != null) {
-                storeUserAsset(em, new UserAsset(user.getRealm(), user.getId(), updatedAsset.getId()));
+        // If username present
+        User user = null;
+        if (!TextUtil.isNullOrEmpty(userName)) {
+            user = identityService.getIdentityProvider().getUserByUsername(asset.getRealm(), userName);
+            if (user == null) {
+                String msg = "User not found: " + userName;
+                LOG.info(msg);
+                throw new IllegalStateException(msg);
             }
+        }
 
-            return updatedAsset;
-        });
+        LOG.fine("Storing: " + asset);
+
+        Asset updatedAsset;
+        String gatewayId = gatewayService.getLocallyRegisteredGatewayId(asset.getId(), asset.getParentId());
+
+        if (!skipGatewayCheck && gatewayId != null) {
+            LOG.fine("Sending asset merge request to gateway: Gateway ID=" + gatewayId);
+            updatedAsset = gatewayService.mergeGatewayAsset(gatewayId, asset);
+        } else {
+            updatedAsset = em.merge(asset);
+        }
+
+        if (user != null) {
+            storeUserAsset(em, new UserAsset(user.getRealm(), user.getId(), updatedAsset.getId()));
+        }
+
+        return updatedAsset;
     }
 
     /**
@@ -1021,6 +1058,73 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     }
 
     protected List<Asset> findAll(EntityManager em, AssetQuery query) {
+        List<Asset> result = new ArrayList<>();
+        findAll(em, query, result::add);
+        return result;
+    }
+
+    /**
+     * Passes each asset matching the query to the consumer as the result set is read; rows are fetched from the
+     * database {@link #QUERY_FETCH_SIZE} at a time so memory use does not grow with the size of the result. When
+     * {@link AssetQuery#pageSize} is set, at most that many rows are read; note a calendar event predicate is applied
+     * after the rows are read so a page can then contain fewer assets.
+     *
+     * @return the cursor to request the next page with or <code>null</code> if the query is not paginated or this
+     * was the last page.
+     */
+    public String findAll(AssetQuery query, Consumer<Asset> consumer) {
+        return persistenceService.doReturningTransaction(em -> findAll(em, query, consumer));
+    }
+
+    /**
+     * Passes each asset matching the query to the consumer without holding a database connection while the consumer
+     * runs, so a slow consumer (e.g. a client reading a streamed response) can't exhaust the connection pool. The
+     * result is read in keyset pages of {@link #STREAM_PAGE_SIZE} assets, each in its own transaction, and a page is
+     * passed to the consumer after its transaction completed; memory use is bounded by the page size. A query ordered
+     * by anything other than creation date can't be read in pages, its result is read in a single transaction before
+     * it is passed to the consumer.
+     *
+     * @return the cursor to request the next page with or <code>null</code> if the query is not paginated or this
+     * was the last page.
+     */
+    public String streamAll(AssetQuery query, Consumer<Asset> consumer) {
+
+        validatePagination(query);
+
+        if (query.orderBy != null && query.orderBy.property != null && query.orderBy.property != OrderBy.Property.CREATED_ON) {
+            findAll(query).forEach(consumer);
+            return null;
+        }
+
+        int pageSize = query.pageSize;
+        String pageCursor = query.cursor;
+        String cursor = pageCursor;
+        int maxRows = pageSize > 0 ? pageSize : query.limit;
+        int rows = 0;
+        List<Asset> page = new ArrayList<>();
+
+        try {
+            while (true) {
+                int chunk = maxRows > 0 ? Math.min(STREAM_PAGE_SIZE, maxRows - rows) : STREAM_PAGE_SIZE;
+                query.page(chunk, cursor);
+                cursor = findAll(query, page::add);
+                page.forEach(consumer);
+                page.clear();
+                rows += chunk;
+
+                if (cursor == null) {
+                    return null;
+                }
+                if (maxRows > 0 && rows >= maxRows) {
+                    return pageSize > 0 ? cursor : null;
+                }
+            }
+        } finally {
+            query.page(pageSize, pageCursor);
+        }
+    }
+
+    protected String findAll(EntityManager em, AssetQuery query, Consumer<Asset> consumer) {
 
         if (query.access == null)
             query.access = PRIVATE;
@@ -1029,6 +1133,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         if (query.orderBy == null && query.ids == null)
             query.orderBy = new OrderBy(OrderBy.Property.CREATED_ON);
 
+        validatePagination(query);
+
         Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = buildQuery(query);
         PreparedAssetQuery querySql = queryAndContainsCalendarPredicate.key;
         boolean containsCalendarPredicate = queryAndContainsCalendarPredicate.value;
@@ -1038,35 +1144,214 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             throw new IllegalArgumentException("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
         }
 
-        return em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<List<Asset>>() {
+        return em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<String>() {
             @Override
-            public List<Asset> execute(Connection connection) throws SQLException {
+            public String execute(Connection connection) throws SQLException {
                 LOG.fine("Executing: " + querySql.querySql);
                 try (PreparedStatement st = connection.prepareStatement(querySql.querySql)) {
                     querySql.apply(st);
+                    // Only honoured by the driver inside a transaction, otherwise the whole result is loaded
+                    st.setFetchSize(QUERY_FETCH_SIZE);
 
                     try (ResultSet rs = st.executeQuery()) {
-                        List<Asset> result = new ArrayList<>();
-                        if (containsCalendarPredicate) {
-                            while (rs.next()) {
-                                Asset asset = mapResultTuple(query, rs);
-                                // Apply calendar event filter here (difficult to translate this into a SQL query)
-                                if (calendarEventPredicateMatches(query, asset)) {
-                                    result.add(asset);
-                                }
+                        int count = 0;
+                        Timestamp lastCreatedOn = null;
+                        String lastId = null;
+
+                        while (rs.next()) {
+                            if (query.pageSize > 0 && count == query.pageSize) {
+                                // One row more than the page size is selected to know if there is a next page
+                                return encodeCursor(lastCreatedOn, lastId);
                             }
-                        } else {
-                            while (rs.next()) {
-                                result.add(mapResultTuple(query, rs));
+                            count++;
+                            Asset asset = mapResultTuple(query, rs);
+                            lastCreatedOn = rs.getTimestamp("CREATED_ON");
+                            lastId = asset.getId();
+
+                            // Apply calendar event filter here (difficult to translate this into a SQL query)
+                            if (!containsCalendarPredicate || calendarEventPredicateMatches(query, asset)) {
+                                consumer.accept(asset);
                             }
                         }
-                        return result;
+                        return null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of assets matching the query; only the IDs of the matching assets are selected so no
+     * attributes or paths are computed and no assets are created.
+     */
+    public long count(AssetQuery query) {
+        return persistenceService.doReturningTransaction(em -> count(em, query));
+    }
+
+    protected long count(EntityManager em, AssetQuery query) {
+        PreparedAssetQuery querySql = buildProjectionQuery(query);
+
+        if (querySql == null) {
+            return findAll(em, query).size();
+        }
+
+        return executeProjection(em, "select count(*) from (" + querySql.querySql + ") Q", querySql, rs -> rs.next() ? rs.getLong(1) : 0L);
+    }
+
+    /**
+     * @return <code>true</code> if at least one asset matches the query, the database stops at the first match.
+     */
+    public boolean exists(AssetQuery query) {
+        return persistenceService.doReturningTransaction(em -> exists(em, query));
+    }
+
+    protected boolean exists(EntityManager em, AssetQuery query) {
+        PreparedAssetQuery querySql = buildProjectionQuery(query);
+
+        if (querySql == null) {
+            return !findAll(em, query).isEmpty();
+        }
+
+        return executeProjection(em, "select exists(" + querySql.querySql + ")", querySql, rs -> rs.next() && rs.getBoolean(1));
+    }
+
+    /**
+     * @return the IDs of the assets matching the query in the order of the query; unlike {@link #findAll} no
+     * attributes or paths are computed and no assets are created. A paginated query returns the IDs of the first page.
+     */
+    public List<String> findIds(AssetQuery query) {
+        return persistenceService.doReturningTransaction(em -> findIds(em, query));
+    }
+
+    protected List<String> findIds(EntityManager em, AssetQuery query) {
+        PreparedAssetQuery querySql = buildProjectionQuery(query);
+
+        if (querySql == null) {
+            return findAll(em, query).stream().map(Asset::getId).collect(Collectors.toList());
+        }
+
+        return executeProjection(em, querySql.querySql, querySql, rs -> {
+            List<String> ids = new ArrayList<>();
+            while (rs.next() && (query.pageSize <= 0 || ids.size() < query.pageSize)) {
+                ids.add(rs.getString("ID"));
+            }
+            return ids;
+        });
+    }
+
+    protected interface ProjectionMapper<R> {
+        R map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Builds the query with only the asset columns selected (no attributes, path or parent info); the ordering is
+     * only kept for paginated queries and queries with an explicit order.
+     *
+     * @return <code>null</code> if the query contains a calendar event predicate, it can only be applied to the
+     * attribute values after the query has been executed so the caller has to fall back to {@link #findAll}.
+     */
+    protected PreparedAssetQuery buildProjectionQuery(AssetQuery query) {
+        AssetQuery.Select select = query.select;
+        Access access = query.access;
+
+        try {
+            query.select = Select.selectExcludeAll();
+
+            if (query.access == null)
+                query.access = PRIVATE;
+
+            validatePagination(query);
+
+            Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = buildQuery(query);
+            return queryAndContainsCalendarPredicate.value ? null : queryAndContainsCalendarPredicate.key;
+        } finally {
+            query.select = select;
+            query.access = access;
+        }
+    }
+
+    protected <R> R executeProjection(EntityManager em, String sql, PreparedAssetQuery querySql, ProjectionMapper<R> mapper) {
+        return em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<R>() {
+            @Override
+            public R execute(Connection connection) throws SQLException {
+                LOG.fine("Executing: " + sql);
+                try (PreparedStatement st = connection.prepareStatement(sql)) {
+                    querySql.apply(st);
+                    st.setFetchSize(QUERY_FETCH_SIZE);
+
+                    try (ResultSet rs = st.executeQuery()) {
+                        return mapper.map(rs);
                     }
                 }
             }
         });
     }
 
+    /**
+     * Passes each asset of the realm that has attributes with a {@link MetaItemType#RULE_STATE} meta item to the
+     * consumer as the result set is read; only those attributes are selected (with their full meta) so the rules
+     * engines can be initialised without loading and parsing all attributes of all assets.
+     */
+    public void findRuleStateAssets(String realm, Consumer<Asset> consumer) {
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement st = connection.prepareStatement(RULE_STATE_ASSETS_SQL)) {
+                st.setString(1, MetaItemType.RULE_STATE.getUrn());
+                st.setString(2, realm);
+                // Only honoured by the driver inside a transaction, otherwise the whole result is loaded
+                st.setFetchSize(QUERY_FETCH_SIZE);
+
+                try (ResultSet rs = st.executeQuery()) {
+                    AssetQuery query = new AssetQuery();
+                    while (rs.next()) {
+                        consumer.accept(mapResultTuple(query, rs));
+                    }
+                }
+            }
+        }));
+    }
+
+    /**
+     * Checks the pagination of the query can be executed, a paginated query must be ordered by creation date (the
+     * default) and its cursor must have been returned by a previous query.
+     */
+    public static void validatePagination(AssetQuery query) throws IllegalArgumentException {
+        if (query.pageSize < 0) {
+            throw new IllegalArgumentException("Asset query page size must not be negative");
+        }
+        if (query.pageSize == 0) {
+            return;
+        }
+        if (query.orderBy != null && query.orderBy.property != null && query.orderBy.property != OrderBy.Property.CREATED_ON) {
+            throw new IllegalArgumentException("Paginated asset query can only be ordered by creation date");
+        }
+        if (query.cursor != null) {
+            decodeCursor(query.cursor);
+        }
+    }
+
+    /**
+     * The cursor is opaque to clients, it holds the creation timestamp (with the full precision of the database) and
+     * the ID of the last asset of a page.
+     */
+    protected static String encodeCursor(Timestamp createdOn, String id) {
+        String cursor = createdOn.getTime() + ":" + createdOn.getNanos() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected static Pair<Timestamp, String> decodeCursor(String cursor) throws IllegalArgumentException {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+            Timestamp createdOn = new Timestamp(Long.parseLong(parts[0]));
+            createdOn.setNanos(Integer.parseInt(parts[1]));
+            if (isNullOrEmpty(parts[2])) {
+                throw new IllegalArgumentException("Missing asset ID");
+            }
+            return new Pair<>(createdOn, parts[2]);
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid asset query cursor: " + cursor, ex);
+        }
+    }
+
     protected Pair<PreparedAssetQuery, Boolean> buildQuery(AssetQuery query) {
         LOG.fine("Building: " + query);
         StringBuilder sb = new StringBuilder();
@@ -1088,6 +1373,16 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             containsCalendarPredicate = !containsCalendarPredicate && appendWhereClause(sb, query, 3, binders);
         }
 
+        if (query.pageSize > 0 && query.cursor != null) {
+            // Keyset pagination so the position of a page doesn't have to be scanned for as it would with an offset
+            Pair<Timestamp, String> cursor = decodeCursor(query.cursor);
+            boolean descending = query.orderBy != null && query.orderBy.descending;
+            sb.append(descending ? " and (A.CREATED_ON, A.ID) < (?, ?)" : " and (A.CREATED_ON, A.ID) > (?, ?)");
+            final int pos = binders.size() + 1;
+            binders.add(st -> st.setTimestamp(pos, cursor.key));
+            binders.add(st -> st.setString(pos + 1, cursor.value));
+        }
+
         sb.append(buildOrderByString(query));
         sb.append(buildLimitString(query));
         return new Pair<>(new PreparedAssetQuery(sb.toString(), binders), containsCalendarPredicate);
@@ -1274,6 +1569,12 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected String buildOrderByString(AssetQuery query) {
         StringBuilder sb = new StringBuilder();
 
+        if (query.pageSize > 0) {
+            // The ID makes the order total which keyset pagination relies on
+            String direction = query.orderBy != null && query.orderBy.descending ? "desc" : "asc";
+            return sb.append(" order by A.CREATED_ON ").append(direction).append(", A.ID ").append(direction).append(" ").toString();
+        }
+
         if (query.ids != null && !query.recursive) {
             return sb.toString();
         }
@@ -1305,6 +1606,9 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     }
 
     protected String buildLimitString(AssetQuery query) {
+        if (query.pageSize > 0) {
+            return " LIMIT " + (query.pageSize + 1);
+        }
         if (query.limit > 0) {
             return " LIMIT " + query.limit;
         }
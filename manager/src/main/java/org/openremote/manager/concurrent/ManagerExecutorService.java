@@ -20,9 +20,11 @@
 package org.openremote.manager.concurrent;
 
 import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.agent.protocol.io.SharedEventLoopGroup;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
 import org.openremote.container.concurrent.ContainerScheduledExecutor;
+import org.openremote.container.concurrent.ContainerTimerWheel;
 
 import java.util.Collection;
 import java.util.List;
@@ -39,8 +41,24 @@ public class ManagerExecutorService implements ProtocolExecutorService {
      */
     public static final String SCHEDULED_TASKS_THREADS_MAX = "SCHEDULED_TASKS_THREADS_MAX";
     public static final int SCHEDULED_TASKS_THREADS_MAX_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+
+    /**
+     * Tick duration of the timing wheel used for large numbers of coarse grained timers such as protocol polling,
+     * the timers are executed on the scheduled task threads.
+     */
+    public static final String TIMER_WHEEL_TICK_MILLIS = "TIMER_WHEEL_TICK_MILLIS";
+    public static final int TIMER_WHEEL_TICK_MILLIS_DEFAULT = 10;
+
+    /**
+     * Threads of the event loop group shared by all Netty based protocol IO clients and servers, each thread
+     * multiplexes many connections so this should be in the order of the number of cores.
+     */
+    public static final String PROTOCOL_IO_THREADS_MAX = "PROTOCOL_IO_THREADS_MAX";
+    public static final int PROTOCOL_IO_THREADS_MAX_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
     public static final int PRIORITY = ContainerService.HIGH_PRIORITY + 200;
     protected ScheduledExecutorService scheduledTasksExecutor;
+    protected ContainerTimerWheel timerWheel;
+    protected SharedEventLoopGroup ioEventLoopGroup;
 
     @Override
     public int getPriority() {
@@ -52,6 +70,12 @@ public class ManagerExecutorService implements ProtocolExecutorService {
         int scheduledTasksThreadsMax =
             getInteger(container.getConfig(), SCHEDULED_TASKS_THREADS_MAX, SCHEDULED_TASKS_THREADS_MAX_DEFAULT);
         scheduledTasksExecutor = new ContainerScheduledExecutor("Scheduled task", scheduledTasksThreadsMax);
+        int timerWheelTickMillis =
+            getInteger(container.getConfig(), TIMER_WHEEL_TICK_MILLIS, TIMER_WHEEL_TICK_MILLIS_DEFAULT);
+        timerWheel = new ContainerTimerWheel("Timer wheel", timerWheelTickMillis, scheduledTasksExecutor);
+        int protocolIoThreadsMax =
+            getInteger(container.getConfig(), PROTOCOL_IO_THREADS_MAX, PROTOCOL_IO_THREADS_MAX_DEFAULT);
+        ioEventLoopGroup = new SharedEventLoopGroup("Protocol IO", protocolIoThreadsMax);
     }
 
     @Override
@@ -60,7 +84,9 @@ public class ManagerExecutorService implements ProtocolExecutorService {
 
     @Override
     public void stop(Container container) throws Exception {
+        timerWheel.stop();
         scheduledTasksExecutor.shutdownNow();
+        ioEventLoopGroup.shutdown();
     }
 
     @Override
@@ -78,6 +104,26 @@ public class ManagerExecutorService implements ProtocolExecutorService {
         return scheduledTasksExecutor.scheduleWithFixedDelay(runnable, initialDelayMillis, periodMillis, TimeUnit.MILLISECONDS);
     }
 
+    @Override
+    public ScheduledFuture<?> scheduleTimer(Runnable runnable, long delayMillis) {
+        return timerWheel.schedule(runnable, delayMillis);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleTimerAtFixedRate(Runnable runnable, long initialDelayMillis, long periodMillis) {
+        return timerWheel.scheduleAtFixedRate(runnable, initialDelayMillis, periodMillis);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleTimerWithFixedDelay(Runnable runnable, long initialDelayMillis, long delayMillis) {
+        return timerWheel.scheduleWithFixedDelay(runnable, initialDelayMillis, delayMillis);
+    }
+
+    @Override
+    public SharedEventLoopGroup getIoEventLoopGroup() {
+        return ioEventLoopGroup;
+    }
+
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
         return scheduledTasksExecutor.schedule(command, delay, unit);
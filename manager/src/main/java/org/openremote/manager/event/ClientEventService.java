@@ -24,6 +24,7 @@ import org.apache.camel.builder.RouteBuilder;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.openremote.agent.protocol.ProtocolClientEventService;
 import org.openremote.container.Container;
+import org.openremote.container.ContainerService;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.security.AuthContext;
 import org.openremote.container.timer.TimerService;
@@ -135,6 +136,15 @@ public class ClientEventService implements ProtocolClientEventService {
         return PRIORITY;
     }
 
+    /**
+     * Starting only resumes dispatching events to clients, so the services that handle clients (e.g. the MQTT broker)
+     * don't have to wait for the rules and agents.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.singletonList(MessageBrokerService.class);
+    }
+
     @Override
     public void init(Container container) throws Exception {
         timerService = container.getService(TimerService.class);
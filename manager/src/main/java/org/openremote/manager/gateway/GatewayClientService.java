@@ -349,6 +349,21 @@ public class GatewayClientService extends RouteBuilder implements ContainerServi
                             messageId,
                             new AssetsEvent(assets)
                         )));
+            } else if (event instanceof ReadAssetHashesEvent) {
+                List<AssetHashesEvent.AssetHash> assetHashes = assetStorageService.findAll(
+                    new AssetQuery().tenant(new TenantPredicate(connection.getLocalRealm()))
+                ).stream()
+                    .map(asset -> new AssetHashesEvent.AssetHash(asset.getId(), asset.getParentId(), GatewayConnector.getAssetHash(asset, null)))
+                    .collect(Collectors.toList());
+
+                sendCentralManagerMessage(
+                    connection.getLocalRealm(),
+                    messageToString(
+                        EventRequestResponseWrapper.MESSAGE_PREFIX,
+                        new EventRequestResponseWrapper<>(
+                            messageId,
+                            new AssetHashesEvent(assetHashes)
+                        )));
             }
         }
     }
@@ -31,13 +31,20 @@ import org.openremote.model.event.shared.SharedEvent;
 import org.openremote.model.gateway.GatewayDisconnectEvent;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.value.ArrayValue;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
 
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.function.ToIntFunction;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -54,7 +61,7 @@ public class GatewayConnector {
     public static long SYNC_TIMEOUT_MILLIS = 10000; // How long to wait for a response before resending request
     public static long ASSET_CRUD_TIMEOUT_MILLIS = 10000; // How long to wait for a response when merging an asset before throwing an exception
     public static int MAX_SYNC_RETRIES = 5;
-    public static int SYNC_ASSET_BATCH_SIZE = 20;
+    public static int SYNC_ASSET_BATCH_SIZE = 200;
     public static final String ASSET_READ_EVENT_NAME_INITIAL = "INITIAL";
     public static final String ASSET_READ_EVENT_NAME_BATCH = "BATCH";
     protected final String realm;
@@ -71,7 +78,9 @@ public class GatewayConnector {
     protected boolean disabled;
     protected boolean initialSyncInProgress;
     protected ScheduledFuture<?> syncProcessorFuture;
-    List<String> syncAssetIds;
+    protected boolean assetHashesSupported;
+    Set<String> syncAssetIds;
+    List<String> requestAssetIds;
     int syncIndex;
     int syncErrors;
     Asset gateway;
@@ -122,8 +131,10 @@ public class GatewayConnector {
         cachedAssetEvents = new ArrayList<>();
         cachedAttributeEvents = new ArrayList<>();
         syncAssetIds = null;
+        requestAssetIds = null;
         syncIndex = 0;
         syncErrors = 0;
+        assetHashesSupported = true;
 
         startSync();
     }
@@ -198,7 +209,9 @@ public class GatewayConnector {
         }
 
         if (initialSyncInProgress) {
-            if (e instanceof AssetsEvent) {
+            if (e instanceof AssetHashesEvent) {
+                onSyncAssetHashesResponse(messageId, (AssetHashesEvent) e);
+            } else if (e instanceof AssetsEvent) {
                 onSyncAssetsResponse(messageId, (AssetsEvent) e);
             } else if (e instanceof AttributeEvent) {
                 cachedAttributeEvents.add((AttributeEvent) e);
@@ -217,7 +230,8 @@ public class GatewayConnector {
     }
 
     /**
-     * Get list of gateway assets (get basic details and then batch load them to minimise load)
+     * Get the content hash of each gateway asset and then batch load the assets whose hash differs from the local
+     * copy; gateways that don't respond to the hash request are synced in full using the basic details of all assets.
      */
     synchronized protected void startSync() {
 
@@ -228,7 +242,9 @@ public class GatewayConnector {
         expectedSyncResponseName = ASSET_READ_EVENT_NAME_INITIAL;
         sendMessageToGateway(new EventRequestResponseWrapper<>(
             ASSET_READ_EVENT_NAME_INITIAL,
-            new ReadAssetsEvent(new AssetQuery().select(selectExcludeAll()).recursive(true))));
+            assetHashesSupported
+                ? new ReadAssetHashesEvent()
+                : new ReadAssetsEvent(new AssetQuery().select(selectExcludeAll()).recursive(true))));
         syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, SYNC_TIMEOUT_MILLIS);
     }
 
@@ -248,6 +264,10 @@ public class GatewayConnector {
         }
 
         if (syncAssetIds == null) {
+            if (assetHashesSupported) {
+                LOG.info("Gateway didn't respond to asset hashes request so falling back to full sync: Gateway ID=" + gatewayId);
+                assetHashesSupported = false;
+            }
             // Haven't received initial list of assets so retry
             startSync();
         } else {
@@ -275,10 +295,10 @@ public class GatewayConnector {
             return;
         }
 
-        String[] requestAssetIds = syncAssetIds.stream().skip(syncIndex).limit(SYNC_ASSET_BATCH_SIZE).toArray(String[]::new);
+        String[] requestedAssetIds = getRequestedAssetIds().toArray(new String[0]);
         expectedSyncResponseName = ASSET_READ_EVENT_NAME_BATCH + syncIndex;
 
-        LOG.fine("Synchronising gateway assets " + syncIndex+1 + "-" + syncIndex + requestAssetIds.length + " of " + syncAssetIds.size());
+        LOG.fine("Synchronising gateway assets " + (syncIndex + 1) + "-" + (syncIndex + requestedAssetIds.length) + " of " + requestAssetIds.size());
 
         sendMessageToGateway(
             new EventRequestResponseWrapper<>(
@@ -286,11 +306,81 @@ public class GatewayConnector {
                 new ReadAssetsEvent(
                     new AssetQuery()
                         .select(new AssetQuery.Select().excludeParentInfo(true).excludePath(true))
-                        .ids(requestAssetIds)
+                        .ids(requestedAssetIds)
                 )
             )
         );
-        syncProcessorFuture = executorService.schedule(this::requestAssets, SYNC_TIMEOUT_MILLIS);
+        syncProcessorFuture = executorService.schedule(this::onSyncAssetsTimeout, SYNC_TIMEOUT_MILLIS);
+    }
+
+    protected List<String> getRequestedAssetIds() {
+        return requestAssetIds.subList(syncIndex, Math.min(syncIndex + SYNC_ASSET_BATCH_SIZE, requestAssetIds.size()));
+    }
+
+    synchronized protected void onSyncAssetHashesResponse(String messageId, AssetHashesEvent e) {
+        if (!isConnected()) {
+            return;
+        }
+
+        if (!expectedSyncResponseName.equalsIgnoreCase(messageId) || !ASSET_READ_EVENT_NAME_INITIAL.equalsIgnoreCase(messageId)) {
+            LOG.info("Unexpected response from gateway so ignoring (expected=" + expectedSyncResponseName + ", actual =" + messageId + "): " + e);
+            return;
+        }
+
+        syncProcessorFuture.cancel(true);
+        syncProcessorFuture = null;
+
+        Map<String, String> localAssetHashes = new HashMap<>();
+        assetStorageService.findAll(
+            new AssetQuery()
+                .recursive(true)
+                .parents(gatewayId)
+        ).forEach(asset -> localAssetHashes.put(asset.getId(), getAssetHash(asset, gatewayId)));
+
+        Map<String, String> gatewayAssetIdParentIdMap = new LinkedHashMap<>(e.getAssetHashes().size());
+        Set<String> changedAssetIds = new HashSet<>();
+        e.getAssetHashes().forEach(assetHash -> {
+            gatewayAssetIdParentIdMap.put(assetHash.getId(), assetHash.getParentId());
+            if (!assetHash.getHash().equals(localAssetHashes.get(assetHash.getId()))) {
+                changedAssetIds.add(assetHash.getId());
+            }
+        });
+
+        LOG.info("Gateway assets changed since last sync " + changedAssetIds.size() + " of " + gatewayAssetIdParentIdMap.size() + ": Gateway ID=" + gatewayId);
+        startRequestAssets(gatewayAssetIdParentIdMap, changedAssetIds::contains);
+    }
+
+    /**
+     * Orders the gateway assets so parents are stored before their children and requests those matching the filter.
+     */
+    protected void startRequestAssets(Map<String, String> gatewayAssetIdParentIdMap, Predicate<String> requestFilter) {
+
+        // Sorting is stable so assets of the same level keep the gateway's order
+        Map<String, Integer> assetLevels = new LinkedHashMap<>(gatewayAssetIdParentIdMap.size());
+        gatewayAssetIdParentIdMap.forEach((id, parentId) -> {
+            int level = 0;
+            while (parentId != null) {
+                level++;
+                parentId = gatewayAssetIdParentIdMap.get(parentId);
+            }
+            assetLevels.put(id, level);
+        });
+
+        List<String> orderedAssetIds = assetLevels.keySet()
+            .stream()
+            .sorted(Comparator.comparingInt(assetLevels::get))
+            .collect(Collectors.toList());
+
+        syncAssetIds = new LinkedHashSet<>(orderedAssetIds);
+        requestAssetIds = orderedAssetIds.stream().filter(requestFilter).collect(Collectors.toList());
+        syncIndex = 0;
+
+        if (requestAssetIds.isEmpty()) {
+            onAllAssetsRetrieved();
+            return;
+        }
+
+        requestAssets();
     }
 
     synchronized protected void onSyncAssetsResponse(String messageId, AssetsEvent e) {
@@ -309,121 +399,109 @@ public class GatewayConnector {
 
         if (isInitialResponse) {
 
+            // Gateway doesn't support asset hashes so request all assets
             Map<String, String> gatewayAssetIdParentIdMap = e.getAssets().stream()
-                .collect(HashMap::new, (m,v)->m.put(v.getId(), v.getParentId()), HashMap::putAll);
-
-            ToIntFunction<Asset> assetLevelExtractor = asset -> {
-                int level = 0;
-                String parentId = asset.getParentId();
-                while (parentId != null) {
-                    level++;
-                    parentId = gatewayAssetIdParentIdMap.get(parentId);
-                }
-                return level;
-            };
+                .collect(LinkedHashMap::new, (m,v)->m.put(v.getId(), v.getParentId()), HashMap::putAll);
 
-            syncAssetIds = e.getAssets()
-                .stream()
-                .sorted(Comparator.comparingInt(assetLevelExtractor))
-                .map(Asset::getId)
-                .collect(Collectors.toList());
-
-            if (syncAssetIds.isEmpty()) {
-                deleteObsoleteLocalAssets();
-                onInitialSyncComplete();
-                return;
-            }
-
-            requestAssets();
+            startRequestAssets(gatewayAssetIdParentIdMap, id -> true);
 
         } else {
 
-            List<String> requestedAssetIds = syncAssetIds.stream().skip(syncIndex).limit(SYNC_ASSET_BATCH_SIZE).collect(Collectors.toList());
-            List<Asset> returnedAssets = e.getAssets();
+            List<String> requestedAssetIds = getRequestedAssetIds();
+            Set<String> expectedAssetIds = new HashSet<>(requestedAssetIds);
+            Map<String, Asset> returnedAssets = new HashMap<>(e.getAssets().size());
+            e.getAssets().forEach(asset -> returnedAssets.put(asset.getId(), asset));
 
             // Remove any assets that have been deleted since requested
             cachedAssetEvents.removeIf(
                 assetEvent -> {
-                    boolean remove = requestedAssetIds.stream().anyMatch(id -> id.equals(assetEvent.getEntityId()) && assetEvent.getCause() == AssetEvent.Cause.DELETE);
+                    boolean remove = assetEvent.getCause() == AssetEvent.Cause.DELETE && expectedAssetIds.contains(assetEvent.getEntityId());
                     if (remove) {
                         syncAssetIds.remove(assetEvent.getEntityId());
-                        requestedAssetIds.remove(assetEvent.getEntityId());
+                        expectedAssetIds.remove(assetEvent.getEntityId());
                     }
                     return remove;
                 });
 
-            if (returnedAssets.size() != requestedAssetIds.size() || !returnedAssets.stream().allMatch(asset -> requestedAssetIds.contains(asset.getId()))) {
+            if (returnedAssets.size() != expectedAssetIds.size() || !expectedAssetIds.containsAll(returnedAssets.keySet())) {
                 LOG.warning("Retrieved gateway asset batch count or ID mismatch, attempting to re-send the request");
                 syncErrors++;
                 requestAssets();
                 return;
             }
 
-            // Returned asset order may not match request order so re-order
-            returnedAssets = returnedAssets.stream()
-                .sorted(Comparator.comparingInt(a -> syncAssetIds.indexOf(a.getId())))
-                .collect(Collectors.toList());
-
-            // Merge returned assets ensuring the latest version of each is merged
-            returnedAssets.stream()
-                .map(returnedAsset -> {
-                    final AtomicReference<Asset> latestAssetVersion = new AtomicReference<>(returnedAsset);
+            // Returned asset order may not match request order so re-order and ensure the latest version of each is
+            // merged
+            List<Asset> batchAssets = requestedAssetIds.stream()
+                .filter(expectedAssetIds::contains)
+                .map(id -> {
+                    final AtomicReference<Asset> latestAssetVersion = new AtomicReference<>(returnedAssets.get(id));
                     cachedAssetEvents.removeIf(
                         assetEvent -> {
-                            boolean remove = assetEvent.getEntityId().equals(returnedAsset.getId()) && (assetEvent.getCause() == AssetEvent.Cause.UPDATE || assetEvent.getCause() == AssetEvent.Cause.READ);
+                            boolean remove = assetEvent.getEntityId().equals(id) && (assetEvent.getCause() == AssetEvent.Cause.UPDATE || assetEvent.getCause() == AssetEvent.Cause.READ);
                             if (remove && assetEvent.getAsset().getVersion() > latestAssetVersion.get().getVersion()) {
                                 latestAssetVersion.set(assetEvent.getAsset());
                             }
                             return remove;
                         });
                     return latestAssetVersion.get();
-                }).forEach(this::saveAssetLocally);
-
+                })
+                .collect(Collectors.toList());
 
-            // Request next batch or move on
+            // Request the next batch before storing this one so the gateway can prepare it in the meantime
             syncIndex += requestedAssetIds.size();
-            if (syncIndex >= syncAssetIds.size()) {
-                LOG.info("All requested gateway assets retrieved");
-
-                Set<String> refreshAssets = new HashSet<>();
-
-                cachedAssetEvents.forEach(
-                    assetEvent -> {
-                        if (assetEvent.getCause() == AssetEvent.Cause.DELETE) {
-                            syncAssetIds.remove(assetEvent.getEntityId());
-                        } else if (assetEvent.getCause() == AssetEvent.Cause.CREATE) {
-                            syncAssetIds.add(assetEvent.getEntityId());
-                            try {
-                                saveAssetLocally(assetEvent.getAsset());
-                            } catch (Exception ex) {
-                                LOG.log(Level.SEVERE, "Failed to add new gateway asset (Gateway ID=" + gatewayId + ", Asset=" + assetEvent.getAsset(), ex);
-                            }
-                        } else {
-                            refreshAssets.add(assetEvent.getEntityId());
-                        }
-                    }
-                );
+            boolean allRetrieved = syncIndex >= requestAssetIds.size();
 
-                deleteObsoleteLocalAssets();
-                onInitialSyncComplete();
+            if (!allRetrieved) {
+                requestAssets();
+            }
 
-                // Refresh attributes that have changed
-                cachedAttributeEvents.forEach(attributeEvent -> {
-                    String assetId = attributeEvent.getEntityId();
-                    if (!refreshAssets.contains(assetId)) {
-                        LOG.info("1 or more gateway asset attribute values have changed so requesting the asset again (Gateway ID=" + gatewayId + ", Asset ID=" + assetId);
-                        refreshAssets.add(assetId);
-                    }
-                });
+            saveAssetsLocally(batchAssets);
 
-                // Refresh assets that have changed
-                refreshAssets.forEach(id -> sendMessageToGateway(new ReadAssetEvent(id)));
-            } else {
-                requestAssets();
+            if (allRetrieved) {
+                onAllAssetsRetrieved();
             }
         }
     }
 
+    protected void onAllAssetsRetrieved() {
+        LOG.info("All requested gateway assets retrieved");
+
+        Set<String> refreshAssets = new HashSet<>();
+
+        cachedAssetEvents.forEach(
+            assetEvent -> {
+                if (assetEvent.getCause() == AssetEvent.Cause.DELETE) {
+                    syncAssetIds.remove(assetEvent.getEntityId());
+                } else if (assetEvent.getCause() == AssetEvent.Cause.CREATE) {
+                    syncAssetIds.add(assetEvent.getEntityId());
+                    try {
+                        saveAssetLocally(assetEvent.getAsset());
+                    } catch (Exception ex) {
+                        LOG.log(Level.SEVERE, "Failed to add new gateway asset (Gateway ID=" + gatewayId + ", Asset=" + assetEvent.getAsset(), ex);
+                    }
+                } else {
+                    refreshAssets.add(assetEvent.getEntityId());
+                }
+            }
+        );
+
+        deleteObsoleteLocalAssets();
+        onInitialSyncComplete();
+
+        // Refresh attributes that have changed
+        cachedAttributeEvents.forEach(attributeEvent -> {
+            String assetId = attributeEvent.getEntityId();
+            if (!refreshAssets.contains(assetId)) {
+                LOG.info("1 or more gateway asset attribute values have changed so requesting the asset again (Gateway ID=" + gatewayId + ", Asset ID=" + assetId);
+                refreshAssets.add(assetId);
+            }
+        });
+
+        // Refresh assets that have changed
+        refreshAssets.forEach(id -> sendMessageToGateway(new ReadAssetEvent(id)));
+    }
+
     protected void deleteObsoleteLocalAssets() {
 
         // Find obsolete local assets
@@ -436,8 +514,9 @@ public class GatewayConnector {
 
         // Delete obsolete assets
         List<String> obsoleteLocalAssetIds = localAssets.stream()
-            .filter(localAsset -> !syncAssetIds.contains(localAsset.getId()))
-            .map(Asset::getId).collect(Collectors.toList());
+            .map(Asset::getId)
+            .filter(id -> !syncAssetIds.contains(id))
+            .collect(Collectors.toList());
 
         if (!obsoleteLocalAssetIds.isEmpty()) {
             boolean deleted = deleteAssetsLocally(obsoleteLocalAssetIds);
@@ -614,14 +693,100 @@ public class GatewayConnector {
     }
 
     protected Asset saveAssetLocally(Asset asset) {
-        asset.setParentId(asset.getParentId() != null ? asset.getParentId() : gatewayId);
-        asset.setRealm(realm);
+        prepareAssetLocally(asset);
         LOG.fine("Creating/updating gateway asset: Gateway ID=" + gatewayId + ", Asset ID=" + asset.getId());
         return assetStorageService.merge(asset, true, true, null);
     }
 
+    /**
+     * Stores the assets in a single transaction; if this fails then each asset is stored individually so one invalid
+     * asset doesn't prevent the rest of the batch from being synced.
+     */
+    protected void saveAssetsLocally(List<Asset> assets) {
+        assets.forEach(this::prepareAssetLocally);
+        LOG.fine("Creating/updating " + assets.size() + " gateway assets: Gateway ID=" + gatewayId);
+
+        try {
+            assetStorageService.merge(assets, true, true);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Failed to store gateway asset batch so storing assets individually: Gateway ID=" + gatewayId, e);
+            assets.forEach(asset -> {
+                try {
+                    saveAssetLocally(asset);
+                } catch (Exception ex) {
+                    LOG.log(Level.SEVERE, "Failed to store gateway asset (Gateway ID=" + gatewayId + ", Asset=" + asset, ex);
+                }
+            });
+        }
+    }
+
+    protected void prepareAssetLocally(Asset asset) {
+        asset.setParentId(asset.getParentId() != null ? asset.getParentId() : gatewayId);
+        asset.setRealm(realm);
+    }
+
     protected boolean deleteAssetsLocally(List<String> assetIds) {
         LOG.fine("Removing gateway asset: Gateway ID=" + gatewayId + ", Asset IDs=" + Arrays.toString(assetIds.toArray()));
         return assetStorageService.delete(assetIds, true);
     }
+
+    /**
+     * Calculates the hash that is compared during the initial sync to find gateway assets that have changed; it covers
+     * the ID, name, type, parent and attributes (including meta and value timestamps) but not the version, as the
+     * local copy of a gateway asset is versioned by its own merges. A parent ID equal to the gateway ID is treated as
+     * a root asset so the gateway and its local copy produce the same hash.
+     */
+    public static String getAssetHash(Asset asset, String gatewayId) {
+        String parentId = asset.getParentId() != null && !asset.getParentId().equals(gatewayId) ? asset.getParentId() : null;
+        StringBuilder sb = new StringBuilder(512)
+            .append(asset.getId()).append('\n')
+            .append(asset.getName()).append('\n')
+            .append(asset.getType()).append('\n')
+            .append(parentId).append('\n')
+            .append(asset.isAccessPublicRead()).append('\n');
+        appendCanonicalJson(sb, asset.getAttributes());
+
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return String.format("%032x", new BigInteger(1, digest));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Object keys are sorted as their order isn't preserved by the database.
+     */
+    protected static void appendCanonicalJson(StringBuilder sb, Value value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+
+        switch (value.getType()) {
+            case OBJECT:
+                ObjectValue objectValue = (ObjectValue) value;
+                String[] keys = objectValue.keys();
+                Arrays.sort(keys);
+                sb.append('{');
+                for (String key : keys) {
+                    sb.append(Values.create(key).toJson()).append(':');
+                    appendCanonicalJson(sb, objectValue.get(key).orElse(null));
+                    sb.append(',');
+                }
+                sb.append('}');
+                break;
+            case ARRAY:
+                ArrayValue arrayValue = (ArrayValue) value;
+                sb.append('[');
+                for (int i = 0; i < arrayValue.length(); i++) {
+                    appendCanonicalJson(sb, arrayValue.get(i).orElse(null));
+                    sb.append(',');
+                }
+                sb.append(']');
+                break;
+            default:
+                sb.append(value.toJson());
+        }
+    }
 }
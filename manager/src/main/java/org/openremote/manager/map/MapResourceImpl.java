@@ -26,6 +26,10 @@ import org.openremote.model.map.MapResource;
 import org.openremote.model.value.ObjectValue;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 public class MapResourceImpl extends WebResource implements MapResource {
@@ -33,6 +37,9 @@ public class MapResourceImpl extends WebResource implements MapResource {
     protected final MapService mapService;
     protected final ManagerIdentityService identityService;
 
+    @Context
+    protected Request jaxrsRequest;
+
     public MapResourceImpl(MapService mapService, ManagerIdentityService identityService) {
         this.mapService = mapService;
         this.identityService = identityService;
@@ -55,12 +62,21 @@ public class MapResourceImpl extends WebResource implements MapResource {
     }
 
     @Override
-    public byte[] getTile(int zoom, int column, int row) {
-        byte[] tile = mapService.getMapTile(zoom, column, row);
-        if (tile != null) {
-            return tile;
-        } else {
+    public Response getTile(int zoom, int column, int row) {
+        MapService.MapTile tile = mapService.getMapTile(zoom, column, row);
+        if (tile == null) {
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
+
+        EntityTag entityTag = new EntityTag(tile.getEtag());
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge(MapService.TILE_MAX_AGE_SECONDS);
+
+        Response.ResponseBuilder notModified = jaxrsRequest.evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).build();
+        }
+
+        return Response.ok(tile.getData()).tag(entityTag).cacheControl(cacheControl).build();
     }
 }
@@ -31,17 +31,22 @@ import org.openremote.model.util.TextUtil;
 import org.openremote.model.value.ArrayValue;
 import org.openremote.model.value.ObjectValue;
 import org.openremote.model.value.Values;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteOpenMode;
 
 import javax.ws.rs.core.UriBuilder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,8 +55,55 @@ import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.container.web.WebService.pathStartsWithHandler;
 import static org.openremote.manager.web.ManagerWebService.API_PATH;
 
+/**
+ * Serves the vector tiles of an mbtiles (SQLite) file through a pool of read-only connections, each with its own
+ * prepared tile statement, so concurrent map clients don't serialize on a single connection. Recently requested
+ * tiles (and tiles found to be missing) are kept in a size-bounded LRU cache.
+ */
 public class MapService implements ContainerService {
 
+    /**
+     * Tile data with a strong ETag derived from the content.
+     */
+    public static final class MapTile {
+        protected final byte[] data;
+        protected final String etag;
+
+        public MapTile(byte[] data) {
+            this.data = data;
+            this.etag = data != null ? createEtag(data) : null;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    protected static final class TileConnection {
+        protected final Connection connection;
+        protected final PreparedStatement tileQuery;
+
+        protected TileConnection(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.tileQuery = connection.prepareStatement(
+                "select TILE_DATA from TILES where ZOOM_LEVEL = ? and TILE_COLUMN = ? and TILE_ROW = ?"
+            );
+        }
+
+        protected void close() {
+            closeQuietly(tileQuery, null);
+            try {
+                connection.close();
+            } catch (Exception ex) {
+                LOG.warning("Error closing connection: " + ex);
+            }
+        }
+    }
+
     public static final String MAP_TILES_PATH = "MAP_TILES_PATH";
     public static final String MAP_TILES_PATH_DEFAULT = "deployment/map/mapdata.mbtiles";
     public static final String MAP_SETTINGS_PATH = "MAP_SETTINGS_PATH";
@@ -64,9 +116,23 @@ public class MapService implements ContainerService {
     public static final String TILESERVER_TILE_PATH = "/styles/standard";
     public static final String MAP_TILESERVER_REQUEST_TIMEOUT = "MAP_TILESERVER_REQUEST_TIMEOUT";
     public static final int MAP_TILESERVER_REQUEST_TIMEOUT_DEFAULT = 10000;
+    public static final String MAP_TILES_CONNECTIONS = "MAP_TILES_CONNECTIONS";
+    public static final int MAP_TILES_CONNECTIONS_DEFAULT = Math.min(8, Runtime.getRuntime().availableProcessors());
+    public static final String MAP_TILE_CACHE_SIZE = "MAP_TILE_CACHE_SIZE";
+    public static final int MAP_TILE_CACHE_SIZE_DEFAULT = 32 * 1024 * 1024;
+    public static final int TILE_MAX_AGE_SECONDS = 86400;
+    public static final int MAX_ZOOM = 29;
+    protected static final long CONNECTION_WAIT_MILLIS = 10000;
+    // Rough per entry overhead of the cache, so missing tiles are accounted for as well
+    protected static final int CACHE_ENTRY_OVERHEAD = 64;
+    protected static final MapTile MISSING_TILE = new MapTile(null);
     private static final Logger LOG = Logger.getLogger(MapService.class.getName());
-    // Shared SQL connection is fine concurrently in SQLite
-    protected Connection connection;
+    protected BlockingQueue<TileConnection> tileConnections;
+    protected List<TileConnection> allTileConnections = new ArrayList<>();
+    protected final LinkedHashMap<Long, MapTile> tileCache = new LinkedHashMap<>(1024, 0.75f, true);
+    protected long tileCacheBytes;
+    protected long tileCacheMaxBytes = MAP_TILE_CACHE_SIZE_DEFAULT;
+    protected int connectionCount = MAP_TILES_CONNECTIONS_DEFAULT;
     protected Path mapTilesPath;
     protected Path mapSettingsPath;
     protected Metadata metadata;
@@ -126,6 +192,15 @@ public class MapService implements ContainerService {
         return mapSettings;
     }
 
+    protected static String createEtag(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     protected static void closeQuietly(PreparedStatement query, ResultSet result) {
         try {
             if (result != null) {
@@ -144,6 +219,16 @@ public class MapService implements ContainerService {
         return ContainerService.DEFAULT_PRIORITY;
     }
 
+    /**
+     * Loading the tile data on start doesn't depend on any other service, so it is done in parallel with the database
+     * migration, the setup, the rules and the agents; the resource and tile proxy are registered with the web service
+     * on init and the web server is started after the tile data is loaded.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
 
@@ -154,6 +239,9 @@ public class MapService implements ContainerService {
             );
         }
 
+        connectionCount = Math.max(1, getInteger(container.getConfig(), MAP_TILES_CONNECTIONS, MAP_TILES_CONNECTIONS_DEFAULT));
+        tileCacheMaxBytes = Math.max(0, getInteger(container.getConfig(), MAP_TILE_CACHE_SIZE, MAP_TILE_CACHE_SIZE_DEFAULT));
+
         mapSettingsPath = Paths.get(getString(container.getConfig(), MAP_SETTINGS_PATH, MAP_SETTINGS_PATH_DEFAULT));
         if (!Files.isRegularFile(mapSettingsPath)) {
             throw new IllegalStateException(
@@ -201,10 +289,12 @@ public class MapService implements ContainerService {
     @Override
     public void start(Container container) throws Exception {
         LOG.info("Starting map service with tile data: " + mapTilesPath.toAbsolutePath());
-        Class.forName(org.sqlite.JDBC.class.getName());
-        connection = DriverManager.getConnection("jdbc:sqlite:" + mapTilesPath.toAbsolutePath());
+        openTileConnections(mapTilesPath, connectionCount);
 
-        metadata = getMetadata(connection);
+        metadata = getMetadata(allTileConnections.get(0).connection);
+        if (metadata == null) {
+            metadata = new Metadata();
+        }
         if (metadata.isValid()) {
             mapConfig = loadMapSettingsJson(mapSettingsPath);
             if (!mapConfig.hasKeys()) {
@@ -246,8 +336,40 @@ public class MapService implements ContainerService {
 
     @Override
     public void stop(Container container) throws Exception {
-        if (connection != null) {
-            connection.close();
+        closeTileConnections();
+    }
+
+    /**
+     * Opens the specified number of read-only connections to the mbtiles file; each connection is only ever used by
+     * one thread at a time so SQLite doesn't need to serialize access to it.
+     */
+    protected void openTileConnections(Path mapTilesPath, int count) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setOpenMode(SQLiteOpenMode.NOMUTEX);
+        String url = "jdbc:sqlite:" + mapTilesPath.toAbsolutePath();
+
+        tileConnections = new ArrayBlockingQueue<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                TileConnection tileConnection = new TileConnection(config.createConnection(url));
+                allTileConnections.add(tileConnection);
+                tileConnections.add(tileConnection);
+            }
+        } catch (SQLException ex) {
+            closeTileConnections();
+            throw ex;
+        }
+        LOG.fine("Opened " + count + " read-only tile data connections");
+    }
+
+    protected void closeTileConnections() {
+        allTileConnections.forEach(TileConnection::close);
+        allTileConnections.clear();
+        tileConnections = null;
+        synchronized (tileCache) {
+            tileCache.clear();
+            tileCacheBytes = 0;
         }
     }
 
@@ -357,36 +479,102 @@ public class MapService implements ContainerService {
         return settings;
     }
 
-    public byte[] getMapTile(int zoom, int column, int row) {
-        // Flip y, oh why
-        row = new Double(Math.pow(2, zoom) - 1 - row).intValue();
+    /**
+     * @return the tile or <code>null</code> if the coordinates are out of range or there is no such tile.
+     */
+    public MapTile getMapTile(int zoom, int column, int row) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            return null;
+        }
+        int tileCount = 1 << zoom;
+        if (column < 0 || column >= tileCount || row < 0 || row >= tileCount) {
+            return null;
+        }
 
-        PreparedStatement query = null;
-        ResultSet result = null;
+        Long key = ((long) zoom << 58) | ((long) column << 29) | row;
+        MapTile tile = getCachedTile(key);
+
+        if (tile == null) {
+            // Flip y, oh why
+            tile = loadMapTile(zoom, column, tileCount - 1 - row);
+            cacheTile(key, tile);
+        }
+
+        return tile == MISSING_TILE ? null : tile;
+    }
+
+    protected MapTile loadMapTile(int zoom, int column, int row) {
+        BlockingQueue<TileConnection> tileConnections = this.tileConnections;
+        if (tileConnections == null) {
+            throw new IllegalStateException("Map service is not started");
+        }
+
+        TileConnection tileConnection;
         try {
-            query = connection.prepareStatement(
-                    "select TILE_DATA from TILES where ZOOM_LEVEL = ? and TILE_COLUMN = ? and TILE_ROW = ?"
-            );
+            tileConnection = tileConnections.poll(CONNECTION_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a tile data connection", ex);
+        }
+        if (tileConnection == null) {
+            throw new IllegalStateException("Timeout waiting for a tile data connection");
+        }
 
+        try {
+            PreparedStatement query = tileConnection.tileQuery;
             int index = 0;
             query.setInt(++index, zoom);
             query.setInt(++index, column);
             query.setInt(++index, row);
 
-            result = query.executeQuery();
-
-            if (result.next()) {
-                return result.getBytes(1);
-            } else {
-                return null;
+            try (ResultSet result = query.executeQuery()) {
+                if (result.next()) {
+                    byte[] data = result.getBytes(1);
+                    return data != null ? new MapTile(data) : MISSING_TILE;
+                } else {
+                    return MISSING_TILE;
+                }
             }
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         } finally {
-            closeQuietly(query, result);
+            tileConnections.offer(tileConnection);
         }
     }
 
+    protected MapTile getCachedTile(Long key) {
+        if (tileCacheMaxBytes <= 0) {
+            return null;
+        }
+        synchronized (tileCache) {
+            return tileCache.get(key);
+        }
+    }
+
+    protected void cacheTile(Long key, MapTile tile) {
+        long size = getCacheSize(tile);
+        if (size > tileCacheMaxBytes) {
+            return;
+        }
+        synchronized (tileCache) {
+            MapTile previous = tileCache.put(key, tile);
+            if (previous != null) {
+                tileCacheBytes -= getCacheSize(previous);
+            }
+            tileCacheBytes += size;
+
+            Iterator<MapTile> iterator = tileCache.values().iterator();
+            while (tileCacheBytes > tileCacheMaxBytes && iterator.hasNext()) {
+                tileCacheBytes -= getCacheSize(iterator.next());
+                iterator.remove();
+            }
+        }
+    }
+
+    protected static long getCacheSize(MapTile tile) {
+        return CACHE_ENTRY_OVERHEAD + (tile.data != null ? tile.data.length : 0);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
@@ -80,6 +80,20 @@ public class MqttBrokerService implements ContainerService {
         return PRIORITY;
     }
 
+    /**
+     * The broker only needs the services it uses to handle clients to be started, so it starts in parallel with the
+     * rules and agents; the web server is started after it.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Arrays.asList(
+            MessageBrokerService.class,
+            ManagerIdentityService.class,
+            AssetStorageService.class,
+            ClientEventService.class
+        );
+    }
+
     @Override
     public void init(Container container) throws Exception {
         host = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, BrokerConstants.HOST);
@@ -24,8 +24,12 @@ import org.openremote.model.asset.AssetType;
 import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.Notification;
 import org.openremote.model.notification.NotificationSendResult;
+import org.openremote.model.util.TextUtil;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A {@link NotificationHandler} is responsible for sending compatible {@link AbstractNotificationMessage} messages to
@@ -36,6 +40,7 @@ import java.util.List;
  *     <li>The {@link #getTargets} method will be called which allows the {@link NotificationHandler} to map the requested
  *     target to a target that is compatible with this handler.
  * </ol>
+ * Targets are then sent to in batches through {@link #sendMessages}.
  */
 public interface NotificationHandler extends ContainerService {
 
@@ -76,4 +81,25 @@ public interface NotificationHandler extends ContainerService {
      * by calling {@link NotificationService#setNotificationDelivered} or {@link NotificationService#setNotificationAcknowleged}
      */
     NotificationSendResult sendMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message);
+
+    /**
+     * Send the specified {@link AbstractNotificationMessage} to a batch of targets previously returned by
+     * {@link #getTargets}; the ID at each index of the IDs list belongs to the target at the same index and the returned
+     * results must be in the same order. The default implementation calls {@link #sendMessage} for each target in turn,
+     * handlers that can send to many targets at once (e.g. with parallel requests) should override this.
+     */
+    default List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, AbstractNotificationMessage message) {
+        List<NotificationSendResult> results = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            try {
+                results.add(sendMessage(ids.get(i), source, sourceId, targets.get(i), message));
+            } catch (Exception e) {
+                Logger.getLogger(NotificationHandler.class.getName()).log(Level.SEVERE,
+                    "Notification handler threw an exception whilst sending notification '" + ids.get(i) + "'",
+                    e);
+                results.add(NotificationSendResult.failure(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage()));
+            }
+        }
+        return results;
+    }
 }
@@ -22,6 +22,7 @@ package org.openremote.manager.notification;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
+import org.hibernate.Session;
 import org.openremote.agent.protocol.Protocol;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
@@ -43,6 +44,9 @@ import org.openremote.model.util.TimeUtil;
 
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
@@ -62,6 +66,14 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
     public static final String NOTIFICATION_QUEUE = "seda://NotificationQueue?waitForTaskToComplete=IfReplyExpected&timeout=10000&purgeWhenStopping=true&discardIfNoConsumers=false&size=25000";
     private static final Logger LOG = Logger.getLogger(NotificationService.class.getName());
+    /**
+     * Maximum number of targets sent to and stored in one go.
+     */
+    public static final int SEND_BATCH_SIZE = 500;
+    protected static final String NEXT_IDS_SQL = "select nextval('OPENREMOTE_SEQUENCE') from generate_series(1, ?)";
+    protected static final String INSERT_SQL = "insert into NOTIFICATION (ID, NAME, TYPE, TARGET, TARGET_ID, SOURCE, SOURCE_ID, MESSAGE, SENT_ON) " +
+        "values (?, ?, ?, ?, ?, ?, ?, cast(? as jsonb), ?)";
+    protected static final String UPDATE_SQL = "update NOTIFICATION set MESSAGE = cast(? as jsonb), ERROR = ? where ID = ?";
     protected TimerService timerService;
     protected PersistenceService persistenceService;
     protected AssetStorageService assetStorageService;
@@ -230,56 +242,18 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
                     // Filter targets based on repeat frequency
                     if (!TextUtil.isNullOrEmpty(notification.getName()) && (!TextUtil.isNullOrEmpty(notification.getRepeatInterval()) || notification.getRepeatFrequency() != null)) {
-                        mappedTargetsList = mappedTargetsList.stream()
-                            .filter(target -> okToSendNotification(source, sourceId.get(), target, notification))
-                            .collect(Collectors.toList());
+                        mappedTargetsList = filterTargetsToSend(source, sourceId.get(), mappedTargetsList, notification);
                     }
 
-                    // Send message to each applicable target
-                    mappedTargetsList.forEach(
-                        target ->
-                            persistenceService.doTransaction(em -> {
-
-                                // commit the notification first to get the ID
-                                SentNotification sentNotification = new SentNotification()
-                                    .setName(notification.getName())
-                                    .setType(notification.getMessage().getType())
-                                    .setSource(source)
-                                    .setSourceId(sourceId.get())
-                                    .setTarget(target.getType())
-                                    .setTargetId(target.getId())
-                                    .setMessage(notification.getMessage().toValue())
-                                    .setSentOn(Date.from(timerService.getNow()));
-
-                                sentNotification = em.merge(sentNotification);
-                                long id = sentNotification.getId();
-
-                                try {
-                                    NotificationSendResult result = handler.sendMessage(
-                                        id,
-                                        source,
-                                        sourceId.get(),
-                                        target,
-                                        notification.getMessage());
-
-                                    if (result.isSuccess()) {
-                                        LOG.info("Notification sent '" + id + "': " + target);
-                                    } else {
-                                        LOG.warning("Notification failed '" + id + "': " + target + ", reason=" + result.getMessage());
-                                        sentNotification.setError(TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage());
-                                    }
-                                    // Merge the sent notification again with the message included just in case the handler modified the message
-                                    sentNotification.setMessage(notification.getMessage().toValue());
-                                    em.merge(sentNotification);
-                                } catch (Exception e) {
-                                    LOG.log(Level.SEVERE,
-                                        "Notification handler threw an exception whilst sending notification '" + id + "'",
-                                        e);
-                                    sentNotification.setError(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage());
-                                    em.merge(sentNotification);
-                                }
-                            })
-                    );
+                    // Send message to applicable targets in batches
+                    for (int i = 0; i < mappedTargetsList.size(); i += SEND_BATCH_SIZE) {
+                        sendNotificationBatch(
+                            handler,
+                            notification,
+                            source,
+                            sourceId.get(),
+                            mappedTargetsList.subList(i, Math.min(i + SEND_BATCH_SIZE, mappedTargetsList.size())));
+                    }
                 })
                 .endDoTry()
                 .doCatch(NotificationProcessingException.class)
@@ -550,24 +524,124 @@ public class NotificationService extends RouteBuilder implements ContainerServic
         });
     }
 
-    protected boolean okToSendNotification(Notification.Source source, String sourceId, Notification.Target target, Notification notification) {
+    /**
+     * Removes the targets that have already been sent the named notification within its repeat interval/frequency,
+     * the last send time of all targets is read with one query per {@link #SEND_BATCH_SIZE} targets.
+     */
+    protected List<Notification.Target> filterTargetsToSend(Notification.Source source, String sourceId, List<Notification.Target> targets, Notification notification) {
+
+        // Same target can be mapped more than once (e.g. user and tenant), only send to it once
+        Map<String, Notification.Target> targetMap = new LinkedHashMap<>();
+        targets.forEach(target -> targetMap.putIfAbsent(target.getType() + ":" + target.getId(), target));
 
         if (notification.getRepeatFrequency() == RepeatFrequency.ALWAYS) {
-            return true;
+            return new ArrayList<>(targetMap.values());
         }
 
-        Date lastSend = persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
-                "SELECT n.sentOn FROM SentNotification n WHERE n.source =:source AND n.sourceId =:sourceId AND n.target =:target AND n.targetId =:targetId AND n.name =:name ORDER BY n.sentOn DESC", Date.class)
+        List<String> targetIds = targetMap.values().stream().map(Notification.Target::getId).distinct().collect(Collectors.toList());
+        Map<String, Date> lastSendMap = new HashMap<>();
+
+        for (int i = 0; i < targetIds.size(); i += SEND_BATCH_SIZE) {
+            List<String> batchIds = targetIds.subList(i, Math.min(i + SEND_BATCH_SIZE, targetIds.size()));
+            persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
+                "SELECT n.target, n.targetId, max(n.sentOn) FROM SentNotification n WHERE n.source =:source AND n.sourceId =:sourceId AND n.name =:name AND n.targetId IN :targetIds GROUP BY n.target, n.targetId", Object[].class)
                 .setParameter("source", source)
                 .setParameter("sourceId", sourceId)
-                .setParameter("target", target.getType())
-                .setParameter("targetId", target.getId())
                 .setParameter("name", notification.getName())
-                .setMaxResults(1)
-                .getResultList()).stream().findFirst().orElse(null);
+                .setParameter("targetIds", batchIds)
+                .getResultList())
+                .forEach(row -> lastSendMap.put(row[0] + ":" + row[1], (Date) row[2]));
+        }
 
-        return lastSend == null ||
-                (notification.getRepeatFrequency() != RepeatFrequency.ONCE &&
-                        timerService.getNow().plusSeconds(1).isAfter(getRepeatAfterTimestamp(notification, lastSend.toInstant())));
+        Instant now = timerService.getNow();
+
+        return targetMap.entrySet().stream()
+            .filter(entry -> {
+                Date lastSend = lastSendMap.get(entry.getKey());
+                return lastSend == null ||
+                    (notification.getRepeatFrequency() != RepeatFrequency.ONCE &&
+                        now.plusSeconds(1).isAfter(getRepeatAfterTimestamp(notification, lastSend.toInstant())));
+            })
+            .map(Map.Entry::getValue)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Stores a {@link SentNotification} for each target with one batched insert (to get the IDs), hands the batch to
+     * the handler and then stores the results with one batched update; no DB connection is held whilst the handler
+     * is sending.
+     */
+    protected void sendNotificationBatch(NotificationHandler handler, Notification notification, Notification.Source source, String sourceId, List<Notification.Target> targets) {
+
+        Timestamp sentOn = Timestamp.from(timerService.getNow());
+        String messageJson = notification.getMessage().toValue().toJson();
+
+        List<Long> ids = persistenceService.doReturningTransaction(em -> em.unwrap(Session.class).doReturningWork(connection -> {
+            List<Long> nextIds = new ArrayList<>(targets.size());
+            try (PreparedStatement st = connection.prepareStatement(NEXT_IDS_SQL)) {
+                st.setInt(1, targets.size());
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        nextIds.add(rs.getLong(1));
+                    }
+                }
+            }
+            try (PreparedStatement st = connection.prepareStatement(INSERT_SQL)) {
+                for (int i = 0; i < targets.size(); i++) {
+                    Notification.Target target = targets.get(i);
+                    st.setLong(1, nextIds.get(i));
+                    st.setString(2, notification.getName());
+                    st.setString(3, notification.getMessage().getType());
+                    st.setString(4, target.getType().name());
+                    st.setString(5, target.getId());
+                    st.setString(6, source.name());
+                    st.setString(7, sourceId);
+                    st.setString(8, messageJson);
+                    st.setTimestamp(9, sentOn);
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+            return nextIds;
+        }));
+
+        List<NotificationSendResult> results;
+        try {
+            results = handler.sendMessages(ids, source, sourceId, targets, notification.getMessage());
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE,
+                "Notification handler threw an exception whilst sending notifications " + ids,
+                e);
+            results = Collections.nCopies(targets.size(), NotificationSendResult.failure(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage()));
+        }
+
+        List<String> errors = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            NotificationSendResult result = i < results.size() ? results.get(i) : null;
+            String error = null;
+
+            if (result != null && result.isSuccess()) {
+                LOG.info("Notification sent '" + ids.get(i) + "': " + targets.get(i));
+            } else {
+                error = result == null || TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage();
+                LOG.warning("Notification failed '" + ids.get(i) + "': " + targets.get(i) + ", reason=" + error);
+            }
+            errors.add(error);
+        }
+
+        // Store the message again just in case the handler modified it
+        String sentMessageJson = notification.getMessage().toValue().toJson();
+
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement st = connection.prepareStatement(UPDATE_SQL)) {
+                for (int i = 0; i < ids.size(); i++) {
+                    st.setString(1, sentMessageJson);
+                    st.setString(2, errors.get(i));
+                    st.setLong(3, ids.get(i));
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+        }));
     }
-}
\ No newline at end of file
+}
@@ -20,6 +20,7 @@
 package org.openremote.manager.notification;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.api.core.ApiFuture;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
@@ -49,9 +50,10 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.container.persistence.PersistenceEvent.*;
@@ -65,6 +67,7 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
     public static final int CONNECT_TIMEOUT_MILLIS = 3000;
     public static final int READ_TIMEOUT_MILLIS = 3000;
     public static final String FCM_PROVIDER_NAME = "fcm";
+    public static final int MAX_PARALLEL_SENDS = 50;
 
     protected AssetStorageService assetStorageService;
     protected boolean valid;
@@ -186,6 +189,11 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
 
         if (targets != null) {
 
+            // Group the requested targets so consoles are resolved with as few queries as possible
+            Set<String> realms = new LinkedHashSet<>();
+            List<String> userIds = new ArrayList<>();
+            List<PathPredicate> paths = new ArrayList<>();
+
             targets.forEach(target -> {
 
                 Notification.TargetType targetType = target.getType();
@@ -194,62 +202,40 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
                 switch (targetType) {
 
                     case TENANT:
-                        // Get all console assets with a push provider defined within the specified tenant
-                        mappedTargets.addAll(
-                            assetStorageService.findAll(
-                                new AssetQuery()
-                                    .select(AssetQuery.Select.selectExcludeAll())
-                                    .tenant(new TenantPredicate(targetId))
-                                    .types(AssetType.CONSOLE)
-                                    .attributeValue(AttributeType.CONSOLE_PROVIDERS.getAttributeName(),
-                                        new ObjectValueKeyPredicate(PushNotificationMessage.TYPE)))
-                                .stream()
-                                .map(asset -> new Notification.Target(Notification.TargetType.ASSET, asset.getId()))
-                                .collect(Collectors.toList()));
+                        realms.add(targetId);
                         break;
-
                     case USER:
-                        // Get all console assets linked to the specified user
-                        String[] ids = assetStorageService.findUserAssets(null, targetId, null)
-                            .stream()
-                            .map(userAsset -> userAsset.getId().getAssetId()).toArray(String[]::new);
-
-                        if (ids.length > 0) {
-
-                            mappedTargets.addAll(
-                                assetStorageService.findAll(
-                                    new AssetQuery()
-                                        .select(AssetQuery.Select.selectExcludeAll())
-                                        .ids(ids)
-                                        .types(AssetType.CONSOLE)
-                                        .attributeValue(AttributeType.CONSOLE_PROVIDERS.getAttributeName(),
-                                            new ObjectValueKeyPredicate(PushNotificationMessage.TYPE)))
-                                    .stream()
-                                    .map(asset -> new Notification.Target(Notification.TargetType.ASSET, asset.getId()))
-                                    .collect(Collectors.toList()));
-                        } else {
-                            LOG.fine("No console assets linked to target user");
-                            return;
-                        }
-
+                        userIds.add(targetId);
                         break;
-
                     case ASSET:
-                        // Find all console descendants of the specified asset
-                        mappedTargets.addAll(
-                            assetStorageService.findAll(
-                                new AssetQuery()
-                                    .select(AssetQuery.Select.selectExcludeAll())
-                                    .paths(new PathPredicate(targetId))
-                                    .types(AssetType.CONSOLE)
-                                    .attributeValue(AttributeType.CONSOLE_PROVIDERS.getAttributeName(),
-                                        new ObjectValueKeyPredicate(PushNotificationMessage.TYPE)))
-                                .stream()
-                                .map(asset -> new Notification.Target(Notification.TargetType.ASSET, asset.getId()))
-                                .collect(Collectors.toList()));
+                        paths.add(new PathPredicate(targetId));
                         break;
                 }
             });
+
+            Set<String> consoleIds = new LinkedHashSet<>();
+
+            // Get all console assets with a push provider defined within the specified tenant
+            realms.forEach(realm -> consoleIds.addAll(findPushConsoleIds(
+                new AssetQuery().tenant(new TenantPredicate(realm)))));
+
+            // Get all console assets linked to the specified users
+            if (!userIds.isEmpty()) {
+                List<String> userConsoleIds = findPushConsoleIds(
+                    new AssetQuery().userIds(userIds.toArray(new String[0])));
+                if (userConsoleIds.isEmpty()) {
+                    LOG.fine("No console assets linked to target users");
+                }
+                consoleIds.addAll(userConsoleIds);
+            }
+
+            // Find all console descendants of the specified assets
+            if (!paths.isEmpty()) {
+                consoleIds.addAll(findPushConsoleIds(
+                    new AssetQuery().paths(paths.toArray(new PathPredicate[0]))));
+            }
+
+            consoleIds.forEach(consoleId -> mappedTargets.add(new Notification.Target(Notification.TargetType.ASSET, consoleId)));
         }
 
         return mappedTargets;
@@ -258,6 +244,63 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
     @Override
     public NotificationSendResult sendMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message) {
 
+        PushNotificationMessage pushMessage = (PushNotificationMessage) message;
+        NotificationSendResult failure = checkTarget(target, pushMessage);
+
+        if (failure != null) {
+            return failure;
+        }
+
+        if (pushMessage.getTargetType() == DEVICE) {
+            // Always use fcm token from the console asset (so users cannot target other devices)
+            pushMessage.setTarget(consoleFCMTokenMap.get(target.getId()));
+        }
+
+        return sendMessage(buildFCMMessage(id, pushMessage));
+    }
+
+    /**
+     * Builds an FCM message for each target and sends them with at most {@link #MAX_PARALLEL_SENDS} requests in
+     * flight; the shared message is not modified so the device tokens are not stored with the sent notifications.
+     */
+    @Override
+    public List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, AbstractNotificationMessage message) {
+
+        PushNotificationMessage pushMessage = (PushNotificationMessage) message;
+        NotificationSendResult[] results = new NotificationSendResult[targets.size()];
+        List<Message> fcmMessages = new ArrayList<>(targets.size());
+        List<Integer> fcmMessageIndexes = new ArrayList<>(targets.size());
+
+        for (int i = 0; i < targets.size(); i++) {
+            Notification.Target target = targets.get(i);
+            NotificationSendResult failure = checkTarget(target, pushMessage);
+
+            if (failure != null) {
+                results[i] = failure;
+                continue;
+            }
+
+            // Always use fcm token from the console asset (so users cannot target other devices)
+            String fcmTarget = pushMessage.getTargetType() == DEVICE ? consoleFCMTokenMap.get(target.getId()) : pushMessage.getTarget();
+            fcmMessages.add(buildFCMMessage(ids.get(i), pushMessage, fcmTarget));
+            fcmMessageIndexes.add(i);
+        }
+
+        if (!fcmMessages.isEmpty()) {
+            List<NotificationSendResult> fcmResults = sendMessages(fcmMessages);
+            for (int i = 0; i < fcmMessageIndexes.size(); i++) {
+                results[fcmMessageIndexes.get(i)] = fcmResults.get(i);
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return a failure result if the message cannot be sent to the target otherwise <code>null</code>.
+     */
+    protected NotificationSendResult checkTarget(Notification.Target target, PushNotificationMessage pushMessage) {
+
         Notification.TargetType targetType = target.getType();
         String targetId = target.getId();
 
@@ -279,27 +322,13 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
             return NotificationSendResult.failure("No FCM token found for console: " + targetId);
         }
 
-        PushNotificationMessage pushMessage = (PushNotificationMessage) message;
-
         // Assume DEVICE target if not specified
         if (pushMessage.getTargetType() == null) {
             pushMessage.setTargetType(DEVICE);
         }
 
-        switch (pushMessage.getTargetType()) {
-            case DEVICE:
-                // Always use fcm token from the console asset (so users cannot target other devices)
-                pushMessage.setTarget(fcmToken);
-                break;
-            case TOPIC:
-                // TODO: Decide how to handle FCM topic support (too much power for users to put anything in target)
-                break;
-            case CONDITION:
-                // TODO: Decide how to handle conditions support (too much power for users to put anything in target)
-                break;
-        }
-
-        return sendMessage(buildFCMMessage(id, pushMessage));
+        // TODO: Decide how to handle FCM topic and condition support (too much power for users to put anything in target)
+        return null;
     }
 
 //    public NotificationSendResult sendMessage(PushNotificationMessage.TargetType targetType, String fcmTarget, Message.Builder messageBuilder) {
@@ -341,6 +370,64 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
         }
     }
 
+    /**
+     * Sends the messages asynchronously with at most {@link #MAX_PARALLEL_SENDS} requests in flight and waits for
+     * all of them to complete; the results are in the same order as the messages.
+     */
+    public List<NotificationSendResult> sendMessages(List<Message> messages) {
+        if (messages.size() == 1) {
+            return Collections.singletonList(sendMessage(messages.get(0)));
+        }
+
+        FirebaseMessaging firebaseMessaging = FirebaseMessaging.getInstance();
+        Semaphore permits = new Semaphore(MAX_PARALLEL_SENDS);
+        List<ApiFuture<String>> futures = new ArrayList<>(messages.size());
+
+        try {
+            for (Message message : messages) {
+                permits.acquire();
+                ApiFuture<String> future = firebaseMessaging.sendAsync(message);
+                future.addListener(permits::release, Runnable::run);
+                futures.add(future);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<NotificationSendResult> results = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            if (i >= futures.size()) {
+                results.add(NotificationSendResult.failure("FCM send interrupted"));
+                continue;
+            }
+            try {
+                futures.get(i).get();
+                results.add(NotificationSendResult.success());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FirebaseMessagingException) {
+                    FirebaseMessagingException fcmException = (FirebaseMessagingException) e.getCause();
+                    handleFcmException(fcmException);
+                    results.add(NotificationSendResult.failure("FCM send failed: " + fcmException.getErrorCode()));
+                } else {
+                    LOG.log(Level.WARNING, "FCM send failed", e.getCause());
+                    results.add(NotificationSendResult.failure("FCM send failed: " + e.getCause()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(NotificationSendResult.failure("FCM send interrupted"));
+            }
+        }
+        return results;
+    }
+
+    protected List<String> findPushConsoleIds(AssetQuery query) {
+        return assetStorageService.findIds(
+            query
+                .types(AssetType.CONSOLE)
+                .attributeValue(AttributeType.CONSOLE_PROVIDERS.getAttributeName(),
+                    new ObjectValueKeyPredicate(PushNotificationMessage.TYPE)));
+    }
+
     protected boolean isConsoleSubscribedToTopic(Asset asset, String topic) {
         return ConsoleConfiguration.getConsoleProvider(asset, PushNotificationMessage.TYPE)
             .map(ConsoleProvider::getData)
@@ -350,19 +437,23 @@ public class PushNotificationHandler extends RouteBuilder implements Notificatio
     }
 
     protected static Message buildFCMMessage(long id, PushNotificationMessage pushMessage) {
+        return buildFCMMessage(id, pushMessage, pushMessage.getTarget());
+    }
+
+    protected static Message buildFCMMessage(long id, PushNotificationMessage pushMessage, String fcmTarget) {
 
         Message.Builder builder = Message.builder();
         boolean dataOnly = TextUtil.isNullOrEmpty(pushMessage.getTitle());
 
         switch (pushMessage.getTargetType()) {
             case DEVICE:
-                builder.setToken(pushMessage.getTarget());
+                builder.setToken(fcmTarget);
                 break;
             case TOPIC:
-                builder.setTopic(pushMessage.getTarget());
+                builder.setTopic(fcmTarget);
                 break;
             case CONDITION:
-                builder.setCondition(pushMessage.getTarget());
+                builder.setCondition(fcmTarget);
                 break;
         }
 
@@ -38,13 +38,14 @@ import org.openremote.model.value.ValueType;
 import org.openremote.model.value.Values;
 import org.postgresql.util.PGInterval;
 
-import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -52,6 +53,9 @@ public class AssetPredictedDatapointService implements ContainerService, Protoco
 
     public static final int PRIORITY = AssetStorageService.PRIORITY + 300;
     private static final Logger LOG = Logger.getLogger(AssetPredictedDatapointService.class.getName());
+    protected static final String UPSERT_SQL = "insert into ASSET_PREDICTED_DATAPOINT (ENTITY_ID, ATTRIBUTE_NAME, VALUE, TIMESTAMP) " +
+        "values (?, ?, cast(? as jsonb), ?) " +
+        "on conflict (ENTITY_ID, ATTRIBUTE_NAME, TIMESTAMP) do update set VALUE = excluded.VALUE";
 
     protected PersistenceService persistenceService;
     protected AssetStorageService assetStorageService;
@@ -243,19 +247,41 @@ public class AssetPredictedDatapointService implements ContainerService, Protoco
         );
     }
 
+    @Override
     public void updateValue(AttributeRef attributeRef, Value value, long timestamp) {
-        persistenceService.doTransaction(em -> upsertValue(em, attributeRef.getEntityId(), attributeRef.getAttributeName(), value, timestamp));
+        updateValues(attributeRef, Collections.<ValueDatapoint<?>>singletonList(new ValueDatapoint<>(timestamp, value)));
     }
 
+    @Override
     public void updateValue(String assetId, String attributeName, Value value, long timestamp) {
         updateValue(new AttributeRef(assetId, attributeName), value, timestamp);
     }
 
-    private void upsertValue(EntityManager entityManager, String assetId, String attributeName, Value value, long timestamp) {
-        entityManager.createNativeQuery(String.format("INSERT INTO asset_predicted_datapoint (entity_id, attribute_name, value, timestamp) \n" +
-            "VALUES ('%1$s', '%2$s', '%3$s', to_timestamp(%4$d))\n" +
-            "ON CONFLICT (entity_id, attribute_name, timestamp) DO UPDATE \n" +
-            "  SET value = excluded.value", assetId, attributeName, value.toJson(), timestamp))
-            .executeUpdate();
+    /**
+     * Inserts or replaces the datapoints of the attribute in one transaction using a single batched upsert statement;
+     * datapoints without a value are ignored.
+     */
+    @Override
+    public void updateValues(AttributeRef attributeRef, List<ValueDatapoint<?>> valuesAndTimestamps) {
+        if (valuesAndTimestamps == null || valuesAndTimestamps.isEmpty()) {
+            return;
+        }
+
+        persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement st = connection.prepareStatement(UPSERT_SQL)) {
+                for (ValueDatapoint<?> datapoint : valuesAndTimestamps) {
+                    if (datapoint.getValue() == null) {
+                        LOG.fine("Ignoring predicted datapoint without value: " + attributeRef);
+                        continue;
+                    }
+                    st.setString(1, attributeRef.getEntityId());
+                    st.setString(2, attributeRef.getAttributeName());
+                    st.setString(3, datapoint.getValue().toJson());
+                    st.setTimestamp(4, new Timestamp(datapoint.getTimestamp()));
+                    st.addBatch();
+                }
+                st.executeBatch();
+            }
+        }));
     }
 }
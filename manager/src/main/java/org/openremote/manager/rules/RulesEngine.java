@@ -440,7 +440,7 @@ public class RulesEngine<T extends Ruleset> {
             // will fire, only once within the guaranteed minimum expiration time.
             if (fireTimer == null || fireTimer.isDone()) {
                 LOG.fine("Scheduling rules firing on: " + this);
-                fireTimer = executorService.schedule(
+                fireTimer = executorService.scheduleTimer(
                     () -> withLock(RulesEngine.this.toString() + "::fire", () -> {
 
                         // Are temporary facts present before rules are fired?
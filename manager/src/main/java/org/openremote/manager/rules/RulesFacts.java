@@ -72,6 +72,29 @@ public class RulesFacts extends Facts implements RuleListener {
     protected int triggerCount;
     protected boolean trackLocationRules;
     protected Map<String, Set<GeofencePredicate>> assetStateLocationPredicateMap = null;
+    // Index of all temporary facts ordered by expiration, so expiry doesn't have to scan all facts
+    final protected PriorityQueue<TemporaryFactEntry> temporaryFactExpiryIndex = new PriorityQueue<>();
+
+    /**
+     * Entry of the temporary fact expiry index, remembers where the fact is stored so it can be removed when expired.
+     */
+    protected static class TemporaryFactEntry implements Comparable<TemporaryFactEntry> {
+        final protected TemporaryFact<?> fact;
+        // Fact name for named facts, or the name of the internal collection holding the fact
+        final protected String name;
+        final protected long expirationTimestamp;
+
+        protected TemporaryFactEntry(TemporaryFact<?> fact, String name) {
+            this.fact = fact;
+            this.name = name;
+            this.expirationTimestamp = fact.getTimestamp() + fact.getExpirationMilliseconds();
+        }
+
+        @Override
+        public int compareTo(TemporaryFactEntry that) {
+            return Long.compare(expirationTimestamp, that.expirationTimestamp);
+        }
+    }
 
     public RulesFacts(TimerService timerService, AssetStorageService assetStorageService, Assets assetsFacade, Object loggingContext, Logger logger) {
         this.timerService = timerService;
@@ -194,7 +217,11 @@ public class RulesFacts extends Facts implements RuleListener {
         if (LOG.isLoggable(Level.FINEST)) {
             LOG.finest("Fact change (UPDATE): " + name + " => " + fact + " - on: " + loggingContext);
         }
+        removeFromExpiryIndex(asMap().get(name));
         super.put(name, fact);
+        if (fact instanceof TemporaryFact) {
+            temporaryFactExpiryIndex.add(new TemporaryFactEntry((TemporaryFact<?>) fact, name));
+        }
         return this;
     }
 
@@ -204,6 +231,10 @@ public class RulesFacts extends Facts implements RuleListener {
         }
         getAnonymousFacts().remove(o);
         getAnonymousFacts().add(o);
+        if (o instanceof TemporaryFact) {
+            removeFromExpiryIndex(o);
+            temporaryFactExpiryIndex.add(new TemporaryFactEntry((TemporaryFact<?>) o, ANONYMOUS_FACTS));
+        }
         return this;
     }
 
@@ -258,6 +289,7 @@ public class RulesFacts extends Facts implements RuleListener {
             LOG.finest("Fact change (INSERT): " + fact + " - on: " + loggingContext);
         }
         getAssetEvents().add(fact);
+        temporaryFactExpiryIndex.add(new TemporaryFactEntry(fact, ASSET_EVENTS));
         return this;
     }
 
@@ -274,7 +306,9 @@ public class RulesFacts extends Facts implements RuleListener {
     }
 
     public RulesFacts putTemporary(long expires, Object value) {
-        getAnonymousFacts().add(new TemporaryFact<>((long) getClock().getTimestamp(), expires, value));
+        TemporaryFact<Object> fact = new TemporaryFact<>((long) getClock().getTimestamp(), expires, value);
+        getAnonymousFacts().add(fact);
+        temporaryFactExpiryIndex.add(new TemporaryFactEntry(fact, ANONYMOUS_FACTS));
         return this;
     }
 
@@ -292,35 +326,42 @@ public class RulesFacts extends Facts implements RuleListener {
     }
 
     public boolean hasTemporaryFacts() {
-        return getTemporaryFacts().count() > 0;
+        return !temporaryFactExpiryIndex.isEmpty();
     }
 
     public Stream<TemporaryFact> getTemporaryFacts() {
-        return Stream.concat(
-                Stream.concat(
-                        getAssetEvents().stream().parallel(),
-                        getNamedFacts().values().stream().parallel().filter(fact -> fact instanceof TemporaryFact).map(fact -> (TemporaryFact) fact)
-                ),
-                getAnonymousFacts().stream().parallel().filter(fact -> fact instanceof TemporaryFact).map(fact -> (TemporaryFact) fact)
-        ).parallel();
+        return temporaryFactExpiryIndex.stream().map(entry -> (TemporaryFact) entry.fact);
     }
 
     @Override
     public RulesFacts remove(String name) {
+        removeFromExpiryIndex(asMap().get(name));
         super.remove(name);
         return this;
     }
 
     public RulesFacts remove(Object fact) {
         getAnonymousFacts().removeIf(anonFact -> {
+            Object temporaryFact = anonFact;
             if (anonFact instanceof TemporaryFact) {
                 anonFact = ((TemporaryFact) anonFact).getFact();
             }
-            return anonFact.equals(fact);
+            boolean result = anonFact.equals(fact);
+            if (result) {
+                removeFromExpiryIndex(temporaryFact);
+            }
+            return result;
         });
         return this;
     }
 
+    protected void removeFromExpiryIndex(Object fact) {
+        if (fact instanceof TemporaryFact) {
+            // Explicit removal of temporary facts is rare, expiry is handled at the head of the index
+            temporaryFactExpiryIndex.removeIf(entry -> entry.fact == fact);
+        }
+    }
+
     /**
      * Reset rules triggered counter, used for loop detection.
      */
@@ -484,39 +525,25 @@ public class RulesFacts extends Facts implements RuleListener {
 
     public void removeExpiredTemporaryFacts() {
         long currentTimestamp = (long) getClock().getTimestamp();
-        getAssetEvents().removeIf(fact -> {
-            boolean result = fact.isExpired(currentTimestamp);
-            if (result && LOG.isLoggable(Level.FINEST)) {
-                LOG.finest("Fact change (DELETE EXPIRED): " + fact + " - on: " + loggingContext);
+        TemporaryFactEntry entry;
+        // Only the expired head of the index is visited, not all facts
+        while ((entry = temporaryFactExpiryIndex.peek()) != null && entry.fact.isExpired(currentTimestamp)) {
+            temporaryFactExpiryIndex.poll();
+            if (LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Fact change (DELETE EXPIRED): " + entry.fact + " - on: " + loggingContext);
             }
-            return result;
-        });
-        asMap().entrySet().removeIf(entry -> {
-            if (entry.getKey().equals(CLOCK)
-                    || entry.getKey().equals(ASSET_STATES)
-                    || entry.getKey().equals(ASSET_EVENTS)
-                    || entry.getKey().equals(EXECUTION_VARS)
-                    || entry.getKey().equals(ANONYMOUS_FACTS)
-                    || !(entry.getValue() instanceof TemporaryFact)) {
-                return false;
-            }
-            boolean result = ((TemporaryFact) entry.getValue()).isExpired(currentTimestamp);
-            if (result && LOG.isLoggable(Level.FINEST)) {
-                LOG.finest("Fact change (DELETE EXPIRED): " + entry.getValue() + " - on: " + loggingContext);
+            switch (entry.name) {
+                case ASSET_EVENTS:
+                    // Events are inserted in time order, so this is usually the head of the collection
+                    getAssetEvents().remove(entry.fact);
+                    break;
+                case ANONYMOUS_FACTS:
+                    getAnonymousFacts().remove(entry.fact);
+                    break;
+                default:
+                    asMap().remove(entry.name, entry.fact);
             }
-            return result;
-        });
-        getAnonymousFacts().removeIf(fact -> {
-            boolean result = false;
-            if (fact instanceof TemporaryFact) {
-                TemporaryFact temporaryFact = (TemporaryFact) fact;
-                result = temporaryFact.isExpired((long) getClock().getTimestamp());
-            }
-            if (result && LOG.isLoggable(Level.FINEST)) {
-                LOG.finest("Fact change (DELETE EXPIRED): " + fact + " - on: " + loggingContext);
-            }
-            return result;
-        });
+        }
     }
 
     public boolean logFacts(Logger logger) {
@@ -38,17 +38,15 @@ import org.openremote.manager.predicted.AssetPredictedDatapointService;
 import org.openremote.manager.rules.flow.FlowResourceImpl;
 import org.openremote.manager.rules.geofence.GeofenceAssetAdapter;
 import org.openremote.manager.security.ManagerIdentityService;
+import org.openremote.manager.setup.SetupService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Constants;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.AssetAttribute;
 import org.openremote.model.attribute.AttributeEvent.Source;
 import org.openremote.model.attribute.MetaItemType;
-import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.RulesetQuery;
-import org.openremote.model.query.filter.BooleanPredicate;
 import org.openremote.model.query.filter.LocationAttributePredicate;
-import org.openremote.model.query.filter.MetaPredicate;
 import org.openremote.model.rules.*;
 import org.openremote.model.rules.geofence.GeofenceDefinition;
 import org.openremote.model.security.ClientRole;
@@ -58,6 +56,9 @@ import org.openremote.model.value.ObjectValue;
 
 import javax.persistence.EntityManager;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -132,6 +133,27 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         return PRIORITY;
     }
 
+    /**
+     * Deploying the rulesets and loading the asset states only needs the setup and the storage and processing of
+     * assets and rulesets, so it is done in parallel with the agents and the map.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Arrays.asList(
+            SetupService.class,
+            MessageBrokerService.class,
+            ManagerIdentityService.class,
+            TimerService.class,
+            ManagerExecutorService.class,
+            AssetStorageService.class,
+            AssetProcessingService.class,
+            AssetDatapointService.class,
+            AssetPredictedDatapointService.class,
+            RulesetStorageService.class,
+            GeofenceAssetAdapter.class
+        );
+    }
+
     @Override
     public void init(Container container) throws Exception {
         timerService = container.getService(TimerService.class);
@@ -268,25 +290,71 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             .count();//Needed in order to execute the stream. TODO: can this be done differently?
 
         LOG.info("Loading all assets with fact attributes to initialize state of rules engines");
-        Stream<Pair<Asset, Stream<AssetAttribute>>> stateAttributes = findRuleStateAttributes();
-
-        // Push each attribute as an asset update through the rule engine chain
-        // that will ensure the insert only happens to the engines in scope
-        stateAttributes
-            .forEach(pair -> {
-                Asset asset = pair.key;
-                pair.value.forEach(ruleAttribute -> {
-                    AssetState assetState = new AssetState(asset, ruleAttribute, Source.INTERNAL);
-                    updateAssetState(assetState);
-                });
-            });
+        long startTime = System.currentTimeMillis();
 
-        // Start the engines
+        // Load the asset states of each realm in parallel, the engines of a realm start as soon as its states are
+        // inserted; the global engine has all realms in scope so it starts last
+        List<Callable<Integer>> realmLoaders = Arrays.stream(tenants)
+            .map(Tenant::getRealm)
+            .map(realm -> (Callable<Integer>) () -> loadRealmAssetStates(realm, startTime))
+            .collect(Collectors.toList());
+
+        int assetStateCount = 0;
+        for (Future<Integer> realmLoader : executorService.invokeAll(realmLoaders)) {
+            try {
+                assetStateCount += realmLoader.get();
+            } catch (ExecutionException e) {
+                LOG.log(SEVERE, "Failed to load asset states of realm", e.getCause());
+            }
+        }
+
+        // Start the remaining engines (those of realms that failed to load start without their asset states)
         if (globalEngine != null) {
             globalEngine.start();
         }
         tenantEngines.values().forEach(RulesEngine::start);
         assetEngines.values().forEach(RulesEngine::start);
+
+        LOG.info("Rules ready in " + (System.currentTimeMillis() - startTime) + "ms with "
+            + assetStateCount + " asset state(s) of " + tenants.length + " realm(s)");
+    }
+
+    /**
+     * Inserts the current state of all rule state attributes of the realm into the engines in scope and starts the
+     * tenant and asset engines of the realm.
+     *
+     * @return the number of inserted asset states.
+     */
+    protected int loadRealmAssetStates(String realm, long startTime) {
+        List<AssetState> realmAssetStates = new ArrayList<>();
+        assetStorageService.findRuleStateAssets(realm, asset ->
+            asset.getAttributesStream()
+                .filter(AssetAttribute::isRuleState)
+                .forEach(attribute -> realmAssetStates.add(new AssetState(asset, attribute, Source.INTERNAL)))
+        );
+
+        withLock(getClass().getSimpleName() + "::updateAssetState", () -> {
+            for (AssetState assetState : realmAssetStates) {
+                // An attribute event processed since this service started is more recent than the loaded state
+                if (assetStates.add(assetState)) {
+                    for (RulesEngine<?> rulesEngine : getEnginesInScope(assetState.getRealm(), assetState.getPath())) {
+                        rulesEngine.updateOrInsertAssetState(assetState, true);
+                    }
+                }
+            }
+
+            RulesEngine<TenantRuleset> tenantEngine = tenantEngines.get(realm);
+            if (tenantEngine != null) {
+                tenantEngine.start();
+            }
+            assetEngines.values().stream()
+                .filter(engine -> engine.getId().getRealm().map(realm::equals).orElse(false))
+                .forEach(RulesEngine::start);
+        });
+
+        LOG.fine("Loaded " + realmAssetStates.size() + " asset state(s) of realm '" + realm + "', realm rules ready after "
+            + (System.currentTimeMillis() - startTime) + "ms");
+        return realmAssetStates.size();
     }
 
     @Override
@@ -815,21 +883,6 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         return rulesEngines;
     }
 
-    protected Stream<Pair<Asset, Stream<AssetAttribute>>> findRuleStateAttributes() {
-        List<Asset> assets = assetStorageService.findAll(
-            new AssetQuery()
-                .attributeMeta(
-                    new MetaPredicate(
-                        MetaItemType.RULE_STATE,
-                        new BooleanPredicate(true))
-                ));
-
-        return assets.stream()
-            .map((Asset asset) ->
-                new Pair<>(asset, asset.getAttributesStream().filter(AssetAttribute::isRuleState))
-            );
-    }
-
     /**
      * Called when an engine's rules change identifying assets with location attributes marked with {@link
      * MetaItemType#RULE_STATE} that also have {@link LocationAttributePredicate} in the rules. The job here is to
@@ -255,7 +255,7 @@ public class RulesetDeployment {
 
     protected void scheduleRuleAction(Runnable action, long delayMillis) {
         withLock(toString() + "::scheduleRuleAction", () -> {
-            ScheduledFuture<?> future = executorService.schedule(() ->
+            ScheduledFuture<?> future = executorService.scheduleTimer(() ->
                     withLock(toString() + "::scheduledRuleActionFire", () -> {
                         scheduledRuleActions.removeIf(Future::isDone);
                         action.run();
@@ -59,32 +59,9 @@ public class AssetsFacade<T extends Ruleset> extends Assets {
     @Override
     public Stream<Asset> getResults(AssetQuery assetQuery) {
 
-        if (TenantRuleset.class.isAssignableFrom(rulesEngineId.getScope())) {
-            // Realm is restricted to rules
-            assetQuery.tenant = new TenantPredicate(
-                rulesEngineId.getRealm().orElseThrow(() -> new IllegalArgumentException("Realm missing: " + rulesEngineId))
-            );
-        } else if (AssetRuleset.class.isAssignableFrom(rulesEngineId.getScope())) {
-            // Realm is restricted to assets'
-            assetQuery.tenant = new TenantPredicate(
-                rulesEngineId.getRealm().orElseThrow(() -> new IllegalArgumentException("Realm missing: " + rulesEngineId))
-            );
-
-            Asset restrictedAsset = assetStorageService.find(
-                rulesEngineId.getAssetId().orElseThrow(() -> new IllegalStateException("Asset ID missing: " + rulesEngineId)),
-                true);
-
-            if (restrictedAsset == null) {
-                throw new IllegalStateException("Asset is no longer available: " + rulesEngineId);
-            }
-            assetQuery.paths(new PathPredicate(restrictedAsset.getPath()));
-        }
+        applyScope(assetQuery);
 
         AssetQuery.Select oldValue = assetQuery.select;
-
-        if (assetQuery.select == null)
-            assetQuery.select = AssetQuery.Select.selectExcludePathAndAttributes();
-
         assetQuery.select = AssetQuery.Select.selectExcludeAll();
 
         try {
@@ -98,11 +75,13 @@ public class AssetsFacade<T extends Ruleset> extends Assets {
         if (events == null || events.length == 0)
             return this;
 
-        // Check if the asset ID of every event can be found with the default security of this facade
-        String[] ids = Arrays.stream(events).map(AttributeEvent::getEntityId).toArray(String[]::new);
+        // Check if the asset ID of every event can be found with the default security of this facade, several events
+        // can be for the same asset so only the distinct IDs are counted
+        String[] ids = Arrays.stream(events).map(AttributeEvent::getEntityId).distinct().toArray(String[]::new);
 
         AssetQuery query = new AssetQuery().ids(ids);
-        long count = this.getResults(query).count();
+        applyScope(query);
+        long count = assetStorageService.count(query);
 
         if (ids.length != count) {
             LOG.warning("Access to asset(s) not allowed for this rule engine scope " + rulesEngineId + " for asset IDs: " + String.join(", ", ids));
@@ -138,4 +117,33 @@ public class AssetsFacade<T extends Ruleset> extends Assets {
     public AssetsFacade<T> dispatch(String assetId, String attributeName) {
         return dispatch(new AttributeEvent(assetId, attributeName));
     }
+
+    /**
+     * Restricts the query to the realm of the engine and for an asset scope engine to the descendants of the asset.
+     */
+    protected void applyScope(AssetQuery assetQuery) {
+        if (TenantRuleset.class.isAssignableFrom(rulesEngineId.getScope())) {
+            // Realm is restricted to rules
+            assetQuery.tenant = new TenantPredicate(
+                rulesEngineId.getRealm().orElseThrow(() -> new IllegalArgumentException("Realm missing: " + rulesEngineId))
+            );
+        } else if (AssetRuleset.class.isAssignableFrom(rulesEngineId.getScope())) {
+            // Realm is restricted to assets'
+            assetQuery.tenant = new TenantPredicate(
+                rulesEngineId.getRealm().orElseThrow(() -> new IllegalArgumentException("Realm missing: " + rulesEngineId))
+            );
+
+            // Only the path of the restricted asset is needed
+            Asset restrictedAsset = assetStorageService.find(
+                new AssetQuery()
+                    .select(new AssetQuery.Select().excludeAttributes(true).excludeParentInfo(true))
+                    .ids(rulesEngineId.getAssetId().orElseThrow(() -> new IllegalStateException("Asset ID missing: " + rulesEngineId)))
+            );
+
+            if (restrictedAsset == null) {
+                throw new IllegalStateException("Asset is no longer available: " + rulesEngineId);
+            }
+            assetQuery.paths(new PathPredicate(restrictedAsset.getPath()));
+        }
+    }
 }
@@ -28,6 +28,8 @@ import org.openremote.model.rules.PredictedDatapoints;
 import org.openremote.model.rules.Ruleset;
 import org.openremote.model.value.Value;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 public class PredictedFacade<T extends Ruleset> extends PredictedDatapoints {
@@ -49,11 +51,16 @@ public class PredictedFacade<T extends Ruleset> extends PredictedDatapoints {
 
     @Override
     public void updateValue(String assetId, String attributeName, Value value, long timestamp) {
-        assetPredictedDatapointService.updateValue(assetId, attributeName, value, timestamp);
+        updateValue(new AttributeRef(assetId, attributeName), value, timestamp);
     }
 
     @Override
     public void updateValue(AttributeRef attributeRef, Value value, long timestamp) {
-        updateValue(attributeRef.getEntityId(), attributeRef.getAttributeName(), value, timestamp);
+        updateValues(attributeRef, Collections.<ValueDatapoint<?>>singletonList(new ValueDatapoint<>(timestamp, value)));
+    }
+
+    @Override
+    public void updateValues(AttributeRef attributeRef, List<ValueDatapoint<?>> valuesAndTimestamps) {
+        assetPredictedDatapointService.updateValues(attributeRef, valuesAndTimestamps);
     }
 }
@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.rules.geofence;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.camel.builder.RouteBuilder;
 import org.openremote.container.Container;
 import org.openremote.container.message.MessageBrokerService;
@@ -47,9 +48,8 @@ import org.openremote.model.value.Values;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.container.persistence.PersistenceEvent.*;
@@ -65,13 +65,27 @@ import static org.openremote.model.syslog.SyslogCategory.RULES;
  * This adapter utilises push notifications to notify assets when their geofences change; a data only (silent) push
  * notification is sent to affected consoles/assets. Consoles can also manually request their geofences (e.g. on
  * startup)
+ * <p>
+ * The notifications are paced by a token bucket ({@link #NOTIFY_ASSETS_RATE_PER_SECOND} with bursts of up to
+ * {@link #NOTIFY_ASSETS_BURST}) rather than sent all at once, so the consoles don't bombard the backend. When the
+ * serialized geofences of a console fit into {@link #NOTIFY_ASSETS_MAX_GEOFENCES_LENGTH} they are included in the
+ * notification so the console doesn't have to request them. The geofences of each console are cached until its
+ * location predicates change.
  */
 public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements GeofenceAssetAdapter {
 
     private static final Logger LOG = SyslogCategory.getLogger(RULES, ORConsoleGeofenceAssetAdapter.class.getName());
     public static final String NAME = "ORConsole";
     public static int NOTIFY_ASSETS_DEBOUNCE_MILLIS = 60000;
-    public static int NOTIFY_ASSETS_BATCH_MILLIS = 10000;
+    public static int NOTIFY_ASSETS_RATE_PER_SECOND = 100;
+    public static int NOTIFY_ASSETS_BURST = 100;
+    /**
+     * FCM limits the data of a message to 4KB, this leaves room for the other data.
+     */
+    public static int NOTIFY_ASSETS_MAX_GEOFENCES_LENGTH = 3072;
+    public static final String NOTIFICATION_DATA_ACTION = "action";
+    public static final String NOTIFICATION_DATA_GEOFENCES = "geofences";
+    public static final String GEOFENCE_REFRESH_ACTION = "GEOFENCE_REFRESH";
     protected Map<String, RulesEngine.AssetStateLocationPredicates> assetLocationPredicatesMap = new HashMap<>();
     protected NotificationService notificationService;
     protected AssetStorageService assetStorageService;
@@ -80,6 +94,66 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
     protected Map<String, String> consoleIdRealmMap;
     protected ScheduledFuture notifyAssetsScheduledFuture;
     protected Set<String> notifyAssets;
+    protected Map<String, ConsoleGeofences> consoleGeofencesCache = new HashMap<>();
+    protected Set<String> pendingNotifyAssets = new LinkedHashSet<>();
+    protected TokenBucket notifyAssetsTokenBucket;
+    protected ScheduledFuture notifyAssetsSenderFuture;
+    protected boolean notifyAssetsStopped;
+
+    /**
+     * The geofences of a console and their JSON representation.
+     */
+    protected static class ConsoleGeofences {
+        protected final GeofenceDefinition[] geofences;
+        protected final String geofencesJson;
+
+        protected ConsoleGeofences(GeofenceDefinition[] geofences, String geofencesJson) {
+            this.geofences = geofences;
+            this.geofencesJson = geofencesJson;
+        }
+    }
+
+    /**
+     * A token bucket that holds up to <code>capacity</code> tokens and is refilled at <code>ratePerSecond</code>.
+     */
+    protected static class TokenBucket {
+        protected final int capacity;
+        protected final int ratePerSecond;
+        protected double tokens;
+        protected long lastRefillNanos;
+
+        protected TokenBucket(int capacity, int ratePerSecond) {
+            this.capacity = Math.max(1, capacity);
+            this.ratePerSecond = Math.max(1, ratePerSecond);
+            this.tokens = this.capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        protected boolean hasSettings(int capacity, int ratePerSecond) {
+            return this.capacity == Math.max(1, capacity) && this.ratePerSecond == Math.max(1, ratePerSecond);
+        }
+
+        /**
+         * @return the number of tokens taken which is at most <code>max</code>.
+         */
+        protected int take(int max) {
+            refill();
+            int taken = (int) Math.min(max, Math.floor(tokens));
+            tokens -= taken;
+            return taken;
+        }
+
+        protected long getMillisUntilAvailable() {
+            refill();
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1000 / ratePerSecond);
+        }
+
+        protected void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerSecond / 1e9);
+            lastRefillNanos = now;
+        }
+    }
 
     @Override
     public int getPriority() {
@@ -98,6 +172,11 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
     @Override
     public void start(Container container) throws Exception {
 
+        withLock(getClass().getSimpleName() + "::sendNotifications", () -> {
+            notifyAssetsTokenBucket = new TokenBucket(NOTIFY_ASSETS_BURST, NOTIFY_ASSETS_RATE_PER_SECOND);
+            notifyAssetsStopped = false;
+        });
+
         // Find all console assets that use this adapter
         consoleIdRealmMap = new HashMap<>();
 
@@ -115,7 +194,14 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
 
     @Override
     public void stop(Container container) throws Exception {
-
+        withLock(getClass().getSimpleName() + "::sendNotifications", () -> {
+            notifyAssetsStopped = true;
+            if (notifyAssetsSenderFuture != null) {
+                notifyAssetsSenderFuture.cancel(false);
+                notifyAssetsSenderFuture = null;
+            }
+            pendingNotifyAssets.clear();
+        });
     }
 
     @Override
@@ -170,6 +256,7 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
                         notifyAssets.add(assetStateLocationPredicates.getAssetId());
                         notifierDebounce.set(true);
                     }
+                    consoleGeofencesCache.remove(assetStateLocationPredicates.getAssetId());
 
                     if (assetStateLocationPredicates.getLocationPredicates().isEmpty()) {
                         if (assetLocationPredicatesMap.remove(assetStateLocationPredicates.getAssetId()) != null) {
@@ -187,6 +274,7 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
                     }
                 } else if (assetLocationPredicatesMap.remove(assetStateLocationPredicates.getAssetId()) != null) {
                     // Used to be in this map so must have been deleted so ask console to delete its geofences also
+                    consoleGeofencesCache.remove(assetStateLocationPredicates.getAssetId());
                     LOG.info("Clearing location predicates for asset: " + assetStateLocationPredicates.getAssetId());
                     notifyAssets.add(assetStateLocationPredicates.getAssetId());
                     notifierDebounce.set(true);
@@ -220,24 +308,32 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
             return null;
         }
 
-        RulesEngine.AssetStateLocationPredicates assetStateLocationPredicates = assetLocationPredicatesMap.get(assetId);
-
-        if (assetStateLocationPredicates == null) {
-            // No geofences exist for this asset
-            LOG.info("Request for console '" + assetId + "' geofences: 0 found");
-            return new GeofenceDefinition[0];
-        }
-
-        GeofenceDefinition[] geofences = assetStateLocationPredicates.getLocationPredicates().stream()
-            .map(locationPredicate ->
-                locationPredicateToGeofenceDefinition(assetStateLocationPredicates.getAssetId(),
-                    locationPredicate))
-            .toArray(GeofenceDefinition[]::new);
-
+        GeofenceDefinition[] geofences = getConsoleGeofences(assetId).geofences;
         LOG.info("Request for console '" + assetId + "' geofences: " + geofences.length + " found");
         return geofences;
     }
 
+    protected ConsoleGeofences getConsoleGeofences(String assetId) {
+        return consoleGeofencesCache.computeIfAbsent(assetId, id -> {
+            RulesEngine.AssetStateLocationPredicates assetStateLocationPredicates = assetLocationPredicatesMap.get(id);
+
+            // No location predicates means no geofences exist for this asset
+            GeofenceDefinition[] geofences = assetStateLocationPredicates == null
+                ? new GeofenceDefinition[0]
+                : assetStateLocationPredicates.getLocationPredicates().stream()
+                    .map(locationPredicate -> locationPredicateToGeofenceDefinition(id, locationPredicate))
+                    .toArray(GeofenceDefinition[]::new);
+
+            String geofencesJson = null;
+            try {
+                geofencesJson = Container.JSON.writeValueAsString(geofences);
+            } catch (JsonProcessingException e) {
+                LOG.log(Level.WARNING, "Failed to serialize geofences of console: " + id, e);
+            }
+            return new ConsoleGeofences(geofences, geofencesJson);
+        });
+    }
+
     protected GeofenceDefinition locationPredicateToGeofenceDefinition(String assetId, GeofencePredicate geofencePredicate) {
         RadialGeofencePredicate radialLocationPredicate = (RadialGeofencePredicate) geofencePredicate;
         String id = assetId + "_" + Integer.toString(radialLocationPredicate.hashCode());
@@ -251,33 +347,78 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
     }
 
     /**
-     * Send a silent push notification to the console to get it to refresh its geofences
+     * Send a silent push notification to the console to get it to refresh its geofences; the consoles are queued and
+     * notified at the rate of the token bucket. A console that is already queued is notified once with its latest
+     * geofences.
      */
     protected void notifyAssetGeofencesChanged(Set<String> assetIds) {
         if (assetIds == null) {
             return;
         }
 
-        List<String> ids = new ArrayList<>(assetIds);
-        ObjectValue data = Values.createObject();
-        data.put("action", "GEOFENCE_REFRESH");
-
-        // Break into batches of 10 sent every 10s to avoid consoles bombarding the backend
-        int rows = (int)Math.ceil((((float)ids.size()) / 10));
-        IntStream.range(0, rows)
-            .forEach(i -> {
-                final List<Notification.Target> subTargets = ids.subList(10 * i, Math.min(10 + (10 * i), ids.size()))
-                    .stream()
-                    .map(id -> new Notification.Target(Notification.TargetType.ASSET, id))
-                    .collect(Collectors.toList());
-                final Notification notification = new Notification("GeofenceRefresh", new PushNotificationMessage().setData(data), null, null, null);
-                notification.setTargets(subTargets);
-
-                executorService.schedule(() -> {
-                    LOG.info("Notifiying consoles that geofences have changed: " + notification.getTargets());
-                    notificationService.sendNotification(notification);
-                }, i * NOTIFY_ASSETS_BATCH_MILLIS);
+        withLock(getClass().getSimpleName() + "::sendNotifications", () -> {
+            if (notifyAssetsStopped) {
+                return;
+            }
+            pendingNotifyAssets.addAll(assetIds);
+
+            // Pick up changed settings
+            if (notifyAssetsTokenBucket == null || !notifyAssetsTokenBucket.hasSettings(NOTIFY_ASSETS_BURST, NOTIFY_ASSETS_RATE_PER_SECOND)) {
+                notifyAssetsTokenBucket = new TokenBucket(NOTIFY_ASSETS_BURST, NOTIFY_ASSETS_RATE_PER_SECOND);
+            }
+            if (notifyAssetsSenderFuture == null) {
+                notifyAssetsSenderFuture = executorService.schedule(this::sendPendingNotifications, 0);
+            }
+        });
+    }
+
+    protected void sendPendingNotifications() {
+        List<Notification> notifications = new ArrayList<>();
+
+        withLock(getClass().getSimpleName() + "::sendNotifications", () -> {
+            if (notifyAssetsStopped) {
+                return;
+            }
+            int count = notifyAssetsTokenBucket.take(pendingNotifyAssets.size());
+
+            // Consoles with the same data share a notification
+            Map<String, List<Notification.Target>> targetsByGeofencesJson = new LinkedHashMap<>();
+            Iterator<String> pendingIterator = pendingNotifyAssets.iterator();
+            for (int i = 0; i < count; i++) {
+                String assetId = pendingIterator.next();
+                pendingIterator.remove();
+                String geofencesJson = getConsoleGeofences(assetId).geofencesJson;
+                if (geofencesJson != null && geofencesJson.length() > NOTIFY_ASSETS_MAX_GEOFENCES_LENGTH) {
+                    geofencesJson = null;
+                }
+                targetsByGeofencesJson.computeIfAbsent(geofencesJson, json -> new ArrayList<>())
+                    .add(new Notification.Target(Notification.TargetType.ASSET, assetId));
+            }
+
+            targetsByGeofencesJson.forEach((geofencesJson, targets) -> {
+                ObjectValue data = Values.createObject();
+                data.put(NOTIFICATION_DATA_ACTION, GEOFENCE_REFRESH_ACTION);
+                if (geofencesJson != null) {
+                    data.put(NOTIFICATION_DATA_GEOFENCES, geofencesJson);
+                }
+                Notification notification = new Notification("GeofenceRefresh", new PushNotificationMessage().setData(data), null, null, null);
+                notification.setTargets(targets);
+                notifications.add(notification);
             });
+
+            notifyAssetsSenderFuture = pendingNotifyAssets.isEmpty()
+                ? null
+                : executorService.schedule(this::sendPendingNotifications, Math.max(1, notifyAssetsTokenBucket.getMillisUntilAvailable()));
+        });
+
+        notifications.forEach(notification -> {
+            LOG.info("Notifying consoles that geofences have changed: " + notification.getTargets());
+            try {
+                notificationService.sendNotification(notification);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Failed to notify consoles that geofences have changed: " + notification.getTargets(), e);
+            }
+        });
     }
 
     protected void processConsoleAssetChange(Asset asset, PersistenceEvent persistenceEvent) {
@@ -297,6 +438,7 @@ public class ORConsoleGeofenceAssetAdapter extends RouteBuilder implements Geofe
                 case DELETE:
 
                     consoleIdRealmMap.remove(asset.getId());
+                    consoleGeofencesCache.remove(asset.getId());
                     break;
             }
         });
@@ -19,8 +19,10 @@
  */
 package org.openremote.manager.syslog;
 
+import org.hibernate.Session;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
+import org.openremote.container.concurrent.RingBuffer;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.manager.concurrent.ManagerExecutorService;
 import org.openremote.manager.event.ClientEventService;
@@ -32,13 +34,15 @@ import org.openremote.model.syslog.SyslogEvent;
 import org.openremote.model.syslog.SyslogLevel;
 import org.openremote.model.util.Pair;
 
-import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -49,19 +53,40 @@ import static org.openremote.model.syslog.SyslogConfig.DEFAULT_LIMIT;
 /**
  * Act as a JUL handler, publishes (some) log messages on the client event bus, stores
  * (some, depending on {@link SyslogConfig}) log messages in the database.
+ * <p>
+ * Logging threads only put events in bounded lock-free buffers so they are never blocked; when a buffer is full
+ * events are dropped and counted. Stored events are written with JDBC batches of {@link #STORE_BATCH_SIZE} every
+ * {@link #FLUSH_INTERVAL_MILLIS}. At most {@link #PUBLISH_MAX_EVENTS} are published to clients every
+ * {@link #PUBLISH_INTERVAL_MILLIS}, events over that limit are coalesced into a warning event per category with the
+ * number of events that were not published.
  */
 public class SyslogService extends Handler implements ContainerService {
 
     private static final Logger LOG = Logger.getLogger(SyslogService.class.getName());
+    public static final int STORE_BUFFER_CAPACITY = 16384;
+    public static final int STORE_BATCH_SIZE = 1000;
+    public static final long FLUSH_INTERVAL_MILLIS = 3000;
+    public static final int PUBLISH_BUFFER_CAPACITY = 1024;
+    public static final int PUBLISH_MAX_EVENTS = 100;
+    public static final long PUBLISH_INTERVAL_MILLIS = 1000;
+    protected static final String INSERT_SQL = "insert into SYSLOG_EVENT (ID, TIMESTAMP, CATEGORY, LEVEL, MESSAGE, SUBCATEGORY) " +
+        "values (nextval('OPENREMOTE_SEQUENCE'), ?, ?, ?, ?, ?)";
 
     protected ManagerExecutorService executorService;
     protected PersistenceService persistenceService;
     protected ClientEventService clientEventService;
 
-    protected SyslogConfig config;
+    protected volatile SyslogConfig config;
 
-    final protected List<SyslogEvent> batch = new ArrayList<>();
+    final protected RingBuffer<SyslogEvent> storeBuffer = new RingBuffer<>(STORE_BUFFER_CAPACITY);
+    final protected RingBuffer<SyslogEvent> publishBuffer = new RingBuffer<>(PUBLISH_BUFFER_CAPACITY);
+    final protected AtomicLongArray unpublishedCounts = new AtomicLongArray(SyslogCategory.values().length);
+    final protected AtomicLong storedCount = new AtomicLong();
+    final protected AtomicLong storeBatchCount = new AtomicLong();
+    final protected AtomicLong publishedCount = new AtomicLong();
+    final protected Object flushLock = new Object();
     protected ScheduledFuture flushBatchFuture;
+    protected ScheduledFuture publishFuture;
     protected ScheduledFuture deleteOldFuture;
 
     @Override
@@ -104,17 +129,14 @@ public class SyslogService extends Handler implements ContainerService {
     public void start(Container container) throws Exception {
         if (persistenceService != null) {
             // Flush batch every 3 seconds (wait 10 seconds for database (schema) to be ready in dev mode)
-            flushBatchFuture = executorService.scheduleAtFixedRate(this::flushBatch, 10 * 1000, 3 * 1000);
+            flushBatchFuture = executorService.scheduleAtFixedRate(this::flushBatch, 10 * 1000, FLUSH_INTERVAL_MILLIS);
 
             // Clear outdated events every minute
             deleteOldFuture = executorService.scheduleAtFixedRate(() -> {
                 // Not ready on startup
                 if (persistenceService.getEntityManagerFactory() == null)
                     return;
-                final int maxAgeMinutes;
-                synchronized (batch) {
-                    maxAgeMinutes = config.getStoredMaxAgeMinutes();
-                }
+                final int maxAgeMinutes = config.getStoredMaxAgeMinutes();
                 persistenceService.doTransaction(em -> {
                     em.createQuery(
                         "delete from SyslogEvent e " +
@@ -123,6 +145,10 @@ public class SyslogService extends Handler implements ContainerService {
                 });
             }, 60 * 1000, 60 * 1000);
         }
+
+        if (clientEventService != null) {
+            publishFuture = executorService.scheduleAtFixedRate(this::publishEvents, PUBLISH_INTERVAL_MILLIS, PUBLISH_INTERVAL_MILLIS);
+        }
     }
 
     @Override
@@ -131,6 +157,10 @@ public class SyslogService extends Handler implements ContainerService {
             flushBatchFuture.cancel(true);
             flushBatchFuture = null;
         }
+        if (publishFuture != null) {
+            publishFuture.cancel(true);
+            publishFuture = null;
+        }
         if (deleteOldFuture != null) {
             deleteOldFuture.cancel(true);
             deleteOldFuture = null;
@@ -145,45 +175,60 @@ public class SyslogService extends Handler implements ContainerService {
     public void close() throws SecurityException {
     }
 
+    /**
+     * Called on the logging thread, must never block.
+     */
     @Override
     public void publish(LogRecord record) {
         SyslogEvent syslogEvent = SyslogCategory.mapSyslogEvent(record);
         if (syslogEvent != null) {
-            try {
-                store(syslogEvent);
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Failed to store syslog event", e);
-            }
-            try {
-                if (clientEventService != null)
-                    clientEventService.publishEvent(syslogEvent);
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Failed to send syslog event to subscribed clients", e);
+            store(syslogEvent);
+            if (clientEventService != null && !publishBuffer.offer(syslogEvent)) {
+                unpublishedCounts.incrementAndGet(syslogEvent.getCategory().ordinal());
             }
         }
     }
 
     public void setConfig(SyslogConfig config) {
-        synchronized (batch) {
-            LOG.info("Using: " + config);
-            this.config = config;
-        }
+        LOG.info("Using: " + config);
+        this.config = config;
     }
 
     public SyslogConfig getConfig() {
-        synchronized (batch) {
-            return config;
-        }
+        return config;
     }
 
     public void clearStoredEvents() {
         if (persistenceService == null)
             return;
-        synchronized (batch) {
+        synchronized (flushLock) {
+            storeBuffer.drain(event -> {}, Integer.MAX_VALUE);
             persistenceService.doTransaction(em -> em.createQuery("delete from SyslogEvent e").executeUpdate());
         }
     }
 
+    /**
+     * @return the number of events dropped because the store buffer was full.
+     */
+    public long getDroppedCount() {
+        return storeBuffer.getRejectedCount();
+    }
+
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+
+    /**
+     * @return the number of JDBC batches executed to store events.
+     */
+    public long getStoreBatchCount() {
+        return storeBatchCount.get();
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
     public Pair<Long, List<SyslogEvent>> getEvents(SyslogLevel level, int perPage, int page, Instant from, Instant to, List<SyslogCategory> categories, List<String> subCategories) {
         if (persistenceService == null)
             return null;
@@ -262,41 +307,88 @@ public class SyslogService extends Handler implements ContainerService {
         if (persistenceService.getEntityManagerFactory() == null) {
             return;
         }
+        SyslogConfig config = this.config;
         boolean isLoggable =
             config.getStoredLevel().isLoggable(syslogEvent)
                 && Arrays.asList(config.getStoredCategories()).contains(syslogEvent.getCategory());
         if (isLoggable) {
-            synchronized (batch) {
-                batch.add(syslogEvent);
-            }
+            storeBuffer.offer(syslogEvent);
         }
     }
 
     protected void flushBatch() {
         if (persistenceService == null)
             return;
-        synchronized (batch) {
-            final List<SyslogEvent> transientEvents = new ArrayList<>(batch);
-            batch.clear();
-            if (transientEvents.size() == 0)
-                return;
-            LOG.fine("Flushing syslog batch: " + transientEvents.size());
-            try {
-                persistenceService.doTransaction(em -> {
-                    try {
-                        for (SyslogEvent e : transientEvents) {
-                            em.persist(e);
+        synchronized (flushLock) {
+            long dropped = storeBuffer.getRejectedCount();
+            List<SyslogEvent> transientEvents = new ArrayList<>(Math.min(storeBuffer.size(), STORE_BATCH_SIZE));
+
+            // Drain at most what is buffered now so a log storm can't keep the flush running
+            int remaining = storeBuffer.size();
+            while (remaining > 0) {
+                transientEvents.clear();
+                remaining -= storeBuffer.drain(transientEvents::add, Math.min(remaining, STORE_BATCH_SIZE));
+                if (transientEvents.isEmpty()) {
+                    break;
+                }
+                LOG.fine("Flushing syslog batch: " + transientEvents.size());
+                try {
+                    persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+                        try (PreparedStatement st = connection.prepareStatement(INSERT_SQL)) {
+                            for (SyslogEvent e : transientEvents) {
+                                st.setTimestamp(1, new Timestamp(e.getTimestamp()));
+                                st.setString(2, e.getCategory().name());
+                                st.setInt(3, e.getLevel().ordinal());
+                                st.setString(4, e.getMessage());
+                                st.setString(5, e.getSubCategoryOptional().orElse(null));
+                                st.addBatch();
+                            }
+                            st.executeBatch();
                         }
-                    } catch (RuntimeException ex) {
-                        // This is not a big problem, it may happen on shutdown of database connections during tests, just inform the user
-                        // TODO Or is it a serious problem and we need to escalate? In any case, just throwing the ex is not good
-                        LOG.info("Error flushing syslog to database, some events are lost: " + ex);
-                    } finally {
-                        em.flush();
-                    }
-                });
+                    }));
+                    storeBatchCount.incrementAndGet();
+                    storedCount.addAndGet(transientEvents.size());
+                } catch (Exception e) {
+                    // This is not a big problem, it may happen on shutdown of database connections during tests, just inform the user
+                    LOG.info("Error flushing syslog to database, " + transientEvents.size() + " events are lost: " + e);
+                }
+            }
+
+            if (dropped > 0) {
+                LOG.fine("Syslog events dropped since startup as store buffer was full: " + dropped);
+            }
+        }
+    }
+
+    protected void publishEvents() {
+        if (clientEventService == null)
+            return;
+
+        List<SyslogEvent> events = new ArrayList<>(Math.min(publishBuffer.size(), PUBLISH_MAX_EVENTS));
+        publishBuffer.drain(events::add, PUBLISH_MAX_EVENTS);
+        // Anything over the limit is only counted
+        publishBuffer.drain(event -> unpublishedCounts.incrementAndGet(event.getCategory().ordinal()), publishBuffer.size());
+
+        long timestamp = System.currentTimeMillis();
+        for (SyslogCategory category : SyslogCategory.values()) {
+            long unpublished = unpublishedCounts.getAndSet(category.ordinal(), 0);
+            if (unpublished > 0) {
+                events.add(new SyslogEvent(
+                    timestamp,
+                    SyslogLevel.WARN,
+                    category,
+                    null,
+                    unpublished + " log messages were not sent to clients as the rate limit was exceeded"
+                ));
+            }
+        }
+
+        for (SyslogEvent event : events) {
+            try {
+                clientEventService.publishEvent(event);
+                publishedCount.incrementAndGet();
             } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Exception occurred whilst flushing the syslog", e);
+                LOG.log(Level.SEVERE, "Failed to send syslog event to subscribed clients", e);
             }
         }
     }
@@ -22,15 +22,11 @@ package org.openremote.manager.web;
 import io.undertow.server.HttpHandler;
 import io.undertow.servlet.Servlets;
 import io.undertow.servlet.api.DeploymentInfo;
-import io.undertow.servlet.api.FilterInfo;
 import io.undertow.servlet.api.ServletInfo;
 import io.undertow.servlet.util.ImmediateInstanceHandle;
 import org.openremote.container.Container;
 import org.openremote.container.web.file.FileServlet;
-import org.openremote.container.web.file.GzipResponseFilter;
 
-import javax.servlet.DispatcherType;
-import javax.servlet.Filter;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -90,7 +86,7 @@ public class ManagerFileServlet extends FileServlet {
     public ManagerFileServlet(boolean devMode,
                               File base,
                               String[] requiredRoles) {
-        super(devMode, base, requiredRoles, MIME_TYPES, MIME_TYPES_EXPIRE_SECONDS, FILE_EXTENSIONS_ALREADY_ZIPPED);
+        super(devMode, base, requiredRoles, MIME_TYPES, MIME_TYPES_EXPIRE_SECONDS, FILE_EXTENSIONS_ALREADY_ZIPPED, MIME_TYPES_TO_ZIP);
     }
 
     public static DeploymentInfo createDeploymentInfo(boolean devMode, String contextPath, Path docRoot, String[] requiredRoles) {
@@ -102,15 +98,11 @@ public class ManagerFileServlet extends FileServlet {
         ServletInfo servletInfo = Servlets.servlet("Manager File Servlet", FileServlet.class, () -> new ImmediateInstanceHandle<>(fileServlet));
         servletInfo.addMapping("/*");
 
-        Filter gzipFilter = new GzipResponseFilter(MIME_TYPES_TO_ZIP);
-        FilterInfo gzipFilterInfo = Servlets.filter("Gzip Filter", GzipResponseFilter.class, () -> new ImmediateInstanceHandle<>(gzipFilter));
-
+        // No GZIP filter, the servlet serves precompressed variants of the MIME_TYPES_TO_ZIP itself
         return new DeploymentInfo()
             .setDeploymentName(contextPath + " File Servlet Deployment")
             .setContextPath(contextPath)
             .addServlet(servletInfo)
-            .addFilter(gzipFilterInfo)
-            .addFilterUrlMapping(gzipFilterInfo.getName(), "/*", DispatcherType.REQUEST)
             .setClassLoader(Container.class.getClassLoader());
     }
 
@@ -44,7 +44,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -78,8 +78,8 @@ public class ManagerWebService extends WebService {
 
     protected Path appDocRoot;
     protected Path sharedDocRoot;
-    protected Collection<Class<?>> apiClasses = new HashSet<>();
-    protected Collection<Object> apiSingletons = new HashSet<>();
+    protected Collection<Class<?>> apiClasses = ConcurrentHashMap.newKeySet();
+    protected Collection<Object> apiSingletons = ConcurrentHashMap.newKeySet();
 
     /**
      * Start web service after other services.
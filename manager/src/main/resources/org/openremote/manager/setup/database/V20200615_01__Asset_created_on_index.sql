@@ -0,0 +1,4 @@
+/*
+  Supports ordered and keyset paginated asset queries (see AssetQuery.pageSize)
+ */
+create index ASSET_CREATED_ON_ID on ASSET(CREATED_ON, ID);
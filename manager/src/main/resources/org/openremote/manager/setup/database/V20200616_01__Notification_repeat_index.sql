@@ -0,0 +1,4 @@
+/*
+  Supports the bulk repeat frequency check of named notifications (see NotificationService.filterTargetsToSend)
+ */
+create index NOTIFICATION_REPEAT on NOTIFICATION(SOURCE, SOURCE_ID, NAME, TARGET_ID, SENT_ON);
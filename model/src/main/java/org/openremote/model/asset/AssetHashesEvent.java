@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.asset;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.openremote.model.event.shared.SharedEvent;
+
+import java.util.List;
+
+/**
+ * A gateway sends this event in response to a {@link ReadAssetHashesEvent}, it contains the ID, parent ID and content
+ * hash of every asset of the gateway.
+ */
+public class AssetHashesEvent extends SharedEvent {
+
+    public static class AssetHash {
+
+        protected String id;
+        protected String parentId;
+        protected String hash;
+
+        @JsonCreator
+        public AssetHash(@JsonProperty("id") String id, @JsonProperty("parentId") String parentId, @JsonProperty("hash") String hash) {
+            this.id = id;
+            this.parentId = parentId;
+            this.hash = hash;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getParentId() {
+            return parentId;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+    }
+
+    protected List<AssetHash> assetHashes;
+
+    @JsonCreator
+    public AssetHashesEvent(@JsonProperty("assetHashes") List<AssetHash> assetHashes) {
+        this.assetHashes = assetHashes;
+    }
+
+    public List<AssetHash> getAssetHashes() {
+        return assetHashes;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "assetHashes=" + (assetHashes == null ? "null" : assetHashes.size()) +
+            '}';
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.openremote.model.asset;
 
+import com.google.gwt.core.shared.GwtIncompatible;
 import jsinterop.annotations.JsType;
 import org.openremote.model.Constants;
 import org.openremote.model.attribute.AttributeRef;
@@ -30,6 +31,7 @@ import org.openremote.model.query.AssetQuery;
 import javax.annotation.security.RolesAllowed;
 import javax.validation.Valid;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
 
 import java.util.List;
 
@@ -263,6 +265,22 @@ public interface AssetResource {
     @SuppressWarnings("unusable-by-js")
     Asset[] queryAssets(@BeanParam RequestParams requestParams, AssetQuery query);
 
+    /**
+     * Retrieve assets using an {@link AssetQuery}, with the same access rules as {@link #queryAssets}, as a JSON object
+     * with an <code>assets</code> array and a <code>cursor</code>. The assets are read from the database in pages and
+     * written to the response page by page so large results don't have to be held in memory. Use {@link AssetQuery#page} to
+     * retrieve the result in pages; the returned cursor is set on the query to get the next page and is
+     * <code>null</code> on the last page.
+     */
+    @POST
+    @Path("query/stream")
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @RolesAllowed({Constants.READ_ASSETS_ROLE})
+    @SuppressWarnings("unusable-by-js")
+    @GwtIncompatible
+    Response streamAssets(@BeanParam RequestParams requestParams, AssetQuery query);
+
     /**
      * Retrieve public assets using an {@link AssetQuery}.
      * <p>
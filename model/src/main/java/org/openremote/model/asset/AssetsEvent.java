@@ -32,20 +32,35 @@ import java.util.stream.Collectors;
 public class AssetsEvent extends SharedEvent {
 
     protected List<Asset> assets;
+    protected String cursor;
 
+    public AssetsEvent(List<Asset> assets) {
+        this(assets, null);
+    }
+
+    /**
+     * @param cursor when the query was paginated, the cursor to request the next page with or <code>null</code> if
+     *               this is the last page.
+     */
     @JsonCreator
-    public AssetsEvent(@JsonProperty("assets") List<Asset> assets) {
+    public AssetsEvent(@JsonProperty("assets") List<Asset> assets, @JsonProperty("cursor") String cursor) {
         this.assets = assets;
+        this.cursor = cursor;
     }
 
     public List<Asset> getAssets() {
         return assets;
     }
 
+    public String getCursor() {
+        return cursor;
+    }
+
     @Override
     public String toString() {
         return AssetsEvent.class.getSimpleName() + "{" +
             ", assets=" + (assets == null ? "null" : assets.stream().map(Asset::getId).collect(Collectors.joining())) +
+            ", cursor='" + cursor + '\'' +
             '}';
     }
 }
@@ -45,6 +45,8 @@ import org.openremote.model.syslog.SyslogEvent;
     @JsonSubTypes.Type(value = ReadAssetAttributeEvent.class, name = "read-asset-attribute"),
     @JsonSubTypes.Type(value = ReadAssetEvent.class, name = "read-asset"),
     @JsonSubTypes.Type(value = ReadAssetsEvent.class, name = "read-assets"),
+    @JsonSubTypes.Type(value = ReadAssetHashesEvent.class, name = "read-asset-hashes"),
+    @JsonSubTypes.Type(value = AssetHashesEvent.class, name = "asset-hashes"),
     @JsonSubTypes.Type(value = AssetTreeModifiedEvent.class, name = "asset-tree-modified"),
     @JsonSubTypes.Type(value = SimulatorState.class, name = "simulator-state"),
     @JsonSubTypes.Type(value = RequestSimulatorState.class, name = "request-simulator-state"),
@@ -19,6 +19,7 @@
  */
 package org.openremote.model.map;
 
+import com.google.gwt.core.shared.GwtIncompatible;
 import jsinterop.annotations.JsType;
 import org.openremote.model.http.RequestParams;
 import org.openremote.model.http.SuccessStatusCode;
@@ -27,6 +28,7 @@ import org.openremote.model.value.ObjectValue;
 import javax.annotation.security.RolesAllowed;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 @Path("map")
 @JsType(isNative = true)
@@ -52,11 +54,13 @@ public interface MapResource {
     ObjectValue getSettingsJs(@BeanParam RequestParams requestParams);
 
     /**
-     * Gets vector tile data for Mapbox GL
+     * Gets vector tile data for Mapbox GL; the response has a strong ETag and can be cached by the client, a request
+     * with a matching If-None-Match header returns 304 Not Modified.
      */
     @GET
     @Produces("application/vnd.mapbox-vector-tile")
     @Path("tile/{zoom}/{column}/{row}")
     @SuppressWarnings("unusable-by-js")
-    byte[] getTile(@PathParam("zoom")int zoom, @PathParam("column")int column, @PathParam("row")int row);
+    @GwtIncompatible
+    Response getTile(@PathParam("zoom")int zoom, @PathParam("column")int column, @PathParam("row")int row);
 }
@@ -250,6 +250,10 @@ public class AssetQuery {
     // Ordering
     public OrderBy orderBy;
     public int limit;
+    // Keyset pagination, when the page size is set results are ordered by creation date and ID and the opaque cursor
+    // returned with a page continues the query after the last asset of that page
+    public int pageSize;
+    public String cursor;
 
     public AssetQuery() {
     }
@@ -422,6 +426,21 @@ public class AssetQuery {
         return this;
     }
 
+    public AssetQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public AssetQuery page(int pageSize) {
+        return page(pageSize, null);
+    }
+
+    public AssetQuery page(int pageSize, String cursor) {
+        this.pageSize = pageSize;
+        this.cursor = cursor;
+        return this;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
@@ -436,6 +455,9 @@ public class AssetQuery {
                 ", attribute=" + (attributes != null ? attributes.toString() : "null") +
                 ", attributeMeta=" + Arrays.toString(attributeMeta) +
                 ", orderBy=" + orderBy +
+                ", limit=" + limit +
+                ", pageSize=" + pageSize +
+                ", cursor='" + cursor + '\'' +
                 ", recursive=" + recursive +
                 '}';
     }
@@ -24,6 +24,8 @@ import org.openremote.model.datapoint.DatapointInterval;
 import org.openremote.model.datapoint.ValueDatapoint;
 import org.openremote.model.value.Value;
 
+import java.util.List;
+
 public abstract class PredictedDatapoints {
 
 
@@ -34,4 +36,5 @@ public abstract class PredictedDatapoints {
 
     public abstract void updateValue(String assetId, String attributeName, Value value, long timestamp);
     public abstract void updateValue(AttributeRef attributeRef, Value value, long timestamp);
+    public abstract void updateValues(AttributeRef attributeRef, List<ValueDatapoint<?>> valuesAndTimestamps);
 }
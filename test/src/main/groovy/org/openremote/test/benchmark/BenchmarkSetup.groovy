@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.benchmark
+
+import org.openremote.agent.protocol.simulator.SimulatorProtocol
+import org.openremote.model.simulator.element.NumberSimulatorElement
+import org.openremote.container.Container
+import org.openremote.manager.setup.AbstractManagerSetup
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.Values
+
+import static org.openremote.model.asset.AssetType.AGENT
+import static org.openremote.model.asset.AssetType.THING
+import static org.openremote.model.asset.agent.ProtocolConfiguration.initProtocolConfiguration
+import static org.openremote.model.attribute.AttributeValueType.NUMBER
+import static org.openremote.model.attribute.MetaItemType.AGENT_LINK
+
+/**
+ * Provisions a simulator agent with N assets of M linked number attributes, the attributes are written through
+ * to the sensor immediately so a {@link LoadGenerator} can drive them through {@link SimulatorProtocol#putValue}.
+ */
+class BenchmarkSetup extends AbstractManagerSetup {
+
+    static final String AGENT_PROTOCOL_CONFIG_NAME = "benchmarkSimulator"
+
+    final String realm
+    final int assetCount
+    final int attributeCount
+    String agentId
+    List<String> assetIds = []
+    List<AttributeRef> attributeRefs = []
+
+    BenchmarkSetup(Container container, String realm, int assetCount, int attributeCount) {
+        super(container)
+        this.realm = realm
+        this.assetCount = assetCount
+        this.attributeCount = attributeCount
+    }
+
+    @Override
+    void onStart() throws Exception {
+        Asset agent = new Asset("Benchmark Agent", AGENT, null, realm)
+        agent.addAttributes(
+            initProtocolConfiguration(new AssetAttribute(AGENT_PROTOCOL_CONFIG_NAME), SimulatorProtocol.PROTOCOL_NAME)
+                .addMeta(
+                    new MetaItem(
+                        SimulatorProtocol.CONFIG_MODE,
+                        Values.create(SimulatorProtocol.Mode.WRITE_THROUGH_IMMEDIATE.toString())
+                    )
+                )
+        )
+        agent = assetStorageService.merge(agent)
+        agentId = agent.getId()
+        def agentLink = new AttributeRef(agentId, AGENT_PROTOCOL_CONFIG_NAME).toArrayValue()
+
+        assetCount.times { i ->
+            Asset asset = new Asset("Benchmark Thing $i", THING, agent)
+            attributeCount.times { j ->
+                asset.addAttributes(
+                    new AssetAttribute("value$j", NUMBER, Values.create(0))
+                        .addMeta(
+                            new MetaItem(AGENT_LINK, agentLink),
+                            new MetaItem(SimulatorProtocol.SIMULATOR_ELEMENT, Values.create(NumberSimulatorElement.ELEMENT_NAME))
+                        )
+                )
+            }
+            asset = assetStorageService.merge(asset)
+            assetIds.add(asset.getId())
+            attributeCount.times { j ->
+                attributeRefs.add(new AttributeRef(asset.getId(), "value$j"))
+            }
+        }
+    }
+}
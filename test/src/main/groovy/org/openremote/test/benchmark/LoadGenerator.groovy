@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.benchmark
+
+import org.hibernate.SessionFactory
+import org.openremote.agent.protocol.simulator.SimulatorProtocol
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.AttributeState
+import org.openremote.model.value.Values
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Drives the attributes provisioned by {@link BenchmarkSetup} through the {@link SimulatorProtocol} at a fixed rate
+ * and collects the metrics of a run. The value written to each attribute is the send time in microseconds relative
+ * to {@link #startNanos}, so subscribers can calculate the sensor to client latency from the value alone.
+ */
+class LoadGenerator {
+
+    static final long DRIVER_INTERVAL_MILLIS = 10
+
+    static class Report {
+        long durationMillis
+        long sent
+        long received
+        double sentPerSecond
+        double receivedPerSecond
+        double p50LatencyMillis
+        double p99LatencyMillis
+        double maxLatencyMillis
+        double dbStatementsPerEvent
+        double allocatedMegabytesPerSecond
+
+        @Override
+        String toString() {
+            return "{" +
+                "\"durationMillis\": " + durationMillis +
+                ", \"sent\": " + sent +
+                ", \"received\": " + received +
+                ", \"sentPerSecond\": " + String.format("%.1f", sentPerSecond) +
+                ", \"receivedPerSecond\": " + String.format("%.1f", receivedPerSecond) +
+                ", \"p50LatencyMillis\": " + String.format("%.2f", p50LatencyMillis) +
+                ", \"p99LatencyMillis\": " + String.format("%.2f", p99LatencyMillis) +
+                ", \"maxLatencyMillis\": " + String.format("%.2f", maxLatencyMillis) +
+                ", \"dbStatementsPerEvent\": " + String.format("%.2f", dbStatementsPerEvent) +
+                ", \"allocatedMegabytesPerSecond\": " + String.format("%.1f", allocatedMegabytesPerSecond) +
+                "}"
+        }
+    }
+
+    final SimulatorProtocol simulatorProtocol
+    final PersistenceService persistenceService
+    final List<AttributeRef> attributeRefs
+    final long startNanos = System.nanoTime()
+    final AtomicLong sent = new AtomicLong()
+    final AtomicLong received = new AtomicLong()
+    // Latencies in microseconds, one entry per received event
+    final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>(1000000))
+    ScheduledExecutorService driver
+
+    LoadGenerator(SimulatorProtocol simulatorProtocol, PersistenceService persistenceService, List<AttributeRef> attributeRefs) {
+        this.simulatorProtocol = simulatorProtocol
+        this.persistenceService = persistenceService
+        this.attributeRefs = attributeRefs
+    }
+
+    long nowMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos)
+    }
+
+    /**
+     * Call for every event delivered to a subscriber, with the value of the event.
+     */
+    void onReceived(double sentMicros) {
+        received.incrementAndGet()
+        latencies.add(nowMicros() - (long) sentMicros)
+    }
+
+    /**
+     * Writes to the attributes round robin at the given rate for the given duration and then waits for the
+     * subscribers to settle before returning the report of the run.
+     */
+    Report run(int eventsPerSecond, long durationMillis, long settleMillis) {
+        def statistics = persistenceService.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics()
+        statistics.setStatisticsEnabled(true)
+        statistics.clear()
+        def threadBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        def allocatedBefore = totalAllocatedBytes(threadBean)
+
+        sent.set(0)
+        received.set(0)
+        latencies.clear()
+
+        double perInterval = eventsPerSecond * DRIVER_INTERVAL_MILLIS / 1000d
+        double carry = 0
+        int index = 0
+        long start = System.currentTimeMillis()
+        driver = Executors.newSingleThreadScheduledExecutor()
+        driver.scheduleAtFixedRate({
+            carry += perInterval
+            while (carry >= 1) {
+                carry--
+                def attributeRef = attributeRefs[index++ % attributeRefs.size()]
+                simulatorProtocol.putValue(new AttributeState(attributeRef, Values.create((double) nowMicros())))
+                sent.incrementAndGet()
+            }
+        }, 0, DRIVER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)
+
+        Thread.sleep(durationMillis)
+        driver.shutdownNow()
+        long end = System.currentTimeMillis()
+        Thread.sleep(settleMillis)
+
+        def report = new Report()
+        report.durationMillis = end - start
+        report.sent = sent.get()
+        report.received = received.get()
+        report.sentPerSecond = report.sent * 1000d / report.durationMillis
+        report.receivedPerSecond = report.received * 1000d / report.durationMillis
+        List<Long> sorted
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies)
+        }
+        Collections.sort(sorted)
+        if (!sorted.isEmpty()) {
+            report.p50LatencyMillis = sorted[(int) (sorted.size() * 0.5)] / 1000d
+            report.p99LatencyMillis = sorted[Math.min(sorted.size() - 1, (int) (sorted.size() * 0.99))] / 1000d
+            report.maxLatencyMillis = sorted[sorted.size() - 1] / 1000d
+        }
+        report.dbStatementsPerEvent = report.sent > 0 ? statistics.getPrepareStatementCount() / (double) report.sent : 0
+        report.allocatedMegabytesPerSecond =
+            (totalAllocatedBytes(threadBean) - allocatedBefore) / (1024d * 1024d) / ((end - start + settleMillis) / 1000d)
+        statistics.setStatisticsEnabled(false)
+        return report
+    }
+
+    void stop() {
+        if (driver != null) {
+            driver.shutdownNow()
+        }
+    }
+
+    protected static long totalAllocatedBytes(com.sun.management.ThreadMXBean threadBean) {
+        // Only counts threads alive at the time of the call, good enough for a long running container
+        return threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds()).findAll { it > 0 }.sum(0L) as long
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.benchmark
+
+import io.netty.bootstrap.Bootstrap
+import io.netty.channel.*
+import io.netty.channel.nio.NioEventLoopGroup
+import io.netty.channel.socket.SocketChannel
+import io.netty.channel.socket.nio.NioSocketChannel
+import io.netty.handler.codec.mqtt.*
+import io.netty.util.CharsetUtil
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+/**
+ * Minimal MQTT 3.1.1 subscriber for load testing the broker, the payload of every received publish message is
+ * passed to the consumer.
+ */
+class MqttSubscriber {
+
+    final String host
+    final int port
+    final String clientId
+    final String username
+    final String password
+    final Consumer<String> payloadConsumer
+    final CountDownLatch connected = new CountDownLatch(1)
+    EventLoopGroup workerGroup
+    Channel channel
+    int messageId = 1
+
+    MqttSubscriber(String host, int port, String clientId, String username, String password, Consumer<String> payloadConsumer) {
+        this.host = host
+        this.port = port
+        this.clientId = clientId
+        this.username = username
+        this.password = password
+        this.payloadConsumer = payloadConsumer
+    }
+
+    MqttSubscriber connect() {
+        workerGroup = new NioEventLoopGroup(1)
+        Bootstrap bootstrap = new Bootstrap()
+            .group(workerGroup)
+            .channel(NioSocketChannel.class)
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                void initChannel(SocketChannel ch) throws Exception {
+                    ch.pipeline().addLast(new MqttDecoder(), MqttEncoder.INSTANCE, new SimpleChannelInboundHandler<MqttMessage>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, MqttMessage message) throws Exception {
+                            switch (message.fixedHeader().messageType()) {
+                                case MqttMessageType.CONNACK:
+                                    connected.countDown()
+                                    break
+                                case MqttMessageType.PUBLISH:
+                                    payloadConsumer.accept(((MqttPublishMessage) message).payload().toString(CharsetUtil.UTF_8))
+                                    break
+                            }
+                        }
+                    })
+                }
+            })
+        channel = bootstrap.connect(host, port).sync().channel()
+        channel.writeAndFlush(
+            MqttMessageBuilders.connect()
+                .clientId(clientId)
+                .username(username)
+                .password(password.getBytes(CharsetUtil.UTF_8))
+                .protocolVersion(MqttVersion.MQTT_3_1_1)
+                .cleanSession(true)
+                .keepAlive(0)
+                .build()
+        )
+        if (!connected.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("MQTT broker did not acknowledge connection of: " + clientId)
+        }
+        return this
+    }
+
+    MqttSubscriber subscribe(String... topics) {
+        def builder = MqttMessageBuilders.subscribe().messageId(messageId++)
+        topics.each { builder.addSubscription(MqttQoS.AT_MOST_ONCE, it) }
+        channel.writeAndFlush(builder.build())
+        return this
+    }
+
+    void disconnect() {
+        if (channel != null) {
+            channel.close().awaitUninterruptibly()
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully()
+        }
+    }
+}
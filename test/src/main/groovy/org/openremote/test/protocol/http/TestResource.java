@@ -38,4 +38,8 @@ public interface TestResource {
     @GET
     @Produces(APPLICATION_JSON)
     Asset getAsset(@QueryParam("assetId") String assetId);
+
+    @GET
+    @Path("slow")
+    void slow(@QueryParam("millis") long millis);
 }
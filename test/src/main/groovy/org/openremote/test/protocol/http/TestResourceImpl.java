@@ -37,4 +37,13 @@ public class TestResourceImpl implements TestResource {
     public Asset getAsset(String assetId) {
         return postedAssets.stream().filter(asset -> asset.getId().equals(assetId)).findFirst().orElse(null);
     }
+
+    @Override
+    public void slow(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
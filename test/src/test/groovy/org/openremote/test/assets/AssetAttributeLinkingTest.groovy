@@ -1,6 +1,7 @@
 package org.openremote.test.assets
 
 import org.openremote.container.Container
+import org.openremote.manager.asset.AssetAttributeLinkingService
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.model.Constants
@@ -202,4 +203,71 @@ class AssetAttributeLinkingTest extends Specification implements ManagerContaine
             assert !asset2.getAttribute("item2Prop1").get().getValueAsBoolean().orElse(true)
         }
     }
+
+    def "Check linked attribute chains are forwarded and link cycles are detected"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        when: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def attributeLinkingService = container.getService(AssetAttributeLinkingService.class)
+
+        and: "an asset with a chain of linked attributes and a cycle of linked attributes is created"
+        def link = { AttributeRef attributeRef ->
+            new MetaItem(MetaItemType.ATTRIBUTE_LINK, Values.convertToValue(new AttributeLink(attributeRef, null, null), Container.JSON.writer()).orElse(null))
+        }
+        def asset = new Asset("Chain", AssetType.THING, null, Constants.MASTER_REALM)
+        asset = assetStorageService.merge(asset)
+        asset.setAttributes(
+            new AssetAttribute("first", AttributeValueType.NUMBER, null).addMeta(link(new AttributeRef(asset.id, "second"))),
+            new AssetAttribute("second", AttributeValueType.NUMBER, null).addMeta(link(new AttributeRef(asset.id, "third"))),
+            new AssetAttribute("third", AttributeValueType.STRING, null),
+            new AssetAttribute("ping", AttributeValueType.NUMBER, null).addMeta(link(new AttributeRef(asset.id, "pong"))),
+            new AssetAttribute("pong", AttributeValueType.NUMBER, null).addMeta(link(new AttributeRef(asset.id, "ping")))
+        )
+        asset = assetStorageService.merge(asset)
+
+        then: "the links should be indexed and the cycle detected"
+        conditions.eventually {
+            assert attributeLinkingService.linkIndex.containsKey(new AttributeRef(asset.id, "first"))
+            assert attributeLinkingService.linkIndex.containsKey(new AttributeRef(asset.id, "ping"))
+            assert attributeLinkingService.cyclicLinkSources.contains(new AttributeRef(asset.id, "ping"))
+            assert attributeLinkingService.cyclicLinkSources.contains(new AttributeRef(asset.id, "pong"))
+            assert !attributeLinkingService.cyclicLinkSources.contains(new AttributeRef(asset.id, "first"))
+            assert !attributeLinkingService.cyclicLinkSources.contains(new AttributeRef(asset.id, "second"))
+        }
+
+        when: "the first attribute of the chain is written"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(asset.id, "first", Values.create(123)))
+
+        then: "the value should be forwarded along the chain and converted to the type of the last attribute"
+        conditions.eventually {
+            asset = assetStorageService.find(asset.id, true)
+            assert asset.getAttribute("second").get().getValueAsNumber().orElse(0) == 123
+            assert asset.getAttribute("third").get().getValueAsString().orElse(null) == "123.0"
+        }
+
+        when: "an attribute of the cycle is written"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(asset.id, "ping", Values.create(1)))
+
+        then: "the value should only be forwarded once and the system should settle down"
+        conditions.eventually {
+            asset = assetStorageService.find(asset.id, true)
+            assert asset.getAttribute("pong").get().getValueAsNumber().orElse(0) == 1
+            assert noEventProcessedIn(assetProcessingService, 500)
+        }
+
+        when: "the cycle is broken"
+        asset.getAttribute("pong").get().setMeta([] as MetaItem[])
+        asset = assetStorageService.merge(asset)
+
+        then: "the links of the former cycle should no longer be marked as cyclic"
+        conditions.eventually {
+            assert !attributeLinkingService.cyclicLinkSources.contains(new AttributeRef(asset.id, "ping"))
+            assert !attributeLinkingService.linkIndex.containsKey(new AttributeRef(asset.id, "pong"))
+        }
+    }
 }
@@ -1,19 +1,26 @@
 package org.openremote.test.assets
 
+import org.openremote.container.security.AuthContext
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.security.ManagerIdentityService
 import org.openremote.manager.setup.SetupService
 import org.openremote.manager.setup.builtin.KeycloakDemoSetup
 import org.openremote.manager.setup.builtin.ManagerDemoSetup
+import org.openremote.model.asset.AssetFilter
 import org.openremote.model.asset.AssetResource
 import org.openremote.model.asset.Asset
 import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.attribute.AttributeEvent
 import org.openremote.model.attribute.AttributeType
 import org.openremote.model.query.AssetQuery
 import org.openremote.model.asset.AssetType
 import org.openremote.model.attribute.AttributeValueType
 import org.openremote.model.attribute.Meta
 import org.openremote.model.attribute.MetaItem
+import org.openremote.model.event.shared.EventSubscription
 import org.openremote.model.query.filter.ParentPredicate
 import org.openremote.model.query.filter.TenantPredicate
+import org.openremote.model.security.ClientRole
 import org.openremote.model.value.Values
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
@@ -883,4 +890,139 @@ class AssetPermissionsTest extends Specification implements ManagerContainerTrai
         assert testAsset.getAttribute("myCustomAttribute").get().getMetaItems(LABEL.getUrn())[1].getValue().get() == Values.create("Label2")
         assert testAsset.getAttribute("myCustomAttribute").get().getMetaItems(LABEL.getUrn())[2].getValue().get() == Values.create("Label3")
     }
+
+    /**
+     * @return an authentication of a user that isn't the superuser, optionally with the role to read assets.
+     */
+    static AuthContext userAuthContext(String realm, String userId, boolean readAssets) {
+        return new AuthContext() {
+            @Override
+            String getAuthenticatedRealm() {
+                return realm
+            }
+
+            @Override
+            String getUsername() {
+                return userId
+            }
+
+            @Override
+            String getUserId() {
+                return userId
+            }
+
+            @Override
+            String getClientId() {
+                return KEYCLOAK_CLIENT_ID
+            }
+
+            @Override
+            boolean hasRealmRole(String role) {
+                return false
+            }
+
+            @Override
+            boolean hasResourceRole(String role, String resource) {
+                return readAssets && role == ClientRole.READ_ASSETS.value && resource == KEYCLOAK_CLIENT_ID
+            }
+        }
+    }
+
+    def "Authorize asset event subscriptions"() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+
+        and: "the asset event subscription authorizer"
+        def authorizer = AssetStorageService.assetInfoAuthorizer(container.getService(ManagerIdentityService.class), assetStorageService)
+        def subscribe = { AuthContext auth, String... assetIds ->
+            def subscription = new EventSubscription<AttributeEvent>(AttributeEvent.class, new AssetFilter<AttributeEvent>(assetIds))
+            [authorized: authorizer.apply(auth, subscription), filter: subscription.filter as AssetFilter<AttributeEvent>]
+        }
+
+        and: "the superuser, a regular user, a restricted user and a user without the role to read assets"
+        def superUser = new AuthContext() {
+            @Override
+            String getAuthenticatedRealm() {
+                return MASTER_REALM
+            }
+
+            @Override
+            String getUsername() {
+                return MASTER_REALM_ADMIN_USER
+            }
+
+            @Override
+            String getUserId() {
+                return MASTER_REALM_ADMIN_USER
+            }
+
+            @Override
+            String getClientId() {
+                return KEYCLOAK_CLIENT_ID
+            }
+
+            @Override
+            boolean hasRealmRole(String role) {
+                return role == REALM_ADMIN_ROLE
+            }
+
+            @Override
+            boolean hasResourceRole(String role, String resource) {
+                return true
+            }
+        }
+        def regularUser = userAuthContext(keycloakDemoSetup.tenantBuilding.realm, keycloakDemoSetup.testuser2Id, true)
+        def restrictedUser = userAuthContext(keycloakDemoSetup.tenantBuilding.realm, keycloakDemoSetup.testuser3Id, true)
+        def userWithoutRole = userAuthContext(keycloakDemoSetup.tenantBuilding.realm, keycloakDemoSetup.testuser2Id, false)
+
+        expect: "the superuser to subscribe to any assets, even if they don't exist"
+        subscribe(superUser, managerDemoSetup.lobbyId, managerDemoSetup.apartment1Id, "doesNotExist").authorized
+
+        and: "a user without the role to read assets not to subscribe"
+        !subscribe(userWithoutRole, managerDemoSetup.apartment1Id).authorized
+
+        and: "a regular user to subscribe to existing assets of their realm"
+        subscribe(regularUser, managerDemoSetup.apartment1Id).authorized
+        subscribe(regularUser, managerDemoSetup.apartment1Id, managerDemoSetup.apartment2Id).authorized
+        subscribe(regularUser, managerDemoSetup.apartment1Id, managerDemoSetup.apartment1Id).authorized
+        subscribe(regularUser, managerDemoSetup.apartment1Id).filter.realm == keycloakDemoSetup.tenantBuilding.realm
+
+        and: "a regular user to subscribe to all assets of their realm"
+        subscribe(regularUser).authorized
+        subscribe(regularUser).filter.realm == keycloakDemoSetup.tenantBuilding.realm
+
+        and: "a regular user not to subscribe to missing assets"
+        !subscribe(regularUser, "doesNotExist").authorized
+        !subscribe(regularUser, managerDemoSetup.apartment1Id, "doesNotExist").authorized
+
+        and: "a regular user not to subscribe to assets of another realm"
+        !subscribe(regularUser, managerDemoSetup.lobbyId).authorized
+        !subscribe(regularUser, managerDemoSetup.apartment1Id, managerDemoSetup.lobbyId).authorized
+
+        and: "a restricted user to subscribe to their linked assets"
+        subscribe(restrictedUser, managerDemoSetup.apartment1Id).authorized
+        subscribe(restrictedUser, managerDemoSetup.apartment1Id, managerDemoSetup.apartment1LivingroomId).authorized
+
+        and: "a restricted user without asset IDs to subscribe to their linked assets only"
+        subscribe(restrictedUser).authorized
+        subscribe(restrictedUser).filter.assetIds as Set == [
+            managerDemoSetup.apartment1Id,
+            managerDemoSetup.apartment1LivingroomId,
+            managerDemoSetup.apartment1KitchenId,
+            managerDemoSetup.apartment1Bedroom1Id,
+            managerDemoSetup.apartment1BathroomId,
+            managerDemoSetup.apartment1HallwayId
+        ] as Set
+
+        and: "a restricted user not to subscribe to assets of their realm they are not linked to"
+        !subscribe(restrictedUser, managerDemoSetup.apartment2Id).authorized
+        !subscribe(restrictedUser, managerDemoSetup.apartment1Id, managerDemoSetup.apartment2Id).authorized
+
+        and: "a restricted user not to subscribe to missing assets or assets of another realm"
+        !subscribe(restrictedUser, "doesNotExist").authorized
+        !subscribe(restrictedUser, managerDemoSetup.lobbyId).authorized
+    }
 }
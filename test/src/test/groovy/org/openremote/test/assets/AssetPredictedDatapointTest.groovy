@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.assets
+
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.predicted.AssetPredictedDatapointService
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.setup.builtin.KeycloakDemoSetup
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.datapoint.DatapointInterval
+import org.openremote.model.datapoint.ValueDatapoint
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+import java.time.Instant
+
+import static java.util.concurrent.TimeUnit.HOURS
+import static java.util.concurrent.TimeUnit.MINUTES
+
+class AssetPredictedDatapointTest extends Specification implements ManagerContainerTrait {
+
+    def "Upsert predicted datapoints and read them back"() {
+
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetPredictedDatapointService = container.getService(AssetPredictedDatapointService.class)
+
+        and: "an asset with attributes to store predictions of"
+        def asset = assetStorageService.merge(
+            new Asset("Predicted asset", AssetType.THING, null, keycloakDemoSetup.masterTenant.realm).addAttributes(
+                new AssetAttribute("forecastText", AttributeValueType.STRING),
+                new AssetAttribute("forecastNumber", AttributeValueType.NUMBER)
+            )
+        )
+        def textRef = new AttributeRef(asset.id, "forecastText")
+        def numberRef = new AttributeRef(asset.id, "forecastNumber")
+
+        and: "timestamps with milliseconds"
+        def timestamp = Instant.parse("2020-03-02T10:00:00.250Z").toEpochMilli()
+        def timestamps = (0..3).collect { timestamp + MINUTES.toMillis(15) * it }
+
+        when: "predicted datapoints are stored"
+        assetPredictedDatapointService.updateValues(textRef, [
+            new ValueDatapoint<>(timestamps[0], Values.create("first0")),
+            new ValueDatapoint<>(timestamps[1], Values.create("first1")),
+            new ValueDatapoint<>(timestamps[2], Values.create("first2"))
+        ])
+
+        then: "the datapoints should have been stored"
+        assetPredictedDatapointService.getDatapointsCount(textRef) == 3
+
+        when: "datapoints with the same timestamps and a new timestamp are stored"
+        assetPredictedDatapointService.updateValues(textRef, [
+            new ValueDatapoint<>(timestamps[0], Values.create("second0")),
+            new ValueDatapoint<>(timestamps[1], Values.create("second1")),
+            new ValueDatapoint<>(timestamps[2], Values.create("second2")),
+            new ValueDatapoint<>(timestamps[3], Values.create("second3")),
+            new ValueDatapoint<>(timestamps[3] + 1000, null)
+        ])
+
+        then: "the datapoints should have been replaced and added, the datapoint without a value ignored"
+        assetPredictedDatapointService.getDatapointsCount(textRef) == 4
+
+        when: "the datapoints are read back"
+        def datapoints = assetPredictedDatapointService.getValueDatapoints(
+            textRef,
+            DatapointInterval.HOUR,
+            timestamps[0] - MINUTES.toMillis(1),
+            timestamps[3] + MINUTES.toMillis(1)
+        ).sort { it.timestamp }
+
+        then: "the replaced values should have been read with their exact timestamps"
+        datapoints.collect { it.timestamp } == timestamps
+        datapoints.collect { Values.getString(it.value).orElse(null) } == ["second0", "second1", "second2", "second3"]
+
+        when: "a number is stored twice at the same timestamp with the single value method"
+        assetPredictedDatapointService.updateValue(numberRef, Values.create(1d), timestamps[0])
+        assetPredictedDatapointService.updateValue(numberRef.entityId, numberRef.attributeName, Values.create(2d), timestamps[0])
+
+        then: "only the last value should have been stored"
+        assetPredictedDatapointService.getDatapointsCount(numberRef) == 1
+
+        when: "the number is read back by the hour"
+        datapoints = assetPredictedDatapointService.getValueDatapoints(
+            numberRef,
+            DatapointInterval.HOUR,
+            timestamps[0] - 250,
+            timestamps[0] - 250 + HOURS.toMillis(1)
+        )
+
+        then: "the hour of the timestamp should have the last value"
+        datapoints.findAll { it.value != null }.collect { Values.getNumber(it.value).orElse(null) } == [2d]
+        datapoints.find { it.value != null }.timestamp <= timestamps[0]
+        datapoints.find { it.value != null }.timestamp > timestamps[0] - HOURS.toMillis(1)
+    }
+}
@@ -1,5 +1,6 @@
 package org.openremote.test.assets
 
+import org.hibernate.Session
 import org.openremote.agent.protocol.AbstractProtocol
 import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.*
@@ -302,4 +303,99 @@ class AssetProcessingTest extends Specification implements ManagerContainerTrait
         }
 
     }
+
+    def "Check a failing event of a batch only rolls back its own writes"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+
+        and: "a thing asset"
+        def thing = new Asset("Batch Thing", AssetType.THING)
+        thing.setRealm(keycloakDemoSetup.masterTenant.realm)
+        thing.setAttributes(
+            ["ok1", "processorFailure", "ok2", "databaseFailure", "ok3", "persistenceFailure"].collect {
+                new AssetAttribute(it, AttributeValueType.NUMBER, Values.create(0))
+            }
+        )
+        thing = assetStorageService.merge(thing)
+
+        and: "a processor that fails some updates, one of them after writing to the database"
+        def processedAttributes = []
+        AssetUpdateProcessor failingProcessor = new AssetUpdateProcessor() {
+            @Override
+            boolean processAssetUpdate(EntityManager em, Asset asset, AssetAttribute attribute, AttributeEvent.Source source) throws AssetProcessingException {
+                processedAttributes << attribute.nameOrThrow
+                switch (attribute.nameOrThrow) {
+                    case "processorFailure":
+                        em.createNativeQuery("update ASSET set NAME = 'Partially processed' where ID = ?")
+                            .setParameter(1, asset.id)
+                            .executeUpdate()
+                        throw new IllegalStateException("Processor failure")
+                    case "databaseFailure":
+                        // Fails in the database and aborts the transaction
+                        em.unwrap(Session.class).doWork { connection -> connection.createStatement().execute("select 1/0") }
+                        break
+                    case "persistenceFailure":
+                        // Fails in the persistence provider which marks the transaction for rollback
+                        em.createNativeQuery("select * from NON_EXISTING_TABLE").getResultList()
+                        break
+                }
+                false
+            }
+        }
+        assetProcessingService.processors.add(0, failingProcessor)
+
+        when: "a batch of events with a processor and a database failure in the middle is processed"
+        assetProcessingService.sendAttributeEvents(
+            ["ok1", "processorFailure", "ok2", "databaseFailure", "ok3"].withIndex().collect { name, i ->
+                new AttributeEvent(thing.id, name, Values.create(i + 1))
+            }
+        )
+
+        then: "every event should have been processed once"
+        conditions.eventually {
+            assert processedAttributes == ["ok1", "processorFailure", "ok2", "databaseFailure", "ok3"]
+        }
+
+        and: "only the events that didn't fail should have been committed"
+        conditions.eventually {
+            def asset = assetStorageService.find(thing.id, true)
+            assert asset.name == "Batch Thing"
+            assert asset.getAttribute("ok1").flatMap { it.valueAsNumber }.orElse(null) == 1
+            assert asset.getAttribute("processorFailure").flatMap { it.valueAsNumber }.orElse(null) == 0
+            assert asset.getAttribute("ok2").flatMap { it.valueAsNumber }.orElse(null) == 3
+            assert asset.getAttribute("databaseFailure").flatMap { it.valueAsNumber }.orElse(null) == 0
+            assert asset.getAttribute("ok3").flatMap { it.valueAsNumber }.orElse(null) == 5
+        }
+
+        when: "a batch with an event that fails in the persistence provider is processed"
+        processedAttributes.clear()
+        assetProcessingService.sendAttributeEvents(
+            ["ok1", "persistenceFailure", "ok2"].withIndex().collect { name, i ->
+                new AttributeEvent(thing.id, name, Values.create(i + 10))
+            }
+        )
+
+        then: "every event should have been processed once, the remaining event in its own transaction"
+        conditions.eventually {
+            assert processedAttributes == ["ok1", "persistenceFailure", "ok2"]
+        }
+
+        and: "the writes of the events processed before the failure should have been rolled back with the batch"
+        conditions.eventually {
+            def asset = assetStorageService.find(thing.id, true)
+            assert asset.getAttribute("ok1").flatMap { it.valueAsNumber }.orElse(null) == 1
+            assert asset.getAttribute("persistenceFailure").flatMap { it.valueAsNumber }.orElse(null) == 0
+            assert asset.getAttribute("ok2").flatMap { it.valueAsNumber }.orElse(null) == 12
+        }
+
+        cleanup: "the processor is removed"
+        assetProcessingService?.processors?.remove(failingProcessor)
+    }
 }
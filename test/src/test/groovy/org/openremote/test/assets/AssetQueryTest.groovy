@@ -30,6 +30,7 @@ import javax.persistence.EntityManager
 import java.time.Instant
 import java.time.ZoneOffset
 import java.time.ZonedDateTime
+import java.util.function.Consumer
 import java.util.function.Function
 
 import static java.time.format.DateTimeFormatter.ISO_ZONED_DATE_TIME
@@ -992,4 +993,120 @@ class AssetQueryTest extends Specification implements ManagerContainerTrait {
         assets.size() == 1
         assets[0].id == lobby.id
     }
+
+    def "Paginated queries"() {
+
+        when: "all assets of a realm are queried without pagination"
+        def allAssets = assetStorageService.findAll(
+                new AssetQuery()
+                    .select(selectExcludePathAndAttributes())
+                    .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+        )
+
+        and: "the same assets are read in pages"
+        def pages = []
+        String cursor = null
+        def pagedAssets = []
+        while (true) {
+            def page = []
+            cursor = assetStorageService.findAll(
+                new AssetQuery()
+                    .select(selectExcludePathAndAttributes())
+                    .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                    .page(3, cursor),
+                { page.add(it) } as Consumer<Asset>
+            )
+            pages.add(page)
+            pagedAssets.addAll(page)
+            if (cursor == null) {
+                break
+            }
+        }
+
+        then: "the pages should contain all assets once in creation order"
+        allAssets.size() > 3
+        pages.size() == (int)Math.ceil(allAssets.size() / 3d)
+        pages.take(pages.size() - 1).every { it.size() == 3 }
+        pagedAssets.size() == allAssets.size()
+        pagedAssets.collect { it.id } as Set == allAssets.collect { it.id } as Set
+        (1..<pagedAssets.size()).every { pagedAssets[it - 1].createdOn.time <= pagedAssets[it].createdOn.time }
+
+        when: "a paginated query is ordered by name"
+        assetStorageService.findAll(
+            new AssetQuery()
+                .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                .orderBy(new OrderBy(NAME))
+                .page(3),
+            { } as Consumer<Asset>
+        )
+
+        then: "the query should be rejected"
+        thrown(IllegalArgumentException)
+
+        when: "a paginated query has an invalid cursor"
+        assetStorageService.findAll(
+            new AssetQuery()
+                .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                .page(3, "invalid"),
+            { } as Consumer<Asset>
+        )
+
+        then: "the query should be rejected"
+        thrown(IllegalArgumentException)
+    }
+
+    def "Count, exists and ID queries"() {
+
+        given: "the lobby has a calendar event attribute which can only be filtered on materialised assets"
+        def lobby = assetStorageService.find(managerDemoSetup.lobbyId, true)
+        def calendar = Calendar.getInstance(Locale.ROOT)
+        calendar.setTimeInMillis(1517151600000) // 28/01/2018 @ 3:00pm (UTC)
+        def start = calendar.getTime()
+        calendar.add(Calendar.HOUR, 2)
+        lobby.addAttributes(
+            new AssetAttribute("countEvent", AttributeValueType.CALENDAR_EVENT, new CalendarEvent(start, calendar.getTime(), null).toValue())
+        )
+        assetStorageService.merge(lobby)
+
+        and: "the path of an apartment"
+        def apartment1Path = assetStorageService.find(managerDemoSetup.apartment1Id, true).getPath()
+
+        and: "queries that match many, some, one and no assets"
+        def queries = [
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).types(AssetType.ROOM) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).parents(managerDemoSetup.apartment1Id) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).paths(new PathPredicate(apartment1Path)) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).attributes(new AttributePredicate("co2Level")) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).limit(2) },
+            { -> new AssetQuery().ids(managerDemoSetup.apartment1Id, managerDemoSetup.lobbyId, "doesNotExist") },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).ids(managerDemoSetup.apartment1Id, managerDemoSetup.lobbyId) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm)).ids(managerDemoSetup.lobbyId) },
+            { -> new AssetQuery().ids("doesNotExist") },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.masterTenant.realm))
+                .attributes(new AttributePredicate(new StringPredicate("countEvent"), new CalendarEventPredicate(new Date(1517151600000 + 3600000)))) },
+            { -> new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.masterTenant.realm))
+                .attributes(new AttributePredicate(new StringPredicate("countEvent"), new CalendarEventPredicate(new Date(1517151600000 + 3 * 3600000)))) }
+        ]
+
+        when: "the assets of each query are counted, checked for and their IDs read"
+        def expectedIds = queries.collect { query -> assetStorageService.findAll(query()).collect { it.id } }
+        def counts = queries.collect { query -> assetStorageService.count(query()) }
+        def exists = queries.collect { query -> assetStorageService.exists(query()) }
+        def ids = queries.collect { query -> assetStorageService.findIds(query()) }
+
+        then: "the results should match the assets that are materialised"
+        expectedIds[0].size() > 2
+        expectedIds[1].size() > 1
+        expectedIds[6].size() == 2
+        expectedIds[7] == [managerDemoSetup.apartment1Id]
+        expectedIds[8].isEmpty()
+        expectedIds[9].isEmpty()
+        expectedIds[10] == [managerDemoSetup.lobbyId]
+        expectedIds[11].isEmpty()
+        counts == expectedIds.collect { it.size() as long }
+        exists == expectedIds.collect { !it.isEmpty() }
+        ids.collect { it as Set } == expectedIds.collect { it as Set }
+        ids.every { it.size() == (it as Set).size() }
+    }
 }
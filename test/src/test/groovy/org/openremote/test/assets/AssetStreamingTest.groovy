@@ -0,0 +1,246 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.assets
+
+import org.openremote.container.Container
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.setup.builtin.KeycloakDemoSetup
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetResource
+import org.openremote.model.asset.AssetType
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.AssetQuery.OrderBy
+import org.openremote.model.query.filter.TenantPredicate
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.lang.ref.WeakReference
+import java.util.function.Consumer
+
+import static org.openremote.container.util.MapAccess.getString
+import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD
+import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD_DEFAULT
+import static org.openremote.model.Constants.*
+import static org.openremote.model.query.AssetQuery.OrderBy.Property.NAME
+
+/**
+ * Checks assets are streamed in pages, each page read in its own transaction, so neither a database connection nor
+ * the whole result is held while the assets are consumed.
+ */
+class AssetStreamingTest extends Specification implements ManagerContainerTrait {
+
+    static final int STREAM_ASSETS = 100
+    static final int STREAM_PAGE_SIZE = 10
+
+    @Shared
+    static KeycloakDemoSetup keycloakDemoSetup
+    @Shared
+    static AssetStorageService assetStorageService
+    @Shared
+    static PersistenceService persistenceService
+    @Shared
+    static AssetResource assetResource
+
+    int originalStreamPageSize
+
+    def setupSpec() {
+        given: "the server container is started"
+        def container = startContainer(defaultConfig(), defaultServices())
+        keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+        assetStorageService = container.getService(AssetStorageService.class)
+        persistenceService = container.getService(PersistenceService.class)
+
+        and: "an authenticated admin user"
+        def accessToken = authenticate(
+                container,
+                MASTER_REALM,
+                KEYCLOAK_CLIENT_ID,
+                MASTER_REALM_ADMIN_USER,
+                getString(container.getConfig(), SETUP_ADMIN_PASSWORD, SETUP_ADMIN_PASSWORD_DEFAULT)
+        ).token
+
+        and: "the asset resource"
+        assetResource = getClientApiTarget(serverUri(serverPort), MASTER_REALM, accessToken).proxy(AssetResource.class)
+    }
+
+    def setup() {
+        originalStreamPageSize = AssetStorageService.STREAM_PAGE_SIZE
+        AssetStorageService.STREAM_PAGE_SIZE = STREAM_PAGE_SIZE
+
+        (1..STREAM_ASSETS).each {
+            assetStorageService.merge(new Asset("Stream asset " + it, AssetType.THING, null, keycloakDemoSetup.tenantBuilding.realm))
+        }
+    }
+
+    def cleanup() {
+        AssetStorageService.STREAM_PAGE_SIZE = originalStreamPageSize
+    }
+
+    AssetQuery buildingQuery() {
+        new AssetQuery().tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+    }
+
+    /**
+     * Returns the IDs of all assets of the realm in the total order of paginated queries (by creation date and ID).
+     */
+    List<String> orderedIds() {
+        def ids = []
+        assetStorageService.findAll(buildingQuery().page(Integer.MAX_VALUE - 1), { ids.add(it.id) } as Consumer<Asset>)
+        return ids
+    }
+
+    /**
+     * Counts the transactions that are idle after a paginated asset query, i.e. that hold a connection while the
+     * result is being consumed.
+     */
+    long idleAssetQueryTransactions() {
+        persistenceService.doReturningTransaction { em ->
+            em.createNativeQuery(
+                "select count(*) from pg_stat_activity where pid <> pg_backend_pid() and state like 'idle in transaction%'" +
+                    " and query like '%from Asset A %order by A.CREATED_ON %LIMIT %'"
+            ).getSingleResult() as long
+        }
+    }
+
+    /**
+     * Counts the referenced assets that are still reachable, collecting garbage until at most the expected number
+     * are left.
+     */
+    static int reachableAssets(List<WeakReference<Asset>> references, int expected) {
+        int reachable = references.count { it.get() != null }
+        for (int i = 0; i < 10 && reachable > expected; i++) {
+            System.gc()
+            Thread.sleep(50)
+            reachable = references.count { it.get() != null }
+        }
+        return reachable
+    }
+
+    def "Stream assets in pages without holding a connection or the result"() {
+
+        given: "the IDs of all assets of the realm"
+        def allIds = orderedIds()
+        assert allIds.size() > STREAM_ASSETS
+
+        when: "the assets are streamed by a consumer that checks what is held when a page is consumed"
+        def streamedIds = []
+        def references = new ArrayList<WeakReference<Asset>>()
+        def idleTransactions = []
+        def reachable = []
+        def cursor = assetStorageService.streamAll(buildingQuery(), { asset ->
+            streamedIds.add(asset.id)
+            references.add(new WeakReference<Asset>(asset))
+            if (references.size() % STREAM_PAGE_SIZE == 1) {
+                idleTransactions.add(idleAssetQueryTransactions())
+                reachable.add(reachableAssets(references, STREAM_PAGE_SIZE))
+            }
+        } as Consumer<Asset>)
+
+        then: "all assets should have been streamed once in creation order"
+        cursor == null
+        streamedIds == allIds
+
+        and: "the result should have been read in pages"
+        idleTransactions.size() == (int) Math.ceil(allIds.size() / (double) STREAM_PAGE_SIZE)
+
+        and: "no transaction should have been open while the assets were consumed"
+        idleTransactions.every { it == 0 }
+
+        and: "assets of earlier pages should not have been held so memory use doesn't grow with the result"
+        reachable.every { it <= STREAM_PAGE_SIZE }
+
+        when: "a page larger than the stream page size is streamed"
+        def pageIds = []
+        cursor = assetStorageService.streamAll(buildingQuery().page(STREAM_PAGE_SIZE * 2 + 5), { pageIds.add(it.id) } as Consumer<Asset>)
+
+        then: "the page should contain the first assets and a cursor for the next page"
+        pageIds == allIds.take(STREAM_PAGE_SIZE * 2 + 5)
+        cursor != null
+
+        when: "the next page is streamed"
+        def query = buildingQuery().page(STREAM_PAGE_SIZE * 2 + 5, cursor)
+        pageIds = []
+        assetStorageService.streamAll(query, { pageIds.add(it.id) } as Consumer<Asset>)
+
+        then: "the page should contain the next assets and the query should be unchanged"
+        pageIds == allIds.drop(STREAM_PAGE_SIZE * 2 + 5).take(STREAM_PAGE_SIZE * 2 + 5)
+        query.pageSize == STREAM_PAGE_SIZE * 2 + 5
+        query.cursor == cursor
+
+        when: "a limited query is streamed"
+        pageIds = []
+        cursor = assetStorageService.streamAll(buildingQuery().limit(STREAM_PAGE_SIZE + 3), { pageIds.add(it.id) } as Consumer<Asset>)
+
+        then: "only the limited number of assets should have been streamed"
+        pageIds == allIds.take(STREAM_PAGE_SIZE + 3)
+        cursor == null
+
+        when: "a query ordered by name is streamed"
+        pageIds = []
+        assetStorageService.streamAll(buildingQuery().orderBy(new OrderBy(NAME)), { pageIds.add(it.id) } as Consumer<Asset>)
+
+        then: "the assets should have been streamed once"
+        pageIds.size() == allIds.size()
+        pageIds as Set == allIds as Set
+    }
+
+    def "Stream assets through the REST API"() {
+
+        given: "the IDs of all assets of the realm"
+        def allIds = orderedIds()
+
+        when: "the assets are streamed"
+        def response = assetResource.streamAssets(null, buildingQuery())
+        def result = Container.JSON.readTree(response.readEntity(String.class))
+
+        then: "the response should contain all assets in creation order and no cursor"
+        response.status == 200
+        result.get("assets").collect { it.get("id").asText() } == allIds
+        result.get("assets").find { it.get("name").asText() == "Stream asset 1" }.get("type").asText() == AssetType.THING.type
+        result.get("cursor").isNull()
+
+        when: "the assets are streamed in pages"
+        def pages = []
+        String cursor = null
+        while (true) {
+            response = assetResource.streamAssets(null, buildingQuery().page(STREAM_PAGE_SIZE * 3, cursor))
+            result = Container.JSON.readTree(response.readEntity(String.class))
+            pages.add(result.get("assets").collect { it.get("id").asText() })
+            if (result.get("cursor").isNull()) {
+                break
+            }
+            cursor = result.get("cursor").asText()
+        }
+
+        then: "the pages should contain all assets once in creation order"
+        pages.size() == (int) Math.ceil(allIds.size() / (double) (STREAM_PAGE_SIZE * 3))
+        pages.take(pages.size() - 1).every { it.size() == STREAM_PAGE_SIZE * 3 }
+        pages.flatten() == allIds
+
+        when: "a paginated query is ordered by name"
+        response = assetResource.streamAssets(null, buildingQuery().orderBy(new OrderBy(NAME)).page(3))
+
+        then: "the query should be rejected"
+        response.status == 400
+    }
+}
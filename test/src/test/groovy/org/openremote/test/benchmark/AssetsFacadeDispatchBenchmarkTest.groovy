@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.benchmark
+
+import org.openremote.manager.asset.AssetProcessingService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.rules.RulesEngineId
+import org.openremote.manager.rules.facade.AssetsFacade
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.setup.builtin.ManagerDemoSetup
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.filter.PathPredicate
+import org.openremote.model.query.filter.TenantPredicate
+import org.openremote.model.rules.AssetRuleset
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.logging.Logger
+
+import static org.openremote.test.benchmark.ThroughputBenchmarkTest.benchmarkProperty
+
+/**
+ * Compares the latency of the asset access check of {@link AssetsFacade#dispatch} for a rule writing to N assets when
+ * the matching assets are materialised (as before) and when they are only counted. Only runs when the
+ * <code>benchmark</code> system property is set, e.g.
+ * <code>./gradlew test --tests *AssetsFacadeDispatchBenchmarkTest -Dbenchmark=true</code>.
+ */
+@Requires({ Boolean.getBoolean("benchmark") })
+class AssetsFacadeDispatchBenchmarkTest extends Specification implements ManagerContainerTrait {
+
+    private static final Logger LOG = Logger.getLogger(AssetsFacadeDispatchBenchmarkTest.class.getName())
+
+    static int warmUpIterations(int iterations) {
+        return Math.max(1, (int) (iterations / 10))
+    }
+
+    static double measureMillis(int iterations, Closure closure) {
+        // Warm up the connection pool and statement caches
+        warmUpIterations(iterations).times { closure() }
+        long start = System.nanoTime()
+        iterations.times { closure() }
+        return (System.nanoTime() - start) / iterations / 1000000d
+    }
+
+    def "Asset access check latency of a rule dispatching to many assets"() {
+
+        given: "the benchmark parameters"
+        def assetCount = benchmarkProperty("assets", 100)
+        def iterations = benchmarkProperty("iterations", 200)
+
+        and: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 60, delay: 0.5)
+        def container = startContainer(defaultConfig(), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def realm = managerDemoSetup.realmBuildingTenant
+
+        when: "the benchmark assets are provisioned"
+        def setup = new BenchmarkSetup(container, realm, assetCount, 2)
+        setup.onStart()
+
+        then: "the assets should be stored"
+        conditions.eventually {
+            assert noEventProcessedIn(assetProcessingService, 500)
+        }
+
+        when: "a facade of an asset scope rules engine counts the dispatched events"
+        def dispatched = 0
+        def facade = new AssetsFacade<AssetRuleset>(
+            new RulesEngineId<AssetRuleset>(realm, setup.agentId),
+            assetStorageService,
+            { dispatched++ }
+        )
+
+        and: "a rule writes two attributes of every asset"
+        def events = setup.assetIds.collectMany { assetId ->
+            [new AttributeEvent(assetId, "value0", Values.create(1)), new AttributeEvent(assetId, "value1", Values.create(1))]
+        } as AttributeEvent[]
+        def ids = setup.assetIds as String[]
+
+        and: "the access check is done by materialising the matching assets and by counting them"
+        def materialisedMillis = measureMillis(iterations) {
+            def restrictedAsset = assetStorageService.find(setup.agentId, true)
+            assert assetStorageService.findAll(
+                new AssetQuery()
+                    .select(AssetQuery.Select.selectExcludeAll())
+                    .tenant(new TenantPredicate(realm))
+                    .paths(new PathPredicate(restrictedAsset.getPath()))
+                    .ids(ids)
+            ).size() == assetCount
+        }
+        dispatched = 0
+        def countedMillis = measureMillis(iterations) {
+            facade.dispatch(events)
+        }
+        LOG.info("Dispatch access check of " + assetCount + " assets (" + iterations + " iterations): materialised "
+            + String.format("%.2fms", materialisedMillis) + ", counted " + String.format("%.2fms", countedMillis))
+
+        then: "every event should have passed the access check"
+        dispatched == (iterations + warmUpIterations(iterations)) * events.length
+    }
+}
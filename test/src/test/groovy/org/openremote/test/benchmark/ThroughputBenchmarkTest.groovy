@@ -0,0 +1,192 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.benchmark
+
+import io.moquette.BrokerConstants
+import io.netty.channel.ChannelHandler
+import org.apache.http.client.utils.URIBuilder
+import org.openremote.agent.protocol.io.AbstractNettyIoClient
+import org.openremote.agent.protocol.simulator.SimulatorProtocol
+import org.openremote.agent.protocol.websocket.WebsocketIoClient
+import org.openremote.container.Container
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.container.util.UniqueIdentifierGenerator
+import org.openremote.container.web.OAuthPasswordGrant
+import org.openremote.manager.asset.AssetProcessingService
+import org.openremote.manager.concurrent.ManagerExecutorService
+import org.openremote.manager.mqtt.MqttBrokerService
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.setup.builtin.ManagerDemoSetup
+import org.openremote.model.asset.AssetFilter
+import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.event.TriggeredEventSubscription
+import org.openremote.model.event.shared.EventSubscription
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.logging.Logger
+
+import static org.openremote.container.util.MapAccess.getInteger
+import static org.openremote.container.util.MapAccess.getString
+import static org.openremote.manager.mqtt.KeycloakAuthenticator.MQTT_CLIENT_ID_SEPARATOR
+import static org.openremote.manager.mqtt.MqttBrokerService.MQTT_SERVER_LISTEN_HOST
+import static org.openremote.manager.mqtt.MqttBrokerService.MQTT_SERVER_LISTEN_PORT
+import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD
+import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD_DEFAULT
+import static org.openremote.model.Constants.*
+
+/**
+ * End-to-end throughput benchmark, provisions N assets with M simulated attributes, drives them at a fixed rate and
+ * measures delivery to websocket and MQTT subscribers. Only runs when the <code>benchmark</code> system property
+ * is set, e.g. <code>./gradlew test --tests *ThroughputBenchmarkTest -Dbenchmark=true</code>. The size of the run
+ * can be configured with the system properties read in {@link #benchmarkProperty}.
+ */
+@Requires({ Boolean.getBoolean("benchmark") })
+class ThroughputBenchmarkTest extends Specification implements ManagerContainerTrait {
+
+    private static final Logger LOG = Logger.getLogger(ThroughputBenchmarkTest.class.getName())
+
+    static int benchmarkProperty(String name, int defaultValue) {
+        return Integer.getInteger("benchmark." + name, defaultValue)
+    }
+
+    def "Sustained sensor update throughput to websocket and MQTT subscribers"() {
+
+        given: "the benchmark parameters"
+        def assetCount = benchmarkProperty("assets", 100)
+        def attributeCount = benchmarkProperty("attributes", 10)
+        def eventsPerSecond = benchmarkProperty("rate", 500)
+        def durationMillis = benchmarkProperty("durationSeconds", 30) * 1000L
+        def websocketSubscriberCount = benchmarkProperty("websocketSubscribers", 5)
+        def mqttSubscriberCount = benchmarkProperty("mqttSubscribers", 5)
+        def minDeliveryRatio = benchmarkProperty("minDeliveryPercent", 99) / 100d
+
+        and: "the container environment is started with the wall clock"
+        def conditions = new PollingConditions(timeout: 60, delay: 0.5)
+        def container = startContainerWithoutPseudoClock(defaultConfig(), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def executorService = container.getService(ManagerExecutorService.class)
+        def simulatorProtocol = container.getService(SimulatorProtocol.class)
+        def realm = managerDemoSetup.realmBuildingTenant
+
+        when: "the benchmark assets are provisioned"
+        def setup = new BenchmarkSetup(container, realm, assetCount, attributeCount)
+        setup.onStart()
+
+        then: "all attributes should be linked to the simulator"
+        conditions.eventually {
+            assert setup.attributeRefs.every { simulatorProtocol.getValue(it).isPresent() }
+            assert noEventProcessedIn(assetProcessingService, 500)
+        }
+
+        when: "the load generator and subscribers are created"
+        def loadGenerator = new LoadGenerator(simulatorProtocol, container.getService(PersistenceService.class), setup.attributeRefs)
+        def websocketClients = createWebsocketSubscribers(container, executorService, realm, setup.assetIds, websocketSubscriberCount, loadGenerator)
+        def mqttSubscribers = createMqttSubscribers(container, realm, setup.assetIds, mqttSubscriberCount, loadGenerator)
+
+        then: "the websocket subscribers should be connected"
+        conditions.eventually {
+            assert websocketClients.every { it.connectionStatus == ConnectionStatus.CONNECTED }
+        }
+
+        when: "the subscriptions have settled and the load is applied"
+        Thread.sleep(2000)
+        def report = loadGenerator.run(eventsPerSecond, durationMillis, 5000)
+        LOG.info("Throughput benchmark (assets: " + assetCount + ", attributes: " + attributeCount
+            + ", websocket subscribers: " + websocketSubscriberCount + ", MQTT subscribers: " + mqttSubscriberCount + "): " + report)
+
+        then: "the requested rate should have been sustained and delivered to all subscribers"
+        def expectedDeliveries = report.sent * (websocketSubscriberCount + mqttSubscriberCount)
+        report.sentPerSecond >= eventsPerSecond * 0.9
+        report.received >= expectedDeliveries * minDeliveryRatio
+
+        cleanup: "the subscribers are disconnected"
+        loadGenerator?.stop()
+        websocketClients?.each { it.disconnect() }
+        mqttSubscribers?.each { it.disconnect() }
+    }
+
+    protected List<WebsocketIoClient<String>> createWebsocketSubscribers(Container container, ManagerExecutorService executorService, String realm, List<String> assetIds, int count, LoadGenerator loadGenerator) {
+        def subscription = new EventSubscription<AttributeEvent>(
+            AttributeEvent.class,
+            new AssetFilter<AttributeEvent>().setRealm(realm).setAssetIds(assetIds as String[])
+        )
+        def subscribeMessage = EventSubscription.SUBSCRIBE_MESSAGE_PREFIX + Container.JSON.writeValueAsString(subscription)
+
+        return (1..count).collect {
+            def client = new WebsocketIoClient<String>(
+                new URIBuilder("ws://localhost:$serverPort/websocket/events?Auth-Realm=$MASTER_REALM").build(),
+                null,
+                new OAuthPasswordGrant("http://localhost:$serverPort/auth/realms/$MASTER_REALM/protocol/openid-connect/token",
+                    KEYCLOAK_CLIENT_ID,
+                    null,
+                    null,
+                    MASTER_REALM_ADMIN_USER,
+                    getString(container.getConfig(), SETUP_ADMIN_PASSWORD, SETUP_ADMIN_PASSWORD_DEFAULT)),
+                executorService)
+            client.setEncoderDecoderProvider({
+                [new AbstractNettyIoClient.MessageToMessageDecoder<String>(String.class, client)].toArray(new ChannelHandler[0])
+            })
+            client.addMessageConsumer({ message ->
+                if (message.startsWith(TriggeredEventSubscription.MESSAGE_PREFIX)) {
+                    def triggered = Container.JSON.readValue(message.substring(TriggeredEventSubscription.MESSAGE_PREFIX.length()), TriggeredEventSubscription.class)
+                    triggered.events.each { event ->
+                        ((AttributeEvent) event).value.flatMap { Values.getNumber(it) }.ifPresent { loadGenerator.onReceived(it) }
+                    }
+                }
+            })
+            client.addConnectionStatusConsumer({ status ->
+                if (status == ConnectionStatus.CONNECTED) {
+                    client.sendMessage(subscribeMessage)
+                }
+            })
+            client.connect()
+            client
+        }
+    }
+
+    protected List<MqttSubscriber> createMqttSubscribers(Container container, String realm, List<String> assetIds, int count, LoadGenerator loadGenerator) {
+        def mqttHost = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, BrokerConstants.HOST)
+        def mqttPort = getInteger(container.getConfig(), MQTT_SERVER_LISTEN_PORT, BrokerConstants.PORT)
+        // Client created by the demo setup for the building realm
+        def username = MqttBrokerService.MQTT_CLIENT_ID_PREFIX + UniqueIdentifierGenerator.generateId(realm)
+        def password = UniqueIdentifierGenerator.generateId(realm)
+        def topics = assetIds.collect { "assets/" + it } as String[]
+
+        return (1..count).collect {
+            new MqttSubscriber(
+                mqttHost,
+                mqttPort,
+                realm + MQTT_CLIENT_ID_SEPARATOR + UniqueIdentifierGenerator.generateId(),
+                username,
+                password,
+                { payload ->
+                    def event = Container.JSON.readValue(payload, AttributeEvent.class)
+                    event.value.flatMap { Values.getNumber(it) }.ifPresent { loadGenerator.onReceived(it) }
+                }
+            ).connect().subscribe(topics)
+        }
+    }
+}
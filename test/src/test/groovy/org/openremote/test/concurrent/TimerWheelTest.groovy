@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.concurrent
+
+import org.openremote.container.concurrent.ContainerScheduledExecutor
+import org.openremote.container.concurrent.ContainerTimerWheel
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.atomic.AtomicInteger
+
+class TimerWheelTest extends Specification {
+
+    def "Schedule, repeat and cancel timers on the timing wheel"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.1)
+
+        and: "a timing wheel"
+        def executor = new ContainerScheduledExecutor("Timer wheel test", 2)
+        def wheel = new ContainerTimerWheel("Timer wheel test", 10, executor)
+
+        when: "many one-shot timers with different delays are scheduled"
+        def fired = new AtomicInteger()
+        def futures = (1..100000).collect {
+            wheel.schedule({ fired.incrementAndGet() }, it % 3000)
+        }
+
+        then: "all timers should fire and the wheel should be empty"
+        conditions.eventually {
+            assert fired.get() == 100000
+            assert wheel.size() == 0
+            assert futures.every { it.isDone() && !it.isCancelled() }
+        }
+
+        when: "a timer beyond the first wheel level is scheduled and then cancelled"
+        def cancelledFired = new AtomicInteger()
+        ScheduledFuture<?> cancelled = wheel.schedule({ cancelledFired.incrementAndGet() }, 5000)
+        cancelled.cancel(false)
+
+        and: "a timer beyond the first wheel level is scheduled"
+        def start = System.currentTimeMillis()
+        def firedAt = 0L
+        wheel.schedule({ firedAt = System.currentTimeMillis() }, 3000)
+
+        then: "only the remaining timer should fire and never early"
+        conditions.eventually {
+            assert firedAt >= start + 3000
+            assert cancelledFired.get() == 0
+            assert cancelled.isCancelled()
+            assert wheel.size() == 0
+        }
+
+        when: "a periodic timer is scheduled"
+        def repeated = new AtomicInteger()
+        def periodic = wheel.scheduleWithFixedDelay({ repeated.incrementAndGet() }, 0, 50)
+
+        then: "it should fire repeatedly"
+        conditions.eventually {
+            assert repeated.get() >= 5
+        }
+
+        when: "the periodic timer is cancelled"
+        periodic.cancel(false)
+        def repeatedCount = repeated.get()
+        Thread.sleep(200)
+
+        then: "it should not fire again"
+        repeated.get() <= repeatedCount + 1
+        periodic.isCancelled()
+        wheel.size() == 0
+
+        cleanup: "the wheel and executor are stopped"
+        wheel.stop()
+        executor.shutdownNow()
+    }
+}
@@ -62,7 +62,6 @@ class ConsoleTest extends Specification implements ManagerContainerTrait {
         given: "the container environment is started"
         def conditions = new PollingConditions(timeout: 20, delay: 0.2)
         ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_DEBOUNCE_MILLIS = 100
-        ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_BATCH_MILLIS = 200
         def container = startContainer(defaultConfig(), defaultServices())
         def pushNotificationHandler = container.getService(PushNotificationHandler.class)
         def notificationService = container.getService(NotificationService.class)
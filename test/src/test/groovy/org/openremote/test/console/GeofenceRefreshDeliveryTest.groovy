@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.console
+
+import org.openremote.container.Container
+import org.openremote.manager.notification.NotificationService
+import org.openremote.manager.notification.PushNotificationHandler
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.RulesService
+import org.openremote.manager.rules.geofence.ORConsoleGeofenceAssetAdapter
+import org.openremote.model.notification.AbstractNotificationMessage
+import org.openremote.model.notification.Notification
+import org.openremote.model.notification.NotificationSendResult
+import org.openremote.model.notification.PushNotificationMessage
+import org.openremote.model.query.filter.GeofencePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.rules.geofence.GeofenceDefinition
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.openremote.container.concurrent.GlobalLock.withLock
+import static org.openremote.model.Constants.MASTER_REALM
+
+/**
+ * Checks the geofence refresh notifications of the {@link ORConsoleGeofenceAssetAdapter} for many consoles against a
+ * stub push notification handler that acts like the consoles.
+ */
+class GeofenceRefreshDeliveryTest extends Specification implements ManagerContainerTrait {
+
+    static final int CONSOLES = 1000
+    static final int CONSOLES_WITH_MANY_GEOFENCES = 10
+
+    static RulesEngine.AssetStateLocationPredicates createLocationPredicates(String consoleId, int count) {
+        Set<GeofencePredicate> predicates = new HashSet<>()
+        (1..count).each {
+            predicates.add(new RadialGeofencePredicate(100 + it, 51.4 + it * 0.001, 5.4))
+        }
+        new RulesEngine.AssetStateLocationPredicates(consoleId, predicates)
+    }
+
+    @SuppressWarnings("GroovyAccessibility")
+    def "Check geofence refresh notifications for many consoles are paced and include the geofences"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 60, delay: 0.5)
+        def originalDebounceMillis = ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_DEBOUNCE_MILLIS
+        ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_DEBOUNCE_MILLIS = 100
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def pushNotificationHandler = container.getService(PushNotificationHandler.class)
+        def notificationService = container.getService(NotificationService.class)
+        def rulesService = container.getService(RulesService.class)
+        def geofenceAdapter = (ORConsoleGeofenceAssetAdapter) rulesService.geofenceAssetAdapters.find {
+            it.name == ORConsoleGeofenceAssetAdapter.NAME
+        }
+
+        and: "a stub push notification handler that records the deliveries and requests the geofences if they aren't included"
+        def deliveries = new ConcurrentHashMap<String, Map>()
+        def callbacks = new AtomicInteger()
+        PushNotificationHandler stubPushNotificationHandler = Spy(pushNotificationHandler)
+        stubPushNotificationHandler.isValid() >> true
+        stubPushNotificationHandler.getTargets(_ as Notification.Source, _ as String, _ as List, _ as AbstractNotificationMessage) >> {
+            source, sourceId, targets, message -> targets
+        }
+        stubPushNotificationHandler.sendMessages(_ as List, _ as Notification.Source, _ as String, _ as List, _ as AbstractNotificationMessage) >> {
+            List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, AbstractNotificationMessage message ->
+                def data = ((PushNotificationMessage) message).data
+                def geofencesJson = data.getString(ORConsoleGeofenceAssetAdapter.NOTIFICATION_DATA_GEOFENCES).orElse(null)
+                targets.each { target ->
+                    GeofenceDefinition[] geofences
+                    if (geofencesJson != null) {
+                        geofences = Container.JSON.readValue(geofencesJson, GeofenceDefinition[].class)
+                    } else {
+                        callbacks.incrementAndGet()
+                        geofences = rulesService.getAssetGeofences(target.id)
+                    }
+                    deliveries.put(target.id, [
+                        time     : System.currentTimeMillis(),
+                        action   : data.getString(ORConsoleGeofenceAssetAdapter.NOTIFICATION_DATA_ACTION).orElse(null),
+                        geofences: geofences
+                    ])
+                }
+                Collections.nCopies(targets.size(), NotificationSendResult.success())
+        }
+        notificationService.notificationHandlerMap.put(pushNotificationHandler.getTypeName(), stubPushNotificationHandler)
+
+        and: "many consoles that use the adapter, a few of them with more geofences than fit into a notification"
+        def consoleIds = (1..CONSOLES).collect { "GeofenceConsole" + it }
+        withLock(getClass().getSimpleName() + "::addConsoles", {
+            consoleIds.each { geofenceAdapter.consoleIdRealmMap.put(it, MASTER_REALM) }
+        })
+
+        when: "the location predicates of all consoles change"
+        def start = System.currentTimeMillis()
+        geofenceAdapter.processLocationPredicates(new ArrayList<>(consoleIds.withIndex().collect { consoleId, i ->
+            createLocationPredicates(consoleId, i < CONSOLES_WITH_MANY_GEOFENCES ? 50 : 1)
+        }))
+
+        then: "every console should be notified once with the refresh action and its geofences"
+        conditions.eventually {
+            assert deliveries.size() == CONSOLES
+        }
+        deliveries.values().every { it.action == ORConsoleGeofenceAssetAdapter.GEOFENCE_REFRESH_ACTION }
+        consoleIds.withIndex().every { consoleId, i ->
+            def geofences = (GeofenceDefinition[]) deliveries.get(consoleId).geofences
+            geofences.length == (i < CONSOLES_WITH_MANY_GEOFENCES ? 50 : 1) && geofences.every { it.id.startsWith(consoleId + "_") }
+        }
+
+        and: "only the consoles with geofences that don't fit into the notification should have requested them"
+        callbacks.get() == CONSOLES_WITH_MANY_GEOFENCES
+
+        and: "the notifications should have been paced by the token bucket without adding delays beyond it"
+        def pacedMillis = (CONSOLES - ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_BURST) * 1000 / ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_RATE_PER_SECOND
+        def timeToLastNotification = deliveries.values().collect { it.time as long }.max() - start
+        timeToLastNotification >= pacedMillis - 1000
+        timeToLastNotification < pacedMillis + 20000
+
+        and: "the geofences of a console should be served from the cache"
+        geofenceAdapter.getAssetGeofences(consoleIds[0]).is(geofenceAdapter.getAssetGeofences(consoleIds[0]))
+
+        when: "the location predicates of one console change again"
+        def previousGeofences = geofenceAdapter.getAssetGeofences(consoleIds.last())
+        deliveries.clear()
+        callbacks.set(0)
+        geofenceAdapter.processLocationPredicates(new ArrayList<>([createLocationPredicates(consoleIds.last(), 2)]))
+
+        then: "the console should be notified straight away with its new geofences"
+        conditions.eventually {
+            assert deliveries.size() == 1
+            assert ((GeofenceDefinition[]) deliveries.get(consoleIds.last()).geofences).length == 2
+        }
+        callbacks.get() == 0
+
+        and: "the cached geofences of the console should have been replaced"
+        !geofenceAdapter.getAssetGeofences(consoleIds.last()).is(previousGeofences)
+        geofenceAdapter.getAssetGeofences(consoleIds.last()).length == 2
+
+        cleanup: "the static state is restored, the stub is removed and the consoles are removed from the adapter"
+        ORConsoleGeofenceAssetAdapter.NOTIFY_ASSETS_DEBOUNCE_MILLIS = originalDebounceMillis
+        notificationService.notificationHandlerMap.put(pushNotificationHandler.getTypeName(), pushNotificationHandler)
+        withLock(getClass().getSimpleName() + "::removeConsoles", {
+            consoleIds.each {
+                geofenceAdapter.consoleIdRealmMap.remove(it)
+                geofenceAdapter.assetLocationPredicatesMap.remove(it)
+                geofenceAdapter.consoleGeofencesCache.remove(it)
+                geofenceAdapter.pendingNotifyAssets.remove(it)
+            }
+        })
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.container
+
+import org.openremote.container.Container
+import org.openremote.container.ContainerService
+import org.openremote.container.message.MessageBrokerService
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.agent.AgentService
+import org.openremote.manager.map.MapService
+import org.openremote.manager.mqtt.MqttBrokerService
+import org.openremote.manager.rules.RulesService
+import org.openremote.manager.security.ManagerIdentityService
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.web.ManagerWebService
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.logging.Logger
+
+import static org.openremote.container.Container.STARTUP_THREADS
+
+/**
+ * Checks the {@link Container} starts services in dependency order and in parallel, that the slow manager services
+ * don't wait for each other, and records the manager startup time with a single startup thread (registry order) and
+ * with the default startup threads.
+ */
+class ContainerStartupTest extends Specification implements ManagerContainerTrait {
+
+    private static final Logger LOG = Logger.getLogger(ContainerStartupTest.class.getName())
+
+    static final long SLOW_START_MILLIS = 1000
+    static final long START_MILLIS = 300
+
+    static abstract class StubService implements ContainerService {
+
+        final Queue<Map> events
+        final long startMillis
+
+        StubService(Queue<Map> events, long startMillis) {
+            this.events = events
+            this.startMillis = startMillis
+        }
+
+        @Override
+        int getPriority() {
+            return DEFAULT_PRIORITY
+        }
+
+        @Override
+        void init(Container container) throws Exception {
+            events.add([service: getClass(), phase: "init", time: System.nanoTime()])
+        }
+
+        @Override
+        void start(Container container) throws Exception {
+            events.add([service: getClass(), phase: "start", time: System.nanoTime()])
+            Thread.sleep(startMillis)
+            events.add([service: getClass(), phase: "started", time: System.nanoTime()])
+        }
+
+        @Override
+        void stop(Container container) throws Exception {
+        }
+    }
+
+    static class FirstService extends StubService {
+        FirstService(Queue<Map> events) {
+            super(events, START_MILLIS)
+        }
+    }
+
+    /**
+     * Like the persistence service, depends on nothing and takes long to start.
+     */
+    static class DatabaseService extends StubService {
+        DatabaseService(Queue<Map> events) {
+            super(events, SLOW_START_MILLIS)
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            return Collections.emptyList()
+        }
+    }
+
+    /**
+     * Like the setup service, doesn't declare its dependencies.
+     */
+    static class SecondService extends StubService {
+        SecondService(Queue<Map> events) {
+            super(events, START_MILLIS)
+        }
+    }
+
+    /**
+     * Like the map service, depends on nothing and takes long to start.
+     */
+    static class SlowService extends StubService {
+        SlowService(Queue<Map> events) {
+            super(events, SLOW_START_MILLIS)
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            return Collections.emptyList()
+        }
+    }
+
+    /**
+     * Like the rules service, depends on a service that doesn't declare its dependencies.
+     */
+    static class RulesLikeService extends StubService {
+        RulesLikeService(Queue<Map> events) {
+            super(events, START_MILLIS)
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            return Collections.singletonList(SecondService.class)
+        }
+    }
+
+    /**
+     * Like the agent service, depends on the same service as the rules like service.
+     */
+    static class AgentLikeService extends StubService {
+        AgentLikeService(Queue<Map> events) {
+            super(events, START_MILLIS)
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            return Collections.singletonList(SecondService.class)
+        }
+    }
+
+    /**
+     * Like the web service, doesn't declare its dependencies.
+     */
+    static class LastService extends StubService {
+        LastService(Queue<Map> events) {
+            super(events, START_MILLIS)
+        }
+    }
+
+    static final List<Class<? extends StubService>> SERVICES = [
+        FirstService, DatabaseService, SecondService, SlowService, RulesLikeService, AgentLikeService, LastService
+    ]
+
+    static long time(Queue<Map> events, Class<? extends ContainerService> service, String phase) {
+        events.find { it.service == service && it.phase == phase }.time as long
+    }
+
+    static boolean overlapping(Queue<Map> events, Class<? extends ContainerService> service, Class<? extends ContainerService> otherService) {
+        time(events, service, "start") < time(events, otherService, "started") && time(events, otherService, "start") < time(events, service, "started")
+    }
+
+    static long startContainerMillis(int threads, Queue<Map> events) {
+        def container = new Container(
+            [(STARTUP_THREADS): String.valueOf(threads)],
+            SERVICES.collect { it.newInstance(events) } as List<ContainerService>
+        )
+        def start = System.currentTimeMillis()
+        container.startBackground()
+        def startupMillis = System.currentTimeMillis() - start
+        container.stop()
+        return startupMillis
+    }
+
+    /**
+     * @return true if the service waits for the other service to be started, directly or through its dependencies.
+     */
+    static boolean dependsOn(Map<ContainerService, List<ContainerService>> dependencies, Class<? extends ContainerService> service, Class<? extends ContainerService> otherService) {
+        def pending = new ArrayDeque<ContainerService>(dependencies.find { service.isInstance(it.key) }.value)
+        def visited = new HashSet<ContainerService>()
+        while (!pending.isEmpty()) {
+            def dependency = pending.pop()
+            if (otherService.isInstance(dependency)) {
+                return true
+            }
+            if (visited.add(dependency)) {
+                pending.addAll(dependencies[dependency])
+            }
+        }
+        return false
+    }
+
+    def "Check services are started in dependency order and in parallel"() {
+
+        when: "the container is started with a single startup thread"
+        def sequentialEvents = new ConcurrentLinkedQueue<Map>()
+        def sequentialMillis = startContainerMillis(1, sequentialEvents)
+
+        and: "the container is started with four startup threads"
+        def parallelEvents = new ConcurrentLinkedQueue<Map>()
+        def parallelMillis = startContainerMillis(4, parallelEvents)
+        LOG.info("Container startup with one thread: " + sequentialMillis + "ms, with four threads: " + parallelMillis + "ms")
+
+        then: "all services should have been initialized in registry order before any service is started"
+        [sequentialEvents, parallelEvents].every { events ->
+            def initEvents = events.findAll { it.phase == "init" }
+            initEvents.collect { it.service } == SERVICES &&
+                initEvents.every { initEvent -> events.findAll { it.phase == "start" }.every { it.time > initEvent.time } }
+        }
+
+        and: "services that don't declare their dependencies should have been started after all services before them"
+        time(parallelEvents, SecondService, "start") >= time(parallelEvents, FirstService, "started")
+        time(parallelEvents, SecondService, "start") >= time(parallelEvents, DatabaseService, "started")
+        SERVICES.findAll { it != LastService }.every { time(parallelEvents, LastService, "start") >= time(parallelEvents, it, "started") }
+
+        and: "declared dependencies should have been started first"
+        time(parallelEvents, RulesLikeService, "start") >= time(parallelEvents, SecondService, "started")
+        time(parallelEvents, AgentLikeService, "start") >= time(parallelEvents, SecondService, "started")
+
+        and: "services that don't depend on each other should have been started at the same time"
+        overlapping(parallelEvents, FirstService, DatabaseService)
+        overlapping(parallelEvents, DatabaseService, SlowService)
+        overlapping(parallelEvents, RulesLikeService, AgentLikeService)
+        !overlapping(sequentialEvents, RulesLikeService, AgentLikeService)
+
+        and: "startup should have been faster than with a single startup thread"
+        sequentialMillis >= 2 * SLOW_START_MILLIS + 5 * START_MILLIS
+        parallelMillis < SLOW_START_MILLIS + 4 * START_MILLIS
+    }
+
+    def "Check the slow manager services don't wait for each other"() {
+
+        when: "the dependencies of the manager services are resolved"
+        def container = new Container(defaultConfig(), defaultServices())
+        def dependencies = container.getServiceDependencies()
+
+        then: "the database migration and the map tile data should not wait for any service"
+        dependencies.find { it.key instanceof PersistenceService }.value.isEmpty()
+        dependencies.find { it.key instanceof MapService }.value.isEmpty()
+
+        and: "the setup should wait for the database and the identity provider"
+        dependsOn(dependencies, SetupService, PersistenceService)
+        dependsOn(dependencies, SetupService, ManagerIdentityService)
+        dependsOn(dependencies, MessageBrokerService, SetupService)
+
+        and: "the rules and agents should wait for the setup but not for each other or the map"
+        [RulesService, AgentService].every { dependsOn(dependencies, it, SetupService) && dependsOn(dependencies, it, MessageBrokerService) }
+        !dependsOn(dependencies, RulesService, AgentService)
+        !dependsOn(dependencies, AgentService, RulesService)
+        !dependsOn(dependencies, RulesService, MapService)
+        !dependsOn(dependencies, AgentService, MapService)
+
+        and: "the MQTT broker should not wait for the rules and agents"
+        !dependsOn(dependencies, MqttBrokerService, RulesService)
+        !dependsOn(dependencies, MqttBrokerService, AgentService)
+
+        and: "the web server should be started after all other services"
+        dependencies.keySet().findAll { !(it instanceof ManagerWebService) }.every { dependsOn(dependencies, ManagerWebService, it.getClass()) }
+    }
+
+    @Requires({ Boolean.getBoolean("benchmark") })
+    def "Record the manager startup time with a single startup thread and with the default startup threads"() {
+
+        when: "the manager is started with a single startup thread"
+        def start = System.currentTimeMillis()
+        startContainer(defaultConfig() << [(STARTUP_THREADS): "1"], defaultServices())
+        def sequentialMillis = System.currentTimeMillis() - start
+
+        and: "the manager is started with the default startup threads"
+        start = System.currentTimeMillis()
+        startContainer(defaultConfig() << [(STARTUP_THREADS): String.valueOf(Container.STARTUP_THREADS_DEFAULT)], defaultServices())
+        def parallelMillis = System.currentTimeMillis() - start
+        LOG.info("Manager startup with one thread: " + sequentialMillis + "ms, with " + Container.STARTUP_THREADS_DEFAULT + " threads: " + parallelMillis + "ms")
+
+        then: "the manager should be running"
+        containerRunning
+
+        cleanup: "the container is stopped"
+        stopContainer()
+    }
+}
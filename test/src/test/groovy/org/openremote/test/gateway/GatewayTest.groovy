@@ -37,6 +37,7 @@ import spock.util.concurrent.PollingConditions
 
 import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.AtomicReference
 import java.util.stream.Collectors
 import java.util.stream.IntStream
@@ -51,7 +52,11 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
 
     def "Gateway asset provisioning and local manager logic test"() {
 
-        given: "the container environment is started"
+        given: "the sync batch size is reduced to test batching with a small number of assets"
+        def syncAssetBatchSize = GatewayConnector.SYNC_ASSET_BATCH_SIZE
+        GatewayConnector.SYNC_ASSET_BATCH_SIZE = 20
+
+        and: "the container environment is started"
         def conditions = new PollingConditions(timeout: 10, delay: 0.2)
         def container = startContainer(defaultConfig(), defaultServices())
         def assetProcessingService = container.getService(AssetProcessingService.class)
@@ -129,18 +134,13 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
             assert gateway.getAttribute("status").flatMap{it.getValueAsString()}.orElse(null) == ConnectionStatus.CONNECTING.name()
         }
 
-        and: "the server should have sent a CONNECTED message and an asset read request"
+        and: "the server should have sent a CONNECTED message and an asset hashes read request"
         conditions.eventually {
             assert clientReceivedMessages.size() >= 1
             assert clientReceivedMessages[0].startsWith(EventRequestResponseWrapper.MESSAGE_PREFIX)
             def response = Container.JSON.readValue(clientReceivedMessages[0].substring(EventRequestResponseWrapper.MESSAGE_PREFIX.length()), EventRequestResponseWrapper.class)
             assert response.messageId == GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL
-            def readAssetsEvent = response.event as ReadAssetsEvent
-            assert readAssetsEvent.assetQuery != null
-            assert readAssetsEvent.assetQuery.select.excludeAttributes
-            assert readAssetsEvent.assetQuery.select.excludePath
-            assert readAssetsEvent.assetQuery.select.excludeParentInfo
-            assert readAssetsEvent.assetQuery.recursive
+            assert response.event instanceof ReadAssetHashesEvent
         }
 
         when: "the previously received messages are cleared"
@@ -239,13 +239,13 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
             )
         }
 
-        and: "the gateway client replies to the central manager with the assets of the gateway"
+        and: "the gateway client replies to the central manager with the asset hashes of the gateway"
         List<Asset> sendAssets = []
         sendAssets.addAll(agentAssets)
         sendAssets.addAll(assets)
         def readAssetsReplyEvent = new EventRequestResponseWrapper(
             GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL,
-            new AssetsEvent(sendAssets))
+            getAssetHashesEvent(sendAssets))
         gatewayClient.sendMessage(EventRequestResponseWrapper.MESSAGE_PREFIX + Container.JSON.writeValueAsString(readAssetsReplyEvent))
 
         then: "the central manager should have requested the full loading of the first batch of assets"
@@ -619,23 +619,23 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
             assert gateway.getAttribute("status").flatMap{it.getValueAsString()}.orElse(null) == ConnectionStatus.CONNECTING.name()
         }
 
-        and: "the local manager should have sent an asset read request"
+        and: "the local manager should have sent an asset hashes read request"
         conditions.eventually {
             assert clientReceivedMessages.size() >= 1
             assert clientReceivedMessages[0].startsWith(EventRequestResponseWrapper.MESSAGE_PREFIX)
-            assert clientReceivedMessages[0].contains("read-assets")
+            assert clientReceivedMessages[0].contains("read-asset-hashes")
         }
 
         when: "the previously received messages are cleared"
         clientReceivedMessages.clear()
 
-        and: "the gateway client replies to the central manager with the assets of the gateway"
+        and: "the gateway client replies to the central manager with the asset hashes of the gateway (none match as the local copies have value timestamps)"
         sendAssets = [building1Room5Asset]
         sendAssets.addAll(agentAssets)
         sendAssets.addAll(assets)
         readAssetsReplyEvent = new EventRequestResponseWrapper(
             GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL,
-            new AssetsEvent(sendAssets)
+            getAssetHashesEvent(sendAssets)
         )
         gatewayClient.sendMessage(EventRequestResponseWrapper.MESSAGE_PREFIX + Container.JSON.writeValueAsString(readAssetsReplyEvent))
 
@@ -707,7 +707,7 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
             def request = Container.JSON.readValue(clientReceivedMessages[1].substring(EventRequestResponseWrapper.MESSAGE_PREFIX.length()), EventRequestResponseWrapper.class)
             messageId = request.messageId
             readAssetsEvent = request.event as ReadAssetsEvent
-            assert messageId == GatewayConnector.ASSET_READ_EVENT_NAME_BATCH + (GatewayConnector.SYNC_ASSET_BATCH_SIZE - 1)
+            assert messageId == GatewayConnector.ASSET_READ_EVENT_NAME_BATCH + GatewayConnector.SYNC_ASSET_BATCH_SIZE
             assert readAssetsEvent.assetQuery != null
             assert readAssetsEvent.assetQuery.select.excludePath
             assert readAssetsEvent.assetQuery.select.excludeParentInfo
@@ -745,6 +745,9 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             assert identityProvider.getClient(managerDemoSetup.realmBuildingTenant, GatewayService.GATEWAY_CLIENT_ID_PREFIX + gateway.getId()) == null
         }
+
+        cleanup: "the sync batch size is restored"
+        GatewayConnector.SYNC_ASSET_BATCH_SIZE = syncAssetBatchSize
     }
 
     def "Verify gateway client service"() {
@@ -765,7 +768,20 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
                         event = ev.event
                     }
 
-                    if (event instanceof AssetsEvent) {
+                    if (event instanceof AssetHashesEvent) {
+                        // Store real IDs and map to a fake IDs
+                        event.getAssetHashes().forEach {
+                            String fakeId = UniqueIdentifierGenerator.generateId()
+                            realIdToFakeIdMap.put(it.id, fakeId)
+                            fakeIdToRealIdMap.put(fakeId, it.id)
+                        }
+                        ev = new EventRequestResponseWrapper(messageId, new AssetHashesEvent(event.getAssetHashes().collect {
+                            new AssetHashesEvent.AssetHash(
+                                realIdToFakeIdMap.get(it.id),
+                                it.parentId == null ? null : realIdToFakeIdMap.get(it.parentId),
+                                it.hash)
+                        }))
+                    } else if (event instanceof AssetsEvent) {
                         if (GatewayConnector.ASSET_READ_EVENT_NAME_INITIAL.equals(messageId)) {
                             // Store real IDs and map to a fake IDs
                             event.getAssets().forEach {
@@ -1001,4 +1017,184 @@ class GatewayTest extends Specification implements ManagerContainerTrait {
             assert assetStorageService.find(realIdToFakeIdMap.get(managerDemoSetup.microphone1Id)) == null
         }
     }
+
+    def "Gateway initial sync of a large gateway only transfers changed assets"() {
+
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+        def syncConditions = new PollingConditions(timeout: 600, delay: 1)
+        def container = startContainer(defaultConfig(), defaultServices())
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def executorService = container.getService(ManagerExecutorService.class)
+        def timerService = container.getService(TimerService.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def gatewayService = container.getService(GatewayService.class)
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+
+        and: "a simulated gateway with 20000 assets (100 buildings with 199 rooms each)"
+        def timestamp = timerService.getCurrentTimeMillis()
+        Map<String, Asset> gatewayAssets = new LinkedHashMap<>()
+        IntStream.rangeClosed(1, 100).forEach { i ->
+            def buildingId = UniqueIdentifierGenerator.generateId("Sync Building $i")
+            gatewayAssets.put(buildingId, new Asset(
+                buildingId,
+                0L,
+                Date.from(timerService.getNow()),
+                "Sync Building $i",
+                AssetType.BUILDING.type,
+                false,
+                (String)null,
+                (String)null,
+                (String)null,
+                "master",
+                (String[])[buildingId].toArray(new String[0]),
+                null).addAttributes(
+                new AssetAttribute("surfaceArea", AttributeValueType.NUMBER, Values.create(1000), timestamp)
+            ))
+            IntStream.rangeClosed(1, 199).forEach { j ->
+                def roomId = UniqueIdentifierGenerator.generateId("Sync Building $i Room $j")
+                gatewayAssets.put(roomId, new Asset(
+                    roomId,
+                    0L,
+                    Date.from(timerService.getNow()),
+                    "Sync Building $i Room $j",
+                    AssetType.ROOM.type,
+                    false,
+                    buildingId,
+                    (String)null,
+                    (String)null,
+                    "master",
+                    (String[])[roomId, buildingId].toArray(new String[0]),
+                    null).addAttributes(
+                    new AssetAttribute("temp", AttributeValueType.TEMPERATURE, Values.create(20), timestamp)
+                ))
+            }
+        }
+
+        expect: "the system should settle down"
+        conditions.eventually {
+            assert noEventProcessedIn(assetProcessingService, 300)
+        }
+
+        when: "a gateway is provisioned in this manager"
+        def gateway = assetStorageService.merge(new Asset("Sync gateway", AssetType.GATEWAY, null, managerDemoSetup.realmBuildingTenant))
+
+        then: "a set of credentials should have been created for this gateway and a gateway connector should exist"
+        conditions.eventually {
+            gateway = assetStorageService.find(gateway.getId(), true)
+            assert !isNullOrEmpty(gateway.getAttribute("clientId").flatMap{it.getValueAsString()}.orElse(""))
+            assert !isNullOrEmpty(gateway.getAttribute("clientSecret").flatMap{it.getValueAsString()}.orElse(""))
+            assert gatewayService.gatewayConnectorMap.get(gateway.getId()) != null
+        }
+
+        when: "the gateway client is created and answers sync requests from the simulated gateway assets"
+        def gatewayClient = new WebsocketIoClient<String>(
+            new URIBuilder("ws://localhost:$serverPort/websocket/events?Auth-Realm=$managerDemoSetup.realmBuildingTenant").build(),
+            null,
+            new OAuthClientCredentialsGrant("http://localhost:$serverPort/auth/realms/$managerDemoSetup.realmBuildingTenant/protocol/openid-connect/token",
+                gateway.getAttribute("clientId").flatMap{it.getValueAsString()}.orElse(""),
+                gateway.getAttribute("clientSecret").flatMap{it.getValueAsString()}.orElse(""),
+                null).setBasicAuthHeader(true),
+            executorService)
+        gatewayClient.setEncoderDecoderProvider({
+            [new AbstractNettyIoClient.MessageToMessageDecoder<String>(String.class, gatewayClient)].toArray(new ChannelHandler[0])
+        })
+        def hashRequests = new AtomicInteger()
+        def assetRequests = new AtomicInteger()
+        def transferredAssets = new AtomicInteger()
+        gatewayClient.addMessageConsumer({ String message ->
+            if (!message.startsWith(EventRequestResponseWrapper.MESSAGE_PREFIX)) {
+                return
+            }
+            def request = Container.JSON.readValue(message.substring(EventRequestResponseWrapper.MESSAGE_PREFIX.length()), EventRequestResponseWrapper.class)
+            SharedEvent response = null
+            if (request.event instanceof ReadAssetHashesEvent) {
+                hashRequests.incrementAndGet()
+                response = getAssetHashesEvent(new ArrayList<>(gatewayAssets.values()))
+            } else if (request.event instanceof ReadAssetsEvent) {
+                def ids = (request.event as ReadAssetsEvent).assetQuery.ids
+                assetRequests.incrementAndGet()
+                transferredAssets.addAndGet(ids.length)
+                response = new AssetsEvent(Arrays.stream(ids).map{gatewayAssets.get(it)}.collect(Collectors.toList()))
+            }
+            if (response != null) {
+                gatewayClient.sendMessage(EventRequestResponseWrapper.MESSAGE_PREFIX + Container.JSON.writeValueAsString(new EventRequestResponseWrapper(request.messageId, response)))
+            }
+        })
+
+        and: "the gateway connects to this manager"
+        gatewayClient.connect()
+
+        then: "all gateway assets should be synced and the gateway should become connected"
+        syncConditions.eventually {
+            gateway = assetStorageService.find(gateway.getId())
+            assert gateway.getAttribute("status").flatMap{it.getValueAsString()}.orElse(null) == ConnectionStatus.CONNECTED.name()
+        }
+        assert hashRequests.get() == 1
+        assert transferredAssets.get() == gatewayAssets.size()
+        assert assetRequests.get() == Math.ceil(gatewayAssets.size() / GatewayConnector.SYNC_ASSET_BATCH_SIZE)
+        assert assetStorageService.findAll(new AssetQuery().select(AssetQuery.Select.selectExcludeAll()).parents(gateway.getId()).recursive(true)).size() == gatewayAssets.size()
+
+        when: "the gateway disconnects"
+        gatewayClient.disconnect()
+
+        then: "the gateway connector should be disconnected"
+        conditions.eventually {
+            assert !gatewayService.gatewayConnectorMap.get(gateway.getId()).connected
+        }
+
+        when: "the counters are reset and the gateway reconnects without any asset changes"
+        hashRequests.set(0)
+        assetRequests.set(0)
+        transferredAssets.set(0)
+        gatewayClient.connect()
+
+        then: "the gateway should become connected"
+        syncConditions.eventually {
+            assert gatewayService.gatewayConnectorMap.get(gateway.getId()).connected
+            assert !gatewayService.gatewayConnectorMap.get(gateway.getId()).initialSyncInProgress
+            gateway = assetStorageService.find(gateway.getId())
+            assert gateway.getAttribute("status").flatMap{it.getValueAsString()}.orElse(null) == ConnectionStatus.CONNECTED.name()
+        }
+
+        and: "only the asset hashes should have been transferred"
+        assert hashRequests.get() == 1
+        assert assetRequests.get() == 0
+        assert transferredAssets.get() == 0
+
+        and: "no gateway assets should have been removed"
+        assert assetStorageService.findAll(new AssetQuery().select(AssetQuery.Select.selectExcludeAll()).parents(gateway.getId()).recursive(true)).size() == gatewayAssets.size()
+
+        when: "a gateway asset is modified whilst disconnected and the gateway reconnects"
+        gatewayClient.disconnect()
+        conditions.eventually {
+            assert !gatewayService.gatewayConnectorMap.get(gateway.getId()).connected
+        }
+        def modifiedAsset = gatewayAssets.values().find {it.name == "Sync Building 50 Room 1"}
+        modifiedAsset.getAttribute("temp").ifPresent{it.setValue(Values.create(21), timestamp + 1000)}
+        hashRequests.set(0)
+        assetRequests.set(0)
+        transferredAssets.set(0)
+        gatewayClient.connect()
+
+        then: "only the modified asset should have been transferred"
+        syncConditions.eventually {
+            assert gatewayService.gatewayConnectorMap.get(gateway.getId()).connected
+            assert !gatewayService.gatewayConnectorMap.get(gateway.getId()).initialSyncInProgress
+            assert hashRequests.get() == 1
+            assert transferredAssets.get() == 1
+            assert assetStorageService.find(modifiedAsset.id, true).getAttribute("temp").flatMap{it.getValueAsNumber()}.orElse(0d) == 21d
+        }
+
+        cleanup: "the gateway client is disconnected"
+        if (gatewayClient != null) {
+            gatewayClient.disconnect()
+        }
+    }
+
+    static AssetHashesEvent getAssetHashesEvent(List<Asset> assets) {
+        new AssetHashesEvent(assets.collect {
+            new AssetHashesEvent.AssetHash(it.id, it.parentId, GatewayConnector.getAssetHash(it, null))
+        })
+    }
 }
@@ -3,14 +3,91 @@ package org.openremote.test.map
 import groovy.json.JsonSlurper
 import org.openremote.model.map.MapResource
 import org.openremote.test.ManagerContainerTrait
+import spock.lang.Shared
 import spock.lang.Specification
 
+import javax.ws.rs.core.EntityTag
+import javax.ws.rs.core.HttpHeaders
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.DriverManager
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.logging.Logger
+
 import static org.openremote.container.util.MapAccess.getString
+import static org.openremote.manager.map.MapService.*
 import static org.openremote.manager.security.ManagerIdentityProvider.*
 import static org.openremote.model.Constants.*
 
 class MapResourceTest extends Specification implements ManagerContainerTrait {
 
+    private static final Logger LOG = Logger.getLogger(MapResourceTest.class.getName())
+
+    static final int ZOOM = 2
+    static final int LOAD_ZOOM = 6
+    static final int LOAD_TILES_PER_SIDE = 16
+    static final int LOAD_THREADS = 8
+    static final int LOAD_REQUESTS = 100
+
+    /**
+     * Tile data by zoom, column and TMS row (counted from the bottom, as stored in the mbtiles file).
+     */
+    @Shared
+    static Map<List<Integer>, byte[]> tiles = [:]
+    @Shared
+    static Path mapTilesPath
+
+    def setupSpec() {
+        def random = new Random(1)
+        tiles[[ZOOM, 1, 0]] = "bottom tile".bytes
+        tiles[[ZOOM, 1, 3]] = "top tile".bytes
+        (0..<LOAD_TILES_PER_SIDE).each { column ->
+            (0..<LOAD_TILES_PER_SIDE).each { row ->
+                byte[] data = new byte[4096 + random.nextInt(4096)]
+                random.nextBytes(data)
+                tiles[[LOAD_ZOOM, column, row]] = data
+            }
+        }
+
+        mapTilesPath = Files.createTempFile("maptest", ".mbtiles")
+        DriverManager.getConnection("jdbc:sqlite:" + mapTilesPath.toAbsolutePath()).withCloseable { connection ->
+            connection.setAutoCommit(false)
+            connection.createStatement().withCloseable { statement ->
+                statement.execute("create table METADATA (NAME text, VALUE text)")
+                statement.execute("create table TILES (ZOOM_LEVEL integer, TILE_COLUMN integer, TILE_ROW integer, TILE_DATA blob)")
+                statement.execute("create unique index TILE_INDEX on TILES (ZOOM_LEVEL, TILE_COLUMN, TILE_ROW)")
+            }
+            connection.prepareStatement("insert into TILES values (?, ?, ?, ?)").withCloseable { insert ->
+                tiles.each { key, data ->
+                    insert.setInt(1, key[0])
+                    insert.setInt(2, key[1])
+                    insert.setInt(3, key[2])
+                    insert.setBytes(4, data)
+                    insert.addBatch()
+                }
+                insert.executeBatch()
+            }
+            connection.commit()
+        }
+    }
+
+    def cleanupSpec() {
+        Files.deleteIfExists(mapTilesPath)
+    }
+
+    /**
+     * Serves the generated tiles from two connections and a cache that only holds a few tiles, so most tile requests
+     * of the load test have to wait for a connection.
+     */
+    Map<String, String> tileConfig() {
+        defaultConfig() << [
+            (MAP_TILES_PATH)       : mapTilesPath.toAbsolutePath().toString(),
+            (MAP_TILES_CONNECTIONS): "2",
+            (MAP_TILE_CACHE_SIZE)  : "32768"
+        ]
+    }
+
     def "Retrieve map settings"() {
         given: "the server container is started"
         def container = startContainer(defaultConfig(), defaultServices())
@@ -46,4 +123,142 @@ class MapResourceTest extends Specification implements ManagerContainerTrait {
         json.sources != null
         json.layers.size() > 0
     }
+
+    def "Retrieve map tiles"() {
+        given: "the server container is started with generated tile data"
+        def container = startContainer(tileConfig(), defaultServices())
+
+        and: "an authenticated user"
+        def accessToken = authenticate(
+                container,
+                MASTER_REALM,
+                KEYCLOAK_CLIENT_ID,
+                MASTER_REALM_ADMIN_USER,
+                getString(container.getConfig(), SETUP_ADMIN_PASSWORD, SETUP_ADMIN_PASSWORD_DEFAULT)
+        ).token
+
+        and: "a test client target"
+        def clientTarget = getClientApiTarget(serverUri(serverPort), MASTER_REALM, accessToken)
+
+        and: "the map resource"
+        def mapResource = clientTarget.proxy(MapResource.class)
+
+        when: "the top tile is requested, rows are counted from the top in requests and from the bottom in the tile data"
+        def response = mapResource.getTile(ZOOM, 1, 0)
+        def topEtag = response.getEntityTag()
+
+        then: "the top tile should be returned with an ETag and cache control"
+        response.status == 200
+        response.readEntity(byte[].class) == tiles[[ZOOM, 1, 3]]
+        topEtag != null
+        !topEtag.weak
+        response.getHeaderString(HttpHeaders.CACHE_CONTROL).contains("max-age=" + TILE_MAX_AGE_SECONDS)
+
+        when: "the bottom tile is requested"
+        response = mapResource.getTile(ZOOM, 1, 3)
+        def bottomEtag = response.getEntityTag()
+
+        then: "the bottom tile should be returned with a different ETag"
+        response.status == 200
+        response.readEntity(byte[].class) == tiles[[ZOOM, 1, 0]]
+        bottomEtag != null
+        bottomEtag != topEtag
+
+        when: "the top tile is requested again with its ETag"
+        response = clientTarget.path("map/tile/" + ZOOM + "/1/0").request().header(HttpHeaders.IF_NONE_MATCH, topEtag.toString()).get()
+
+        then: "the tile should not have been modified"
+        response.status == 304
+        response.getEntityTag() == topEtag
+        response.getHeaderString(HttpHeaders.CACHE_CONTROL).contains("max-age=" + TILE_MAX_AGE_SECONDS)
+        response.close()
+
+        when: "the top tile is requested again with the ETag of another tile"
+        response = clientTarget.path("map/tile/" + ZOOM + "/1/0").request().header(HttpHeaders.IF_NONE_MATCH, bottomEtag.toString()).get()
+
+        then: "the tile should be returned"
+        response.status == 200
+        response.readEntity(byte[].class) == tiles[[ZOOM, 1, 3]]
+
+        when: "the top tile is requested again with several ETags"
+        response = clientTarget.path("map/tile/" + ZOOM + "/1/0").request()
+            .header(HttpHeaders.IF_NONE_MATCH, new EntityTag("other").toString() + ", " + topEtag.toString())
+            .get()
+
+        then: "the tile should not have been modified"
+        response.status == 304
+        response.close()
+
+        when: "tiles that don't exist or are out of range are requested"
+        def statuses = [
+            [ZOOM, 1, 1],                   // Missing tile
+            [ZOOM, 0, 0],                   // Missing tile
+            [ZOOM, 1, 4],                   // Row out of range, would be the bottom tile if not validated
+            [ZOOM, 4, 0],                   // Column out of range
+            [ZOOM, -1, 0],                  // Negative column
+            [ZOOM, 1, -1],                  // Negative row
+            [-1, 0, 0],                     // Negative zoom
+            [MAX_ZOOM + 1, 0, 0],           // Zoom out of range
+            [MAX_ZOOM, Integer.MAX_VALUE, 0] // Column out of range at the maximum zoom
+        ].collect { coordinates ->
+            response = mapResource.getTile(coordinates[0], coordinates[1], coordinates[2])
+            response.close()
+            response.status
+        }
+
+        then: "the tiles should not have been found"
+        statuses.every { it == 404 }
+    }
+
+    def "Retrieve map tiles concurrently"() {
+        given: "the server container is started with generated tile data"
+        def container = startContainer(tileConfig(), defaultServices())
+
+        and: "an authenticated user"
+        def accessToken = authenticate(
+                container,
+                MASTER_REALM,
+                KEYCLOAK_CLIENT_ID,
+                MASTER_REALM_ADMIN_USER,
+                getString(container.getConfig(), SETUP_ADMIN_PASSWORD, SETUP_ADMIN_PASSWORD_DEFAULT)
+        ).token
+
+        and: "the map resource"
+        def mapResource = getClientApiTarget(serverUri(serverPort), MASTER_REALM, accessToken).proxy(MapResource.class)
+
+        and: "an executor for concurrent clients"
+        def executor = Executors.newFixedThreadPool(LOAD_THREADS)
+
+        when: "the clients request random tiles at the same time"
+        def start = System.currentTimeMillis()
+        def results = executor.invokeAll((1..LOAD_THREADS).collect { thread ->
+            new Callable<List<String>>() {
+                @Override
+                List<String> call() {
+                    def random = new Random(thread)
+                    def failures = []
+                    LOAD_REQUESTS.times {
+                        int column = random.nextInt(LOAD_TILES_PER_SIDE)
+                        int row = random.nextInt(LOAD_TILES_PER_SIDE)
+                        def response = mapResource.getTile(LOAD_ZOOM, column, (1 << LOAD_ZOOM) - 1 - row)
+                        if (response.status != 200) {
+                            response.close()
+                            failures.add("Status " + response.status + " for tile " + column + "/" + row)
+                        } else if (response.readEntity(byte[].class) != tiles[[LOAD_ZOOM, column, row]]) {
+                            failures.add("Wrong data for tile " + column + "/" + row)
+                        }
+                    }
+                    return failures
+                }
+            }
+        }).collect { it.get() }
+        def millis = System.currentTimeMillis() - start
+        LOG.info("Served " + (LOAD_THREADS * LOAD_REQUESTS) + " tiles to " + LOAD_THREADS + " clients in " + millis + "ms")
+
+        then: "every client should have received the requested tiles"
+        results.flatten() == []
+
+        cleanup: "the executor is stopped"
+        executor?.shutdownNow()
+    }
 }
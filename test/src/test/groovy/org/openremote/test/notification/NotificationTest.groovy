@@ -2,10 +2,12 @@ package org.openremote.test.notification
 
 import com.google.common.collect.Lists
 import com.google.firebase.messaging.Message
+import org.openremote.container.Container
 import org.openremote.container.web.WebService
 import org.openremote.manager.asset.AssetStorageService
 import org.openremote.manager.asset.console.ConsoleResourceImpl
 import org.openremote.manager.notification.EmailNotificationHandler
+import org.openremote.manager.notification.NotificationHandler
 import org.openremote.manager.notification.NotificationService
 import org.openremote.manager.notification.PushNotificationHandler
 import org.openremote.manager.rules.geofence.ORConsoleGeofenceAssetAdapter
@@ -29,7 +31,9 @@ import spock.util.concurrent.PollingConditions
 import javax.ws.rs.WebApplicationException
 import java.time.Instant
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 import static org.openremote.container.util.MapAccess.getString
 import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD
@@ -58,18 +62,21 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
         and: "a mock push notification handler"
         PushNotificationHandler mockPushNotificationHandler = Spy(pushNotificationHandler)
         mockPushNotificationHandler.isValid() >> true
-        mockPushNotificationHandler.sendMessage(_ as Long, _ as Notification.Source, _ as String, _ as Notification.Target, _ as AbstractNotificationMessage) >> {
-                id, source, sourceId, target, message ->
-                    notificationIds << id
-                    notificationTargetTypes << target.type
-                    notificationTargetIds << target.id
-                    notificationMessages << message
+        mockPushNotificationHandler.sendMessages(_ as List, _ as Notification.Source, _ as String, _ as List, _ as AbstractNotificationMessage) >> {
+                ids, source, sourceId, targets, message ->
+                    notificationIds.addAll(ids)
+                    notificationTargetTypes.addAll(targets.collect {it.type})
+                    notificationTargetIds.addAll(targets.collect {it.id})
+                    targets.each {notificationMessages << message}
                     callRealMethod()
             }
         // Assume sent to FCM
         mockPushNotificationHandler.sendMessage(_ as Message) >> {
                 message -> return NotificationSendResult.success()
             }
+        mockPushNotificationHandler.sendMessages(_ as List) >> {
+                List<Message> messages -> return messages.collect {NotificationSendResult.success()}
+            }
 
         notificationService.notificationHandlerMap.put(pushNotificationHandler.getTypeName(), mockPushNotificationHandler)
 
@@ -601,4 +608,133 @@ class NotificationTest extends Specification implements ManagerContainerTrait {
         cleanup: "the mock is removed"
         notificationService.notificationHandlerMap.put(emailNotificationHandler.getTypeName(), emailNotificationHandler)
     }
+
+    def "Check notifications are sent to handlers in batches"() {
+
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 20, delay: 0.2)
+        def container = startContainer(defaultConfig(), defaultServices())
+        def notificationService = container.getService(NotificationService.class)
+        def pushNotificationHandler = container.getService(PushNotificationHandler.class)
+
+        and: "a stub handler that maps a tenant to many targets and records the batches it receives"
+        def stubHandler = new RecordingNotificationHandler(1200)
+        notificationService.notificationHandlerMap.put(pushNotificationHandler.getTypeName(), stubHandler)
+
+        when: "a named notification that should only be sent once is sent to a tenant"
+        def notification = new Notification(
+                "BatchTest",
+                new PushNotificationMessage().setTitle("First"),
+                [new Notification.Target(Notification.TargetType.TENANT, MASTER_REALM)], RepeatFrequency.ONCE, null)
+        notificationService.sendNotification(notification)
+
+        then: "the targets should have been sent to in batches"
+        conditions.eventually {
+            assert stubHandler.batches.collect { it.targets.size() } == [NotificationService.SEND_BATCH_SIZE, NotificationService.SEND_BATCH_SIZE, 200]
+        }
+        stubHandler.singleSends.get() == 0
+
+        and: "a notification with a unique ID should have been stored for each target with the failures recorded"
+        def ids = stubHandler.batches.collectMany { it.ids }
+        ids.unique(false).size() == 1200
+        def sentNotifications = notificationService.getNotifications(ids, null, null, null, null, null, null)
+        sentNotifications.size() == 1200
+        sentNotifications.every { it.name == "BatchTest" && it.source == Notification.Source.INTERNAL && it.target == Notification.TargetType.ASSET }
+        sentNotifications.find { it.id == ids[0] }.targetId == "console0"
+        sentNotifications.find { it.id == ids[1199] }.targetId == "console1199"
+        sentNotifications.count { it.error != null } == 12
+        sentNotifications.find { it.targetId == "console99" }.error == "Stub failure"
+
+        when: "the same notification is sent again followed by another notification"
+        notification.message = new PushNotificationMessage().setTitle("Repeat")
+        notificationService.sendNotification(notification)
+        notificationService.sendNotification(new Notification(
+                "BatchTestOther",
+                new PushNotificationMessage().setTitle("Other"),
+                [new Notification.Target(Notification.TargetType.TENANT, MASTER_REALM)], null, null))
+
+        then: "only the other notification should have been sent"
+        conditions.eventually {
+            assert stubHandler.batches.count { it.title == "Other" } == 3
+        }
+        stubHandler.batches.count { it.title == "Repeat" } == 0
+
+        cleanup: "the stub is removed"
+        notificationService.notificationHandlerMap.put(pushNotificationHandler.getTypeName(), pushNotificationHandler)
+    }
+
+    /**
+     * Maps any requested target to a fixed number of console targets and records the batches it is asked to send;
+     * every hundredth target fails.
+     */
+    static class RecordingNotificationHandler implements NotificationHandler {
+
+        static class Batch {
+            List<Long> ids
+            List<Notification.Target> targets
+            String title
+        }
+
+        final int targetCount
+        final List<Batch> batches = new CopyOnWriteArrayList<>()
+        final AtomicInteger singleSends = new AtomicInteger()
+
+        RecordingNotificationHandler(int targetCount) {
+            this.targetCount = targetCount
+        }
+
+        @Override
+        int getPriority() {
+            return DEFAULT_PRIORITY
+        }
+
+        @Override
+        void init(Container container) throws Exception {
+        }
+
+        @Override
+        void start(Container container) throws Exception {
+        }
+
+        @Override
+        void stop(Container container) throws Exception {
+        }
+
+        @Override
+        String getTypeName() {
+            return PushNotificationMessage.TYPE
+        }
+
+        @Override
+        boolean isValid() {
+            return true
+        }
+
+        @Override
+        boolean isMessageValid(AbstractNotificationMessage message) {
+            return true
+        }
+
+        @Override
+        List<Notification.Target> getTargets(Notification.Source source, String sourceId, List<Notification.Target> requestedTargets, AbstractNotificationMessage message) {
+            return (0..<targetCount).collect { new Notification.Target(Notification.TargetType.ASSET, "console" + it) }
+        }
+
+        @Override
+        NotificationSendResult sendMessage(long id, Notification.Source source, String sourceId, Notification.Target target, AbstractNotificationMessage message) {
+            singleSends.incrementAndGet()
+            return NotificationSendResult.success()
+        }
+
+        @Override
+        List<NotificationSendResult> sendMessages(List<Long> ids, Notification.Source source, String sourceId, List<Notification.Target> targets, AbstractNotificationMessage message) {
+            batches.add(new Batch(ids: new ArrayList<>(ids), targets: new ArrayList<>(targets), title: ((PushNotificationMessage) message).title))
+            return targets.collect {
+                Integer.parseInt(it.id.substring("console".length())) % 100 == 99
+                    ? NotificationSendResult.failure("Stub failure")
+                    : NotificationSendResult.success()
+            }
+        }
+    }
 }
+
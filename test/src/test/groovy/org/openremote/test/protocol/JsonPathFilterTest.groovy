@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol
+
+import com.jayway.jsonpath.JsonPath
+import org.openremote.manager.agent.AgentService
+import org.openremote.manager.agent.ValueJsonProvider
+import org.openremote.model.value.*
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.openremote.manager.agent.AgentService.JSON_PATH_CACHE_SIZE
+
+/**
+ * Checks {@link JsonPathFilter}s evaluated with the {@link ValueJsonProvider} return the same values as when they were
+ * evaluated against the JSON of the filtered value.
+ */
+class JsonPathFilterTest extends Specification {
+
+    static final String JSON = '''{
+        "name": "abc",
+        "number": "123",
+        "flag": "true",
+        "json": "{\\"nested\\": true}",
+        "empty": "",
+        "nothing": null,
+        "count": 5,
+        "ratio": 1.5,
+        "on": true,
+        "object": {"a": 1, "b": "x"},
+        "items": [{"id": 1, "prop": "p1"}, {"id": 2, "prop": "p2"}]
+    }'''
+
+    @Shared
+    AgentService agentService = new AgentService()
+
+    static Value parse(String json) {
+        Values.parse(json).orElse(null)
+    }
+
+    @Unroll
+    def "Apply JSON path #path with returnFirst=#returnFirst and returnLast=#returnLast"() {
+
+        expect: "the filter to return the same value for an object value and a JSON string value"
+        agentService.applyValueFilters(parse(JSON), new JsonPathFilter(path, returnFirst, returnLast)) == expected
+        agentService.applyValueFilters(Values.create(JSON), new JsonPathFilter(path, returnFirst, returnLast)) == expected
+
+        where:
+        path                              | returnFirst | returnLast | expected
+        '$.count'                         | false       | false      | Values.create(5)
+        '$.ratio'                         | false       | false      | Values.create(1.5)
+        '$.on'                            | false       | false      | Values.create(true)
+        '$.number'                        | false       | false      | Values.create(123)   // A string leaf is parsed as JSON
+        '$.flag'                          | false       | false      | Values.create(true)
+        '$.json'                          | false       | false      | parse('{"nested": true}')
+        '$.name'                          | false       | false      | null                 // Not JSON
+        '$.empty'                         | false       | false      | null
+        '$.nothing'                       | false       | false      | null
+        '$.missing'                       | false       | false      | null
+        '$.object'                        | false       | false      | parse('{"a": 1, "b": "x"}')
+        '$.items[1]'                      | false       | false      | parse('{"id": 2, "prop": "p2"}')
+        '$.items[*].prop'                 | false       | false      | parse('["p1", "p2"]') // Strings in arrays aren't parsed
+        '$.items[*].prop'                 | true        | false      | Values.create("p1")
+        '$.items[*].prop'                 | false       | true       | Values.create("p2")
+        '$.items[?(@.id == 2)].prop'      | true        | false      | Values.create("p2")
+        '$.items[?(@.id == 3)].prop'      | true        | false      | null
+        '$..prop'                         | false       | false      | parse('["p1", "p2"]')
+        '$.count'                         | true        | false      | Values.create(5)     // Not an array
+        '$.['                             | false       | false      | null                 // Invalid path
+    }
+
+    def "Changing an object or array result doesn't change the filtered value"() {
+
+        given: "a value"
+        def value = parse(JSON) as ObjectValue
+
+        when: "an object is read and changed"
+        def object = agentService.applyValueFilters(value, new JsonPathFilter('$.object', false, false)) as ObjectValue
+        object.put("a", 2)
+
+        then: "the value should not have changed"
+        value == parse(JSON)
+
+        when: "an array is read and one of its objects changed"
+        def items = agentService.applyValueFilters(value, new JsonPathFilter('$.items', false, false)) as ArrayValue
+        items.getObject(0).get().put("prop", "changed")
+        items.remove(1)
+
+        then: "the value should not have changed"
+        value == parse(JSON)
+
+        when: "the matching objects of an array are read and changed"
+        def matched = agentService.applyValueFilters(value, new JsonPathFilter('$.items[?(@.id == 1)]', true, false)) as ObjectValue
+        matched.put("prop", "changed")
+
+        then: "the value should not have changed"
+        value == parse(JSON)
+    }
+
+    def "Compiled JSON paths are bounded"() {
+
+        given: "an agent service"
+        def agentService = new AgentService()
+
+        when: "more distinct paths than the cache size are applied"
+        (0..JSON_PATH_CACHE_SIZE + 10).each {
+            agentService.applyValueFilters(parse('{"a": 1}'), new JsonPathFilter('$.a' + it, false, false))
+        }
+
+        then: "only the cache size of compiled paths should have been kept"
+        agentService.jsonPathCache.size() <= JSON_PATH_CACHE_SIZE
+
+        and: "paths should still be applied"
+        agentService.applyValueFilters(parse('{"a": 1}'), new JsonPathFilter('$.a', false, false)) == Values.create(1)
+    }
+
+    def "Convert JSON path values"() {
+
+        given: "the value JSON provider"
+        def provider = new ValueJsonProvider()
+
+        expect: "leaves to be unwrapped to Java types as required by predicates"
+        provider.unwrap(Values.create("abc")) == "abc"
+        provider.unwrap(Values.create(1.5)) == 1.5d
+        provider.unwrap(Values.create(true)) == true
+        provider.unwrap(parse('{"a": 1}')) == parse('{"a": 1}')
+
+        and: "Java types to be converted to values"
+        ValueJsonProvider.toValue(null) == null
+        ValueJsonProvider.toValue("abc") == Values.create("abc")
+        ValueJsonProvider.toValue(5) == Values.create(5)
+        ValueJsonProvider.toValue(5L) == Values.create(5)
+        ValueJsonProvider.toValue(false) == Values.create(false)
+
+        and: "paths to be evaluated against values"
+        JsonPath.using(agentService.jsonPathConfiguration).parse(JSON).read('$.items.length()') == 2
+        ValueJsonProvider.toValue(JsonPath.using(agentService.jsonPathConfiguration).parse(JSON).read('$.object.b')) == Values.create("x")
+        provider.toJson(provider.parse(JSON)) == parse(JSON).toJson()
+        provider.toJson(null) == "null"
+    }
+}
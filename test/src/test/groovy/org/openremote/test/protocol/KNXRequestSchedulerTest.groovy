@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol
+
+import org.openremote.agent.protocol.ProtocolExecutorService
+import org.openremote.agent.protocol.knx.KNXConnection
+import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+import tuwien.auto.calimero.GroupAddress
+import tuwien.auto.calimero.KNXAddress
+import tuwien.auto.calimero.Priority
+import tuwien.auto.calimero.datapoint.StateDP
+import tuwien.auto.calimero.link.KNXNetworkLink
+import tuwien.auto.calimero.link.medium.TPSettings
+import tuwien.auto.calimero.process.ProcessCommunicatorImpl
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Checks that the telegrams of a {@link KNXConnection} are paced, prioritised and deduplicated using a fake
+ * {@link KNXNetworkLink} that records when each request is received.
+ */
+class KNXRequestSchedulerTest extends Specification implements ManagerContainerTrait {
+
+    def "Check KNX group address reads are throttled, deduplicated and outranked by writes"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 15, delay: 0.2)
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def protocolExecutorService = container.getService(ProtocolExecutorService.class)
+
+        and: "a fake KNX network link that records the requests it receives and holds up the write until released"
+        def requests = new CopyOnWriteArrayList<Map>()
+        def writeLatch = new CountDownLatch(1)
+        def recordRequest = { KNXAddress destination ->
+            requests.add([time: System.nanoTime(), destination: destination.toString()])
+            if (destination.toString() == "1/0/1") {
+                writeLatch.await(10, TimeUnit.SECONDS)
+            }
+        }
+        def knxLink = [
+            isOpen            : { true },
+            getName           : { "fake" },
+            getKNXMedium      : { new TPSettings() },
+            addLinkListener   : { listener -> },
+            removeLinkListener: { listener -> },
+            close             : { },
+            sendRequest       : { KNXAddress destination, Priority priority, byte[] nsdu -> recordRequest(destination) },
+            sendRequestWait   : { KNXAddress destination, Priority priority, byte[] nsdu -> recordRequest(destination) }
+        ] as KNXNetworkLink
+
+        and: "a connection limited to 10 telegrams per second that uses the fake link"
+        def telegramsPerSecond = 10
+        def knxConnection = new KNXConnection("127.0.0.1", "TUNNELLING", protocolExecutorService, null, 3671, false, "0.0.0", telegramsPerSecond)
+        knxConnection.knxLink = knxLink
+        knxConnection.processCommunicator = new ProcessCommunicatorImpl(knxLink)
+        knxConnection.connectionStatus = ConnectionStatus.CONNECTED
+
+        when: "a value is written"
+        knxConnection.sendCommand(new StateDP(new GroupAddress("1/0/1"), "switch", 0, "1.001"), Optional.of(Values.create(true)))
+
+        then: "the write should be sent straight away"
+        conditions.eventually {
+            assert requests.size() == 1
+            assert requests[0].destination == "1/0/1"
+        }
+
+        when: "two datapoints are registered for each of 30 group addresses whilst the write is being sent"
+        (1..30).each { i ->
+            def groupAddress = new GroupAddress("0/0/" + i)
+            knxConnection.addDatapointValueConsumer(new StateDP(groupAddress, "status" + i, 0, "1.001"), { value -> })
+            knxConnection.addDatapointValueConsumer(new StateDP(groupAddress, "feedback" + i, 0, "1.001"), { value -> })
+        }
+
+        and: "the values of all group addresses are requested again as on reconnect"
+        knxConnection.readGroupAddressValues()
+
+        and: "another value is written"
+        knxConnection.sendCommand(new StateDP(new GroupAddress("1/0/2"), "switch", 0, "1.001"), Optional.of(Values.create(false)))
+
+        and: "the first write completes"
+        writeLatch.countDown()
+
+        then: "the second write should outrank the queued reads and every group address should be read exactly once"
+        conditions.eventually {
+            assert requests.size() == 32
+        }
+        requests.collect { it.destination } == ["1/0/1", "1/0/2"] + (1..30).collect { "0/0/" + it }
+
+        and: "the requests should have been sent no faster than the telegram budget allows"
+        def minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / telegramsPerSecond * 0.9
+        (1..<requests.size()).every { i -> requests[i].time - requests[i - 1].time >= minIntervalNanos }
+
+        and: "no more requests should be sent"
+        new PollingConditions(timeout: 1, initialDelay: 0.5).eventually {
+            assert requests.size() == 32
+        }
+
+        cleanup: "the connection is closed"
+        writeLatch?.countDown()
+        knxConnection?.disconnect()
+    }
+}
@@ -1,19 +1,30 @@
 package org.openremote.test.protocol
 
+import org.openremote.agent.protocol.macro.MacroAction
+import org.openremote.agent.protocol.macro.MacroProtocol
 import org.openremote.container.timer.TimerService
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.asset.AssetUpdateProcessor
 import org.openremote.manager.setup.SetupService
 import org.openremote.manager.setup.builtin.ManagerDemoSetup
-import org.openremote.model.attribute.AttributeEvent
-import org.openremote.model.attribute.AttributeExecuteStatus
+import org.openremote.model.Constants
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.*
 import org.openremote.model.value.Values
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
 
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.TimeUnit
 
+import static org.openremote.agent.protocol.macro.MacroConfiguration.initMacroConfiguration
+import static org.openremote.model.attribute.MetaItemType.AGENT_LINK
+import static org.openremote.model.attribute.MetaItemType.EXECUTABLE
+
 class MacroProtocolTest extends Specification implements ManagerContainerTrait {
     def "Check macro agent and device asset deployment"() {
 
@@ -117,4 +128,102 @@ class MacroProtocolTest extends Specification implements ManagerContainerTrait {
             assert apartment1.getAttribute("morningScene").get().getValueAsString().orElse("") == AttributeExecuteStatus.COMPLETED.toString()
         }
     }
+
+    def "Check zero delay macro actions are processed in one pass and re-triggers cancel the previous execution"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 15, delay: 0.2)
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+
+        and: "a processor that records the entity manager of each processed attribute update"
+        def updates = new CopyOnWriteArrayList<Map>()
+        def recordingProcessor = { em, asset, attribute, source ->
+            updates.add([em: System.identityHashCode(em), name: attribute.name, value: attribute.getValue().orElse(null)])
+            false
+        } as AssetUpdateProcessor
+        assetProcessingService.processors.add(0, recordingProcessor)
+
+        when: "an agent with a macro of 200 zero delay actions and a macro with delayed actions is created"
+        def agent = new Asset("Macro Agent", AssetType.AGENT)
+        agent.setRealm(Constants.MASTER_REALM)
+        agent = assetStorageService.merge(agent)
+        def thing = new Asset("Macro Thing", AssetType.THING, agent)
+        thing.setAttributes(
+            (0..<200).collect { new AssetAttribute("attr" + it, AttributeValueType.NUMBER) } +
+                new AssetAttribute("step", AttributeValueType.NUMBER) +
+                ["batchMacro", "delayedMacro"].collect {
+                    new AssetAttribute(it, AttributeValueType.STRING, AttributeExecuteStatus.READY.asValue())
+                        .setMeta(
+                            new MetaItem(EXECUTABLE, Values.create(true)),
+                            new MetaItem(AGENT_LINK, new AttributeRef(agent.id, it).toArrayValue())
+                        )
+                }
+        )
+        thing = assetStorageService.merge(thing)
+        def batchMacro = initMacroConfiguration(new AssetAttribute("batchMacro"))
+        (0..<200).each {
+            batchMacro.addMeta(new MacroAction(new AttributeState(new AttributeRef(thing.id, "attr" + it), Values.create(it))).toMetaItem())
+        }
+        def delayedMacro = initMacroConfiguration(new AssetAttribute("delayedMacro"))
+            .addMeta(
+                new MetaItem(MacroProtocol.META_MACRO_CONCURRENCY_POLICY, Values.create(MacroProtocol.ConcurrencyPolicy.CANCEL_PREVIOUS.name())),
+                new MacroAction(new AttributeState(new AttributeRef(thing.id, "step"), Values.create(1))).toMetaItem(),
+                new MacroAction(new AttributeState(new AttributeRef(thing.id, "step"), Values.create(2)), 1000).toMetaItem(),
+                new MacroAction(new AttributeState(new AttributeRef(thing.id, "step"), Values.create(3)), 1000).toMetaItem()
+            )
+        agent.setAttributes(batchMacro, delayedMacro)
+        agent = assetStorageService.merge(agent)
+
+        then: "the macro executable attributes should be linked"
+        conditions.eventually {
+            assert noEventProcessedIn(assetProcessingService, 500)
+            def macroProtocol = container.getService(MacroProtocol.class)
+            assert macroProtocol.macroMap.get(new AttributeRef(agent.id, "batchMacro")).size() == 200
+            assert macroProtocol.concurrencyPolicies.get(new AttributeRef(agent.id, "delayedMacro")) == MacroProtocol.ConcurrencyPolicy.CANCEL_PREVIOUS
+        }
+
+        when: "the zero delay macro is executed"
+        updates.clear()
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(thing.id, "batchMacro", AttributeExecuteStatus.REQUEST_START.asValue()))
+
+        then: "all actions should have been applied"
+        conditions.eventually {
+            def asset = assetStorageService.find(thing.id, true)
+            (0..<200).each { i -> assert asset.getAttribute("attr" + i).flatMap { it.valueAsNumber }.orElse(-1d) == i }
+            assert asset.getAttribute("batchMacro").flatMap { it.valueAsString }.orElse(null) == AttributeExecuteStatus.COMPLETED.toString()
+        }
+
+        and: "the actions should have been processed in a single pass"
+        def actionUpdates = updates.findAll { it.name.startsWith("attr") }
+        actionUpdates.size() == 200
+        actionUpdates.collect { it.em }.unique().size() == 1
+
+        when: "the delayed macro is executed and re-triggered whilst it is still running"
+        updates.clear()
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(thing.id, "delayedMacro", AttributeExecuteStatus.REQUEST_START.asValue()))
+        conditions.eventually {
+            assert updates.any { it.name == "step" }
+        }
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(thing.id, "delayedMacro", AttributeExecuteStatus.REQUEST_START.asValue()))
+
+        then: "the second execution should complete"
+        conditions.eventually {
+            def asset = assetStorageService.find(thing.id, true)
+            assert asset.getAttribute("step").flatMap { it.valueAsNumber }.orElse(0d) == 3d
+            assert asset.getAttribute("delayedMacro").flatMap { it.valueAsString }.orElse(null) == AttributeExecuteStatus.COMPLETED.toString()
+        }
+
+        and: "no stale actions of the first execution should have been applied"
+        new PollingConditions(timeout: 3, initialDelay: 2).eventually {
+            def steps = updates.findAll { it.name == "step" }.collect { Values.getNumber(it.value).orElse(0d) }
+            assert steps == [1d, 1d, 2d, 3d]
+        }
+
+        cleanup: "the recording processor is removed"
+        assetProcessingService.processors.remove(recordingProcessor)
+    }
 }
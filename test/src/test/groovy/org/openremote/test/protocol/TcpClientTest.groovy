@@ -109,6 +109,16 @@ class TcpClientTest extends Specification implements ManagerContainerTrait {
             assert lastMessage == "Test"
         }
 
+        and: "the client and server should share the IO event loop group and count the traffic"
+        assert client.workerGroup.is(protocolExecutorService.getIoEventLoopGroup().getGroup())
+        assert echoServer.workerGroup.is(protocolExecutorService.getIoEventLoopGroup().getGroup())
+        conditions.eventually {
+            def clientMetrics = protocolExecutorService.getIoEventLoopGroup().getChannelMetrics().find { it.descriptor == client.getClientUri() }
+            assert clientMetrics != null
+            assert clientMetrics.bytesWritten == "Test;".length()
+            assert clientMetrics.bytesRead >= "Hello worldTest".length()
+        }
+
         when: "we request the client to disconnect"
         client.disconnect()
 
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol.artnet
+
+import io.netty.channel.socket.DatagramChannel
+import io.netty.handler.codec.bytes.ByteArrayDecoder
+import org.openremote.agent.protocol.ProtocolExecutorService
+import org.openremote.agent.protocol.artnet.ArtnetClientProtocol
+import org.openremote.agent.protocol.artnet.ArtnetLight
+import org.openremote.agent.protocol.udp.AbstractUdpServer
+import org.openremote.manager.agent.AgentService
+import org.openremote.manager.asset.AssetProcessingService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.model.Constants
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static org.openremote.model.asset.agent.ProtocolConfiguration.initProtocolConfiguration
+
+class ArtnetClientProtocolTest extends Specification implements ManagerContainerTrait {
+
+    static final int FRAME_HEADER_LENGTH = 18
+
+    def "Check rapid light updates are coalesced into at most one frame per universe per frame period"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def protocolExecutorService = container.getService(ProtocolExecutorService.class)
+        def artnetClientProtocol = container.getService(ArtnetClientProtocol.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def agentService = container.getService(AgentService.class)
+
+        expect: "the system settles down"
+        conditions.eventually {
+            noEventProcessedIn(assetProcessingService, 300)
+        }
+
+        when: "a local UDP receiver is started"
+        def receiverPort = findEphemeralPort()
+        def frames = new CopyOnWriteArrayList<byte[]>()
+        def frameTimes = new CopyOnWriteArrayList<Long>()
+        AbstractUdpServer<byte[]> receiver = new AbstractUdpServer<byte[]>(protocolExecutorService, new InetSocketAddress("127.0.0.1", receiverPort)) {
+
+            @Override
+            protected void addDecoders(DatagramChannel channel) {
+                addDecoder(channel, new ByteArrayDecoder())
+            }
+
+            @Override
+            protected void addEncoders(DatagramChannel channel) {
+            }
+        }
+        receiver.addMessageConsumer({
+            message, channel, sender ->
+                frameTimes.add(System.currentTimeMillis())
+                frames.add(message)
+        })
+        receiver.start()
+
+        then: "the receiver should be connected"
+        conditions.eventually {
+            assert receiver.connectionStatus == ConnectionStatus.CONNECTED
+        }
+
+        when: "an agent with an Artnet client protocol configuration is created"
+        def agent = new Asset()
+        agent.setRealm(Constants.MASTER_REALM)
+        agent.setName("Artnet Agent")
+        agent.setType(AssetType.AGENT)
+        agent.setAttributes(
+            initProtocolConfiguration(new AssetAttribute(ArtnetClientProtocol.agentProtocolConfigName), ArtnetClientProtocol.PROTOCOL_NAME)
+                .addMeta(
+                    new MetaItem(ArtnetClientProtocol.META_PROTOCOL_HOST, Values.create("127.0.0.1")),
+                    new MetaItem(ArtnetClientProtocol.META_PROTOCOL_PORT, Values.create(receiverPort))
+                )
+        )
+        agent = assetStorageService.merge(agent)
+
+        then: "the protocol should become CONNECTED"
+        conditions.eventually {
+            def status = agentService.getProtocolConnectionStatus(new AttributeRef(agent.id, ArtnetClientProtocol.agentProtocolConfigName))
+            assert status == ConnectionStatus.CONNECTED
+        }
+
+        when: "a light of three RGB LEDs in universe 0 is linked to the protocol configuration"
+        def light = new ArtnetLight(1, 0, 0, 3, ["r", "g", "b"] as String[], null, null)
+        def lightAsset = artnetClientProtocol.formLightAsset(light, agent).asset
+        lightAsset.setRealm(Constants.MASTER_REALM)
+        lightAsset = assetStorageService.merge(lightAsset)
+
+        then: "the light should be registered in its universe and the all off frame sent"
+        conditions.eventually {
+            assert artnetClientProtocol.attributeLights.size() == 3
+            assert artnetClientProtocol.universes.get(new AttributeRef(agent.id, ArtnetClientProtocol.agentProtocolConfigName))?.get(0) != null
+            assert artnetClientProtocol.frameSenders.size() == 1
+            assert !frames.isEmpty()
+            assert frames.last().length == FRAME_HEADER_LENGTH + 9
+        }
+
+        when: "1000 colour updates are written to the light in quick succession"
+        frames.clear()
+        frameTimes.clear()
+        def protocolConfiguration = agent.getAttribute(ArtnetClientProtocol.agentProtocolConfigName).get()
+        def start = System.currentTimeMillis()
+        (1..1000).each { i ->
+            def value = Values.createObject().put("r", i % 256).put("g", (i * 7) % 256).put("b", (i * 13) % 256)
+            artnetClientProtocol.processLinkedAttributeWrite(new AttributeEvent(lightAsset.id, "Values", value), value, protocolConfiguration)
+        }
+
+        then: "the last frame should contain the final state of the light for each of its LEDs"
+        def expectedChannels = ([1000 % 256, (1000 * 7) % 256, (1000 * 13) % 256] * 3) as byte[]
+        conditions.eventually {
+            assert !frames.isEmpty()
+            assert Arrays.copyOfRange(frames.last(), FRAME_HEADER_LENGTH, frames.last().length) == expectedChannels
+        }
+
+        and: "no more frames should be sent once the universe is unchanged"
+        def frameCount = frames.size()
+        new PollingConditions(timeout: 2, initialDelay: 1).eventually {
+            assert frames.size() == frameCount
+        }
+
+        and: "at most one frame should have been sent per frame period"
+        def framePeriodMillis = 1000 / ArtnetClientProtocol.DEFAULT_FRAME_RATE as long
+        def ticks = (frameTimes.last() - start) / framePeriodMillis as long
+        assert frameCount <= ticks + 2
+        assert frameCount < 1000
+    }
+
+    def "Check lights in the same universe of different protocol configurations are sent to their own node"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def protocolExecutorService = container.getService(ProtocolExecutorService.class)
+        def artnetClientProtocol = container.getService(ArtnetClientProtocol.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def agentService = container.getService(AgentService.class)
+
+        expect: "the system settles down"
+        conditions.eventually {
+            noEventProcessedIn(assetProcessingService, 300)
+        }
+
+        when: "a local UDP receiver is started for each of two Art-Net nodes"
+        def receiverPorts = [findEphemeralPort(), findEphemeralPort()]
+        def frames = [new CopyOnWriteArrayList<byte[]>(), new CopyOnWriteArrayList<byte[]>()]
+        def receivers = (0..1).collect { i ->
+            AbstractUdpServer<byte[]> receiver = new AbstractUdpServer<byte[]>(protocolExecutorService, new InetSocketAddress("127.0.0.1", receiverPorts[i])) {
+
+                @Override
+                protected void addDecoders(DatagramChannel channel) {
+                    addDecoder(channel, new ByteArrayDecoder())
+                }
+
+                @Override
+                protected void addEncoders(DatagramChannel channel) {
+                }
+            }
+            receiver.addMessageConsumer({
+                message, channel, sender -> frames[i].add(message)
+            })
+            receiver.start()
+            receiver
+        }
+
+        then: "the receivers should be connected"
+        conditions.eventually {
+            assert receivers.every { it.connectionStatus == ConnectionStatus.CONNECTED }
+        }
+
+        when: "an agent with an Artnet client protocol configuration is created for each node"
+        def agents = (0..1).collect { i ->
+            def agent = new Asset()
+            agent.setRealm(Constants.MASTER_REALM)
+            agent.setName("Artnet Agent " + i)
+            agent.setType(AssetType.AGENT)
+            agent.setAttributes(
+                initProtocolConfiguration(new AssetAttribute(ArtnetClientProtocol.agentProtocolConfigName), ArtnetClientProtocol.PROTOCOL_NAME)
+                    .addMeta(
+                        new MetaItem(ArtnetClientProtocol.META_PROTOCOL_HOST, Values.create("127.0.0.1")),
+                        new MetaItem(ArtnetClientProtocol.META_PROTOCOL_PORT, Values.create(receiverPorts[i]))
+                    )
+            )
+            assetStorageService.merge(agent)
+        }
+        def protocolRefs = agents.collect { new AttributeRef(it.id, ArtnetClientProtocol.agentProtocolConfigName) }
+
+        then: "the protocols should become CONNECTED"
+        conditions.eventually {
+            assert protocolRefs.every { agentService.getProtocolConnectionStatus(it) == ConnectionStatus.CONNECTED }
+        }
+
+        when: "a light in universe 0 is linked to each protocol configuration, one RGB LED and two RG LEDs"
+        def lights = [
+            new ArtnetLight(11, 0, 0, 1, ["r", "g", "b"] as String[], null, null),
+            new ArtnetLight(12, 0, 0, 2, ["r", "g"] as String[], null, null)
+        ]
+        def lightAssets = (0..1).collect { i ->
+            def lightAsset = artnetClientProtocol.formLightAsset(lights[i], agents[i]).asset
+            lightAsset.setRealm(Constants.MASTER_REALM)
+            assetStorageService.merge(lightAsset)
+        }
+
+        then: "each protocol configuration should have its own universe 0 with its light"
+        conditions.eventually {
+            assert protocolRefs.every { artnetClientProtocol.universes.get(it)?.get(0) != null }
+            assert artnetClientProtocol.universes.get(protocolRefs[0]).get(0) != artnetClientProtocol.universes.get(protocolRefs[1]).get(0)
+            assert artnetClientProtocol.universes.get(protocolRefs[0]).get(0).getProtocolRef() == protocolRefs[0]
+            assert artnetClientProtocol.universes.get(protocolRefs[1]).get(0).getProtocolRef() == protocolRefs[1]
+        }
+
+        when: "the lights are written"
+        (0..1).each { i ->
+            def value = Values.createObject().put("r", 10 + i).put("g", 20 + i).put("b", 30 + i)
+            artnetClientProtocol.processLinkedAttributeWrite(
+                new AttributeEvent(lightAssets[i].id, "Values", value),
+                value,
+                agents[i].getAttribute(ArtnetClientProtocol.agentProtocolConfigName).get()
+            )
+        }
+
+        then: "each node should only receive the frames of its own light"
+        conditions.eventually {
+            assert !frames[0].isEmpty() && !frames[1].isEmpty()
+            assert Arrays.copyOfRange(frames[0].last(), FRAME_HEADER_LENGTH, frames[0].last().length) == ([10, 20, 30] as byte[])
+            assert Arrays.copyOfRange(frames[1].last(), FRAME_HEADER_LENGTH, frames[1].last().length) == ([11, 21, 11, 21] as byte[])
+        }
+
+        when: "the light of the first node is removed"
+        assetStorageService.delete([lightAssets[0].id])
+
+        then: "only the universe of the first node should be removed"
+        conditions.eventually {
+            assert artnetClientProtocol.universes.get(protocolRefs[0]) == null
+            assert artnetClientProtocol.universes.get(protocolRefs[1])?.get(0) != null
+        }
+
+        cleanup: "the receivers are stopped"
+        receivers?.each { it.stop() }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol.controller
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.openremote.agent.protocol.controller.ControllerPollingSession
+import org.openremote.agent.protocol.controller.ControllerProtocol
+import org.openremote.manager.agent.AgentService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.model.Constants
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.asset.agent.ProtocolConfiguration
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.attribute.MetaItemType
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.CopyOnWriteArrayList
+
+class ControllerPollingTest extends Specification implements ManagerContainerTrait {
+
+    static final String CONTROLLER_PROTOCOL_ATTRIBUTE_NAME = "controllerConfig"
+
+    static void respond(HttpExchange exchange, int status, String body) {
+        def bytes = body != null ? body.getBytes(StandardCharsets.UTF_8) : new byte[0]
+        exchange.responseHeaders.add("Content-Type", "application/json")
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1)
+        if (bytes.length > 0) {
+            exchange.responseBody.write(bytes)
+        }
+        exchange.close()
+    }
+
+    @SuppressWarnings("GroovyAccessibility")
+    def "Check sensors of a device share one rate limited long-poll that stops when they are unlinked"() {
+
+        given: "a local stub controller that answers every polling request immediately with new values"
+        def port = findEphemeralPort()
+        def pollRequests = new CopyOnWriteArrayList<Map>()
+        def stubController = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0)
+        stubController.createContext("/controller", { HttpExchange exchange ->
+            def path = exchange.requestURI.path
+            if (path == "/controller") {
+                respond(exchange, 200, null)
+            } else if (path == "/controller/rest/devices/MyDevice/status") {
+                respond(exchange, 200, '[{"name": "my_sensor1", "value": "initial1"}, {"name": "my_sensor2", "value": "initial2"}]')
+            } else if (path.startsWith("/controller/rest/devices/MyDevice/polling/")) {
+                pollRequests.add([time: System.currentTimeMillis(), query: exchange.requestURI.query])
+                respond(exchange, 200, '[{"name": "my_sensor1", "value": "polled1"}, {"name": "my_sensor2", "value": "polled2"}]')
+            } else {
+                respond(exchange, 404, null)
+            }
+        })
+        stubController.start()
+
+        and: "expected conditions"
+        def conditions = new PollingConditions(timeout: 15, delay: 0.2)
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def controllerProtocol = container.getService(ControllerProtocol.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def agentService = container.getService(AgentService.class)
+
+        when: "an agent with a Controller protocol configuration for the stub is created"
+        def agent = new Asset()
+        agent.setRealm(Constants.MASTER_REALM)
+        agent.setName("Controller Agent")
+        agent.setType(AssetType.AGENT)
+        agent.setAttributes(
+            ProtocolConfiguration.initProtocolConfiguration(new AssetAttribute(CONTROLLER_PROTOCOL_ATTRIBUTE_NAME), ControllerProtocol.PROTOCOL_NAME)
+                .addMeta(
+                    new MetaItem(ControllerProtocol.META_PROTOCOL_BASE_URI, Values.create("http://127.0.0.1:" + port + "/controller"))
+                )
+        )
+        agent = assetStorageService.merge(agent)
+        def controllerRef = new AttributeRef(agent.id, CONTROLLER_PROTOCOL_ATTRIBUTE_NAME)
+
+        then: "the protocol should become CONNECTED and stop the heartbeat"
+        conditions.eventually {
+            assert agentService.getProtocolConnectionStatus(controllerRef) == ConnectionStatus.CONNECTED
+            assert controllerProtocol.controllerHeartbeat.get(controllerRef).isCancelled()
+        }
+
+        when: "an asset with two sensors of the same device is linked to the protocol configuration"
+        def asset = new Asset("Controller Asset", AssetType.THING, agent)
+        asset.setAttributes(
+            ["my_sensor1", "my_sensor2"].collect { sensorName ->
+                new AssetAttribute(sensorName, AttributeValueType.STRING)
+                    .addMeta(
+                        new MetaItem(MetaItemType.AGENT_LINK, controllerRef.toArrayValue()),
+                        new MetaItem(ControllerProtocol.META_ATTRIBUTE_DEVICE_NAME, Values.create("MyDevice")),
+                        new MetaItem(ControllerProtocol.META_ATTRIBUTE_SENSOR_NAME, Values.create(sensorName)),
+                        new MetaItem(MetaItemType.READ_ONLY, Values.create(true))
+                    )
+            }
+        )
+        asset = assetStorageService.merge(asset)
+        def pollingSession = controllerProtocol.pollingSessions.get(controllerRef)
+
+        then: "the device should be polled for both sensors with a single request at a time"
+        conditions.eventually {
+            assert pollingSession.getDeviceNames() == ["MyDevice"] as Set
+            assert pollingSession.getPendingPollCount() == 1
+            assert !pollRequests.isEmpty()
+            assert pollRequests.last().query.contains("name=my_sensor1")
+            assert pollRequests.last().query.contains("name=my_sensor2")
+            def updatedAsset = assetStorageService.find(asset.id, true)
+            assert updatedAsset.getAttribute("my_sensor1").flatMap { it.valueAsString }.orElse(null) == "polled1"
+            assert updatedAsset.getAttribute("my_sensor2").flatMap { it.valueAsString }.orElse(null) == "polled2"
+        }
+
+        when: "the controller keeps answering immediately for a while"
+        def windowStart = System.currentTimeMillis()
+        def requestsBefore = pollRequests.size()
+        Thread.sleep(3000)
+        def windowMillis = System.currentTimeMillis() - windowStart
+        def requestsInWindow = pollRequests.size() - requestsBefore
+
+        then: "polling should not be more frequent than the minimum poll interval"
+        requestsInWindow > 0
+        requestsInWindow <= windowMillis / ControllerPollingSession.MIN_POLL_INTERVAL_MILLIS + 1
+
+        when: "the asset is deleted so the sensors are unlinked"
+        assetStorageService.delete([asset.id])
+
+        then: "the polling of the device should stop and no tasks should remain scheduled"
+        conditions.eventually {
+            assert pollingSession.getDeviceNames().isEmpty()
+            assert pollingSession.getPendingPollCount() == 0
+            assert controllerProtocol.initialStatusTasks.isEmpty()
+        }
+
+        and: "no more polling requests should be received"
+        def requestCount = pollRequests.size()
+        new PollingConditions(timeout: 3, initialDelay: 2).eventually {
+            assert pollRequests.size() == requestCount
+        }
+
+        when: "the protocol configuration is removed"
+        agent.removeAttribute(CONTROLLER_PROTOCOL_ATTRIBUTE_NAME)
+        agent = assetStorageService.merge(agent)
+
+        then: "the polling session and heartbeat should be removed"
+        conditions.eventually {
+            assert !controllerProtocol.pollingSessions.containsKey(controllerRef)
+            assert !controllerProtocol.controllerHeartbeat.containsKey(controllerRef)
+        }
+
+        cleanup: "the stub controller is stopped"
+        stubController?.stop(0)
+    }
+}
@@ -237,7 +237,7 @@ class ControllerProtocolTest extends Specification implements ManagerContainerTr
         conditions.eventually {
             def newAsset = assetStorageService.find(asset.getId(), true)
             assert controllerProtocol.controllersMap.get(controllerRef).getSensorsListForDevice("MyDevice").size() == 1
-            assert controllerProtocol.pollingSensorList.size() == 1
+            assert controllerProtocol.pollingSessions.get(controllerRef).getDeviceNames().size() == 1
             assert mockController.commandCount == 0
             assert mockController.pollCount > 0
             assert newAsset.getAttribute("sensor").flatMap({it.getValueAsString()}).orElse("") == "newValue1a"
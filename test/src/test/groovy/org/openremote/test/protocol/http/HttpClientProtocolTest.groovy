@@ -55,6 +55,8 @@ import javax.ws.rs.HttpMethod
 import javax.ws.rs.client.ClientRequestContext
 import javax.ws.rs.client.ClientRequestFilter
 import javax.ws.rs.core.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 import static org.openremote.model.asset.agent.ProtocolConfiguration.initProtocolConfiguration
 
@@ -74,12 +76,26 @@ class HttpClientProtocolTest extends Specification implements ManagerContainerTr
         private boolean putRequestWithHeadersCalled = false
         private int successFailureCount = 0
         private String dynamicPathParam = ""
+        private Map<String, Integer> slowPollCounts = new ConcurrentHashMap<>()
+        private AtomicInteger slowPollsInFlight = new AtomicInteger()
+        private AtomicInteger slowPollsMaxInFlight = new AtomicInteger()
 
         @Override
         void filter(ClientRequestContext requestContext) throws IOException {
             def requestUri = requestContext.uri
             def requestPath = requestUri.scheme + "://" + requestUri.host + requestUri.path
 
+            // A slow host that doesn't need authentication
+            if (requestUri.host == "slowmockapi") {
+                def inFlight = slowPollsInFlight.incrementAndGet()
+                slowPollsMaxInFlight.accumulateAndGet(inFlight, Math.&max)
+                Thread.sleep(100)
+                slowPollCounts.merge(requestUri.path, 1, Integer.&sum)
+                slowPollsInFlight.decrementAndGet()
+                requestContext.abortWith(Response.ok("1", MediaType.TEXT_PLAIN).build())
+                return
+            }
+
             switch (requestPath) {
                 case "https://mockapi/basicauth":
                     def authHeader = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION)
@@ -273,6 +289,95 @@ class HttpClientProtocolTest extends Specification implements ManagerContainerTr
         mockServer.pollCountFast = 0
         mockServer.successFailureCount = 0
         mockServer.putRequestWithHeadersCalled = false
+        mockServer.slowPollCounts.clear()
+        mockServer.slowPollsInFlight.set(0)
+        mockServer.slowPollsMaxInFlight.set(0)
+    }
+
+    def "Check polling more targets of a slow host than the host allows in flight"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 20, delay: 0.2)
+
+        and: "the HTTP client protocol min times are adjusted for testing"
+        HttpClientProtocol.MIN_POLLING_MILLIS = 10
+        HttpClientProtocol.MIN_PING_MILLIS = 10
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def httpClientProtocol = container.getService(HttpClientProtocol.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def targetCount = httpClientProtocol.maxRequestsPerHost * 3
+
+        when: "the web target builder is configured to use the mock server"
+        if (!httpClientProtocol.client.configuration.isRegistered(mockServer)) {
+            httpClientProtocol.client.register(mockServer, Integer.MAX_VALUE)
+        }
+
+        and: "an agent with a HTTP client protocol configuration for the slow host is created"
+        def agent = new Asset("Slow Host Agent", AssetType.AGENT)
+        agent.setRealm(Constants.MASTER_REALM)
+        agent.setAttributes(
+            initProtocolConfiguration(new AssetAttribute("protocolConfig"), HttpClientProtocol.PROTOCOL_NAME)
+                .addMeta(
+                    new MetaItem(HttpClientProtocol.META_PROTOCOL_BASE_URI, Values.create("https://slowmockapi"))
+                )
+        )
+        agent = assetStorageService.merge(agent)
+
+        and: "an asset with more polled attributes on the slow host than requests allowed in flight to it is created"
+        def asset = new Asset("Slow Host Thing", AssetType.THING, agent)
+        def slowAttributes = (1..targetCount).collect {
+            new AssetAttribute("poll" + it, AttributeValueType.NUMBER)
+                .addMeta(
+                    new MetaItem(MetaItemType.AGENT_LINK, new AttributeRef(agent.id, "protocolConfig").toArrayValue()),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_PATH, Values.create("poll" + it)),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_POLLING_MILLIS, Values.create(50)) // This is ms in testing
+                )
+        }
+        def sharedAttributes = [
+            new AssetAttribute("sharedFast", AttributeValueType.NUMBER)
+                .addMeta(
+                    new MetaItem(MetaItemType.AGENT_LINK, new AttributeRef(agent.id, "protocolConfig").toArrayValue()),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_PATH, Values.create("shared")),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_POLLING_MILLIS, Values.create(50)) // This is ms in testing
+                ),
+            new AssetAttribute("sharedSlow", AttributeValueType.NUMBER)
+                .addMeta(
+                    new MetaItem(MetaItemType.AGENT_LINK, new AttributeRef(agent.id, "protocolConfig").toArrayValue()),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_PATH, Values.create("shared")),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_POLLING_MILLIS, Values.create(5000)) // This is ms in testing
+                )
+        ]
+        asset.setAttributes(slowAttributes + sharedAttributes)
+        asset = assetStorageService.merge(asset)
+
+        then: "every target should be polled repeatedly"
+        conditions.eventually {
+            (1..targetCount).each {
+                assert mockServer.slowPollCounts.getOrDefault("/poll" + it, 0) >= 3
+            }
+        }
+
+        and: "no more requests than allowed should have been in flight to the host"
+        mockServer.slowPollsMaxInFlight.get() <= httpClientProtocol.maxRequestsPerHost
+
+        and: "the shared request should be polled at the shortest interval"
+        def sharedPoll = httpClientProtocol.pollingMap.get(new AttributeRef(asset.id, "sharedSlow"))
+        sharedPoll.is(httpClientProtocol.pollingMap.get(new AttributeRef(asset.id, "sharedFast")))
+        sharedPoll.pollingMillis == 50
+
+        when: "the attribute that requested the shortest interval is removed"
+        asset.removeAttribute("sharedFast")
+        asset = assetStorageService.merge(asset)
+
+        then: "the shared request should be polled at the interval of the remaining attribute"
+        conditions.eventually {
+            assert httpClientProtocol.pollingMap.get(new AttributeRef(asset.id, "sharedFast")) == null
+            def remainingPoll = httpClientProtocol.pollingMap.get(new AttributeRef(asset.id, "sharedSlow"))
+            assert remainingPoll.pollingMillis == 5000
+            assert remainingPoll.pollingTask != null
+        }
     }
 
     def "Check HTTP client protocol configuration and linked attribute deployment"() {
@@ -518,6 +623,17 @@ class HttpClientProtocolTest extends Specification implements ManagerContainerTr
                         Protocol.META_ATTRIBUTE_VALUE_FILTERS,
                         Values.createArray().add(Util.objectToValue(new RegexValueFilter("\\d+", 0, 1)).get())
                     )
+                ),
+            // attribute that polls the same request as getPollSlow so should share its poll
+            new AssetAttribute("getPollSlowShared", AttributeValueType.NUMBER)
+                .addMeta(
+                    new MetaItem(MetaItemType.AGENT_LINK, new AttributeRef(agent.id, "protocolConfig").toArrayValue()),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_PATH, Values.create("get_poll_slow")),
+                    new MetaItem(HttpClientProtocol.META_ATTRIBUTE_POLLING_MILLIS, Values.create(50)), // This is ms in testing
+                    new MetaItem(
+                        Protocol.META_ATTRIBUTE_VALUE_FILTERS,
+                        Values.createArray().add(Util.objectToValue(new RegexValueFilter("\\d+", 0, 0)).get())
+                    )
                 )
         )
 
@@ -527,7 +643,15 @@ class HttpClientProtocolTest extends Specification implements ManagerContainerTr
 
         then: "new request maps should be created in the HTTP client protocol for the linked attributes"
         conditions.eventually {
-            assert httpClientProtocol.requestMap.size() == requestCount + 4
+            assert httpClientProtocol.requestMap.size() == requestCount + 5
+        }
+
+        and: "the attributes with identical polling requests should share a single poll"
+        conditions.eventually {
+            def slowPoll = httpClientProtocol.pollingMap.get(new AttributeRef(asset.id, "getPollSlow"))
+            assert slowPoll != null
+            assert slowPoll.is(httpClientProtocol.pollingMap.get(new AttributeRef(asset.id, "getPollSlowShared")))
+            assert slowPoll.attributeRefs.size() == 2
         }
 
         and: "the polling attributes should be polling the server"
@@ -542,6 +666,7 @@ class HttpClientProtocolTest extends Specification implements ManagerContainerTr
             asset = assetStorageService.find(asset.getId(), true)
             assert asset.getAttribute("getPollSlow").flatMap({it.getValueAsInteger()}).orElse(null) == 100
             assert asset.getAttribute("getPollFast").flatMap({it.getValueAsInteger()}).orElse(null) == 60
+            assert asset.getAttribute("getPollSlowShared").flatMap({it.getValueAsInteger()}).orElse(null) == 100
         }
 
         when: "a linked attribute value is updated"
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol.http
+
+import org.openremote.agent.protocol.http.AbstractHttpServerProtocol
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetResource
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import static org.openremote.container.util.MapAccess.getString
+import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD
+import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD_DEFAULT
+import static org.openremote.model.Constants.*
+import static org.openremote.model.asset.agent.ProtocolConfiguration.initProtocolConfiguration
+
+/**
+ * Checks a flooded {@link AbstractHttpServerProtocol} deployment rejects the requests it can't take and doesn't hold up
+ * the manager API.
+ */
+class HttpServerProtocolIsolationTest extends Specification implements ManagerContainerTrait {
+
+    static final int FLOOD_CLIENTS = 40
+    static final int SLOW_REQUEST_MILLIS = 1500
+    static final int MAX_API_LATENCY_MILLIS = 1000
+
+    static Map request(String url) {
+        def connection = (HttpURLConnection) new URL(url).openConnection()
+        def status = connection.responseCode
+        def response = [status: status, retryAfter: connection.getHeaderField("Retry-After")]
+        connection.disconnect()
+        return response
+    }
+
+    def "Check a flood of requests to a deployment is limited and doesn't raise the latency of the manager API"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+
+        and: "the container starts with the test http server protocol"
+        def testServerProtocol = new TestHttpServerProtocol()
+        def container = startContainer(defaultConfig(), defaultServices(testServerProtocol))
+        def assetStorageService = container.getService(AssetStorageService.class)
+
+        and: "an authenticated admin user"
+        def accessToken = authenticate(
+            container,
+            MASTER_REALM,
+            KEYCLOAK_CLIENT_ID,
+            MASTER_REALM_ADMIN_USER,
+            getString(container.getConfig(), SETUP_ADMIN_PASSWORD, SETUP_ADMIN_PASSWORD_DEFAULT)
+        ).token
+        def assetResource = getClientApiTarget(serverUri(serverPort), MASTER_REALM, accessToken).proxy(AssetResource.class)
+
+        when: "an agent with a test HTTP server protocol configuration with low request limits is created"
+        def agent = new Asset("Test Agent", AssetType.AGENT)
+        agent.setRealm(MASTER_REALM)
+        agent.setAttributes(
+            initProtocolConfiguration(new AssetAttribute("protocolConfig"), TestHttpServerProtocol.PROTOCOL_NAME)
+                .addMeta(
+                    new MetaItem(AbstractHttpServerProtocol.META_PROTOCOL_DEPLOYMENT_PATH, Values.create("flood")),
+                    new MetaItem(AbstractHttpServerProtocol.META_PROTOCOL_MAX_CONCURRENT_REQUESTS, Values.create(2)),
+                    new MetaItem(AbstractHttpServerProtocol.META_PROTOCOL_MAX_QUEUED_REQUESTS, Values.create(4))
+                )
+        )
+        agent = assetStorageService.merge(agent)
+        def protocolRef = new AttributeRef(agent.id, "protocolConfig")
+
+        then: "the protocol should be deployed"
+        conditions.eventually {
+            assert testServerProtocol.getDeploymentMetrics(protocolRef) != null
+        }
+
+        and: "the manager API should answer"
+        assetResource.get(null, agent.id).id == agent.id
+
+        when: "the deployment is flooded with slow requests"
+        def slowUrl = serverUri(serverPort)
+            .path(AbstractHttpServerProtocol.DEFAULT_DEPLOYMENT_PATH_PREFIX)
+            .path("flood")
+            .path("resource1")
+            .path("slow")
+            .queryParam("millis", SLOW_REQUEST_MILLIS)
+            .build()
+            .toString()
+        def flooding = new AtomicBoolean(true)
+        def floodResponses = new ConcurrentLinkedQueue<Map>()
+        def floodExecutor = Executors.newFixedThreadPool(FLOOD_CLIENTS)
+        FLOOD_CLIENTS.times {
+            floodExecutor.submit {
+                while (flooding.get()) {
+                    floodResponses.add(request(slowUrl))
+                }
+            }
+        }
+
+        and: "the manager API is used whilst the deployment is flooded"
+        Thread.sleep(500)
+        def latencies = (1..10).collect {
+            def start = System.currentTimeMillis()
+            assert assetResource.get(null, agent.id).id == agent.id
+            def latency = System.currentTimeMillis() - start
+            Thread.sleep(200)
+            latency
+        }
+        flooding.set(false)
+        floodExecutor.shutdown()
+        floodExecutor.awaitTermination(10, TimeUnit.SECONDS)
+
+        then: "the manager API latency should stay within the bound"
+        latencies.max() < MAX_API_LATENCY_MILLIS
+
+        and: "the requests the deployment couldn't take should have been rejected with a retry hint"
+        def rejectedResponses = floodResponses.findAll { it.status == 503 }
+        !rejectedResponses.isEmpty()
+        rejectedResponses.every { it.retryAfter == String.valueOf(AbstractHttpServerProtocol.REJECTED_RETRY_AFTER_SECONDS) }
+        floodResponses.every { it.status in [204, 503] }
+
+        and: "the metrics of the deployment should match the responses"
+        conditions.eventually {
+            def metrics = testServerProtocol.getDeploymentMetrics(protocolRef)
+            assert metrics.active == 0
+            assert metrics.rejected == rejectedResponses.size()
+            assert metrics.requests == floodResponses.size()
+            assert metrics.maxDurationMillis >= SLOW_REQUEST_MILLIS
+        }
+
+        cleanup: "the flood is stopped"
+        flooding?.set(false)
+        floodExecutor?.shutdownNow()
+    }
+}
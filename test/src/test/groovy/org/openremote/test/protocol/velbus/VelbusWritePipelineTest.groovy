@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol.velbus
+
+import io.netty.channel.ChannelHandler
+import io.netty.channel.socket.SocketChannel
+import org.openremote.agent.protocol.ProtocolExecutorService
+import org.openremote.agent.protocol.io.AbstractNettyIoClient
+import org.openremote.agent.protocol.tcp.AbstractTcpServer
+import org.openremote.agent.protocol.tcp.TcpIoClient
+import org.openremote.agent.protocol.velbus.VelbusNetwork
+import org.openremote.agent.protocol.velbus.VelbusPacket
+import org.openremote.agent.protocol.velbus.VelbusPacketDecoder
+import org.openremote.agent.protocol.velbus.VelbusPacketEncoder
+import org.openremote.agent.protocol.velbus.device.VelbusDeviceType
+import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Checks the write pipeline of a {@link VelbusNetwork} against a local TCP stand-in for a Velbus bus with a VMB4DC
+ * dimmer at address 187.
+ */
+class VelbusWritePipelineTest extends Specification implements ManagerContainerTrait {
+
+    static final int DIMMER_ADDRESS = 187
+
+    static VelbusPacket toPacket(String hex) {
+        new VelbusPacket(hex.split(" ").collect { (byte) Integer.parseInt(it, 16) } as byte[])
+    }
+
+    static VelbusPacket createOutLevelStatus(int channel, int level) {
+        new VelbusPacket(DIMMER_ADDRESS, VelbusPacket.InboundCommand.OUT_LEVEL_STATUS.code, [channel, 0, level, level > 0 ? 0x80 : 0, 0, 0, 0] as byte[])
+    }
+
+    def "Check a dimmer ramp only delivers the latest level without a backlog"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 0.1)
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def protocolExecutorService = container.getService(ProtocolExecutorService.class)
+
+        and: "a local TCP stand-in for the bus that answers the dimmer requests and records the levels set"
+        def port = findEphemeralPort()
+        def levels = new CopyOnWriteArrayList<Integer>()
+        def levelTimes = new CopyOnWriteArrayList<Long>()
+        AbstractTcpServer<VelbusPacket> bus = new AbstractTcpServer<VelbusPacket>(protocolExecutorService, new InetSocketAddress("127.0.0.1", port)) {
+
+            @Override
+            protected void addDecoders(SocketChannel channel) {
+                addDecoder(channel, new VelbusPacketDecoder())
+            }
+
+            @Override
+            protected void addEncoders(SocketChannel channel) {
+                addEncoder(channel, new VelbusPacketEncoder())
+            }
+        }
+        bus.addMessageConsumer({
+            packet, channel, sender ->
+                if (packet.getAddress() != DIMMER_ADDRESS) {
+                    return
+                }
+                if (packet.getRtr()) {
+                    // Module type request
+                    bus.sendMessage(toPacket("0F FB BB 07 FF 12 AB 31 03 15 09 26 04 00"), channel)
+                } else if (packet.getCommand() == VelbusPacket.OutboundCommand.MODULE_STATUS.code) {
+                    [1, 2, 4, 8].each { bus.sendMessage(createOutLevelStatus(it, 0), channel) }
+                } else if (packet.getCommand() == VelbusPacket.OutboundCommand.SET_LEVEL.code) {
+                    levelTimes.add(System.currentTimeMillis())
+                    levels.add(packet.getInt(2))
+                    bus.sendMessage(createOutLevelStatus(packet.getInt(1), packet.getInt(2)), channel)
+                }
+        })
+        bus.start()
+
+        and: "a network that is connected to the stand-in"
+        def client = new TcpIoClient<VelbusPacket>("127.0.0.1", port, protocolExecutorService)
+        client.setEncoderDecoderProvider({
+            [
+                new VelbusPacketEncoder(),
+                new VelbusPacketDecoder(),
+                new AbstractNettyIoClient.MessageToMessageDecoder<>(VelbusPacket.class, client)
+            ] as ChannelHandler[]
+        })
+        def network = new VelbusNetwork(client, protocolExecutorService, null)
+
+        when: "the network connects and a consumer is registered for the dimmer"
+        network.connect()
+        def currentLevel
+        conditions.eventually {
+            assert network.getConnectionStatus() == ConnectionStatus.CONNECTED
+        }
+        network.addPropertyValueConsumer(DIMMER_ADDRESS, "CH1_LEVEL", { currentLevel = it?.propertyValue })
+
+        then: "the dimmer should be initialised"
+        conditions.eventually {
+            def device = network.getDevice(DIMMER_ADDRESS)
+            assert device != null
+            assert device.isInitialisedAndValid()
+            assert device.getDeviceType() == VelbusDeviceType.VMB4DC
+            assert currentLevel == 0d
+        }
+
+        when: "the dimmer is ramped up in 50 steps"
+        (1..50).each { step ->
+            network.writeProperty(DIMMER_ADDRESS, "CH1_LEVEL", Values.create(step * 2d))
+            Thread.sleep(10)
+        }
+        def rampEnd = System.currentTimeMillis()
+
+        then: "the final level should be delivered shortly after the ramp ends"
+        conditions.eventually {
+            assert !levels.isEmpty()
+            assert levels.last() == 100
+            assert currentLevel == 100d
+        }
+        levelTimes.last() - rampEnd < 1000
+
+        and: "superseded levels should not have been written"
+        levels.size() < 50
+
+        and: "no more levels should be written"
+        def levelCount = levels.size()
+        new PollingConditions(timeout: 1, initialDelay: 0.5).eventually {
+            assert levels.size() == levelCount
+            assert network.messageQueue.size() == 0
+        }
+
+        cleanup: "the network and stand-in are stopped"
+        network?.close()
+        bus?.stop()
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.protocol.websocket
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import io.netty.bootstrap.ServerBootstrap
+import io.netty.channel.Channel
+import io.netty.channel.ChannelHandlerContext
+import io.netty.channel.ChannelInitializer
+import io.netty.channel.SimpleChannelInboundHandler
+import io.netty.channel.nio.NioEventLoopGroup
+import io.netty.channel.socket.SocketChannel
+import io.netty.channel.socket.nio.NioServerSocketChannel
+import io.netty.handler.codec.http.HttpObjectAggregator
+import io.netty.handler.codec.http.HttpServerCodec
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler
+import org.openremote.agent.protocol.websocket.AbstractWebsocketClientProtocol
+import org.openremote.agent.protocol.websocket.WebsocketClientProtocol
+import org.openremote.agent.protocol.websocket.WebsocketHttpSubscription
+import org.openremote.agent.protocol.websocket.WebsocketSubscription
+import org.openremote.container.Container
+import org.openremote.manager.agent.AgentService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.model.Constants
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.asset.agent.ConnectionStatus
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.attribute.MetaItemType
+import org.openremote.model.value.Values
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.openremote.model.asset.agent.ProtocolConfiguration.initProtocolConfiguration
+
+/**
+ * Checks the subscriptions of the {@link WebsocketClientProtocol} against a local websocket and HTTP stub that record
+ * when each subscription arrives.
+ */
+class WebsocketSubscriptionBootstrapTest extends Specification implements ManagerContainerTrait {
+
+    static final int HTTP_SUBSCRIPTION_DURATION_MILLIS = 500
+
+    static MetaItem createSubscriptionsMeta(List<WebsocketSubscription> subscriptions) {
+        new MetaItem(
+            WebsocketClientProtocol.META_SUBSCRIPTIONS,
+            Values.parse(Container.JSON.writeValueAsString(subscriptions)).orElse(null)
+        )
+    }
+
+    @SuppressWarnings("GroovyAccessibility")
+    def "Check subscriptions are executed concurrently once connected and only linked attribute subscriptions are replayed"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 20, delay: 0.2)
+
+        and: "a local HTTP stub that records the subscription requests and takes a while to answer"
+        def httpPort = findEphemeralPort()
+        def httpRequests = new CopyOnWriteArrayList<Map>()
+        def concurrentRequests = new AtomicInteger()
+        def maxConcurrentRequests = new AtomicInteger()
+        def httpStub = HttpServer.create(new InetSocketAddress("127.0.0.1", httpPort), 0)
+        httpStub.setExecutor(Executors.newCachedThreadPool())
+        httpStub.createContext("/subscribe", { HttpExchange exchange ->
+            def start = System.currentTimeMillis()
+            def concurrent = concurrentRequests.incrementAndGet()
+            maxConcurrentRequests.accumulateAndGet(concurrent, { a, b -> Math.max(a, b) })
+            Thread.sleep(HTTP_SUBSCRIPTION_DURATION_MILLIS)
+            concurrentRequests.decrementAndGet()
+            httpRequests.add([path: exchange.requestURI.path, start: start, end: System.currentTimeMillis()])
+            exchange.sendResponseHeaders(204, -1)
+            exchange.close()
+        })
+        httpStub.start()
+
+        and: "a local websocket stub that records the connections and subscription messages"
+        def wsPort = findEphemeralPort()
+        def wsEvents = new CopyOnWriteArrayList<Map>()
+        def wsChannels = new CopyOnWriteArrayList<Channel>()
+        def wsEventLoopGroup = new NioEventLoopGroup(1)
+        def wsStub = new ServerBootstrap()
+            .group(wsEventLoopGroup)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel channel) {
+                    channel.pipeline().addLast(
+                        new HttpServerCodec(),
+                        new HttpObjectAggregator(65536),
+                        new WebSocketServerProtocolHandler("/websocket"),
+                        new SimpleChannelInboundHandler<TextWebSocketFrame>(TextWebSocketFrame.class) {
+                            @Override
+                            void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                                if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+                                    wsChannels.add(ctx.channel())
+                                    wsEvents.add([type: "connected", time: System.currentTimeMillis()])
+                                }
+                                ctx.fireUserEventTriggered(evt)
+                            }
+
+                            @Override
+                            protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) {
+                                wsEvents.add([type: "message", text: frame.text(), time: System.currentTimeMillis()])
+                            }
+                        }
+                    )
+                }
+            })
+            .bind("127.0.0.1", wsPort).sync().channel()
+
+        and: "the container starts"
+        def container = startContainer(defaultConfig(), defaultServices())
+        def websocketClientProtocol = container.getService(WebsocketClientProtocol.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def agentService = container.getService(AgentService.class)
+
+        when: "an agent with websocket and HTTP subscriptions on the protocol configuration is created"
+        def agent = new Asset("Websocket Agent", AssetType.AGENT)
+        agent.setRealm(Constants.MASTER_REALM)
+        agent.setAttributes(
+            initProtocolConfiguration(new AssetAttribute("protocolConfig"), WebsocketClientProtocol.PROTOCOL_NAME)
+                .addMeta(
+                    new MetaItem(WebsocketClientProtocol.META_PROTOCOL_CONNECT_URI, Values.create("ws://127.0.0.1:$wsPort/websocket")),
+                    createSubscriptionsMeta(
+                        [
+                            new WebsocketSubscription().body("protocol1"),
+                            new WebsocketSubscription().body("protocol2")
+                        ] + (1..4).collect {
+                            new WebsocketHttpSubscription()
+                                .method(WebsocketHttpSubscription.Method.GET)
+                                .uri("http://127.0.0.1:$httpPort/subscribe/$it")
+                        }
+                    )
+                )
+        )
+        agent = assetStorageService.merge(agent)
+        def protocolRef = new AttributeRef(agent.id, "protocolConfig")
+
+        and: "an asset with attributes that have their own and shared websocket subscriptions is linked"
+        def asset = new Asset("Websocket Asset", AssetType.THING, agent)
+        asset.setAttributes(
+            ["attribute1", "attribute2", "attribute3"].collect { attributeName ->
+                new AssetAttribute(attributeName, AttributeValueType.STRING)
+                    .addMeta(
+                        new MetaItem(MetaItemType.AGENT_LINK, protocolRef.toArrayValue()),
+                        createSubscriptionsMeta([
+                            new WebsocketSubscription().body(attributeName),
+                            new WebsocketSubscription().body("shared")
+                        ])
+                    )
+            }
+        )
+        asset = assetStorageService.merge(asset)
+
+        then: "the protocol should connect and the attribute subscriptions should be registered"
+        conditions.eventually {
+            assert agentService.getProtocolConnectionStatus(protocolRef) == ConnectionStatus.CONNECTED
+            assert websocketClientProtocol.attributeSubscriptions.get(protocolRef).size() == 3
+        }
+
+        and: "every subscription should have been executed exactly once"
+        conditions.eventually {
+            def messages = wsEvents.findAll { it.type == "message" }.collect { it.text }
+            assert messages.size() == 6
+            assert messages.toSet() == ["protocol1", "protocol2", "attribute1", "attribute2", "attribute3", "shared"].toSet()
+            assert httpRequests.collect { it.path }.toSet() == (1..4).collect { "/subscribe/$it".toString() }.toSet()
+        }
+
+        and: "the protocol websocket subscriptions should have been sent in order straight after the connection was established"
+        def connectedTime = wsEvents.find { it.type == "connected" }.time
+        def protocolMessages = wsEvents.findAll { it.type == "message" && it.text.startsWith("protocol") }
+        protocolMessages.collect { it.text } == ["protocol1", "protocol2"]
+        protocolMessages.every { it.time - connectedTime < 1000 }
+
+        and: "the HTTP subscriptions should have been executed concurrently with bounded parallelism"
+        maxConcurrentRequests.get() > 1
+        maxConcurrentRequests.get() <= AbstractWebsocketClientProtocol.HTTP_SUBSCRIPTION_PARALLELISM
+        httpRequests.collect { it.end }.max() - httpRequests.collect { it.start }.min() < 4 * HTTP_SUBSCRIPTION_DURATION_MILLIS
+
+        when: "an attribute is unlinked and the connection is dropped by the server"
+        asset.removeAttribute("attribute3")
+        asset = assetStorageService.merge(asset)
+        conditions.eventually {
+            assert websocketClientProtocol.attributeSubscriptions.get(protocolRef).size() == 2
+        }
+        def eventCount = wsEvents.size()
+        def httpRequestCount = httpRequests.size()
+        wsChannels.each { it.close() }
+
+        then: "the client should reconnect and replay only the subscriptions that are still referenced"
+        conditions.eventually {
+            def reconnectIndex = wsEvents.findLastIndexOf { it.type == "connected" }
+            assert reconnectIndex >= eventCount
+            def messages = wsEvents.subList(reconnectIndex, wsEvents.size()).findAll { it.type == "message" }.collect { it.text }
+            assert messages.size() == 5
+            assert messages.toSet() == ["protocol1", "protocol2", "attribute1", "attribute2", "shared"].toSet()
+            assert httpRequests.size() == httpRequestCount + 4
+        }
+
+        cleanup: "the stubs are stopped"
+        httpStub?.stop(0)
+        wsStub?.close()
+        wsEventLoopGroup?.shutdownGracefully()
+    }
+}
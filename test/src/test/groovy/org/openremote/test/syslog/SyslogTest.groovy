@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.syslog
+
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.syslog.SyslogService
+import org.openremote.model.syslog.SyslogCategory
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.logging.Level
+import java.util.logging.LogRecord
+
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL
+
+class SyslogTest extends Specification implements ManagerContainerTrait {
+
+    def "Log a burst of records without blocking the caller and store them in batches"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 30, delay: 0.5)
+
+        and: "the container is started"
+        def container = startContainer(defaultConfig(), defaultServices(new SyslogService()))
+        def syslogService = container.getService(SyslogService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+        def loggerName = SyslogCategory.getLogger(PROTOCOL, SyslogTest.class).getName()
+        def startMillis = System.currentTimeMillis()
+
+        and: "the counters before the burst"
+        def storedBefore = syslogService.getStoredCount()
+        def droppedBefore = syslogService.getDroppedCount()
+        def batchesBefore = syslogService.getStoreBatchCount()
+
+        when: "100k records are logged in a burst"
+        def records = 100000
+        def burstStartNanos = System.nanoTime()
+        for (int i = 0; i < records; i++) {
+            def record = new LogRecord(Level.INFO, "Syslog burst record " + i)
+            record.setLoggerName(loggerName)
+            syslogService.publish(record)
+        }
+        def burstMillis = (System.nanoTime() - burstStartNanos) / 1000000
+
+        then: "the caller should not have been blocked by the database or clients"
+        burstMillis < 5000
+
+        and: "all records should eventually be stored or counted as dropped"
+        def storedRecords = { ->
+            persistenceService.doReturningTransaction { em ->
+                em.createQuery("select count(e) from SyslogEvent e where e.message like 'Syslog burst record %'", Long.class).getSingleResult()
+            }
+        }
+        conditions.eventually {
+            assert storedRecords() + syslogService.getDroppedCount() - droppedBefore >= records
+        }
+        storedRecords() > 0
+        syslogService.getDroppedCount() - droppedBefore > 0
+
+        and: "the number of database round trips should depend on the number of batches not records"
+        def stored = syslogService.getStoredCount() - storedBefore
+        def flushes = Math.ceil((System.currentTimeMillis() - startMillis) / SyslogService.FLUSH_INTERVAL_MILLIS) + 1
+        syslogService.getStoreBatchCount() - batchesBefore <= Math.ceil(stored / SyslogService.STORE_BATCH_SIZE) + flushes
+    }
+}
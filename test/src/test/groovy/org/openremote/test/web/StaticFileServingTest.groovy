@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.test.web
+
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.zip.GZIPInputStream
+
+import static org.openremote.manager.web.ManagerWebService.APP_DOCROOT
+import static org.openremote.manager.web.ManagerWebService.APP_PATH
+
+/**
+ * Checks the static files of the app document root are served as precompressed variants, with strong ETags and with
+ * immutable cache headers for hashed file names.
+ */
+class StaticFileServingTest extends Specification implements ManagerContainerTrait {
+
+    static Map request(String url, Map<String, String> headers = [:]) {
+        def connection = (HttpURLConnection) new URL(url).openConnection()
+        headers.each { connection.setRequestProperty(it.key, it.value) }
+        def status = connection.responseCode
+        def body = status == 200 ? connection.inputStream.bytes : new byte[0]
+        def response = [
+            status         : status,
+            body           : body,
+            contentEncoding: connection.getHeaderField("Content-Encoding"),
+            contentLength  : connection.getHeaderField("Content-Length"),
+            contentType    : connection.getHeaderField("Content-Type"),
+            eTag           : connection.getHeaderField("ETag"),
+            vary           : connection.getHeaderField("Vary"),
+            cacheControl   : connection.getHeaderField("Cache-Control")
+        ]
+        connection.disconnect()
+        return response
+    }
+
+    static byte[] gunzip(byte[] bytes) {
+        new GZIPInputStream(new ByteArrayInputStream(bytes)).bytes
+    }
+
+    def "Serve precompressed static files by accepted encoding with strong ETags"() {
+
+        given: "an app document root with a hashed script bundle, a build time Brotli variant, a page and an image"
+        def docRoot = Files.createTempDirectory("or-static-test")
+        def script = docRoot.resolve("app.3f2a9c1d.js").toFile()
+        script.text = (1..2000).collect { "console.log('Line " + it + " of the bundle');" }.join("\n")
+        def brotliVariant = docRoot.resolve("app.3f2a9c1d.js.br").toFile()
+        brotliVariant.bytes = "Not really Brotli but only the build knows".bytes
+        brotliVariant.setLastModified(script.lastModified() + 1000)
+        def page = docRoot.resolve("index.html").toFile()
+        page.text = "<html><body>" + (1..200).collect { "<p>Paragraph " + it + "</p>" }.join() + "</body></html>"
+        def image = docRoot.resolve("logo.png").toFile()
+        def imageBytes = new byte[4096]
+        new Random(1).nextBytes(imageBytes)
+        image.bytes = imageBytes
+
+        and: "the container is started with the app document root"
+        def container = startContainer(defaultConfig() << [(APP_DOCROOT): docRoot.toString()], defaultServices())
+        def baseUrl = "http://localhost:$serverPort$APP_PATH"
+
+        when: "the script is requested by a client that accepts GZIP"
+        def gzipResponse = request("$baseUrl/app.3f2a9c1d.js", ["Accept-Encoding": "gzip, deflate"])
+
+        then: "the GZIP variant should be sent and decode to the script"
+        gzipResponse.status == 200
+        gzipResponse.contentEncoding == "gzip"
+        gzipResponse.vary == "Accept-Encoding"
+        gzipResponse.contentType.startsWith("application/javascript")
+        gzipResponse.contentLength == String.valueOf(gzipResponse.body.length)
+        gzipResponse.body.length < script.length() / 4
+        gunzip(gzipResponse.body) == script.bytes
+
+        and: "the ETag should be strong and the hashed file name should be cached as immutable"
+        !gzipResponse.eTag.startsWith("W/")
+        gzipResponse.cacheControl.contains("immutable")
+
+        when: "the script is requested by a client that accepts Brotli"
+        def brotliResponse = request("$baseUrl/app.3f2a9c1d.js", ["Accept-Encoding": "gzip, deflate, br"])
+
+        then: "the Brotli variant of the build should be preferred"
+        brotliResponse.status == 200
+        brotliResponse.contentEncoding == "br"
+        brotliResponse.body == brotliVariant.bytes
+        brotliResponse.eTag != gzipResponse.eTag
+
+        when: "the script is requested by a client that doesn't accept any or refuses the encodings"
+        def identityResponses = [
+            request("$baseUrl/app.3f2a9c1d.js"),
+            request("$baseUrl/app.3f2a9c1d.js", ["Accept-Encoding": "gzip;q=0, br;q=0.0"])
+        ]
+
+        then: "the script should be sent as it is"
+        identityResponses.every {
+            it.status == 200 && it.contentEncoding == null && it.vary == "Accept-Encoding" && it.body == script.bytes
+        }
+        identityResponses.collect { it.eTag }.toSet().size() == 1
+        !(identityResponses[0].eTag in [gzipResponse.eTag, brotliResponse.eTag])
+
+        when: "the script is revalidated with the ETag of the GZIP variant"
+        def notModifiedResponse = request("$baseUrl/app.3f2a9c1d.js", ["Accept-Encoding": "gzip", "If-None-Match": gzipResponse.eTag])
+
+        then: "it should not be sent again"
+        notModifiedResponse.status == 304
+        notModifiedResponse.eTag == gzipResponse.eTag
+        notModifiedResponse.vary == "Accept-Encoding"
+
+        when: "the script is revalidated with the ETag of the GZIP variant but another encoding is accepted"
+        def otherVariantResponse = request("$baseUrl/app.3f2a9c1d.js", ["If-None-Match": gzipResponse.eTag])
+
+        then: "the accepted variant should be sent"
+        otherVariantResponse.status == 200
+        otherVariantResponse.contentEncoding == null
+        otherVariantResponse.body == script.bytes
+
+        when: "the script is changed"
+        script.text = script.text + "\nconsole.log('Appended');"
+        script.setLastModified(brotliVariant.lastModified() + 1000)
+        def changedResponse = request("$baseUrl/app.3f2a9c1d.js", ["Accept-Encoding": "br, gzip", "If-None-Match": gzipResponse.eTag])
+
+        then: "the outdated Brotli variant should be ignored and the script compressed again with a new ETag"
+        changedResponse.status == 200
+        changedResponse.contentEncoding == "gzip"
+        changedResponse.eTag != gzipResponse.eTag
+        gunzip(changedResponse.body) == script.bytes
+
+        when: "the page is requested"
+        def pageResponse = request("$baseUrl/index.html", ["Accept-Encoding": "gzip"])
+
+        then: "the page should be compressed but not cached as immutable"
+        pageResponse.status == 200
+        pageResponse.contentEncoding == "gzip"
+        gunzip(pageResponse.body) == page.bytes
+        !pageResponse.cacheControl.contains("immutable")
+
+        when: "the image is requested"
+        def imageResponse = request("$baseUrl/logo.png", ["Accept-Encoding": "gzip, br"])
+
+        then: "the image should not be compressed"
+        imageResponse.status == 200
+        imageResponse.contentEncoding == null
+        imageResponse.vary == null
+        imageResponse.body == imageBytes
+
+        cleanup: "the document root is removed"
+        docRoot?.toFile()?.deleteDir()
+    }
+}